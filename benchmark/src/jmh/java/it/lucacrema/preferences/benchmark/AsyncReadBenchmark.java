@@ -0,0 +1,65 @@
+package it.lucacrema.preferences.benchmark;
+
+import it.lucacrema.preferences.PreferencesManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading several large objects one after another on the calling thread and decoding them in parallel
+ * with {@link PreferencesManager#getObjectsAsync(String...)}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AsyncReadBenchmark {
+
+    private static final String[] KEYS = {"object0", "object1", "object2", "object3"};
+
+    @Param({"16384", "131072"})
+    public int payloadSize;
+
+    private PreferencesManager preferencesManager;
+
+    @Setup
+    public void setUp() throws IOException {
+        preferencesManager = new PreferencesManager(Backend.MEMORY.open(null));
+        Random random = new Random(payloadSize);
+        for (String key : KEYS) {
+            byte[] payload = new byte[payloadSize];
+            random.nextBytes(payload);
+            preferencesManager.setObject(key, payload);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        preferencesManager.close();
+    }
+
+    @Benchmark
+    public void getObjects(Blackhole blackhole) {
+        for (String key : KEYS)
+            blackhole.consume(preferencesManager.getObject(key));
+    }
+
+    @Benchmark
+    public void getObjectsAsync(Blackhole blackhole) throws ExecutionException, InterruptedException {
+        for (Future<Object> object : preferencesManager.getObjectsAsync(KEYS).values())
+            blackhole.consume(object.get());
+    }
+}
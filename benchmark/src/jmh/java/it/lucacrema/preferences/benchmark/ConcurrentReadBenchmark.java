@@ -0,0 +1,54 @@
+package it.lucacrema.preferences.benchmark;
+
+import it.lucacrema.preferences.PreferencesManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads from many threads at the same time, to expose lock contention
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(4)
+public class ConcurrentReadBenchmark {
+
+    private PreferencesManager preferencesManager;
+
+    @Setup
+    public void setUp() throws IOException {
+        preferencesManager = new PreferencesManager(Backend.MEMORY.open(Backend.newTempFile()));
+        preferencesManager.setInt("intKey", 5);
+        preferencesManager.setString("stringKey", "Test string");
+        ArrayList<String> object = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+            object.add("element" + i);
+        preferencesManager.setObject("objectKey", object);
+    }
+
+    @Benchmark
+    public int getInt() {
+        return preferencesManager.getInt("intKey");
+    }
+
+    @Benchmark
+    public String getString() {
+        return preferencesManager.getString("stringKey");
+    }
+
+    @Benchmark
+    public Object getObject() {
+        return preferencesManager.getObject("objectKey");
+    }
+}
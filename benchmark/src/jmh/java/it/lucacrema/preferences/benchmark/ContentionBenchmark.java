@@ -0,0 +1,67 @@
+package it.lucacrema.preferences.benchmark;
+
+import it.lucacrema.preferences.PreferenceKey;
+import it.lucacrema.preferences.PreferencesManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Atomic updates from many threads, each one on its own key, with a single global lock (1 stripe)
+ * and with the default striped lock table
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(4)
+public class ContentionBenchmark {
+
+    private static final PreferencesManager.Updater<Integer> INCREMENT = new PreferencesManager.Updater<Integer>() {
+        @Override
+        public Integer update(Integer current) {
+            return current + 1;
+        }
+    };
+
+    @Param({"1", "64"})
+    public int stripes;
+
+    private PreferencesManager preferencesManager;
+    private final AtomicInteger threads = new AtomicInteger();
+
+    @Setup
+    public void setUp() {
+        preferencesManager = new PreferencesManager.Builder(Backend.MEMORY.open(null)).lockStripes(stripes).build();
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadKey {
+
+        PreferenceKey.IntKey key;
+
+        @Setup
+        public void setUp(ContentionBenchmark benchmark) {
+            key = PreferenceKey.ofInt("counter" + benchmark.threads.getAndIncrement(), 0);
+        }
+    }
+
+    @Benchmark
+    public Integer update(ThreadKey threadKey) {
+        return preferencesManager.update(threadKey.key, INCREMENT);
+    }
+
+    @Benchmark
+    public int updateInt(ThreadKey threadKey) {
+        return preferencesManager.updateInt(threadKey.key.getName(), 1);
+    }
+}
@@ -0,0 +1,77 @@
+package it.lucacrema.preferences.benchmark;
+
+import it.lucacrema.preferences.ImportMode;
+import it.lucacrema.preferences.PreferencesBatch;
+import it.lucacrema.preferences.PreferencesManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Backup and restore of large stores with {@link PreferencesManager#exportTo(java.io.OutputStream)} and
+ * {@link PreferencesManager#importFrom(java.io.InputStream, ImportMode)}, divide the keys by the time for the throughput
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ExportImportBenchmark {
+
+    @Param({"10000", "50000"})
+    public int keys;
+
+    @Param({"MEMORY", "FILE"})
+    public Backend backend;
+
+    private PreferencesManager preferencesManager;
+    private ByteArrayOutputStream output;
+    private byte[] exported;
+
+    @Setup
+    public void setUp() throws IOException {
+        preferencesManager = new PreferencesManager(backend.open(Backend.newTempFile()));
+        preferencesManager.batch(new PreferencesBatch.Operation() {
+            @Override
+            public void run(PreferencesBatch batch) {
+                for (int i = 0; i < keys; i++) {
+                    if (i % 2 == 0)
+                        batch.setString("key" + i, "Test string value " + i);
+                    else
+                        batch.setLong("key" + i, i * 1000L);
+                }
+            }
+        });
+        output = new ByteArrayOutputStream();
+        preferencesManager.exportTo(output);
+        exported = output.toByteArray();
+    }
+
+    @Benchmark
+    public int exportTo() throws IOException {
+        output.reset();
+        return preferencesManager.exportTo(output);
+    }
+
+    @Benchmark
+    public boolean importReplace() throws IOException {
+        return preferencesManager.importFrom(new ByteArrayInputStream(exported), ImportMode.REPLACE);
+    }
+
+    /**
+     * Restores the values already saved, so every write is skipped
+     */
+    @Benchmark
+    public boolean importMergeUnchanged() throws IOException {
+        return preferencesManager.importFrom(new ByteArrayInputStream(exported), ImportMode.MERGE);
+    }
+}
@@ -0,0 +1,48 @@
+package it.lucacrema.preferences.benchmark;
+
+import it.lucacrema.preferences.PreferencesBatch;
+import it.lucacrema.preferences.PreferencesManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of getAllValues, which copies the whole map, as the number of saved values grows
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GetAllValuesBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int mapSize;
+
+    private PreferencesManager preferencesManager;
+
+    @Setup
+    public void setUp() throws IOException {
+        preferencesManager = new PreferencesManager(Backend.MEMORY.open(Backend.newTempFile()));
+        preferencesManager.batch(new PreferencesBatch.Operation() {
+            @Override
+            public void run(PreferencesBatch batch) {
+                for (int i = 0; i < mapSize; i++)
+                    batch.setString("key" + i, "value" + i);
+            }
+        });
+    }
+
+    @Benchmark
+    public Map<String, ?> getAllValues() {
+        return preferencesManager.getAllValues();
+    }
+}
@@ -0,0 +1,73 @@
+package it.lucacrema.preferences.benchmark;
+
+import it.lucacrema.preferences.ObjectSerializerUtility;
+import it.lucacrema.preferences.PreferencesManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of saving and reading objects, and of the serialization alone, from 100 B to 1 MB
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ObjectBenchmark {
+
+    private static final String KEY = "objectKey";
+
+    @Param({"100", "1024", "16384", "131072", "1048576"})
+    public int payloadSize;
+
+    @Param({"MEMORY"})
+    public Backend backend;
+
+    private PreferencesManager preferencesManager;
+    private ObjectSerializerUtility objectSerializerUtility;
+    private byte[] payload;
+    private String serializedPayload;
+
+    @Setup
+    public void setUp() throws IOException {
+        payload = new byte[payloadSize];
+        new Random(payloadSize).nextBytes(payload);
+        objectSerializerUtility = new ObjectSerializerUtility();
+        serializedPayload = objectSerializerUtility.serializeObject(payload);
+        // The same object is written every time, so unchanged writes must not be skipped
+        preferencesManager = new PreferencesManager.Builder(backend.open(Backend.newTempFile()))
+                .objectSerializer(objectSerializerUtility)
+                .elideUnchangedWrites(false)
+                .build();
+        preferencesManager.setObject(KEY, payload);
+    }
+
+    @Benchmark
+    public boolean setObject() throws IOException {
+        return preferencesManager.setObject(KEY, payload);
+    }
+
+    @Benchmark
+    public Object getObject() {
+        return preferencesManager.getObject(KEY);
+    }
+
+    @Benchmark
+    public String serializeObject() throws IOException {
+        return objectSerializerUtility.serializeObject(payload);
+    }
+
+    @Benchmark
+    public Object deserializeObject() {
+        return objectSerializerUtility.deserializeObject(serializedPayload);
+    }
+}
@@ -0,0 +1,70 @@
+package it.lucacrema.preferences.benchmark;
+
+import it.lucacrema.preferences.PreferencesManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Packed int arrays against the same arrays saved with {@link PreferencesManager#setObject(String, java.io.Serializable)},
+ * for sorted samples (delta encoded) and random ones (little-endian)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PackedArrayBenchmark {
+
+    private static final String PACKED_KEY = "packedKey";
+    private static final String OBJECT_KEY = "objectKey";
+
+    @Param({"1000", "5000"})
+    public int size;
+
+    @Param({"true", "false"})
+    public boolean sorted;
+
+    private PreferencesManager preferencesManager;
+    private int[] values;
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(size);
+        values = new int[size];
+        for (int i = 0; i < size; i++)
+            values[i] = sorted ? (i == 0 ? 0 : values[i - 1]) + random.nextInt(100) : random.nextInt();
+        // The same array is written every time, so unchanged writes must not be skipped
+        preferencesManager = new PreferencesManager.Builder(Backend.MEMORY.open(null)).elideUnchangedWrites(false).build();
+        preferencesManager.setIntArray(PACKED_KEY, values);
+        preferencesManager.setObject(OBJECT_KEY, values);
+    }
+
+    @Benchmark
+    public boolean setIntArray() {
+        return preferencesManager.setIntArray(PACKED_KEY, values);
+    }
+
+    @Benchmark
+    public boolean setObject() throws IOException {
+        return preferencesManager.setObject(OBJECT_KEY, values);
+    }
+
+    @Benchmark
+    public int[] getIntArray() {
+        return preferencesManager.getIntArray(PACKED_KEY);
+    }
+
+    @Benchmark
+    public Object getObject() {
+        return preferencesManager.getObject(OBJECT_KEY);
+    }
+}
@@ -0,0 +1,69 @@
+package it.lucacrema.preferences.benchmark;
+
+import it.lucacrema.preferences.PreferencesBatch;
+import it.lucacrema.preferences.PreferencesManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opening a file that holds many objects and reading only a few values, as a process that needs three settings does.
+ * Each invocation opens the file again; run with {@code -prof gc} to compare the memory allocated.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PartialLoadBenchmark {
+
+    private static final int OBJECT_COUNT = 200;
+
+    @Param({"STORE", "LAZY_STORE"})
+    public Backend backend;
+
+    @Param({"1024", "16384"})
+    public int objectSize;
+
+    private File file;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = Backend.newTempFile();
+        PreferencesManager preferencesManager = new PreferencesManager(Backend.STORE.open(file));
+        final Random random = new Random(objectSize);
+        preferencesManager.batch(new PreferencesBatch.Operation() {
+            @Override
+            public void run(PreferencesBatch batch) throws IOException {
+                batch.setInt("version", 3);
+                batch.setString("user", "Roberto");
+                batch.setBoolean("enabled", true);
+                for (int i = 0; i < OBJECT_COUNT; i++) {
+                    byte[] payload = new byte[objectSize];
+                    random.nextBytes(payload);
+                    batch.setObject("object" + i, (Serializable) payload);
+                }
+            }
+        });
+        preferencesManager.close();
+    }
+
+    @Benchmark
+    public void openAndReadThreeKeys(Blackhole blackhole) {
+        PreferencesManager preferencesManager = new PreferencesManager(backend.open(file));
+        blackhole.consume(preferencesManager.getInt("version"));
+        blackhole.consume(preferencesManager.getString("user"));
+        blackhole.consume(preferencesManager.getBoolean("enabled"));
+    }
+}
@@ -0,0 +1,101 @@
+package it.lucacrema.preferences.benchmark;
+
+import it.lucacrema.preferences.PreferencesManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of reading and writing each primitive type
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PrimitiveBenchmark {
+
+    private static final String KEY = "key";
+
+    @Param({"MEMORY", "FILE", "LOG", "STORE"})
+    public Backend backend;
+
+    private PreferencesManager preferencesManager;
+    private int counter;
+
+    @Setup
+    public void setUp() throws IOException {
+        preferencesManager = new PreferencesManager(backend.open(Backend.newTempFile()));
+        preferencesManager.setInt(KEY + "Int", 5);
+        preferencesManager.setFloat(KEY + "Float", 2.392658f);
+        preferencesManager.setLong(KEY + "Long", 12000000000L);
+        preferencesManager.setString(KEY + "String", "Test string");
+        preferencesManager.setBoolean(KEY + "Boolean", true);
+        preferencesManager.setInt(KEY + "Unchanged", 5);
+    }
+
+    @Benchmark
+    public int getInt() {
+        return preferencesManager.getInt(KEY + "Int");
+    }
+
+    @Benchmark
+    public float getFloat() {
+        return preferencesManager.getFloat(KEY + "Float");
+    }
+
+    @Benchmark
+    public long getLong() {
+        return preferencesManager.getLong(KEY + "Long");
+    }
+
+    @Benchmark
+    public String getString() {
+        return preferencesManager.getString(KEY + "String");
+    }
+
+    @Benchmark
+    public boolean getBoolean() {
+        return preferencesManager.getBoolean(KEY + "Boolean");
+    }
+
+    /**
+     * Write of the value already saved, skipped without committing
+     */
+    @Benchmark
+    public boolean setIntUnchanged() {
+        return preferencesManager.setInt(KEY + "Unchanged", 5);
+    }
+
+    @Benchmark
+    public boolean setInt() {
+        return preferencesManager.setInt(KEY + "Int", counter++);
+    }
+
+    @Benchmark
+    public boolean setFloat() {
+        return preferencesManager.setFloat(KEY + "Float", counter++);
+    }
+
+    @Benchmark
+    public boolean setLong() {
+        return preferencesManager.setLong(KEY + "Long", counter++);
+    }
+
+    @Benchmark
+    public boolean setString() {
+        return preferencesManager.setString(KEY + "String", "Test string " + counter++);
+    }
+
+    @Benchmark
+    public boolean setBoolean() {
+        return preferencesManager.setBoolean(KEY + "Boolean", (counter++ & 1) == 0);
+    }
+}
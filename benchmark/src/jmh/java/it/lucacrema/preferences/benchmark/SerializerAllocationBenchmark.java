@@ -0,0 +1,68 @@
+package it.lucacrema.preferences.benchmark;
+
+import it.lucacrema.preferences.BinaryCodec;
+import it.lucacrema.preferences.ObjectSerializerUtility;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Garbage produced by the serializer for small frequently written objects, run it with {@code -PjmhProfilers=gc}
+ * and compare {@code gc.alloc.rate.norm} (bytes/op). The binary codec allocates little by itself, so its results
+ * are mostly the overhead of the serializer; Java serialization adds the fixed cost of the object streams.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SerializerAllocationBenchmark {
+
+    @Param({"8", "64", "512"})
+    public int elements;
+
+    private ObjectSerializerUtility objectSerializerUtility;
+    private BinaryCodec binaryCodec;
+    private ArrayList<Integer> value;
+    private String serializedJava;
+    private String serializedBinary;
+
+    @Setup
+    public void setUp() throws IOException {
+        binaryCodec = new BinaryCodec();
+        objectSerializerUtility = new ObjectSerializerUtility(binaryCodec);
+        value = new ArrayList<>();
+        for (int i = 0; i < elements; i++)
+            value.add(i * 31);
+        serializedJava = objectSerializerUtility.serializeObject(value);
+        serializedBinary = objectSerializerUtility.serializeObject((Object) value, binaryCodec);
+    }
+
+    @Benchmark
+    public String serializeJava() throws IOException {
+        return objectSerializerUtility.serializeObject(value);
+    }
+
+    @Benchmark
+    public Object deserializeJava() {
+        return objectSerializerUtility.deserializeObject(serializedJava);
+    }
+
+    @Benchmark
+    public String serializeBinary() throws IOException {
+        return objectSerializerUtility.serializeObject((Object) value, binaryCodec);
+    }
+
+    @Benchmark
+    public Object deserializeBinary() {
+        return objectSerializerUtility.deserializeObject(serializedBinary, binaryCodec);
+    }
+}
@@ -0,0 +1,70 @@
+package it.lucacrema.preferences.benchmark;
+
+import it.lucacrema.preferences.PreferencesBatch;
+import it.lucacrema.preferences.PreferencesManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time from app startup to the first read, with and without preloading, when the app does some other
+ * initialization work before reading. Each invocation opens the file again, as a cold start does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StartupBenchmark {
+
+    private static final String KEY = "key0";
+
+    @Param({"1000", "10000"})
+    public int valueCount;
+
+    /**
+     * Other initialization work done by the app before the first read, in {@link Blackhole#consumeCPU(long)} tokens
+     */
+    @Param({"0", "200000"})
+    public long initWork;
+
+    private File file;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = Backend.newTempFile();
+        PreferencesManager preferencesManager = new PreferencesManager(new FileSharedPreferences(file));
+        preferencesManager.batch(new PreferencesBatch.Operation() {
+            @Override
+            public void run(PreferencesBatch batch) {
+                for (int i = 0; i < valueCount; i++)
+                    batch.setString("key" + i, "Test string value " + i);
+            }
+        });
+    }
+
+    @Benchmark
+    public String firstReadWithoutPreload() {
+        Blackhole.consumeCPU(initWork);
+        PreferencesManager preferencesManager = new PreferencesManager(new FileSharedPreferences(file));
+        return preferencesManager.getString(KEY);
+    }
+
+    @Benchmark
+    public String firstReadWithPreload() throws ExecutionException, InterruptedException {
+        Future<PreferencesManager> preloaded = new PreferencesManager.Builder(new FileSharedPreferences(file)).preload(null, null);
+        Blackhole.consumeCPU(initWork);
+        return preloaded.get().getString(KEY);
+    }
+}
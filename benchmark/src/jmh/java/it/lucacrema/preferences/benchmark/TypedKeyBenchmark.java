@@ -0,0 +1,65 @@
+package it.lucacrema.preferences.benchmark;
+
+import it.lucacrema.preferences.PreferenceKey;
+import it.lucacrema.preferences.PreferencesManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads through typed {@link PreferenceKey}s against the String key accessors
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TypedKeyBenchmark {
+
+    private static final PreferenceKey.IntKey INT_KEY = PreferenceKey.ofInt("intKey", 0);
+    private static final PreferenceKey.ObjectKey<ArrayList<String>> OBJECT_KEY = PreferenceKey.ofObject("objectKey", null);
+
+    private PreferencesManager preferencesManager;
+
+    @Setup
+    public void setUp() throws IOException {
+        preferencesManager = new PreferencesManager(Backend.MEMORY.open(null));
+        preferencesManager.setInt(INT_KEY, 123456);
+        ArrayList<String> list = new ArrayList<>();
+        for (int i = 0; i < 100; i++)
+            list.add("Value " + i);
+        preferencesManager.setObject(OBJECT_KEY, list);
+    }
+
+    @Benchmark
+    public int getIntString() {
+        return preferencesManager.getInt(INT_KEY.getName());
+    }
+
+    @Benchmark
+    public int getIntKey() {
+        return preferencesManager.getInt(INT_KEY);
+    }
+
+    @Benchmark
+    public Integer getGenericKey() {
+        return preferencesManager.get(INT_KEY);
+    }
+
+    @Benchmark
+    public Object getObjectString() {
+        return preferencesManager.getObject(OBJECT_KEY.getName());
+    }
+
+    @Benchmark
+    public ArrayList<String> getObjectKey() {
+        return preferencesManager.get(OBJECT_KEY);
+    }
+}
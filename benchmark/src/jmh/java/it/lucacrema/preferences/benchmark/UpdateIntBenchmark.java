@@ -0,0 +1,57 @@
+package it.lucacrema.preferences.benchmark;
+
+import it.lucacrema.preferences.PreferencesManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of counters: read-modify-write with updateInt and shiftInt against {@link it.lucacrema.preferences.PreferenceCounter}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class UpdateIntBenchmark {
+
+    private static final String KEY = "counterKey";
+
+    @Param({"MEMORY", "FILE", "STORE"})
+    public Backend backend;
+
+    private PreferencesManager preferencesManager;
+
+    @Setup
+    public void setUp() throws IOException {
+        preferencesManager = new PreferencesManager(backend.open(Backend.newTempFile()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        preferencesManager.close();
+    }
+
+    @Benchmark
+    public int updateInt() {
+        return preferencesManager.updateInt(KEY);
+    }
+
+    @Benchmark
+    public int shiftInt() {
+        return preferencesManager.shiftInt(KEY, 100);
+    }
+
+    @Benchmark
+    public void counterIncrement() {
+        preferencesManager.counter(KEY).increment();
+    }
+}
@@ -0,0 +1,95 @@
+package it.lucacrema.preferences.benchmark;
+
+import it.lucacrema.preferences.FilePreferenceStore;
+import it.lucacrema.preferences.LazyFilePreferenceStore;
+import it.lucacrema.preferences.LogSharedPreferences;
+import it.lucacrema.preferences.PreferenceStore;
+import it.lucacrema.preferences.SharedPreferencesStore;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Storage the benchmarks can run against, selected with a JMH {@code @Param}
+ */
+public enum Backend {
+
+    /**
+     * Values in memory only, measures the overhead of the library
+     */
+    MEMORY {
+        @Override
+        public PreferenceStore open(File file) {
+            return new SharedPreferencesStore(new InMemorySharedPreferences());
+        }
+    },
+    /**
+     * Values rewritten to a file on every commit, like the Android implementation
+     */
+    FILE {
+        @Override
+        public PreferenceStore open(File file) {
+            return new SharedPreferencesStore(new FileSharedPreferences(file));
+        }
+    },
+    /**
+     * Changes appended to a log file by {@link LogSharedPreferences}
+     */
+    LOG {
+        @Override
+        public PreferenceStore open(File file) {
+            try {
+                return new SharedPreferencesStore(new LogSharedPreferences(file));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    },
+    /**
+     * Values rewritten to a file on every commit by the {@link FilePreferenceStore} of the library
+     */
+    STORE {
+        @Override
+        public PreferenceStore open(File file) {
+            try {
+                return new FilePreferenceStore(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    },
+    /**
+     * Same file as {@link #STORE}, opened by the {@link LazyFilePreferenceStore} that reads long values on first use
+     */
+    LAZY_STORE {
+        @Override
+        public PreferenceStore open(File file) {
+            try {
+                return new LazyFilePreferenceStore(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    };
+
+    /**
+     * @param file file used by file-backed storages, it may not exist
+     * @return a new storage
+     */
+    public abstract PreferenceStore open(File file);
+
+    /**
+     * @return a new file in the temporary directory, deleted when the JVM exits
+     * @throws IOException if the file cannot be created
+     */
+    public static File newTempFile() throws IOException {
+        File file = File.createTempFile("preferences-benchmark", ".prefs");
+        if (!file.delete())
+            throw new IOException("Cannot prepare " + file);
+        file.deleteOnExit();
+        new File(file.getPath() + ".tmp").deleteOnExit();
+        new File(file.getPath() + ".compact").deleteOnExit();
+        return file;
+    }
+}
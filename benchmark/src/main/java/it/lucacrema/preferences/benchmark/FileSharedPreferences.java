@@ -0,0 +1,148 @@
+package it.lucacrema.preferences.benchmark;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * {@link android.content.SharedPreferences} stand-in with the cost model of the Android implementation:
+ * the file is parsed in full on a background thread started by the constructor, the first access waits for it,
+ * and every commit rewrites and syncs the whole file.
+ */
+public class FileSharedPreferences extends InMemorySharedPreferences {
+
+    private final File file;
+    private final CountDownLatch loaded = new CountDownLatch(1);
+
+    /**
+     * @param file file holding the values, created on the first commit
+     */
+    public FileSharedPreferences(final File file) {
+        this.file = file;
+        Thread loader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    setLoadedValues(read(file));
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                } finally {
+                    loaded.countDown();
+                }
+            }
+        }, "FileSharedPreferences-load");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    @Override
+    protected void awaitLoaded() {
+        boolean interrupted = false;
+        while (loaded.getCount() > 0) {
+            try {
+                loaded.await();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    @Override
+    protected boolean persist(Map<String, Object> values) {
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            for (Map.Entry<String, Object> entry : values.entrySet()) {
+                Object value = entry.getValue();
+                writer.write(typeOf(value));
+                writer.write('\t');
+                writer.write(escape(entry.getKey()));
+                writer.write('\t');
+                writer.write(escape(String.valueOf(value)));
+                writer.write('\n');
+            }
+            writer.flush();
+            out.getFD().sync();
+        } catch (IOException e) {
+            return false;
+        }
+        return temp.renameTo(file);
+    }
+
+    private static Map<String, Object> read(File file) throws IOException {
+        Map<String, Object> values = new HashMap<>();
+        if (!file.exists())
+            return values;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int keyEnd = line.indexOf('\t', 2);
+                String key = unescape(line.substring(2, keyEnd));
+                String value = unescape(line.substring(keyEnd + 1));
+                values.put(key, parse(line.charAt(0), value));
+            }
+        }
+        return values;
+    }
+
+    private static char typeOf(Object value) {
+        if (value instanceof Integer)
+            return 'i';
+        if (value instanceof Long)
+            return 'l';
+        if (value instanceof Float)
+            return 'f';
+        if (value instanceof Boolean)
+            return 'b';
+        if (value instanceof String)
+            return 's';
+        throw new IllegalArgumentException("Unsupported type " + value.getClass());
+    }
+
+    private static Object parse(char type, String value) {
+        switch (type) {
+            case 'i':
+                return Integer.valueOf(value);
+            case 'l':
+                return Long.valueOf(value);
+            case 'f':
+                return Float.valueOf(value);
+            case 'b':
+                return Boolean.valueOf(value);
+            default:
+                return value;
+        }
+    }
+
+    private static String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n");
+    }
+
+    private static String unescape(String s) {
+        if (s.indexOf('\\') < 0)
+            return s;
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\\' && i + 1 < s.length()) {
+                char next = s.charAt(++i);
+                sb.append(next == 't' ? '\t' : next == 'n' ? '\n' : next);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,222 @@
+package it.lucacrema.preferences.benchmark;
+
+import android.content.SharedPreferences;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * {@link SharedPreferences} stand-in that keeps the values in memory, with the same locking and copying
+ * behaviour as the Android implementation: reads lock the map, {@link #getAll()} copies it and every commit
+ * replaces the map with an updated copy before persisting it.
+ */
+public class InMemorySharedPreferences implements SharedPreferences {
+
+    private final Object lock = new Object();
+    private final WeakHashMap<OnSharedPreferenceChangeListener, Object> listeners = new WeakHashMap<>();
+    private Map<String, Object> values;
+
+    public InMemorySharedPreferences() {
+        this(new HashMap<String, Object>());
+    }
+
+    /**
+     * @param values initial values, copied
+     */
+    protected InMemorySharedPreferences(Map<String, Object> values) {
+        this.values = new HashMap<>(values);
+    }
+
+    /**
+     * Called after every commit with the new values, while no other commit can run.
+     *
+     * @param values values after the commit, must not be modified
+     * @return if the values have been persisted correctly
+     */
+    protected boolean persist(Map<String, Object> values) {
+        return true;
+    }
+
+    /**
+     * Called before every access, to wait for the values to be loaded.
+     */
+    protected void awaitLoaded() {
+    }
+
+    /**
+     * @param values values loaded after construction
+     */
+    protected void setLoadedValues(Map<String, Object> values) {
+        synchronized (lock) {
+            this.values = values;
+        }
+    }
+
+    private Object get(String key) {
+        awaitLoaded();
+        synchronized (lock) {
+            return values.get(key);
+        }
+    }
+
+    @Override
+    public Map<String, ?> getAll() {
+        awaitLoaded();
+        synchronized (lock) {
+            return new HashMap<>(values);
+        }
+    }
+
+    @Override
+    public String getString(String key, String defValue) {
+        Object value = get(key);
+        return value == null ? defValue : (String) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<String> getStringSet(String key, Set<String> defValues) {
+        Object value = get(key);
+        return value == null ? defValues : (Set<String>) value;
+    }
+
+    @Override
+    public int getInt(String key, int defValue) {
+        Object value = get(key);
+        return value == null ? defValue : (Integer) value;
+    }
+
+    @Override
+    public long getLong(String key, long defValue) {
+        Object value = get(key);
+        return value == null ? defValue : (Long) value;
+    }
+
+    @Override
+    public float getFloat(String key, float defValue) {
+        Object value = get(key);
+        return value == null ? defValue : (Float) value;
+    }
+
+    @Override
+    public boolean getBoolean(String key, boolean defValue) {
+        Object value = get(key);
+        return value == null ? defValue : (Boolean) value;
+    }
+
+    @Override
+    public boolean contains(String key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public Editor edit() {
+        awaitLoaded();
+        return new MapEditor();
+    }
+
+    @Override
+    public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        synchronized (listeners) {
+            listeners.put(listener, this);
+        }
+    }
+
+    @Override
+    public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        synchronized (listeners) {
+            listeners.remove(listener);
+        }
+    }
+
+    private final class MapEditor implements Editor {
+
+        private final Map<String, Object> changes = new LinkedHashMap<>();
+        private boolean clear;
+
+        @Override
+        public Editor putString(String key, String value) {
+            changes.put(key, value == null ? this : value);
+            return this;
+        }
+
+        @Override
+        public Editor putStringSet(String key, Set<String> values) {
+            changes.put(key, values == null ? this : Collections.unmodifiableSet(new HashSet<>(values)));
+            return this;
+        }
+
+        @Override
+        public Editor putInt(String key, int value) {
+            changes.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putLong(String key, long value) {
+            changes.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putFloat(String key, float value) {
+            changes.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putBoolean(String key, boolean value) {
+            changes.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor remove(String key) {
+            changes.put(key, this);
+            return this;
+        }
+
+        @Override
+        public Editor clear() {
+            clear = true;
+            return this;
+        }
+
+        @Override
+        public boolean commit() {
+            boolean result;
+            synchronized (InMemorySharedPreferences.this) {
+                Map<String, Object> updated;
+                synchronized (lock) {
+                    updated = clear ? new HashMap<String, Object>() : new HashMap<>(values);
+                    for (Map.Entry<String, Object> change : changes.entrySet()) {
+                        if (change.getValue() == this)
+                            updated.remove(change.getKey());
+                        else
+                            updated.put(change.getKey(), change.getValue());
+                    }
+                    values = updated;
+                }
+                result = persist(updated);
+            }
+            OnSharedPreferenceChangeListener[] toNotify;
+            synchronized (listeners) {
+                toNotify = listeners.keySet().toArray(new OnSharedPreferenceChangeListener[0]);
+            }
+            for (String key : changes.keySet())
+                for (OnSharedPreferenceChangeListener listener : toNotify)
+                    listener.onSharedPreferenceChanged(InMemorySharedPreferences.this, key);
+            return result;
+        }
+
+        @Override
+        public void apply() {
+            commit();
+        }
+    }
+}
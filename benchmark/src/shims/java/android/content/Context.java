@@ -0,0 +1,13 @@
+package android.content;
+
+/**
+ * Shim of the Android class, only the methods used by the library
+ */
+public abstract class Context {
+
+    public static final int MODE_PRIVATE = 0;
+
+    public abstract SharedPreferences getSharedPreferences(String name, int mode);
+
+    public abstract String getPackageName();
+}
@@ -0,0 +1,34 @@
+package android.util;
+
+/**
+ * Shim of the Android class producing the same output as {@code Base64.DEFAULT}:
+ * lines of 76 characters, each one terminated by a line feed.
+ */
+public class Base64 {
+
+    public static final int DEFAULT = 0;
+
+    private static final int LINE_LENGTH = 76;
+    private static final byte[] LINE_SEPARATOR = {'\n'};
+
+    public static byte[] encode(byte[] input, int flags) {
+        byte[] encoded = java.util.Base64.getMimeEncoder(LINE_LENGTH, LINE_SEPARATOR).encode(input);
+        if (encoded.length == 0)
+            return encoded;
+        byte[] terminated = java.util.Arrays.copyOf(encoded, encoded.length + 1);
+        terminated[encoded.length] = '\n';
+        return terminated;
+    }
+
+    public static String encodeToString(byte[] input, int flags) {
+        return new String(encode(input, flags));
+    }
+
+    public static byte[] decode(String str, int flags) {
+        return java.util.Base64.getMimeDecoder().decode(str);
+    }
+
+    public static byte[] decode(byte[] input, int flags) {
+        return java.util.Base64.getMimeDecoder().decode(input);
+    }
+}
@@ -0,0 +1,11 @@
+package androidx.annotation;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * Shim of the AndroidX annotation
+ */
+@Retention(RetentionPolicy.CLASS)
+public @interface Nullable {
+}
@@ -0,0 +1,14 @@
+package androidx.preference;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/**
+ * Shim of the AndroidX class
+ */
+public class PreferenceManager {
+
+    public static SharedPreferences getDefaultSharedPreferences(Context context) {
+        return context.getSharedPreferences(context.getPackageName() + "_preferences", Context.MODE_PRIVATE);
+    }
+}
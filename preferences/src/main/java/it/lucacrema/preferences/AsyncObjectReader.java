@@ -0,0 +1,87 @@
+package it.lucacrema.preferences;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Decodes objects of a {@link PreferencesManager} on an executor. Requests for the same key, the same saved string
+ * and the same codec made while a decode is running share that decode and its future.
+ *
+ * @author Luca Crema
+ * @since 17/10/2026
+ */
+final class AsyncObjectReader {
+
+    private final PreferencesManager preferencesManager;
+    private final Executor executor;
+    private final ConcurrentHashMap<String, Decode<?>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * @param preferencesManager manager decoding the objects
+     * @param executor           executor the objects are decoded on
+     */
+    AsyncObjectReader(PreferencesManager preferencesManager, Executor executor) {
+        this.preferencesManager = preferencesManager;
+        this.executor = executor;
+    }
+
+    /**
+     * @param key    key for the resource
+     * @param source saved string read by the caller, decoding it gives the same object whenever the key changes
+     * @param codec  codec to be tried first, null for Java serialization and the registered codecs
+     * @param <T>    type of the object
+     * @return the future of the decode of the string, shared with the other requests for the same string
+     */
+    @SuppressWarnings("unchecked")
+    <T> Future<T> read(String key, String source, PreferenceCodec<T> codec) {
+        Decode<T> decode = new Decode<>(key, source, codec);
+        while (true) {
+            Decode<?> running = inFlight.putIfAbsent(key, decode);
+            if (running == null)
+                break;
+            if (running.source.equals(source) && running.codec == codec)
+                return (Future<T>) running.future;
+            // The key has changed since the running decode started, the newest string replaces it
+            if (inFlight.replace(key, running, decode))
+                break;
+        }
+        try {
+            executor.execute(decode);
+        } catch (RejectedExecutionException e) {
+            // Closed, decoded by the caller
+            decode.run();
+        }
+        return decode.future;
+    }
+
+    /**
+     * Decode of a saved string, removed from the running ones when done
+     */
+    private final class Decode<T> implements Runnable {
+
+        private final String key;
+        private final String source;
+        private final PreferenceCodec<T> codec;
+        private final SettableFuture<T> future = new SettableFuture<>();
+
+        Decode(String key, String source, PreferenceCodec<T> codec) {
+            this.key = key;
+            this.source = source;
+            this.codec = codec;
+        }
+
+        @Override
+        public void run() {
+            try {
+                future.set(preferencesManager.<T>decodeSource(key, source, codec));
+            } catch (RuntimeException | Error e) {
+                // Every caller waits on the same future, it has to be completed whatever the codec throws
+                future.setException(e);
+            } finally {
+                inFlight.remove(key, this);
+            }
+        }
+    }
+}
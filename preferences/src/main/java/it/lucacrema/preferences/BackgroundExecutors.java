@@ -0,0 +1,68 @@
+package it.lucacrema.preferences;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the private executors used by the library when the caller does not provide one.
+ *
+ * @author Luca Crema
+ * @since 17/10/2026
+ */
+final class BackgroundExecutors {
+
+    private BackgroundExecutors() {
+    }
+
+    /**
+     * @param name prefix of the thread name, useful in traces
+     * @return a single daemon thread executor, so it never keeps the process alive
+     */
+    static ScheduledExecutorService newSingleThreadScheduledExecutor(final String name) {
+        return Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory(name));
+    }
+
+    /**
+     * @param name    prefix of the thread names, useful in traces
+     * @param threads number of threads
+     * @return a pool of daemon threads, so it never keeps the process alive
+     */
+    static ExecutorService newFixedThreadPool(String name, int threads) {
+        return Executors.newFixedThreadPool(threads, new DaemonThreadFactory(name));
+    }
+
+    /**
+     * Runs a single task on a new daemon thread
+     *
+     * @param name name of the thread, useful in traces
+     * @param task task to be run
+     */
+    static void runOnNewThread(String name, Runnable task) {
+        new DaemonThreadFactory(name).newThread(task).start();
+    }
+
+    /**
+     * Creates daemon threads with a numbered name
+     */
+    private static final class DaemonThreadFactory implements ThreadFactory {
+
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        DaemonThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package it.lucacrema.preferences;
+
+/**
+ * Base64 writing into and reading from caller-provided buffers, with the same output as
+ * {@code android.util.Base64.DEFAULT}: lines of 76 characters, each one terminated by a line feed.
+ * Decoding skips the characters outside of the alphabet, like the Android decoder does.
+ *
+ * @author Luca Crema
+ * @since 17/10/2026
+ */
+final class Base64Text {
+
+    private static final char[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+    private static final int LINE_BYTES = 57;
+    private static final int SKIP = -1;
+    private static final int PADDING = -2;
+    private static final int[] VALUES = new int[256];
+
+    static {
+        for (int i = 0; i < VALUES.length; i++)
+            VALUES[i] = SKIP;
+        for (int i = 0; i < ALPHABET.length; i++)
+            VALUES[ALPHABET[i]] = i;
+        VALUES['='] = PADDING;
+    }
+
+    private Base64Text() {
+    }
+
+    /**
+     * @param length number of bytes to be encoded
+     * @return number of characters written by {@link #encode(byte[], int, int, char[])}
+     */
+    static int encodedLength(int length) {
+        if (length == 0)
+            return 0;
+        return (length + 2) / 3 * 4 + (length + LINE_BYTES - 1) / LINE_BYTES;
+    }
+
+    /**
+     * @param src    bytes to be encoded
+     * @param offset first byte to be encoded
+     * @param length number of bytes to be encoded
+     * @param dst    destination, at least {@link #encodedLength(int)} long
+     * @return number of characters written
+     */
+    static int encode(byte[] src, int offset, int length, char[] dst) {
+        int end = offset + length;
+        int out = 0;
+        int lineEnd = Math.min(end, offset + LINE_BYTES);
+        int i = offset;
+        while (i < end) {
+            while (i + 3 <= lineEnd) {
+                int bits = (src[i] & 0xFF) << 16 | (src[i + 1] & 0xFF) << 8 | (src[i + 2] & 0xFF);
+                dst[out++] = ALPHABET[bits >>> 18];
+                dst[out++] = ALPHABET[(bits >>> 12) & 0x3F];
+                dst[out++] = ALPHABET[(bits >>> 6) & 0x3F];
+                dst[out++] = ALPHABET[bits & 0x3F];
+                i += 3;
+            }
+            int tail = lineEnd - i;
+            if (tail > 0) {
+                int bits = (src[i] & 0xFF) << 16 | (tail == 2 ? (src[i + 1] & 0xFF) << 8 : 0);
+                dst[out++] = ALPHABET[bits >>> 18];
+                dst[out++] = ALPHABET[(bits >>> 12) & 0x3F];
+                dst[out++] = tail == 2 ? ALPHABET[(bits >>> 6) & 0x3F] : '=';
+                dst[out++] = '=';
+                i += tail;
+            }
+            dst[out++] = '\n';
+            lineEnd = Math.min(end, i + LINE_BYTES);
+        }
+        return out;
+    }
+
+    /**
+     * @param length number of characters to be decoded
+     * @return size of a destination large enough for {@link #decode(char[], int, byte[])}
+     */
+    static int maxDecodedLength(int length) {
+        return length / 4 * 3 + 3;
+    }
+
+    /**
+     * @param src    text to be decoded
+     * @param length number of characters to be decoded
+     * @param dst    destination, at least {@link #maxDecodedLength(int)} long
+     * @return number of bytes written
+     * @throws IllegalArgumentException if the text is not valid Base64
+     */
+    static int decode(char[] src, int length, byte[] dst) {
+        int out = 0;
+        int bits = 0;
+        // 0-3: characters of the current group, 4: one more padding expected, 5: padding completed
+        int state = 0;
+        for (int i = 0; i < length; i++) {
+            if (state == 0) {
+                // Fast path for whole groups, the rest of the loop handles line feeds and padding
+                while (i + 4 <= length) {
+                    int group = value(src[i]) << 18 | value(src[i + 1]) << 12 | value(src[i + 2]) << 6 | value(src[i + 3]);
+                    if (group < 0)
+                        break;
+                    dst[out++] = (byte) (group >>> 16);
+                    dst[out++] = (byte) (group >>> 8);
+                    dst[out++] = (byte) group;
+                    i += 4;
+                }
+                if (i == length)
+                    break;
+            }
+            int value = value(src[i]);
+            if (value == SKIP)
+                continue;
+            if (value == PADDING) {
+                if (state == 2) {
+                    dst[out++] = (byte) (bits >>> 4);
+                    state = 4;
+                } else if (state == 3) {
+                    dst[out++] = (byte) (bits >>> 10);
+                    dst[out++] = (byte) (bits >>> 2);
+                    state = 5;
+                } else if (state == 4) {
+                    state = 5;
+                } else {
+                    throw new IllegalArgumentException("bad base-64");
+                }
+                continue;
+            }
+            if (state > 3)
+                throw new IllegalArgumentException("bad base-64");
+            bits = bits << 6 | value;
+            if (++state == 4) {
+                dst[out++] = (byte) (bits >>> 16);
+                dst[out++] = (byte) (bits >>> 8);
+                dst[out++] = (byte) bits;
+                bits = 0;
+                state = 0;
+            }
+        }
+        switch (state) {
+            case 1:
+            case 4:
+                throw new IllegalArgumentException("bad base-64");
+            case 2:
+                dst[out++] = (byte) (bits >>> 4);
+                break;
+            case 3:
+                dst[out++] = (byte) (bits >>> 10);
+                dst[out++] = (byte) (bits >>> 2);
+                break;
+            default:
+                break;
+        }
+        return out;
+    }
+
+    /**
+     * @param c character of the text
+     * @return the 6 bits of the character, {@link #SKIP} or {@link #PADDING}
+     */
+    private static int value(char c) {
+        return c < VALUES.length ? VALUES[c] : SKIP;
+    }
+}
@@ -0,0 +1,506 @@
+package it.lucacrema.preferences;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.NotSerializableException;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compact binary codec for boxed primitives, Strings, Lists, Sets and Maps of those, and user classes
+ * registered with a {@link TypeAdapter}. Every value is a type byte followed by its data: integers are
+ * variable-length, Strings and collections are prefixed by their length, and no class descriptor is written.
+ * <p>
+ * Lists are read back as {@link ArrayList}, Sets as {@link LinkedHashSet} and Maps as {@link LinkedHashMap}.
+ *
+ * @author Luca Crema
+ * @since 17/10/2026
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class BinaryCodec implements PreferenceCodec<Object> {
+
+    public static final byte DEFAULT_TAG = 0x01;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    /**
+     * Lists are not pre-allocated beyond this size, so a corrupted length cannot exhaust the memory
+     */
+    private static final int INITIAL_CAPACITY_LIMIT = 1024;
+    /**
+     * Longer strings are read in chunks of this size, so a corrupted length fails at the end of the stream
+     * instead of allocating all of it in advance
+     */
+    private static final int STRING_CHUNK_SIZE = 16 * 1024;
+
+    private static final int TYPE_NULL = 0;
+    private static final int TYPE_FALSE = 1;
+    private static final int TYPE_TRUE = 2;
+    private static final int TYPE_BYTE = 3;
+    private static final int TYPE_SHORT = 4;
+    private static final int TYPE_CHAR = 5;
+    private static final int TYPE_INT = 6;
+    private static final int TYPE_LONG = 7;
+    private static final int TYPE_FLOAT = 8;
+    private static final int TYPE_DOUBLE = 9;
+    private static final int TYPE_STRING = 10;
+    private static final int TYPE_LIST = 11;
+    private static final int TYPE_SET = 12;
+    private static final int TYPE_MAP = 13;
+    private static final int TYPE_USER = 14;
+
+    private final byte tag;
+    private final Map<Class<?>, Registration<?>> registrationsByClass = new ConcurrentHashMap<>();
+    private final Map<Integer, Registration<?>> registrationsById = new ConcurrentHashMap<>();
+
+    /**
+     * Codec with tag {@value DEFAULT_TAG}
+     */
+    public BinaryCodec() {
+        this(DEFAULT_TAG);
+    }
+
+    /**
+     * @param tag byte identifying values written by this codec.
+     * @throws IllegalArgumentException if the tag is reserved for Java serialization, compressed values, packed arrays
+     *                                  or blob stubs
+     */
+    public BinaryCodec(byte tag) {
+        if (tag == JavaSerializationCodec.TAG)
+            throw new IllegalArgumentException("Tag is reserved for Java serialization");
+        ObjectSerializerUtility.checkTag(tag);
+        this.tag = tag;
+    }
+
+    /**
+     * Registers a user class, objects of exactly that class are written by the adapter.
+     * Ids are saved with the values, so they must never change once used.
+     *
+     * @param type    class of the objects
+     * @param typeId  non negative number identifying the class in the saved values
+     * @param adapter writes and reads the fields of the objects
+     * @param <T>     type of the objects
+     * @return this codec
+     * @throws IllegalArgumentException if the id is negative or the class or the id are already registered
+     */
+    public synchronized <T> BinaryCodec register(@NonNull Class<T> type, int typeId, @NonNull TypeAdapter<T> adapter) {
+        if (typeId < 0)
+            throw new IllegalArgumentException("typeId must not be negative");
+        if (registrationsByClass.containsKey(type) || registrationsById.containsKey(typeId))
+            throw new IllegalArgumentException(type.getName() + " or id " + typeId + " is already registered");
+        Registration<T> registration = new Registration<>(type, typeId, adapter);
+        registrationsByClass.put(type, registration);
+        registrationsById.put(typeId, registration);
+        return this;
+    }
+
+    @Override
+    public byte getTag() {
+        return tag;
+    }
+
+    /**
+     * @throws NotSerializableException if the object or one of its elements has a type that is not supported
+     */
+    @Override
+    public void encode(@NonNull Object value, @NonNull OutputStream out) throws IOException {
+        new Writer(out).writeValue(value);
+    }
+
+    /**
+     * @throws StreamCorruptedException if the data contains an unknown type
+     */
+    @Override
+    public Object decode(@NonNull InputStream in) throws IOException {
+        return new Reader(in).readValue();
+    }
+
+    /**
+     * Writes and reads the fields of a registered user class, in the same order
+     *
+     * @param <T> type of the objects
+     */
+    public interface TypeAdapter<T> {
+
+        /**
+         * @param value object to be written
+         * @param out   writer for its fields
+         * @throws IOException if a field cannot be written
+         */
+        void write(@NonNull T value, @NonNull Writer out) throws IOException;
+
+        /**
+         * @param in reader for the fields, in the order they have been written
+         * @return the object
+         * @throws IOException if a field cannot be read
+         */
+        T read(@NonNull Reader in) throws IOException;
+    }
+
+    /**
+     * Writes the fields of a value
+     */
+    public final class Writer {
+
+        private final OutputStream out;
+
+        Writer(OutputStream out) {
+            this.out = out;
+        }
+
+        /**
+         * @param value boolean to be written
+         * @throws IOException if the stream fails
+         */
+        public void writeBoolean(boolean value) throws IOException {
+            out.write(value ? 1 : 0);
+        }
+
+        /**
+         * Written in 1 to 5 bytes, small absolute values take less space
+         *
+         * @param value int to be written
+         * @throws IOException if the stream fails
+         */
+        public void writeInt(int value) throws IOException {
+            // Masked so negative values are not sign-extended to 10 bytes
+            writeVarLong(((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL);
+        }
+
+        /**
+         * Written in 1 to 10 bytes, small absolute values take less space
+         *
+         * @param value long to be written
+         * @throws IOException if the stream fails
+         */
+        public void writeLong(long value) throws IOException {
+            writeVarLong((value << 1) ^ (value >> 63));
+        }
+
+        /**
+         * @param value float to be written
+         * @throws IOException if the stream fails
+         */
+        public void writeFloat(float value) throws IOException {
+            writeFixed(Float.floatToIntBits(value), 4);
+        }
+
+        /**
+         * @param value double to be written
+         * @throws IOException if the stream fails
+         */
+        public void writeDouble(double value) throws IOException {
+            writeFixed(Double.doubleToLongBits(value), 8);
+        }
+
+        /**
+         * @param value String to be written, can be null
+         * @throws IOException if the stream fails
+         */
+        public void writeString(@Nullable String value) throws IOException {
+            if (value == null) {
+                writeVarLong(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(UTF_8);
+            writeVarLong(bytes.length + 1L);
+            out.write(bytes);
+        }
+
+        /**
+         * Writes any supported value with its type, including nested collections and registered classes.
+         *
+         * @param value value to be written, can be null
+         * @throws NotSerializableException if the value has a type that is not supported
+         * @throws IOException              if the stream fails
+         */
+        @SuppressWarnings("unchecked")
+        public void writeValue(@Nullable Object value) throws IOException {
+            if (value == null) {
+                out.write(TYPE_NULL);
+            } else if (value instanceof Boolean) {
+                out.write((Boolean) value ? TYPE_TRUE : TYPE_FALSE);
+            } else if (value instanceof Integer) {
+                out.write(TYPE_INT);
+                writeInt((Integer) value);
+            } else if (value instanceof Long) {
+                out.write(TYPE_LONG);
+                writeLong((Long) value);
+            } else if (value instanceof String) {
+                out.write(TYPE_STRING);
+                writeString((String) value);
+            } else if (value instanceof Float) {
+                out.write(TYPE_FLOAT);
+                writeFloat((Float) value);
+            } else if (value instanceof Double) {
+                out.write(TYPE_DOUBLE);
+                writeDouble((Double) value);
+            } else if (value instanceof Byte) {
+                out.write(TYPE_BYTE);
+                out.write((Byte) value);
+            } else if (value instanceof Short) {
+                out.write(TYPE_SHORT);
+                writeInt((Short) value);
+            } else if (value instanceof Character) {
+                out.write(TYPE_CHAR);
+                writeVarLong((Character) value);
+            } else if (value instanceof List) {
+                out.write(TYPE_LIST);
+                writeElements((List<?>) value);
+            } else if (value instanceof Set) {
+                out.write(TYPE_SET);
+                writeElements((Set<?>) value);
+            } else if (value instanceof Map) {
+                out.write(TYPE_MAP);
+                Map<?, ?> map = (Map<?, ?>) value;
+                writeVarLong(map.size());
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    writeValue(entry.getKey());
+                    writeValue(entry.getValue());
+                }
+            } else {
+                Registration<Object> registration = (Registration<Object>) registrationsByClass.get(value.getClass());
+                if (registration == null)
+                    throw new NotSerializableException(value.getClass().getName());
+                out.write(TYPE_USER);
+                writeVarLong(registration.typeId);
+                registration.adapter.write(value, this);
+            }
+        }
+
+        private void writeElements(Collection<?> elements) throws IOException {
+            writeVarLong(elements.size());
+            for (Object element : elements)
+                writeValue(element);
+        }
+
+        private void writeVarLong(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.write((int) value);
+        }
+
+        private void writeFixed(long value, int bytes) throws IOException {
+            for (int i = 0; i < bytes; i++)
+                out.write((int) (value >>> (8 * i)));
+        }
+    }
+
+    /**
+     * Reads the fields of a value, in the order they have been written by a {@link Writer}
+     */
+    public final class Reader {
+
+        private final InputStream in;
+
+        Reader(InputStream in) {
+            this.in = in;
+        }
+
+        /**
+         * @return the boolean
+         * @throws IOException if the stream ends or fails
+         */
+        public boolean readBoolean() throws IOException {
+            return readByte() != 0;
+        }
+
+        /**
+         * @return the int
+         * @throws IOException if the stream ends or fails
+         */
+        public int readInt() throws IOException {
+            int zigzag = (int) readVarLong();
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+
+        /**
+         * @return the long
+         * @throws IOException if the stream ends or fails
+         */
+        public long readLong() throws IOException {
+            long zigzag = readVarLong();
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+
+        /**
+         * @return the float
+         * @throws IOException if the stream ends or fails
+         */
+        public float readFloat() throws IOException {
+            return Float.intBitsToFloat((int) readFixed(4));
+        }
+
+        /**
+         * @return the double
+         * @throws IOException if the stream ends or fails
+         */
+        public double readDouble() throws IOException {
+            return Double.longBitsToDouble(readFixed(8));
+        }
+
+        /**
+         * @return the String, can be null
+         * @throws IOException if the stream ends or fails
+         */
+        @Nullable
+        public String readString() throws IOException {
+            long length = readVarLong();
+            if (length == 0)
+                return null;
+            int size = checkLength(length - 1);
+            if (size <= STRING_CHUNK_SIZE) {
+                byte[] bytes = new byte[size];
+                readFully(bytes, size);
+                return new String(bytes, UTF_8);
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(STRING_CHUNK_SIZE);
+            byte[] chunk = new byte[STRING_CHUNK_SIZE];
+            for (int remaining = size; remaining > 0; remaining -= chunk.length) {
+                int count = Math.min(remaining, chunk.length);
+                readFully(chunk, count);
+                bytes.write(chunk, 0, count);
+            }
+            return new String(bytes.toByteArray(), UTF_8);
+        }
+
+        /**
+         * @return any value written by {@link Writer#writeValue(Object)}
+         * @throws StreamCorruptedException if the value has an unknown type
+         * @throws IOException              if the stream ends or fails
+         */
+        @Nullable
+        public Object readValue() throws IOException {
+            int type = readByte();
+            switch (type) {
+                case TYPE_NULL:
+                    return null;
+                case TYPE_FALSE:
+                    return Boolean.FALSE;
+                case TYPE_TRUE:
+                    return Boolean.TRUE;
+                case TYPE_BYTE:
+                    return (byte) readByte();
+                case TYPE_SHORT:
+                    return (short) readInt();
+                case TYPE_CHAR:
+                    return (char) readVarLong();
+                case TYPE_INT:
+                    return readInt();
+                case TYPE_LONG:
+                    return readLong();
+                case TYPE_FLOAT:
+                    return readFloat();
+                case TYPE_DOUBLE:
+                    return readDouble();
+                case TYPE_STRING:
+                    return readString();
+                case TYPE_LIST: {
+                    int size = checkLength(readVarLong());
+                    List<Object> list = new ArrayList<>(Math.min(size, INITIAL_CAPACITY_LIMIT));
+                    for (int i = 0; i < size; i++)
+                        list.add(readValue());
+                    return list;
+                }
+                case TYPE_SET: {
+                    int size = checkLength(readVarLong());
+                    Set<Object> set = new LinkedHashSet<>();
+                    for (int i = 0; i < size; i++)
+                        set.add(readValue());
+                    return set;
+                }
+                case TYPE_MAP: {
+                    int size = checkLength(readVarLong());
+                    Map<Object, Object> map = new LinkedHashMap<>();
+                    for (int i = 0; i < size; i++)
+                        map.put(readValue(), readValue());
+                    return map;
+                }
+                case TYPE_USER: {
+                    long typeId = readVarLong();
+                    Registration<?> registration = typeId > Integer.MAX_VALUE ? null : registrationsById.get((int) typeId);
+                    if (registration == null)
+                        throw new StreamCorruptedException("Unknown type id " + typeId);
+                    return registration.adapter.read(this);
+                }
+                default:
+                    throw new StreamCorruptedException("Unknown type " + type);
+            }
+        }
+
+        private int readByte() throws IOException {
+            int value = in.read();
+            if (value < 0)
+                throw new EOFException();
+            return value;
+        }
+
+        private long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                    return value;
+            }
+            throw new StreamCorruptedException("Variable length number is too long");
+        }
+
+        private long readFixed(int bytes) throws IOException {
+            long value = 0;
+            for (int i = 0; i < bytes; i++)
+                value |= (long) readByte() << (8 * i);
+            return value;
+        }
+
+        /**
+         * @throws EOFException if the stream ends before the bytes
+         */
+        private void readFully(byte[] bytes, int length) throws IOException {
+            int read = 0;
+            while (read < length) {
+                int count = in.read(bytes, read, length - read);
+                if (count < 0)
+                    throw new EOFException();
+                read += count;
+            }
+        }
+
+        private int checkLength(long length) throws StreamCorruptedException {
+            if (length < 0 || length > Integer.MAX_VALUE)
+                throw new StreamCorruptedException("Invalid length " + length);
+            return (int) length;
+        }
+    }
+
+    /**
+     * Registered user class
+     */
+    private static final class Registration<T> {
+
+        final Class<T> type;
+        final int typeId;
+        final TypeAdapter<T> adapter;
+
+        Registration(Class<T> type, int typeId, TypeAdapter<T> adapter) {
+            this.type = type;
+            this.typeId = typeId;
+            this.adapter = adapter;
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package it.lucacrema.preferences;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Saves large serialized objects in their own files, outside of the preferences, so they are not rewritten
+ * by every commit. The preferences only hold a short stub with the format version, the hash and the length
+ * of the object, see {@link PreferencesManager.Builder#blobStore(BlobStore, int)}. Stubs are Base64 text starting
+ * with {@link ObjectSerializerUtility#BLOB_TAG} like the other serialized objects, so they are not mistaken for
+ * the strings saved directly.
+ * <p>
+ * Blob files are named after the hash of their content and never modified, a new value is written to a new file
+ * and the stub is switched by the commit. Files no longer referenced by any stub are deleted by
+ * {@link #collectGarbage(Map)}, files younger than the grace period are kept because their stub may not have
+ * been committed yet.
+ *
+ * @author Luca Crema
+ * @since 17/10/2026
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class BlobStore {
+
+    public static final long DEFAULT_GRACE_PERIOD_MILLIS = 60 * 1000L;
+    /**
+     * Blobs at least this large are memory-mapped instead of read into the heap
+     */
+    public static final int MAP_THRESHOLD = 64 * 1024;
+
+    private static final int VERSION = 1;
+    /**
+     * Stubs are about 70 characters, longer values are not decoded to be checked
+     */
+    private static final int MAX_STUB_LENGTH = 128;
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final String BLOB_SUFFIX = ".blob";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final File directory;
+    private final long gracePeriodMillis;
+
+    /**
+     * @param directory directory only used by this store, created if it does not exist
+     */
+    public BlobStore(@NonNull File directory) {
+        this(directory, DEFAULT_GRACE_PERIOD_MILLIS);
+    }
+
+    /**
+     * @param directory         directory only used by this store, created if it does not exist
+     * @param gracePeriodMillis unreferenced blobs younger than this are not deleted by garbage collection
+     */
+    public BlobStore(@NonNull File directory, long gracePeriodMillis) {
+        this.directory = directory;
+        this.gracePeriodMillis = gracePeriodMillis;
+    }
+
+    /**
+     * @param value value saved in preferences
+     * @return if the value is a stub referencing a blob
+     */
+    public static boolean isStub(@Nullable Object value) {
+        return value instanceof String && parseStub((String) value) != null;
+    }
+
+    /**
+     * Saves the bytes in a new blob file, or reuses the file holding the same bytes.
+     *
+     * @param bytes serialized object
+     * @return the stub to be saved in preferences
+     * @throws IOException if the blob cannot be written
+     */
+    public String write(@NonNull byte[] bytes) throws IOException {
+        String hash = hash(bytes);
+        File blob = blobFile(hash);
+        synchronized (this) {
+            // An identical blob is reused, touching it protects it from a concurrent garbage collection
+            if (blob.length() == bytes.length && blob.setLastModified(System.currentTimeMillis()))
+                return stub(hash, bytes.length);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory())
+            throw new IOException("Cannot create " + directory);
+        File temp = File.createTempFile(hash, TEMP_SUFFIX, directory);
+        try {
+            FileOutputStream out = new FileOutputStream(temp);
+            try {
+                FileChannel channel = out.getChannel();
+                ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                while (buffer.hasRemaining())
+                    channel.write(buffer);
+                channel.force(true);
+            } finally {
+                out.close();
+            }
+            synchronized (this) {
+                if (!temp.renameTo(blob))
+                    throw new IOException("Cannot create " + blob);
+            }
+        } finally {
+            if (temp.exists() && !temp.delete())
+                temp.deleteOnExit();
+        }
+        return stub(hash, bytes.length);
+    }
+
+    /**
+     * Reads the blob referenced by a stub, memory-mapped if at least {@value MAP_THRESHOLD} bytes.
+     *
+     * @param stub stub returned by {@link #write(byte[])}
+     * @return the bytes of the blob, null if the stub is malformed or the blob is missing or has the wrong length
+     */
+    @Nullable
+    public ByteBuffer read(@NonNull String stub) {
+        String[] parts = parseStub(stub);
+        if (parts == null)
+            return null;
+        long length;
+        try {
+            length = Long.parseLong(parts[2]);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        File blob = blobFile(parts[1]);
+        try {
+            RandomAccessFile file = new RandomAccessFile(blob, "r");
+            try {
+                if (file.length() != length)
+                    return null;
+                if (length >= MAP_THRESHOLD)
+                    return file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+                byte[] bytes = new byte[(int) length];
+                file.readFully(bytes);
+                return ByteBuffer.wrap(bytes);
+            } finally {
+                file.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Deletes the blobs that are not referenced by any of the values and are older than the grace period,
+     * together with temporary files left by interrupted writes.
+     *
+     * @param values every value saved in preferences, including the ones not saved yet
+     * @return number of deleted files
+     */
+    public int collectGarbage(@NonNull Map<String, ?> values) {
+        Set<String> referenced = new HashSet<>();
+        for (Object value : values.values()) {
+            if (isStub(value)) {
+                String[] parts = parseStub((String) value);
+                if (parts != null)
+                    referenced.add(parts[1]);
+            }
+        }
+        File[] files = directory.listFiles();
+        if (files == null)
+            return 0;
+        long oldest = System.currentTimeMillis() - gracePeriodMillis;
+        int deleted = 0;
+        synchronized (this) {
+            for (File file : files) {
+                String name = file.getName();
+                boolean orphan = name.endsWith(TEMP_SUFFIX)
+                        || (name.endsWith(BLOB_SUFFIX) && !referenced.contains(name.substring(0, name.length() - BLOB_SUFFIX.length())));
+                if (orphan && file.lastModified() <= oldest && file.delete())
+                    deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * @return the directory of the blobs
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    private File blobFile(String hash) {
+        return new File(directory, hash + BLOB_SUFFIX);
+    }
+
+    private static String stub(String hash, int length) {
+        byte[] text = (VERSION + ":" + hash + ":" + length).getBytes(ASCII);
+        byte[] bytes = new byte[text.length + 1];
+        bytes[0] = ObjectSerializerUtility.BLOB_TAG;
+        System.arraycopy(text, 0, bytes, 1, text.length);
+        char[] chars = new char[Base64Text.encodedLength(bytes.length)];
+        return new String(chars, 0, Base64Text.encode(bytes, 0, bytes.length, chars));
+    }
+
+    /**
+     * @param stub value saved in preferences
+     * @return version, hash and length of the stub, null if it is not a stub or of another version
+     */
+    private static String[] parseStub(String stub) {
+        if (stub.isEmpty() || stub.length() > MAX_STUB_LENGTH)
+            return null;
+        byte[] bytes = new byte[Base64Text.maxDecodedLength(stub.length())];
+        int length;
+        try {
+            length = Base64Text.decode(stub.toCharArray(), stub.length(), bytes);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (length == 0 || bytes[0] != ObjectSerializerUtility.BLOB_TAG)
+            return null;
+        String[] parts = new String(bytes, 1, length - 1, ASCII).split(":");
+        if (parts.length != 3 || !String.valueOf(VERSION).equals(parts[0]) || !isHex(parts[1]))
+            return null;
+        return parts;
+    }
+
+    private static boolean isHex(String s) {
+        if (s.isEmpty())
+            return false;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f'))
+                return false;
+        }
+        return true;
+    }
+
+    private static String hash(byte[] bytes) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        char[] hex = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            hex[i * 2] = HEX[(digest[i] >> 4) & 0xF];
+            hex[i * 2 + 1] = HEX[digest[i] & 0xF];
+        }
+        return new String(hex);
+    }
+}
@@ -0,0 +1,240 @@
+package it.lucacrema.preferences;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the changed keys of a {@link PreferencesManager} and notifies the observers once per key
+ * at the end of each coalescing window, so a burst of writes causes a single notification per key.
+ * Values are read and decoded on the background thread, observers are called on their executor.
+ *
+ * @author Luca Crema
+ * @since 17/10/2026
+ */
+final class ChangeDispatcher {
+
+    private final PreferencesManager preferencesManager;
+    private final long windowMillis;
+    private final Executor defaultExecutor;
+    private final ScheduledExecutorService timer;
+    private final CopyOnWriteArrayList<Entry> entries = new CopyOnWriteArrayList<>();
+
+    private final Object lock = new Object();
+    private Set<String> changedKeys = new LinkedHashSet<>();
+    private boolean cleared;
+    private boolean flushScheduled;
+
+    /**
+     * Kept as a field because a {@link PreferenceStore} may only hold listeners through weak references
+     */
+    private final PreferenceStore.OnChangeListener listener = new PreferenceStore.OnChangeListener() {
+        @Override
+        public void onPreferenceChanged(PreferenceStore store, String key) {
+            if (key == null || !ExpiryTable.isDeadlineKey(key))
+                onChange(key);
+        }
+    };
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * @param preferencesManager manager whose values are observed
+     * @param store              store of the manager
+     * @param windowMillis       changes in this window are notified together
+     * @param defaultExecutor    executor of the observers registered without one, null for the background thread
+     * @param timer              background thread ending the windows
+     */
+    ChangeDispatcher(PreferencesManager preferencesManager, PreferenceStore store, long windowMillis,
+                     Executor defaultExecutor, ScheduledExecutorService timer) {
+        this.preferencesManager = preferencesManager;
+        this.windowMillis = windowMillis;
+        this.defaultExecutor = defaultExecutor;
+        this.timer = timer;
+        store.registerListener(listener);
+    }
+
+    /**
+     * @param key      typed key observed, null when observing a prefix
+     * @param prefix   prefix of the observed keys, the name of the key when observing a key
+     * @param observer observer of the changes, held weakly
+     * @param executor executor the observer is called on, null for the default one
+     * @return the subscription holding the observer
+     */
+    Subscription add(PreferenceKey<?> key, String prefix, PreferenceObserver<?> observer, Executor executor) {
+        Executor target = executor != null ? executor : defaultExecutor;
+        Entry entry = new Entry(key, prefix, observer, target);
+        entries.add(entry);
+        return new Subscription(this, entry, observer);
+    }
+
+    void remove(Entry entry) {
+        entries.remove(entry);
+    }
+
+    boolean contains(Entry entry) {
+        return entries.contains(entry);
+    }
+
+    /**
+     * @param key changed key, null if all the values have been removed
+     */
+    void onChange(String key) {
+        synchronized (lock) {
+            if (key == null)
+                cleared = true;
+            else
+                changedKeys.add(key);
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * @param removedKeys keys observed by prefix that were saved before all the values have been removed,
+     *                    notified to the prefix observers as removed
+     */
+    void onCleared(Collection<String> removedKeys) {
+        synchronized (lock) {
+            cleared = true;
+            changedKeys.addAll(removedKeys);
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * @return the prefixes observed by the prefix observers
+     */
+    List<String> observedPrefixes() {
+        List<String> prefixes = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (entry.key == null)
+                prefixes.add(entry.prefix);
+        }
+        return prefixes;
+    }
+
+    /**
+     * Must hold the lock
+     */
+    private void scheduleFlush() {
+        if (flushScheduled)
+            return;
+        try {
+            timer.schedule(flushTask, windowMillis, TimeUnit.MILLISECONDS);
+            flushScheduled = true;
+        } catch (RejectedExecutionException e) {
+            // Manager closed, changes are not notified anymore
+        }
+    }
+
+    /**
+     * Notifies the observers of the keys changed in the window that has just ended
+     */
+    private void flush() {
+        Set<String> keys;
+        boolean wasCleared;
+        synchronized (lock) {
+            keys = changedKeys;
+            wasCleared = cleared;
+            changedKeys = new LinkedHashSet<>();
+            cleared = false;
+            flushScheduled = false;
+        }
+        // Values of the changed keys read by this flush, shared by the prefix observers
+        Map<String, Object> values = new HashMap<>();
+        for (Entry entry : entries) {
+            PreferenceObserver<?> observer = entry.observer.get();
+            if (observer == null) {
+                entries.remove(entry);
+                continue;
+            }
+            List<Change> changes = new ArrayList<>();
+            if (entry.key != null) {
+                if (wasCleared || keys.contains(entry.prefix))
+                    addChange(changes, entry.prefix, entry.key);
+            } else {
+                for (String key : keys) {
+                    if (!key.startsWith(entry.prefix))
+                        continue;
+                    if (!values.containsKey(key))
+                        values.put(key, preferencesManager.getValue(key));
+                    changes.add(new Change(key, values.get(key)));
+                }
+            }
+            if (!changes.isEmpty())
+                dispatch(entry, observer, changes);
+        }
+    }
+
+    private void addChange(List<Change> changes, String name, PreferenceKey<?> key) {
+        try {
+            changes.add(new Change(name, preferencesManager.get(key)));
+        } catch (ClassCastException e) {
+            // Saved with another type, nothing to notify to this observer
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void dispatch(Entry entry, final PreferenceObserver<?> observer, final List<Change> changes) {
+        Runnable notification = new Runnable() {
+            @Override
+            public void run() {
+                for (Change change : changes)
+                    ((PreferenceObserver<Object>) observer).onChanged(change.key, change.value);
+            }
+        };
+        if (entry.executor == null) {
+            notification.run();
+        } else {
+            try {
+                entry.executor.execute(notification);
+            } catch (RejectedExecutionException e) {
+                // The executor of the observer has been shut down
+            }
+        }
+    }
+
+    /**
+     * Observer registered for a key or a prefix
+     */
+    static final class Entry {
+
+        final PreferenceKey<?> key;
+        final String prefix;
+        final WeakReference<PreferenceObserver<?>> observer;
+        final Executor executor;
+
+        Entry(PreferenceKey<?> key, String prefix, PreferenceObserver<?> observer, Executor executor) {
+            this.key = key;
+            this.prefix = prefix;
+            this.observer = new WeakReference<PreferenceObserver<?>>(observer);
+            this.executor = executor;
+        }
+    }
+
+    private static final class Change {
+
+        final String key;
+        final Object value;
+
+        Change(String key, Object value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
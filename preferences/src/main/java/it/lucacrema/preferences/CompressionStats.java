@@ -0,0 +1,103 @@
+package it.lucacrema.preferences;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics of the compression done by an {@link ObjectSerializerUtility}, to tune its threshold.
+ *
+ * @author Luca Crema
+ * @since 17/10/2026
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class CompressionStats {
+
+    private final AtomicLong compressedCount = new AtomicLong();
+    private final AtomicLong notCompressedCount = new AtomicLong();
+    private final AtomicLong uncompressedBytes = new AtomicLong();
+    private final AtomicLong compressedBytes = new AtomicLong();
+    private final AtomicLong compressionNanos = new AtomicLong();
+    private final AtomicLong decompressedCount = new AtomicLong();
+    private final AtomicLong decompressionNanos = new AtomicLong();
+
+    /**
+     * @return number of values saved compressed
+     */
+    public long getCompressedCount() {
+        return compressedCount.get();
+    }
+
+    /**
+     * @return number of values above the threshold saved uncompressed because compression did not make them smaller
+     */
+    public long getNotCompressedCount() {
+        return notCompressedCount.get();
+    }
+
+    /**
+     * @return size of all the values above the threshold before compression
+     */
+    public long getUncompressedBytes() {
+        return uncompressedBytes.get();
+    }
+
+    /**
+     * @return size of all the values above the threshold as they have been saved
+     */
+    public long getCompressedBytes() {
+        return compressedBytes.get();
+    }
+
+    /**
+     * @return saved size divided by the original size of the values above the threshold, 1 if none
+     */
+    public double getCompressionRatio() {
+        long uncompressed = uncompressedBytes.get();
+        return uncompressed == 0 ? 1 : (double) compressedBytes.get() / uncompressed;
+    }
+
+    /**
+     * @return time spent compressing, including the values that have not been saved compressed
+     */
+    public long getCompressionNanos() {
+        return compressionNanos.get();
+    }
+
+    /**
+     * @return number of values read that had been compressed
+     */
+    public long getDecompressedCount() {
+        return decompressedCount.get();
+    }
+
+    /**
+     * @return time spent decompressing
+     */
+    public long getDecompressionNanos() {
+        return decompressionNanos.get();
+    }
+
+    /**
+     * Clears every statistic
+     */
+    public void reset() {
+        compressedCount.set(0);
+        notCompressedCount.set(0);
+        uncompressedBytes.set(0);
+        compressedBytes.set(0);
+        compressionNanos.set(0);
+        decompressedCount.set(0);
+        decompressionNanos.set(0);
+    }
+
+    void recordCompression(int uncompressed, int saved, boolean compressed, long nanos) {
+        (compressed ? compressedCount : notCompressedCount).incrementAndGet();
+        uncompressedBytes.addAndGet(uncompressed);
+        compressedBytes.addAndGet(saved);
+        compressionNanos.addAndGet(nanos);
+    }
+
+    void recordDecompression(long nanos) {
+        decompressedCount.incrementAndGet();
+        decompressionNanos.addAndGet(nanos);
+    }
+}
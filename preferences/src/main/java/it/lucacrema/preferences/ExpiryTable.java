@@ -0,0 +1,160 @@
+package it.lucacrema.preferences;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Deadlines of the values saved with a time to live. Each deadline is saved next to its value, under the key of
+ * the value followed by {@link #SUFFIX}, as milliseconds since the epoch; this table mirrors them in memory so
+ * reads check the expiry with a single lookup and without touching the saved values. Keys ending with the suffix
+ * are reserved for the deadlines: the manager does not write them for the callers and hides them when listing keys.
+ * <p>
+ * The table is filled from the preferences on first use and then updated by every commit of the manager,
+ * deadlines written by other editors of the same preferences are not seen until the next process start.
+ *
+ * @author Luca Crema
+ * @since 17/10/2026
+ */
+final class ExpiryTable {
+
+    /**
+     * Appended to the key of a value to obtain the key of its deadline
+     */
+    static final String SUFFIX = "#expiresAt";
+
+    private final PreferenceStore store;
+    private final ConcurrentHashMap<String, Long> deadlines = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+
+    /**
+     * @param store store holding the values and their deadlines
+     */
+    ExpiryTable(PreferenceStore store) {
+        this.store = store;
+    }
+
+    /**
+     * @param key key of a value
+     * @return key of the deadline of the value
+     */
+    static String deadlineKey(String key) {
+        return key + SUFFIX;
+    }
+
+    /**
+     * @param key key of a value or of a deadline
+     * @return if the key is the one of a deadline
+     */
+    static boolean isDeadlineKey(String key) {
+        return key.endsWith(SUFFIX);
+    }
+
+    /**
+     * @param key key for the resource
+     * @param now current time in milliseconds since the epoch
+     * @return if the value of the key has a deadline that has passed
+     */
+    boolean isExpired(String key, long now) {
+        ensureLoaded();
+        if (deadlines.isEmpty())
+            return false;
+        Long deadline = deadlines.get(key);
+        return deadline != null && deadline <= now;
+    }
+
+    /**
+     * @param now current time in milliseconds since the epoch
+     * @return the deadlines that have passed by key
+     */
+    Map<String, Long> expiredDeadlines(long now) {
+        ensureLoaded();
+        Map<String, Long> expired = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> deadline : deadlines.entrySet()) {
+            if (deadline.getValue() <= now)
+                expired.put(deadline.getKey(), deadline.getValue());
+        }
+        return expired;
+    }
+
+    /**
+     * @param key      key for the resource
+     * @param deadline deadline read before
+     * @return if the key still has the same deadline
+     */
+    boolean hasDeadline(String key, long deadline) {
+        Long current = deadlines.get(key);
+        return current != null && current == deadline;
+    }
+
+    /**
+     * Adds the removal of the deadline of the keys written without one, so a value saved again without a time
+     * to live does not expire, and of the keys removed.
+     *
+     * @param changes values to be written by key
+     * @return the changes with the removals of the stale deadlines, the same map if there are none
+     */
+    Map<String, Object> withStaleDeadlinesRemoved(Map<String, Object> changes) {
+        ensureLoaded();
+        if (deadlines.isEmpty())
+            return changes;
+        Map<String, Object> result = changes;
+        for (String key : changes.keySet()) {
+            if (!deadlines.containsKey(key))
+                continue;
+            String deadlineKey = deadlineKey(key);
+            if (changes.containsKey(deadlineKey))
+                continue;
+            if (result == changes)
+                result = new LinkedHashMap<>(changes);
+            result.put(deadlineKey, PreferencesBatch.REMOVED);
+        }
+        return result;
+    }
+
+    /**
+     * Updates the table after the changes have been committed
+     *
+     * @param changes values written by key, {@link PreferencesBatch#REMOVED} for a removed key
+     */
+    synchronized void onCommitted(Map<String, Object> changes) {
+        // Before loading the committed deadlines are read from the preferences
+        if (!loaded)
+            return;
+        for (Map.Entry<String, Object> change : changes.entrySet()) {
+            String key = change.getKey();
+            if (!isDeadlineKey(key))
+                continue;
+            String valueKey = key.substring(0, key.length() - SUFFIX.length());
+            if (change.getValue() instanceof Long)
+                deadlines.put(valueKey, (Long) change.getValue());
+            else
+                deadlines.remove(valueKey);
+        }
+    }
+
+    /**
+     * Empties the table after all the values have been removed
+     */
+    synchronized void onCleared() {
+        deadlines.clear();
+    }
+
+    /**
+     * Reads the deadlines saved in the preferences the first time the table is used
+     */
+    private void ensureLoaded() {
+        if (loaded)
+            return;
+        synchronized (this) {
+            if (loaded)
+                return;
+            for (Map.Entry<String, ?> entry : store.getAll().entrySet()) {
+                String key = entry.getKey();
+                if (isDeadlineKey(key) && entry.getValue() instanceof Long)
+                    deadlines.put(key.substring(0, key.length() - SUFFIX.length()), (Long) entry.getValue());
+            }
+            loaded = true;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package it.lucacrema.preferences;
+
+import androidx.annotation.NonNull;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * {@link MapPreferenceStore} saved to a file in the format of {@link PreferencesArchive}, every commit rewrites the
+ * whole file. It is written to a temporary file that is synced and then renamed over the old one, so a crash during a
+ * commit leaves the previous values. Writes of {@link Editor#apply()} run in the background and are coalesced, only
+ * the latest values are written. The subclasses decide how the file is read.
+ *
+ * @author Luca Crema
+ * @since 17/10/2026
+ */
+abstract class FileBackedPreferenceStore extends MapPreferenceStore implements Closeable {
+
+    private final File file;
+    private final File temporaryFile;
+    private final ScheduledExecutorService executor;
+
+    private final Object fileLock = new Object();
+    /**
+     * Generation of the values in the file, guarded by the file lock
+     */
+    private long savedGeneration;
+
+    private final Runnable writeTask = new Runnable() {
+        @Override
+        public void run() {
+            writeLatest();
+        }
+    };
+
+    /**
+     * @param file       file holding the values
+     * @param threadName name of the thread writing the applied values
+     */
+    FileBackedPreferenceStore(File file, String threadName) {
+        this.file = file;
+        this.temporaryFile = new File(file.getPath() + ".tmp");
+        this.executor = BackgroundExecutors.newSingleThreadScheduledExecutor(threadName);
+    }
+
+    /**
+     * @return the file holding the values
+     */
+    @NonNull
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Writes the values not yet saved and stops the background writes.
+     * Later commits are still saved, synchronously.
+     *
+     * @throws IOException if the pending values cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        executor.shutdown();
+        if (!writeLatest())
+            throw new IOException("Cannot write " + file);
+    }
+
+    @Override
+    boolean save(boolean async) {
+        if (!async)
+            return writeLatest();
+        try {
+            executor.execute(writeTask);
+        } catch (RejectedExecutionException e) {
+            // Closed
+            writeLatest();
+        }
+        return true;
+    }
+
+    /**
+     * @param snapshot values of the map, must not be changed
+     * @return the values to be written to the file, the snapshot itself by default
+     */
+    Map<String, ?> toArchive(Map<String, Object> snapshot) {
+        return snapshot;
+    }
+
+    /**
+     * Called with the file lock held after the file has been replaced, nothing is done by default
+     *
+     * @param snapshot values of the map that have been written
+     */
+    void onWritten(Map<String, Object> snapshot) {
+    }
+
+    /**
+     * Writes the current values, unless a previous write has already saved them
+     *
+     * @return if the values have been written correctly
+     */
+    private boolean writeLatest() {
+        synchronized (fileLock) {
+            Map<String, Object> snapshot;
+            long snapshotGeneration;
+            synchronized (valuesLock) {
+                if (generation == savedGeneration)
+                    return true;
+                snapshot = new HashMap<>(values);
+                snapshotGeneration = generation;
+            }
+            try {
+                FileOutputStream output = new FileOutputStream(temporaryFile);
+                try {
+                    PreferencesArchive.write(toArchive(snapshot), output);
+                    output.getFD().sync();
+                } finally {
+                    output.close();
+                }
+            } catch (IOException e) {
+                return false;
+            }
+            if (!temporaryFile.renameTo(file))
+                return false;
+            savedGeneration = snapshotGeneration;
+            onWritten(snapshot);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package it.lucacrema.preferences;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@link PreferenceStore} saved to a file, with the cost model of Android preferences: the values are read in full
+ * when the store is opened and every commit rewrites the whole file. It only uses the JDK, so the real I/O cost of a
+ * {@link PreferencesManager} can be measured on any JVM.
+ * <p>
+ * The file has the format of {@link PreferencesManager#exportTo(java.io.OutputStream)}. It is written to a temporary
+ * file that is synced and then renamed over the old one, so a crash during a commit leaves the previous values.
+ * Writes of {@link Editor#apply()} run in the background and are coalesced, only the latest values are written.
+ * Call {@link #close()} to write the pending values.
+ *
+ * @author Luca Crema
+ * @since 17/10/2026
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class FilePreferenceStore extends FileBackedPreferenceStore {
+
+    /**
+     * Reads all the values of the file
+     *
+     * @param file file holding the values, created on the first commit if it does not exist
+     * @throws java.io.StreamCorruptedException if the file has not been written by a store
+     * @throws IOException                      if the file cannot be read or is truncated
+     */
+    public FilePreferenceStore(@NonNull File file) throws IOException {
+        super(file, "FilePreferenceStore");
+        if (file.exists()) {
+            Map<String, Object> saved = new LinkedHashMap<>();
+            FileInputStream input = new FileInputStream(file);
+            try {
+                PreferencesArchive.read(input, saved);
+            } finally {
+                input.close();
+            }
+            values.putAll(saved);
+        }
+    }
+}
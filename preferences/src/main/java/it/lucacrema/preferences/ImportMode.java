@@ -0,0 +1,21 @@
+package it.lucacrema.preferences;
+
+/**
+ * How {@link PreferencesManager#importFrom(java.io.InputStream, ImportMode)} combines the imported values
+ * with the saved ones
+ *
+ * @author Luca Crema
+ * @since 17/10/2026
+ */
+public enum ImportMode {
+
+    /**
+     * Imported values are added to the saved ones, overriding the values with the same key
+     */
+    MERGE,
+
+    /**
+     * Saved values are removed, only the imported ones are kept
+     */
+    REPLACE
+}
@@ -0,0 +1,16 @@
+package it.lucacrema.preferences;
+
+/**
+ * {@link PreferenceStore} that keeps the values in memory only, they are lost when the process ends.
+ * Useful for tests and to measure the overhead of the library without any I/O.
+ *
+ * @author Luca Crema
+ * @since 17/10/2026
+ */
+public final class InMemoryPreferenceStore extends MapPreferenceStore {
+
+    @Override
+    boolean save(boolean async) {
+        return true;
+    }
+}
@@ -0,0 +1,66 @@
+package it.lucacrema.preferences;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+
+/**
+ * Codec using standard Java serialization, the format every object was saved with before codecs existed.
+ * Its tag is the first byte of the serialization stream header, so no extra byte is written and old values stay readable.
+ *
+ * @author Luca Crema
+ * @since 17/10/2026
+ */
+public final class JavaSerializationCodec implements PreferenceCodec<Serializable> {
+
+    /**
+     * First byte of {@link java.io.ObjectStreamConstants#STREAM_MAGIC}
+     */
+    public static final byte TAG = (byte) 0xAC;
+
+    /**
+     * Second byte of {@link java.io.ObjectStreamConstants#STREAM_MAGIC}
+     */
+    static final byte MAGIC_SECOND_BYTE = (byte) 0xED;
+
+    /**
+     * Shared instance, the codec has no state
+     */
+    public static final JavaSerializationCodec INSTANCE = new JavaSerializationCodec();
+
+    @Override
+    public byte getTag() {
+        return TAG;
+    }
+
+    /**
+     * Writes the whole serialization stream, including its header that begins with {@link #TAG}.
+     */
+    @Override
+    public void encode(@NonNull Serializable value, @NonNull OutputStream out) throws IOException {
+        ObjectOutputStream so = new ObjectOutputStream(out);
+        so.writeObject(value);
+        so.flush();
+    }
+
+    /**
+     * Reads the whole serialization stream, including its header that begins with {@link #TAG}.
+     *
+     * @throws InvalidClassException if the class of the saved object is not available
+     */
+    @Override
+    public Serializable decode(@NonNull InputStream in) throws IOException {
+        ObjectInputStream si = new ObjectInputStream(in);
+        try {
+            return (Serializable) si.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new InvalidClassException(e.getMessage());
+        }
+    }
+}
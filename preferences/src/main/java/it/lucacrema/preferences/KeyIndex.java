@@ -0,0 +1,80 @@
+package it.lucacrema.preferences;
+
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Sorted set of the keys saved by a {@link PreferencesManager}, kept up to date incrementally so the keys
+ * starting with a prefix can be listed without copying the whole preferences. The keys of the deadlines of the
+ * values saved with a time to live are not indexed.
+ * <p>
+ * Every change of a key, by the manager or by any other editor, refreshes the key by checking whether it is
+ * currently present. Refreshes are serialized, so the index converges to the saved keys whatever the order in
+ * which changes are notified.
+ *
+ * @author Luca Crema
+ * @since 17/10/2026
+ */
+final class KeyIndex {
+
+    private final PreferencesManager preferencesManager;
+    private final ConcurrentSkipListSet<String> keys = new ConcurrentSkipListSet<>();
+    /**
+     * Kept as a field because a {@link PreferenceStore} may only hold listeners through weak references
+     */
+    private final PreferenceStore.OnChangeListener listener = new PreferenceStore.OnChangeListener() {
+        @Override
+        public void onPreferenceChanged(PreferenceStore store, String key) {
+            if (key == null)
+                rebuild();
+            else
+                refresh(key);
+        }
+    };
+
+    /**
+     * Registers the index to the store and fills it with the current keys
+     *
+     * @param preferencesManager manager whose keys are indexed
+     * @param store              store of the manager
+     */
+    KeyIndex(PreferencesManager preferencesManager, PreferenceStore store) {
+        this.preferencesManager = preferencesManager;
+        store.registerListener(listener);
+        rebuild();
+    }
+
+    /**
+     * @param key key that may have been added or removed
+     */
+    synchronized void refresh(String key) {
+        if (!ExpiryTable.isDeadlineKey(key) && preferencesManager.contains(key))
+            keys.add(key);
+        else
+            keys.remove(key);
+    }
+
+    /**
+     * Reads every key again, after the preferences have been cleared
+     */
+    synchronized void rebuild() {
+        keys.clear();
+        keys.addAll(preferencesManager.getAllValues().keySet());
+    }
+
+    /**
+     * @param prefix prefix of the keys, empty for all of them
+     * @return a live sorted view of the keys starting with the prefix
+     */
+    NavigableSet<String> withPrefix(String prefix) {
+        if (prefix.isEmpty())
+            return keys;
+        int last = prefix.length() - 1;
+        while (last >= 0 && prefix.charAt(last) == Character.MAX_VALUE)
+            last--;
+        if (last < 0)
+            return keys.tailSet(prefix, true);
+        String end = prefix.substring(0, last) + (char) (prefix.charAt(last) + 1);
+        return keys.subSet(prefix, true, end, false);
+    }
+}
@@ -0,0 +1,114 @@
+package it.lucacrema.preferences;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe histogram of durations with power of two buckets: bucket {@code i} counts the durations
+ * shorter than {@code 2^i} nanoseconds and at least {@code 2^(i-1)}. Recording never allocates.
+ *
+ * @author Luca Crema
+ * @since 17/10/2026
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class LatencyHistogram {
+
+    public static final int BUCKET_COUNT = 64;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * @param durationNanos duration to be recorded, negative values are recorded as 0
+     */
+    public void record(long durationNanos) {
+        if (durationNanos < 0)
+            durationNanos = 0;
+        buckets.incrementAndGet(bucketOf(durationNanos));
+        count.incrementAndGet();
+        totalNanos.addAndGet(durationNanos);
+        long max = maxNanos.get();
+        while (durationNanos > max && !maxNanos.compareAndSet(max, durationNanos))
+            max = maxNanos.get();
+    }
+
+    /**
+     * @return number of recorded durations
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return sum of the recorded durations
+     */
+    public long getTotalNanos() {
+        return totalNanos.get();
+    }
+
+    /**
+     * @return mean of the recorded durations, 0 if none
+     */
+    public long getMeanNanos() {
+        long c = count.get();
+        return c == 0 ? 0 : totalNanos.get() / c;
+    }
+
+    /**
+     * @return longest recorded duration
+     */
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * @param bucket index of the bucket, between 0 and {@link #BUCKET_COUNT} excluded
+     * @return number of durations in the bucket
+     */
+    public long getBucketCount(int bucket) {
+        return buckets.get(bucket);
+    }
+
+    /**
+     * @param bucket index of the bucket, between 0 and {@link #BUCKET_COUNT} excluded
+     * @return the durations in the bucket are shorter than this
+     */
+    public static long getBucketUpperBoundNanos(int bucket) {
+        return bucket >= BUCKET_COUNT - 1 ? Long.MAX_VALUE : 1L << bucket;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return upper bound of the bucket holding the percentile, so at most twice the real value; 0 if nothing was recorded
+     */
+    public long getPercentileNanos(double percentile) {
+        long total = count.get();
+        if (total == 0)
+            return 0;
+        long threshold = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets.get(i);
+            if (seen >= threshold && seen > 0)
+                return Math.min(getBucketUpperBoundNanos(i), maxNanos.get());
+        }
+        return maxNanos.get();
+    }
+
+    /**
+     * Clears every recorded duration
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++)
+            buckets.set(i, 0);
+        count.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+    }
+
+    private static int bucketOf(long durationNanos) {
+        return Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(durationNanos));
+    }
+}
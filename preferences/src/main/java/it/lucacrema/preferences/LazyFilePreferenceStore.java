@@ -0,0 +1,214 @@
+package it.lucacrema.preferences;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link PreferenceStore} saved to a file like {@link FilePreferenceStore}, but opened without reading all the
+ * values: the file is mapped in memory and only the keys, the numbers and the short strings are read. Longer strings,
+ * such as the objects saved by {@link PreferencesManager#setObject(String, java.io.Serializable)}, are read from the
+ * mapping the first time they are requested, so opening costs as much as the keys and values never read never take
+ * memory. {@link #getAll()} reads every value.
+ * <p>
+ * Values are kept once read, or only softly referenced so the garbage collector can drop them and they are read again
+ * from the file. Commits rewrite the whole file, copying the values not read yet without decoding them.
+ * The file has the same format of {@link FilePreferenceStore}, either store can open it.
+ *
+ * @author Luca Crema
+ * @since 17/10/2026
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class LazyFilePreferenceStore extends FileBackedPreferenceStore {
+
+    /**
+     * Longest encoded string or string set read when the file is opened, in bytes
+     */
+    static final int EAGER_MAX_LENGTH = 64;
+
+    private final boolean softValues;
+
+    /**
+     * Indexes the file, the values read are kept in memory
+     *
+     * @param file file holding the values, created on the first commit if it does not exist
+     * @throws java.io.StreamCorruptedException if the file has not been written by a store
+     * @throws IOException                      if the file cannot be read or is truncated
+     */
+    public LazyFilePreferenceStore(@NonNull File file) throws IOException {
+        this(file, false);
+    }
+
+    /**
+     * Indexes the file
+     *
+     * @param file       file holding the values, created on the first commit if it does not exist
+     * @param softValues if the values read from the file are only softly referenced, read again once collected
+     * @throws java.io.StreamCorruptedException if the file has not been written by a store
+     * @throws IOException                      if the file cannot be read or is truncated
+     */
+    public LazyFilePreferenceStore(@NonNull File file, boolean softValues) throws IOException {
+        super(file, "LazyFilePreferenceStore");
+        this.softValues = softValues;
+        if (file.exists())
+            values.putAll(index(file));
+    }
+
+    @NonNull
+    @Override
+    public Map<String, ?> getAll() {
+        Map<String, Object> all;
+        synchronized (valuesLock) {
+            all = new HashMap<>(values);
+        }
+        for (Map.Entry<String, Object> entry : all.entrySet())
+            entry.setValue(materialize(entry.getKey(), entry.getValue()));
+        return all;
+    }
+
+    /**
+     * @return number of values not read from the file yet, or dropped after being read softly
+     */
+    int countLazyValues() {
+        int count = 0;
+        for (Object value : values.values()) {
+            if (value instanceof LazyValue && ((LazyValue) value).cached() == null)
+                count++;
+        }
+        return count;
+    }
+
+    /**
+     * Reads the values not read yet, kept in place of the lazy value unless values are soft
+     */
+    @Override
+    Object materialize(String key, Object stored) {
+        if (!(stored instanceof LazyValue))
+            return stored;
+        LazyValue lazy = (LazyValue) stored;
+        if (softValues)
+            return lazy.readSoftly();
+        Object value = lazy.read();
+        synchronized (valuesLock) {
+            values.replace(key, lazy, value);
+        }
+        return value;
+    }
+
+    /**
+     * The values not read yet are copied from the current file without decoding them
+     */
+    @Override
+    Map<String, ?> toArchive(Map<String, Object> snapshot) {
+        Map<String, Object> archive = new HashMap<>(snapshot);
+        for (Map.Entry<String, Object> entry : archive.entrySet()) {
+            if (entry.getValue() instanceof LazyValue)
+                entry.setValue(((LazyValue) entry.getValue()).record);
+        }
+        return archive;
+    }
+
+    /**
+     * Points the values not read yet to the file just written, so the mapping of the previous one can be released
+     */
+    @Override
+    void onWritten(Map<String, Object> snapshot) {
+        Map<String, Object> indexed = null;
+        for (Map.Entry<String, Object> entry : snapshot.entrySet()) {
+            if (!(entry.getValue() instanceof LazyValue))
+                continue;
+            if (indexed == null) {
+                try {
+                    indexed = index(getFile());
+                } catch (IOException e) {
+                    // The previous mapping is still valid
+                    return;
+                }
+            }
+            Object remapped = indexed.get(entry.getKey());
+            if (remapped instanceof LazyValue) {
+                ((LazyValue) remapped).cached = ((LazyValue) entry.getValue()).cached;
+                synchronized (valuesLock) {
+                    values.replace(entry.getKey(), entry.getValue(), remapped);
+                }
+            }
+        }
+    }
+
+    /**
+     * Maps the file and reads its keys
+     *
+     * @param file file holding the values
+     * @return the values read and the lazy values by key
+     * @throws IOException if the file cannot be read or is not valid
+     */
+    private static Map<String, Object> index(File file) throws IOException {
+        ByteBuffer mapping;
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = input.getChannel();
+            // The mapping stays valid once the file is closed, and renaming a new file over it does not change it
+            mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            input.close();
+        }
+        Map<String, Object> indexed = new HashMap<>();
+        PreferencesArchive.index(mapping, EAGER_MAX_LENGTH, indexed);
+        for (Map.Entry<String, Object> entry : indexed.entrySet()) {
+            if (entry.getValue() instanceof PreferencesArchive.Record)
+                entry.setValue(new LazyValue((PreferencesArchive.Record) entry.getValue()));
+        }
+        return indexed;
+    }
+
+    /**
+     * Value of the map still in the file, compared by identity so only the same lazy value is replaced
+     */
+    private static final class LazyValue {
+
+        private final PreferencesArchive.Record record;
+        /**
+         * Value already read when values are soft
+         */
+        private volatile SoftReference<Object> cached;
+
+        private LazyValue(PreferencesArchive.Record record) {
+            this.record = record;
+        }
+
+        /**
+         * @return the String or the unmodifiable Set of Strings
+         */
+        @SuppressWarnings("unchecked")
+        private Object read() {
+            Object value = record.read();
+            return value instanceof Set ? Collections.unmodifiableSet((Set<String>) value) : value;
+        }
+
+        private Object readSoftly() {
+            Object value = cached();
+            if (value == null) {
+                value = read();
+                cached = new SoftReference<>(value);
+            }
+            return value;
+        }
+
+        /**
+         * @return the value already read, null if not read or collected
+         */
+        private Object cached() {
+            SoftReference<Object> reference = cached;
+            return reference == null ? null : reference.get();
+        }
+    }
+}
@@ -0,0 +1,705 @@
+package it.lucacrema.preferences;
+
+import android.content.SharedPreferences;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.zip.CRC32;
+
+/**
+ * {@link SharedPreferences} saved in an append-only log: a commit appends only the values it changes,
+ * so its cost depends on the size of the change instead of the size of the whole store.
+ * Values are kept in memory and the log is replayed when the file is opened.
+ * <p>
+ * Every commit is a single record protected by a checksum, so a commit interrupted by a crash is discarded as a
+ * whole when the file is opened again. When most of the log is made of overwritten values it is compacted in the
+ * background into a new file holding only the current ones.
+ * <p>
+ * Listeners are notified on the thread that commits. Call {@link #close()} to release the file.
+ *
+ * @author Luca Crema
+ * @since 17/10/2026
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class LogSharedPreferences implements SharedPreferences, Closeable {
+
+    public static final long DEFAULT_MIN_COMPACTION_BYTES = 64 * 1024L;
+    public static final float DEFAULT_MAX_DEAD_RATIO = 0.5f;
+
+    private static final int MAGIC = 0x50524C47;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 5;
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final byte OP_CLEAR = 0;
+    private static final byte OP_REMOVE = 1;
+    private static final byte OP_INT = 2;
+    private static final byte OP_LONG = 3;
+    private static final byte OP_FLOAT = 4;
+    private static final byte OP_BOOLEAN = 5;
+    private static final byte OP_STRING = 6;
+    private static final byte OP_STRING_SET = 7;
+
+    private final File file;
+    private final long minCompactionBytes;
+    private final float maxDeadRatio;
+    private final ScheduledExecutorService executor;
+
+    private final Object valuesLock = new Object();
+    private final Map<String, Object> values = new HashMap<>();
+    private final Map<String, Integer> liveSizes = new HashMap<>();
+    private long liveBytes;
+    private final ArrayDeque<byte[]> pendingRecords = new ArrayDeque<>();
+
+    private final Object fileLock = new Object();
+    private RandomAccessFile randomAccessFile;
+    private FileChannel channel;
+    private boolean compactionScheduled;
+    /**
+     * End of the last complete record when a failed append could not be truncated, -1 otherwise
+     */
+    private long tornPosition = -1;
+    /**
+     * Bytes that can still be appended before an append fails, -1 for no limit; set by the tests to simulate a
+     * full disk
+     */
+    long appendLimit = -1;
+
+    private final WeakHashMap<OnSharedPreferenceChangeListener, Object> listeners = new WeakHashMap<>();
+
+    private final Runnable writeTask = new Runnable() {
+        @Override
+        public void run() {
+            writePendingRecords();
+        }
+    };
+
+    private final Runnable compactionTask = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                compact();
+            } catch (IOException e) {
+                // The log stays valid, compaction is retried after the next commit
+            }
+        }
+    };
+
+    /**
+     * Opens the log with {@value DEFAULT_MIN_COMPACTION_BYTES} bytes of minimum size and
+     * {@value DEFAULT_MAX_DEAD_RATIO} of maximum overwritten data before compaction.
+     *
+     * @param file file of the log, created if it does not exist
+     * @throws IOException if the file cannot be read or created
+     */
+    public LogSharedPreferences(@NonNull File file) throws IOException {
+        this(file, DEFAULT_MIN_COMPACTION_BYTES, DEFAULT_MAX_DEAD_RATIO);
+    }
+
+    /**
+     * @param file               file of the log, created if it does not exist
+     * @param minCompactionBytes the log is never compacted when smaller than this
+     * @param maxDeadRatio       fraction of the log made of overwritten values that triggers compaction, between 0 and 1
+     * @throws IOException              if the file cannot be read or created
+     * @throws IllegalArgumentException if maxDeadRatio is not between 0 and 1
+     */
+    public LogSharedPreferences(@NonNull File file, long minCompactionBytes, float maxDeadRatio) throws IOException {
+        if (maxDeadRatio < 0 || maxDeadRatio > 1)
+            throw new IllegalArgumentException("maxDeadRatio must be between 0 and 1");
+        this.file = file;
+        this.minCompactionBytes = minCompactionBytes;
+        this.maxDeadRatio = maxDeadRatio;
+        this.executor = BackgroundExecutors.newSingleThreadScheduledExecutor("LogSharedPreferences");
+        openAndReplay();
+    }
+
+    /**
+     * @return size of the log file in bytes
+     */
+    public long getLogSize() {
+        synchronized (fileLock) {
+            return file.length();
+        }
+    }
+
+    @Override
+    public Map<String, ?> getAll() {
+        synchronized (valuesLock) {
+            return new HashMap<>(values);
+        }
+    }
+
+    @Nullable
+    @Override
+    public String getString(String key, @Nullable String defValue) {
+        Object value = get(key);
+        return value == null ? defValue : (String) value;
+    }
+
+    @Nullable
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<String> getStringSet(String key, @Nullable Set<String> defValues) {
+        Object value = get(key);
+        return value == null ? defValues : (Set<String>) value;
+    }
+
+    @Override
+    public int getInt(String key, int defValue) {
+        Object value = get(key);
+        return value == null ? defValue : (Integer) value;
+    }
+
+    @Override
+    public long getLong(String key, long defValue) {
+        Object value = get(key);
+        return value == null ? defValue : (Long) value;
+    }
+
+    @Override
+    public float getFloat(String key, float defValue) {
+        Object value = get(key);
+        return value == null ? defValue : (Float) value;
+    }
+
+    @Override
+    public boolean getBoolean(String key, boolean defValue) {
+        Object value = get(key);
+        return value == null ? defValue : (Boolean) value;
+    }
+
+    @Override
+    public boolean contains(String key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public Editor edit() {
+        return new LogEditor();
+    }
+
+    @Override
+    public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        synchronized (listeners) {
+            listeners.put(listener, this);
+        }
+    }
+
+    @Override
+    public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        synchronized (listeners) {
+            listeners.remove(listener);
+        }
+    }
+
+    /**
+     * Rewrites the log with only the current values, waiting for pending writes first.
+     *
+     * @throws IOException if the new log cannot be written, the old one is kept in that case
+     */
+    public void compact() throws IOException {
+        synchronized (fileLock) {
+            compactionScheduled = false;
+            if (!writePendingRecords())
+                throw new IOException("Cannot write pending records to " + file);
+            byte[] snapshot;
+            synchronized (valuesLock) {
+                snapshot = encodeSnapshot(values);
+            }
+            File compacted = new File(file.getPath() + ".compact");
+            RandomAccessFile compactedFile = new RandomAccessFile(compacted, "rw");
+            FileChannel compactedChannel = compactedFile.getChannel();
+            boolean replaced = false;
+            try {
+                compactedChannel.truncate(0);
+                writeFully(compactedChannel, header());
+                writeFully(compactedChannel, ByteBuffer.wrap(snapshot));
+                compactedChannel.force(true);
+                // The open handle follows the file through the rename, the log is never left without one
+                if (!compacted.renameTo(file))
+                    throw new IOException("Cannot replace " + file);
+                replaced = true;
+            } finally {
+                if (!replaced) {
+                    compactedFile.close();
+                    //noinspection ResultOfMethodCallIgnored
+                    compacted.delete();
+                }
+            }
+            RandomAccessFile oldFile = randomAccessFile;
+            randomAccessFile = compactedFile;
+            channel = compactedChannel;
+            oldFile.close();
+        }
+    }
+
+    /**
+     * Writes the pending values and releases the file, the preferences must not be used afterwards.
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        executor.shutdown();
+        synchronized (fileLock) {
+            writePendingRecords();
+            channel.close();
+            randomAccessFile.close();
+        }
+    }
+
+    private Object get(String key) {
+        synchronized (valuesLock) {
+            return values.get(key);
+        }
+    }
+
+    /**
+     * Reads the whole log, discarding the records after the first incomplete or corrupted one.
+     *
+     * @throws IOException if the file cannot be read
+     */
+    private void openAndReplay() throws IOException {
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        channel = randomAccessFile.getChannel();
+        long size = channel.size();
+        if (size < HEADER_BYTES || !readHeader()) {
+            channel.truncate(0);
+            writeFully(channel, header());
+            channel.force(true);
+            return;
+        }
+        long position = HEADER_BYTES;
+        ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+        CRC32 crc = new CRC32();
+        while (position + RECORD_HEADER_BYTES <= size) {
+            recordHeader.clear();
+            readFully(position, recordHeader);
+            int length = recordHeader.getInt(0);
+            long checksum = recordHeader.getInt(4) & 0xFFFFFFFFL;
+            if (length < 0 || position + RECORD_HEADER_BYTES + length > size)
+                break;
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(position + RECORD_HEADER_BYTES, payload);
+            crc.reset();
+            crc.update(payload.array(), 0, length);
+            if (crc.getValue() != checksum)
+                break;
+            try {
+                applyRecord(payload.array(), null);
+            } catch (IOException e) {
+                break;
+            }
+            position += RECORD_HEADER_BYTES + length;
+        }
+        if (position < size)
+            channel.truncate(position);
+        channel.position(position);
+    }
+
+    private boolean readHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        readFully(0, header);
+        return header.getInt(0) == MAGIC && header.get(4) == VERSION;
+    }
+
+    private void readFully(long position, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new EOFException();
+        }
+    }
+
+    /**
+     * Applies the operations of a record to the values in memory, must hold the values lock or be replaying.
+     *
+     * @param payload     operations of the record
+     * @param changedKeys collects the changed keys, null if not needed
+     * @throws IOException if the record is malformed
+     */
+    private void applyRecord(byte[] payload, List<String> changedKeys) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        while (in.available() > 0) {
+            int start = payload.length - in.available();
+            byte op = in.readByte();
+            if (op == OP_CLEAR) {
+                values.clear();
+                liveSizes.clear();
+                liveBytes = 0;
+                continue;
+            }
+            String key = readString(in);
+            Object value;
+            switch (op) {
+                case OP_REMOVE:
+                    value = null;
+                    break;
+                case OP_INT:
+                    value = in.readInt();
+                    break;
+                case OP_LONG:
+                    value = in.readLong();
+                    break;
+                case OP_FLOAT:
+                    value = in.readFloat();
+                    break;
+                case OP_BOOLEAN:
+                    value = in.readBoolean();
+                    break;
+                case OP_STRING:
+                    value = readString(in);
+                    break;
+                case OP_STRING_SET: {
+                    int size = in.readInt();
+                    Set<String> set = new HashSet<>();
+                    for (int i = 0; i < size; i++)
+                        set.add(readString(in));
+                    value = Collections.unmodifiableSet(set);
+                    break;
+                }
+                default:
+                    throw new IOException("Unknown operation " + op);
+            }
+            int recordSize = payload.length - in.available() - start;
+            Integer previousSize = liveSizes.remove(key);
+            if (previousSize != null)
+                liveBytes -= previousSize;
+            if (value == null) {
+                values.remove(key);
+            } else {
+                values.put(key, value);
+                liveSizes.put(key, recordSize);
+                liveBytes += recordSize;
+            }
+            if (changedKeys != null)
+                changedKeys.add(key);
+        }
+    }
+
+    /**
+     * Appends the records queued by commits and applies, in the order they changed the values.
+     * A record is dequeued only once appended: if an append fails the partial record is truncated away, so the
+     * records after it are not lost when the log is replayed, and the record is written again by the next commit.
+     *
+     * @return if the records have been written and synced correctly
+     */
+    private boolean writePendingRecords() {
+        synchronized (fileLock) {
+            if (!channel.isOpen())
+                return false;
+            boolean wrote = false;
+            try {
+                if (tornPosition >= 0) {
+                    truncateTo(tornPosition);
+                    tornPosition = -1;
+                }
+                while (true) {
+                    byte[] record;
+                    synchronized (valuesLock) {
+                        record = pendingRecords.peek();
+                    }
+                    if (record == null)
+                        break;
+                    append(record);
+                    synchronized (valuesLock) {
+                        pendingRecords.poll();
+                    }
+                    wrote = true;
+                }
+                if (wrote)
+                    channel.force(false);
+            } catch (IOException e) {
+                return false;
+            }
+            if (wrote)
+                scheduleCompactionIfNeeded();
+            return true;
+        }
+    }
+
+    /**
+     * Appends a record, or truncates what has been written of it if the append fails. Must hold the file lock.
+     *
+     * @param record record with its length and checksum
+     * @throws IOException if the record cannot be appended
+     */
+    private void append(byte[] record) throws IOException {
+        long position = channel.position();
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        try {
+            if (appendLimit >= 0 && record.length > appendLimit) {
+                buffer.limit((int) appendLimit);
+                writeFully(channel, buffer);
+                throw new IOException("No space left on " + file);
+            }
+            writeFully(channel, buffer);
+            if (appendLimit >= 0)
+                appendLimit -= record.length;
+        } catch (IOException e) {
+            try {
+                truncateTo(position);
+            } catch (IOException truncateFailure) {
+                tornPosition = position;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Must hold the file lock
+     *
+     * @param position end of the last complete record
+     * @throws IOException if the file cannot be truncated
+     */
+    private void truncateTo(long position) throws IOException {
+        channel.truncate(position);
+        channel.position(position);
+    }
+
+    /**
+     * Must hold the file lock
+     */
+    private void scheduleCompactionIfNeeded() {
+        long size = file.length();
+        long live;
+        synchronized (valuesLock) {
+            live = liveBytes;
+        }
+        if (compactionScheduled || size < minCompactionBytes || size - live <= size * maxDeadRatio)
+            return;
+        try {
+            executor.execute(compactionTask);
+            compactionScheduled = true;
+        } catch (RejectedExecutionException e) {
+            // Closed, the log is compacted when opened next time if still needed
+        }
+    }
+
+    private void notifyListeners(List<String> changedKeys) {
+        if (changedKeys.isEmpty())
+            return;
+        List<OnSharedPreferenceChangeListener> toNotify;
+        synchronized (listeners) {
+            toNotify = new ArrayList<>(listeners.keySet());
+        }
+        for (String key : changedKeys)
+            for (OnSharedPreferenceChangeListener listener : toNotify)
+                listener.onSharedPreferenceChanged(this, key);
+    }
+
+    private static ByteBuffer header() {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).put((byte) VERSION).flip();
+        return header;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+
+    /**
+     * @param payload operations of the record
+     * @return the record with its length and checksum
+     */
+    private static byte[] frame(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + payload.length);
+        record.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+        return record.array();
+    }
+
+    private static byte[] encodeSnapshot(Map<String, Object> values) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (Map.Entry<String, Object> entry : values.entrySet())
+            writeOperation(out, entry.getKey(), entry.getValue());
+        out.flush();
+        return frame(bytes.toByteArray());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void writeOperation(DataOutputStream out, String key, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(OP_REMOVE);
+            writeString(out, key);
+        } else if (value instanceof Integer) {
+            out.writeByte(OP_INT);
+            writeString(out, key);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(OP_LONG);
+            writeString(out, key);
+            out.writeLong((Long) value);
+        } else if (value instanceof Float) {
+            out.writeByte(OP_FLOAT);
+            writeString(out, key);
+            out.writeFloat((Float) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(OP_BOOLEAN);
+            writeString(out, key);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof String) {
+            out.writeByte(OP_STRING);
+            writeString(out, key);
+            writeString(out, (String) value);
+        } else {
+            Set<String> set = (Set<String>) value;
+            out.writeByte(OP_STRING_SET);
+            writeString(out, key);
+            out.writeInt(set.size());
+            for (String element : set)
+                writeString(out, element);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > in.available())
+            throw new IOException("Invalid string length " + length);
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * Collects the changes and appends them to the log as a single record
+     */
+    private final class LogEditor implements Editor {
+
+        private final Map<String, Object> changes = new LinkedHashMap<>();
+        private boolean clear;
+
+        @Override
+        public Editor putString(String key, @Nullable String value) {
+            changes.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putStringSet(String key, @Nullable Set<String> values) {
+            changes.put(key, values == null ? null : new HashSet<>(values));
+            return this;
+        }
+
+        @Override
+        public Editor putInt(String key, int value) {
+            changes.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putLong(String key, long value) {
+            changes.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putFloat(String key, float value) {
+            changes.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putBoolean(String key, boolean value) {
+            changes.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor remove(String key) {
+            changes.put(key, null);
+            return this;
+        }
+
+        @Override
+        public Editor clear() {
+            clear = true;
+            return this;
+        }
+
+        @Override
+        public boolean commit() {
+            if (!enqueue())
+                return false;
+            return writePendingRecords();
+        }
+
+        @Override
+        public void apply() {
+            if (!enqueue())
+                return;
+            try {
+                executor.execute(writeTask);
+            } catch (RejectedExecutionException e) {
+                writePendingRecords();
+            }
+        }
+
+        /**
+         * Applies the changes in memory and queues their record, so records are written in the same order.
+         *
+         * @return false if the changes could not be encoded
+         */
+        private boolean enqueue() {
+            byte[] record;
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(bytes);
+                if (clear)
+                    out.writeByte(OP_CLEAR);
+                for (Map.Entry<String, Object> change : changes.entrySet())
+                    writeOperation(out, change.getKey(), change.getValue());
+                out.flush();
+                record = frame(bytes.toByteArray());
+            } catch (IOException e) {
+                return false;
+            }
+            List<String> changedKeys = new ArrayList<>(changes.size());
+            synchronized (valuesLock) {
+                try {
+                    applyRecord(Arrays.copyOfRange(record, RECORD_HEADER_BYTES, record.length), changedKeys);
+                } catch (IOException e) {
+                    return false;
+                }
+                pendingRecords.add(record);
+            }
+            notifyListeners(changedKeys);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package it.lucacrema.preferences;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link PreferenceStore} holding its values in a concurrent map, the subclasses decide how the changes are saved.
+ * Reads do not lock, commits are applied one at a time. A read of a single key can see a commit applied only to
+ * some of the other keys, {@link #getAll()} always sees whole commits.
+ * Like Android preferences, listeners are held weakly and only notified of the keys whose value has changed.
+ *
+ * @author Luca Crema
+ * @since 17/10/2026
+ */
+abstract class MapPreferenceStore implements PreferenceStore {
+
+    /**
+     * Held to change {@link #values} and to access {@link #generation}
+     */
+    final Object valuesLock = new Object();
+    final ConcurrentHashMap<String, Object> values = new ConcurrentHashMap<>();
+    /**
+     * Incremented by every commit that changes the values
+     */
+    long generation;
+
+    private final WeakHashMap<OnChangeListener, Object> listeners = new WeakHashMap<>();
+
+    /**
+     * Saves the values after a commit has changed them in memory
+     *
+     * @param async if the values can be saved in the background
+     * @return if the values have been saved correctly, true when async
+     */
+    abstract boolean save(boolean async);
+
+    @NonNull
+    @Override
+    public Map<String, ?> getAll() {
+        synchronized (valuesLock) {
+            return new HashMap<>(values);
+        }
+    }
+
+    @Override
+    public int getInt(@NonNull String key, int defaultValue) {
+        Object value = get(key);
+        return value == null ? defaultValue : (Integer) value;
+    }
+
+    @Override
+    public long getLong(@NonNull String key, long defaultValue) {
+        Object value = get(key);
+        return value == null ? defaultValue : (Long) value;
+    }
+
+    @Override
+    public float getFloat(@NonNull String key, float defaultValue) {
+        Object value = get(key);
+        return value == null ? defaultValue : (Float) value;
+    }
+
+    @Override
+    public boolean getBoolean(@NonNull String key, boolean defaultValue) {
+        Object value = get(key);
+        return value == null ? defaultValue : (Boolean) value;
+    }
+
+    @Nullable
+    @Override
+    public String getString(@NonNull String key, @Nullable String defaultValue) {
+        Object value = get(key);
+        return value == null ? defaultValue : (String) value;
+    }
+
+    @Nullable
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<String> getStringSet(@NonNull String key, @Nullable Set<String> defaultValue) {
+        Object value = get(key);
+        return value == null ? defaultValue : (Set<String>) value;
+    }
+
+    @Override
+    public boolean contains(@NonNull String key) {
+        return values.containsKey(key);
+    }
+
+    @NonNull
+    @Override
+    public Editor edit() {
+        return new MapEditor();
+    }
+
+    @Override
+    public void registerListener(@NonNull OnChangeListener listener) {
+        synchronized (listeners) {
+            listeners.put(listener, this);
+        }
+    }
+
+    @Override
+    public void unregisterListener(@NonNull OnChangeListener listener) {
+        synchronized (listeners) {
+            listeners.remove(listener);
+        }
+    }
+
+    @Nullable
+    @Override
+    public Object get(@NonNull String key) {
+        Object value = values.get(key);
+        return value == null ? null : materialize(key, value);
+    }
+
+    /**
+     * @param key    key of the value
+     * @param stored value held in the map
+     * @return the value the stored one stands for, the same value unless a subclass keeps placeholders in the map
+     */
+    Object materialize(String key, Object stored) {
+        return stored;
+    }
+
+    /**
+     * @param changedKeys keys whose value has changed, a null key stands for the removal of all the values
+     */
+    private void notifyListeners(List<String> changedKeys) {
+        if (changedKeys.isEmpty())
+            return;
+        List<OnChangeListener> toNotify;
+        synchronized (listeners) {
+            if (listeners.isEmpty())
+                return;
+            toNotify = new ArrayList<>(listeners.keySet());
+        }
+        for (String key : changedKeys)
+            for (OnChangeListener listener : toNotify)
+                listener.onPreferenceChanged(this, key);
+    }
+
+    /**
+     * Collects the changes and applies them to the map all at once, a null value removes the key
+     */
+    private final class MapEditor implements Editor {
+
+        private final Map<String, Object> changes = new LinkedHashMap<>();
+        private boolean clear;
+
+        @Override
+        public Editor putInt(@NonNull String key, int value) {
+            changes.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putLong(@NonNull String key, long value) {
+            changes.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putFloat(@NonNull String key, float value) {
+            changes.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putBoolean(@NonNull String key, boolean value) {
+            changes.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putString(@NonNull String key, @Nullable String value) {
+            changes.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putStringSet(@NonNull String key, @Nullable Set<String> values) {
+            changes.put(key, values == null ? null : Collections.unmodifiableSet(new HashSet<>(values)));
+            return this;
+        }
+
+        @Override
+        public Editor remove(@NonNull String key) {
+            changes.put(key, null);
+            return this;
+        }
+
+        @Override
+        public Editor clear() {
+            clear = true;
+            return this;
+        }
+
+        @Override
+        public boolean commit() {
+            List<String> changedKeys = applyChanges();
+            boolean result = save(false);
+            notifyListeners(changedKeys);
+            return result;
+        }
+
+        @Override
+        public void apply() {
+            notifyListeners(applyChanges());
+            save(true);
+        }
+
+        /**
+         * @return the keys whose value has changed, starting with null if all the values have been removed
+         */
+        private List<String> applyChanges() {
+            List<String> changedKeys = new ArrayList<>(changes.size() + 1);
+            synchronized (valuesLock) {
+                if (clear) {
+                    // Notified like Android 11 and later do
+                    changedKeys.add(null);
+                    values.clear();
+                }
+                for (Map.Entry<String, Object> change : changes.entrySet()) {
+                    Object value = change.getValue();
+                    Object previous = value == null ? values.remove(change.getKey()) : values.put(change.getKey(), value);
+                    if (value != null && previous != null)
+                        previous = materialize(change.getKey(), previous);
+                    if (value == null ? previous != null : !value.equals(previous))
+                        changedKeys.add(change.getKey());
+                }
+                if (!changedKeys.isEmpty())
+                    generation++;
+            }
+            return changedKeys;
+        }
+    }
+}
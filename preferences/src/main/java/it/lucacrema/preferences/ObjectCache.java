@@ -0,0 +1,174 @@
+package it.lucacrema.preferences;
+
+import androidx.annotation.NonNull;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of the objects de-serialized by {@link PreferencesManager#getObject(String)}.
+ * The size of an entry is the length of the serialized string it was read from, so a few big objects
+ * cannot fill the memory while many small ones still fit.
+ * <p>
+ * An entry is only returned while the saved string is still the one it was de-serialized from, and to reads with
+ * the same codec, so values changed by another editor are never served stale and a codec never gets the object
+ * decoded by another one. Cached objects are shared between callers and should not be modified.
+ *
+ * @author Luca Crema
+ * @since 17/10/2026
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class ObjectCache {
+
+    /**
+     * Approximated memory of an entry besides its serialized string, in chars
+     */
+    private static final int ENTRY_OVERHEAD = 32;
+
+    private final long maxWeight;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    /**
+     * @param maxWeight maximum total length of the serialized strings of the cached objects.
+     * @throws IllegalArgumentException if maxWeight is not positive
+     */
+    public ObjectCache(long maxWeight) {
+        if (maxWeight <= 0)
+            throw new IllegalArgumentException("maxWeight must be positive");
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * @param key    key for the resource
+     * @param source string currently saved for the key
+     * @param codec  codec of the read, null for Java serialization and the registered codecs
+     * @return the cached object if it was de-serialized from the same string by the same codec, null otherwise
+     */
+    synchronized Object get(String key, String source, PreferenceCodec<?> codec) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.codec == codec && (entry.source == source || entry.source.equals(source))) {
+            hitCount++;
+            return entry.value;
+        }
+        missCount++;
+        return null;
+    }
+
+    /**
+     * Caches an object, evicting the least recently used ones if the cache is full.
+     * Objects bigger than the whole cache are not cached.
+     *
+     * @param key    key for the resource
+     * @param source string the object has been de-serialized from
+     * @param codec  codec that has decoded the object, null for Java serialization and the registered codecs
+     * @param value  de-serialized object
+     */
+    synchronized void put(String key, String source, PreferenceCodec<?> codec, Object value) {
+        long entryWeight = weightOf(source);
+        if (entryWeight > maxWeight) {
+            invalidate(key);
+            return;
+        }
+        Entry previous = entries.put(key, new Entry(source, codec, value));
+        if (previous != null)
+            weight -= weightOf(previous.source);
+        weight += entryWeight;
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (weight > maxWeight && eldest.hasNext()) {
+            weight -= weightOf(eldest.next().source);
+            eldest.remove();
+            evictionCount++;
+        }
+    }
+
+    /**
+     * @param key key for the resource
+     */
+    synchronized void invalidate(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null)
+            weight -= weightOf(removed.source);
+    }
+
+    /**
+     * Removes every cached object
+     */
+    synchronized void invalidateAll() {
+        entries.clear();
+        weight = 0;
+    }
+
+    /**
+     * @return number of reads served from the cache
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return number of reads that had to de-serialize the object
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return number of objects removed to make room for newer ones
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return number of cached objects
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return current weight of the cached objects
+     */
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    /**
+     * @return maximum weight of the cached objects
+     */
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    @NonNull
+    @Override
+    public synchronized String toString() {
+        return "ObjectCache{size=" + entries.size() + ", weight=" + weight + "/" + maxWeight + ", hits=" + hitCount
+                + ", misses=" + missCount + ", evictions=" + evictionCount + "}";
+    }
+
+    private static long weightOf(String source) {
+        return (long) source.length() + ENTRY_OVERHEAD;
+    }
+
+    /**
+     * Object with the string and the codec it has been de-serialized with
+     */
+    private static final class Entry {
+
+        final String source;
+        final PreferenceCodec<?> codec;
+        final Object value;
+
+        Entry(String source, PreferenceCodec<?> codec, Object value) {
+            this.source = source;
+            this.codec = codec;
+            this.value = value;
+        }
+    }
+}
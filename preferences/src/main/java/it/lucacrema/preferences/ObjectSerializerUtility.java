@@ -1,22 +1,149 @@
 package it.lucacrema.preferences;
 
-import android.util.Base64;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 /**
  * Utility class to serialize objects into strings and de-serialize them.
+ * <p>
+ * Objects are written with Java serialization unless a {@link PreferenceCodec} is given. Values written by a codec
+ * start with its tag, so {@link #deserializeObject(String)} can read any of them as long as the codec has been
+ * registered in the constructor.
+ * <p>
+ * Values larger than the threshold set with {@link #setCompressionThreshold(int)} are compressed with
+ * {@link Deflater}. Compressed values start with {@link #COMPRESSION_TAG} and are decompressed transparently,
+ * values saved before compression was enabled are still read.
+ * <p>
+ * Each thread reuses its own buffers, so serializing and de-serializing only allocate the returned value
+ * and what the codec allocates itself. The Base64 text is the same written by {@code android.util.Base64.DEFAULT}.
  *
  * @author Luca Crema
  * @since 19/12/2019
  */
 public class ObjectSerializerUtility {
 
+    /**
+     * First byte of compressed values, it cannot be used by codecs
+     */
+    public static final byte COMPRESSION_TAG = 0x1F;
+    /**
+     * First byte of the packed arrays written by {@link PreferencesManager#setIntArray(String, int[])} and
+     * the similar methods, it cannot be used by codecs
+     */
+    public static final byte PACKED_TAG = 0x1E;
+    /**
+     * First byte of the stubs saved by {@link BlobStore} in place of large objects, it cannot be used by codecs
+     */
+    public static final byte BLOB_TAG = 0x1D;
+    public static final int COMPRESSION_DISABLED = Integer.MAX_VALUE;
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+    /**
+     * Buffers grown beyond this by a large value are released after use instead of being kept by the thread
+     */
+    private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+    /**
+     * Deflate cannot compress data more than this, larger lengths come from corrupted values
+     */
+    private static final int MAX_DEFLATE_RATIO = 1032;
+
+    private final PreferenceCodec<?>[] codecsByTag = new PreferenceCodec<?>[256];
+    private final CompressionStats compressionStats = new CompressionStats();
+    private volatile int compressionThreshold = COMPRESSION_DISABLED;
+
+    /**
+     * Compressors are not thread-safe and hold native memory, so each thread reuses its own
+     */
+    private static final ThreadLocal<Compressor> COMPRESSORS = new ThreadLocal<Compressor>() {
+        @Override
+        protected Compressor initialValue() {
+            return new Compressor();
+        }
+    };
+
+    /**
+     * Growable buffers reused by the serializations of a thread
+     */
+    private static final ThreadLocal<Buffers> BUFFERS = new ThreadLocal<Buffers>() {
+        @Override
+        protected Buffers initialValue() {
+            return new Buffers();
+        }
+    };
+
+    /**
+     * Creates a serializer that only reads values written with Java serialization
+     */
+    public ObjectSerializerUtility() {
+        codecsByTag[JavaSerializationCodec.TAG & 0xFF] = JavaSerializationCodec.INSTANCE;
+    }
+
+    /**
+     * @param codecs codecs whose values can be read by {@link #deserializeObject(String)}, besides Java serialization.
+     * @throws IllegalArgumentException if two codecs share the same tag or a codec uses {@link #COMPRESSION_TAG},
+     *                                  {@link #PACKED_TAG} or {@link #BLOB_TAG}
+     */
+    public ObjectSerializerUtility(@NonNull PreferenceCodec<?>... codecs) {
+        this();
+        for (PreferenceCodec<?> codec : codecs) {
+            checkTag(codec.getTag());
+            int tag = codec.getTag() & 0xFF;
+            if (codecsByTag[tag] != null && codecsByTag[tag] != codec)
+                throw new IllegalArgumentException("Tag " + tag + " is already used by " + codecsByTag[tag]);
+            codecsByTag[tag] = codec;
+        }
+    }
+
+    /**
+     * @param tag tag of a codec
+     * @throws IllegalArgumentException if the tag is {@link #COMPRESSION_TAG}, {@link #PACKED_TAG} or
+     *                                  {@link #BLOB_TAG}, the values written with it could not be read back
+     */
+    static void checkTag(byte tag) {
+        if (tag == COMPRESSION_TAG)
+            throw new IllegalArgumentException("Tag " + (tag & 0xFF) + " is reserved for compressed values");
+        if (tag == PACKED_TAG)
+            throw new IllegalArgumentException("Tag " + (tag & 0xFF) + " is reserved for packed arrays");
+        if (tag == BLOB_TAG)
+            throw new IllegalArgumentException("Tag " + (tag & 0xFF) + " is reserved for blob stubs");
+    }
+
+    /**
+     * @param thresholdBytes serialized objects larger than this are compressed, {@link #COMPRESSION_DISABLED} not to compress
+     * @return this serializer
+     * @throws IllegalArgumentException if the threshold is negative
+     */
+    public ObjectSerializerUtility setCompressionThreshold(int thresholdBytes) {
+        if (thresholdBytes < 0)
+            throw new IllegalArgumentException("Compression threshold cannot be negative");
+        this.compressionThreshold = thresholdBytes;
+        return this;
+    }
+
+    /**
+     * @return serialized objects larger than this are compressed, {@link #COMPRESSION_DISABLED} if they are not
+     */
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    /**
+     * @return ratio and time of the compressions done by this serializer
+     */
+    public CompressionStats getCompressionStats() {
+        return compressionStats;
+    }
+
     /**
      * Serializes an object into a String.
      *
@@ -25,11 +152,114 @@ public class ObjectSerializerUtility {
      * @throws IOException if ObjectOutputStream fails to write in memory.
      */
     public String serializeObject(Serializable o) throws IOException {
-        ByteArrayOutputStream bo = new ByteArrayOutputStream();
-        ObjectOutputStream so = new ObjectOutputStream(bo);
-        so.writeObject(o);
-        so.flush();
-        return new String(Base64.encode(bo.toByteArray(), Base64.DEFAULT));
+        return serializeObject(o, JavaSerializationCodec.INSTANCE);
+    }
+
+    /**
+     * Serializes an object into a String with a codec, the codec does not need to be registered.
+     *
+     * @param o     object to serialize.
+     * @param codec codec used to encode the object.
+     * @param <T>   type of the object.
+     * @return the tag of the codec followed by the encoded object, as a String.
+     * @throws IOException              if the codec fails to encode the object.
+     * @throws IllegalArgumentException if the codec uses {@link #COMPRESSION_TAG} or {@link #PACKED_TAG}
+     */
+    public <T> String serializeObject(@NonNull T o, @NonNull PreferenceCodec<T> codec) throws IOException {
+        Buffers buffers = Buffers.acquire();
+        try {
+            Buffer encoded = encode(o, codec, buffers);
+            return buffers.encodeToString(encoded.array(), encoded.size());
+        } finally {
+            buffers.release();
+        }
+    }
+
+    /**
+     * @param bytes bytes returned by {@link #encode(Object, PreferenceCodec)}
+     * @return the bytes as saved in preferences
+     */
+    String encodeToString(byte[] bytes) {
+        return encodeToString(bytes, bytes.length);
+    }
+
+    /**
+     * @param bytes  buffer starting with the bytes to be saved
+     * @param length number of bytes to be saved
+     * @return the bytes as saved in preferences
+     */
+    String encodeToString(byte[] bytes, int length) {
+        Buffers buffers = Buffers.acquire();
+        try {
+            return buffers.encodeToString(bytes, length);
+        } finally {
+            buffers.release();
+        }
+    }
+
+    /**
+     * Decodes text written by {@link #encodeToString(byte[], int)} into the buffers of the thread, the reader must
+     * not keep the buffer.
+     *
+     * @param s      text saved in preferences
+     * @param reader reads the value from the decoded bytes
+     * @param <T>    type of the value
+     * @return the value read, null if the text or the bytes are malformed
+     * @throws ClassCastException if the reader finds a value of another type
+     */
+    <T> T decodeText(String s, BytesReader<T> reader) throws ClassCastException {
+        Buffers buffers = Buffers.acquire();
+        try {
+            char[] chars = buffers.chars(s.length());
+            s.getChars(0, s.length(), chars, 0);
+            byte[] bytes = buffers.decoded(Base64Text.maxDecodedLength(s.length()));
+            return reader.read(bytes, Base64Text.decode(chars, s.length(), bytes));
+        } catch (IllegalArgumentException e) {
+            return null;
+        } finally {
+            buffers.release();
+        }
+    }
+
+    /**
+     * @param o     object to serialize.
+     * @param codec codec used to encode the object.
+     * @param <T>   type of the object.
+     * @return the bytes saved for the object before Base64, compressed if above the threshold.
+     * @throws IOException if the codec fails to encode the object.
+     */
+    <T> byte[] encode(@NonNull T o, @NonNull PreferenceCodec<T> codec) throws IOException {
+        Buffers buffers = Buffers.acquire();
+        try {
+            Buffer encoded = encode(o, codec, buffers);
+            return Arrays.copyOf(encoded.array(), encoded.size());
+        } finally {
+            buffers.release();
+        }
+    }
+
+    /**
+     * @param o       object to serialize.
+     * @param codec   codec used to encode the object.
+     * @param buffers buffers of the current serialization.
+     * @param <T>     type of the object.
+     * @return the buffer holding the encoded object, compressed if above the threshold.
+     * @throws IOException if the codec fails to encode the object.
+     */
+    private <T> Buffer encode(T o, PreferenceCodec<T> codec, Buffers buffers) throws IOException {
+        checkTag(codec.getTag());
+        Buffer encoded = buffers.encoded;
+        if (codec.getTag() != JavaSerializationCodec.TAG)
+            encoded.write(codec.getTag());
+        codec.encode(o, encoded);
+        if (encoded.size() <= compressionThreshold)
+            return encoded;
+        long start = System.nanoTime();
+        Buffer compressed = buffers.compressed;
+        COMPRESSORS.get().compress(encoded.array(), encoded.size(), compressed);
+        boolean smaller = compressed.size() < encoded.size();
+        compressionStats.recordCompression(encoded.size(), smaller ? compressed.size() : encoded.size(), smaller, System.nanoTime() - start);
+        return smaller ? compressed : encoded;
     }
 
     /**
@@ -40,13 +270,278 @@ public class ObjectSerializerUtility {
      * @throws ClassCastException if the String does not contain a class.
      */
     public Object deserializeObject(String s) throws ClassCastException {
+        return deserializeObject(s, null);
+    }
+
+    /**
+     * De-serializes an object from a string, using the given codec if it has written the value
+     * and the registered ones otherwise.
+     *
+     * @param s     An object serialized.
+     * @param codec codec to be tried first, null to only use the registered ones.
+     * @param <T>   type of the object.
+     * @return The de-serialized object if it was correctly parsed, null otherwise.
+     * @throws ClassCastException if the String does not contain a class.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T deserializeObject(String s, @Nullable PreferenceCodec<T> codec) throws ClassCastException {
+        Buffers buffers = Buffers.acquire();
+        try {
+            char[] chars = buffers.chars(s.length());
+            s.getChars(0, s.length(), chars, 0);
+            byte[] bytes = buffers.decoded(Base64Text.maxDecodedLength(s.length()));
+            return decode(bytes, Base64Text.decode(chars, s.length(), bytes), codec);
+        } catch (IllegalArgumentException e) {
+            return null;
+        } finally {
+            buffers.release();
+        }
+    }
+
+    /**
+     * @param b     bytes saved for an object before Base64, compressed or not.
+     * @param codec codec to be tried first, null to only use the registered ones.
+     * @param <T>   type of the object.
+     * @return The de-serialized object if it was correctly parsed, null otherwise.
+     * @throws ClassCastException if the bytes do not contain a class.
+     */
+    <T> T decode(byte[] b, @Nullable PreferenceCodec<T> codec) throws ClassCastException {
+        return decode(b, b.length, codec);
+    }
+
+    /**
+     * @param b      buffer starting with the bytes saved for an object before Base64, compressed or not.
+     * @param length number of bytes of the object.
+     * @param codec  codec to be tried first, null to only use the registered ones.
+     * @param <T>    type of the object.
+     * @return The de-serialized object if it was correctly parsed, null otherwise.
+     * @throws ClassCastException if the bytes do not contain a class.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T decode(byte[] b, int length, @Nullable PreferenceCodec<T> codec) throws ClassCastException {
         try {
-            byte[] b = Base64.decode(s, Base64.DEFAULT);
-            ByteArrayInputStream bi = new ByteArrayInputStream(b);
-            ObjectInputStream si = new ObjectInputStream(bi);
-            return si.readObject();
-        } catch (IOException | ClassNotFoundException e) {
+            if (length == 0)
+                return null;
+            if (b[0] == COMPRESSION_TAG) {
+                long start = System.nanoTime();
+                b = COMPRESSORS.get().decompress(b, length);
+                length = b.length;
+                compressionStats.recordDecompression(System.nanoTime() - start);
+                if (length == 0 || b[0] == COMPRESSION_TAG)
+                    return null;
+            }
+            PreferenceCodec<?> valueCodec = codec != null && codec.getTag() == b[0] ? codec : codecsByTag[b[0] & 0xFF];
+            if (valueCodec == null)
+                return null;
+            int offset = valueCodec.getTag() == JavaSerializationCodec.TAG ? 0 : 1;
+            return (T) valueCodec.decode(new ByteArrayInputStream(b, offset, length - offset));
+        } catch (IOException | IllegalArgumentException e) {
             return null;
         }
     }
+
+    /**
+     * Decodes the remaining bytes of a buffer, a memory-mapped one is read by the codec without being copied
+     * unless the value is compressed.
+     *
+     * @param buffer bytes saved for an object before Base64, compressed or not.
+     * @param codec  codec to be tried first, null to only use the registered ones.
+     * @param <T>    type of the object.
+     * @return The de-serialized object if it was correctly parsed, null otherwise.
+     * @throws ClassCastException if the bytes do not contain a class.
+     */
+    @SuppressWarnings("unchecked")
+    <T> T decode(ByteBuffer buffer, @Nullable PreferenceCodec<T> codec) throws ClassCastException {
+        if (!buffer.hasRemaining())
+            return null;
+        byte tag = buffer.get(buffer.position());
+        if (tag == COMPRESSION_TAG) {
+            byte[] b = new byte[buffer.remaining()];
+            buffer.get(b);
+            return decode(b, codec);
+        }
+        PreferenceCodec<?> valueCodec = codec != null && codec.getTag() == tag ? codec : codecsByTag[tag & 0xFF];
+        if (valueCodec == null)
+            return null;
+        if (valueCodec.getTag() != JavaSerializationCodec.TAG)
+            buffer.get();
+        try {
+            return (T) valueCodec.decode(new ByteBufferInputStream(buffer));
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Deflater, Inflater and buffer reused by a thread.
+     * Compressed values are {@link #COMPRESSION_TAG}, the uncompressed length as a varint and the zlib stream.
+     */
+    private static final class Compressor {
+
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        private final Inflater inflater = new Inflater();
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+
+        /**
+         * @param bytes  buffer starting with the bytes to be compressed
+         * @param length number of bytes to be compressed
+         * @param out    receives the compressed value, compression stops once it is not smaller than the input
+         */
+        void compress(byte[] bytes, int length, ByteArrayOutputStream out) {
+            out.write(COMPRESSION_TAG);
+            int remaining = length;
+            while ((remaining & ~0x7F) != 0) {
+                out.write((remaining & 0x7F) | 0x80);
+                remaining >>>= 7;
+            }
+            out.write(remaining);
+            deflater.reset();
+            deflater.setInput(bytes, 0, length);
+            deflater.finish();
+            while (!deflater.finished() && out.size() < length) {
+                int written = deflater.deflate(buffer);
+                out.write(buffer, 0, written);
+            }
+        }
+
+        /**
+         * @param compressed       buffer starting with a compressed value
+         * @param compressedLength number of bytes of the compressed value
+         * @return the uncompressed value
+         * @throws IOException if the value is corrupted
+         */
+        byte[] decompress(byte[] compressed, int compressedLength) throws IOException {
+            int length = 0;
+            int offset = 1;
+            for (int shift = 0; ; shift += 7) {
+                if (offset >= compressedLength || shift > 28)
+                    throw new IOException("Malformed compressed value");
+                int b = compressed[offset++];
+                length |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                    break;
+            }
+            if (length < 0 || length > (long) compressedLength * MAX_DEFLATE_RATIO)
+                throw new IOException("Malformed compressed value");
+            byte[] bytes = new byte[length];
+            inflater.reset();
+            inflater.setInput(compressed, offset, compressedLength - offset);
+            try {
+                int read = 0;
+                while (read < length) {
+                    int inflated = inflater.inflate(bytes, read, length - read);
+                    if (inflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary()))
+                        throw new IOException("Truncated compressed value");
+                    read += inflated;
+                }
+            } catch (DataFormatException e) {
+                throw new IOException(e);
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * Reads a value from decoded bytes
+     *
+     * @param <T> type of the value
+     */
+    interface BytesReader<T> {
+
+        /**
+         * @param bytes  buffer starting with the value
+         * @param length number of bytes of the value
+         * @return the value
+         * @throws IllegalArgumentException if the bytes are malformed
+         * @throws ClassCastException       if the bytes hold a value of another type
+         */
+        T read(byte[] bytes, int length);
+    }
+
+    /**
+     * Growable output stream whose array can be read without copying it
+     */
+    private static final class Buffer extends ByteArrayOutputStream {
+
+        Buffer() {
+            super(512);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+
+        /**
+         * Empties the buffer, releasing its array if a large value made it grow too much
+         */
+        void recycle() {
+            if (buf.length > MAX_RETAINED_BUFFER_SIZE)
+                buf = new byte[512];
+            reset();
+        }
+    }
+
+    /**
+     * Buffers of a thread. A codec that serializes values itself re-enters the serializer on the same thread,
+     * in that case the nested call uses new buffers instead of overwriting the ones in use.
+     */
+    private static final class Buffers {
+
+        final Buffer encoded = new Buffer();
+        final Buffer compressed = new Buffer();
+        private char[] chars = new char[0];
+        private byte[] decoded = new byte[0];
+        private boolean inUse;
+
+        /**
+         * @return the buffers of the current thread, or new ones if they are already in use
+         */
+        static Buffers acquire() {
+            Buffers buffers = BUFFERS.get();
+            if (buffers.inUse)
+                return new Buffers();
+            buffers.inUse = true;
+            return buffers;
+        }
+
+        void release() {
+            encoded.recycle();
+            compressed.recycle();
+            if (chars.length > MAX_RETAINED_BUFFER_SIZE)
+                chars = new char[0];
+            if (decoded.length > MAX_RETAINED_BUFFER_SIZE)
+                decoded = new byte[0];
+            inUse = false;
+        }
+
+        /**
+         * @param bytes  buffer starting with the bytes to be encoded
+         * @param length number of bytes to be encoded
+         * @return the bytes in Base64, the only allocation is the String itself
+         */
+        String encodeToString(byte[] bytes, int length) {
+            char[] chars = chars(Base64Text.encodedLength(length));
+            return new String(chars, 0, Base64Text.encode(bytes, 0, length, chars));
+        }
+
+        /**
+         * @param size minimum size of the buffer
+         * @return a buffer for Base64 text, its content is undefined
+         */
+        char[] chars(int size) {
+            if (chars.length < size)
+                chars = new char[Math.max(size, chars.length * 2)];
+            return chars;
+        }
+
+        /**
+         * @param size minimum size of the buffer
+         * @return a buffer for the decoded bytes, its content is undefined
+         */
+        byte[] decoded(int size) {
+            if (decoded.length < size)
+                decoded = new byte[Math.max(size, decoded.length * 2)];
+            return decoded;
+        }
+    }
 }
@@ -0,0 +1,371 @@
+package it.lucacrema.preferences;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Packed encoding of primitive arrays and String lists, saved as Base64 text like objects but without
+ * boxing, class descriptors or Java serialization.
+ * <p>
+ * Values are {@link ObjectSerializerUtility#PACKED_TAG}, a kind byte, the number of elements as a varint and the
+ * elements. Unsorted int and long arrays are little-endian, sorted ones are saved as the first value followed by
+ * the differences between consecutive values as varints, when that is smaller. Floats are always little-endian.
+ *
+ * @author Luca Crema
+ * @since 17/10/2026
+ */
+final class PackedArrays {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int KIND_INT = 1;
+    private static final int KIND_INT_DELTA = 2;
+    private static final int KIND_LONG = 3;
+    private static final int KIND_LONG_DELTA = 4;
+    private static final int KIND_FLOAT = 5;
+    private static final int KIND_STRING_LIST = 6;
+
+    /**
+     * Tag, kind and the longest varint of a count
+     */
+    private static final int HEADER_SIZE = 2 + 5;
+    /**
+     * Buffers grown beyond this by a large array are released after use instead of being kept by the thread
+     */
+    private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Each thread packs its arrays in the same buffer, nothing runs between packing and encoding the text
+     */
+    private static final ThreadLocal<Output> OUTPUTS = new ThreadLocal<Output>() {
+        @Override
+        protected Output initialValue() {
+            return new Output();
+        }
+    };
+
+    static final ObjectSerializerUtility.BytesReader<int[]> INT_ARRAY = new ObjectSerializerUtility.BytesReader<int[]>() {
+        @Override
+        public int[] read(byte[] bytes, int length) {
+            Input in = new Input(bytes, length);
+            int kind = in.readHeader("int array", KIND_INT, KIND_INT_DELTA);
+            int[] values = new int[in.readCount(kind == KIND_INT ? 4 : 1)];
+            if (kind == KIND_INT) {
+                for (int i = 0; i < values.length; i++)
+                    values[i] = in.readIntLE();
+            } else if (values.length > 0) {
+                int value = (int) zigZagDecode(in.readVarLong());
+                values[0] = value;
+                for (int i = 1; i < values.length; i++) {
+                    value += (int) in.readVarLong();
+                    values[i] = value;
+                }
+            }
+            in.checkEnd();
+            return values;
+        }
+    };
+
+    static final ObjectSerializerUtility.BytesReader<long[]> LONG_ARRAY = new ObjectSerializerUtility.BytesReader<long[]>() {
+        @Override
+        public long[] read(byte[] bytes, int length) {
+            Input in = new Input(bytes, length);
+            int kind = in.readHeader("long array", KIND_LONG, KIND_LONG_DELTA);
+            long[] values = new long[in.readCount(kind == KIND_LONG ? 8 : 1)];
+            if (kind == KIND_LONG) {
+                for (int i = 0; i < values.length; i++)
+                    values[i] = (in.readIntLE() & 0xFFFFFFFFL) | (long) in.readIntLE() << 32;
+            } else if (values.length > 0) {
+                long value = zigZagDecode(in.readVarLong());
+                values[0] = value;
+                for (int i = 1; i < values.length; i++) {
+                    value += in.readVarLong();
+                    values[i] = value;
+                }
+            }
+            in.checkEnd();
+            return values;
+        }
+    };
+
+    static final ObjectSerializerUtility.BytesReader<float[]> FLOAT_ARRAY = new ObjectSerializerUtility.BytesReader<float[]>() {
+        @Override
+        public float[] read(byte[] bytes, int length) {
+            Input in = new Input(bytes, length);
+            in.readHeader("float array", KIND_FLOAT, KIND_FLOAT);
+            float[] values = new float[in.readCount(4)];
+            for (int i = 0; i < values.length; i++)
+                values[i] = Float.intBitsToFloat(in.readIntLE());
+            in.checkEnd();
+            return values;
+        }
+    };
+
+    static final ObjectSerializerUtility.BytesReader<List<String>> STRING_LIST = new ObjectSerializerUtility.BytesReader<List<String>>() {
+        @Override
+        public List<String> read(byte[] bytes, int length) {
+            Input in = new Input(bytes, length);
+            in.readHeader("String list", KIND_STRING_LIST, KIND_STRING_LIST);
+            int count = in.readCount(1);
+            List<String> values = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int size = (int) in.readVarLong() - 1;
+                values.add(size < 0 ? null : in.readString(size));
+            }
+            in.checkEnd();
+            return values;
+        }
+    };
+
+    private PackedArrays() {
+    }
+
+    /**
+     * @param values array to be encoded
+     * @return the packed array, to be saved with {@link ObjectSerializerUtility#encodeToString(byte[], int)}
+     * and recycled
+     */
+    static Output encodeInts(int[] values) {
+        long deltaSize = 0;
+        boolean sorted = true;
+        for (int i = 1; i < values.length && sorted; i++) {
+            sorted = values[i] >= values[i - 1];
+            deltaSize += varLongSize((long) values[i] - values[i - 1]);
+        }
+        if (values.length > 0 && sorted && deltaSize + varLongSize(zigZagEncode(values[0])) < 4L * values.length) {
+            Output out = Output.start(KIND_INT_DELTA, values.length, (int) deltaSize + 5);
+            out.writeVarLong(zigZagEncode(values[0]));
+            for (int i = 1; i < values.length; i++)
+                out.writeVarLong((long) values[i] - values[i - 1]);
+            return out;
+        }
+        Output out = Output.start(KIND_INT, values.length, 4 * values.length);
+        for (int value : values)
+            out.writeIntLE(value);
+        return out;
+    }
+
+    /**
+     * @param values array to be encoded
+     * @return the packed array, to be saved with {@link ObjectSerializerUtility#encodeToString(byte[], int)}
+     * and recycled
+     */
+    static Output encodeLongs(long[] values) {
+        long deltaSize = 0;
+        boolean sorted = true;
+        for (int i = 1; i < values.length && sorted; i++) {
+            sorted = values[i] >= values[i - 1];
+            // Sorted values never overflow as unsigned differences
+            deltaSize += varLongSize(values[i] - values[i - 1]);
+        }
+        if (values.length > 0 && sorted && deltaSize + varLongSize(zigZagEncode(values[0])) < 8L * values.length) {
+            Output out = Output.start(KIND_LONG_DELTA, values.length, (int) deltaSize + 10);
+            out.writeVarLong(zigZagEncode(values[0]));
+            for (int i = 1; i < values.length; i++)
+                out.writeVarLong(values[i] - values[i - 1]);
+            return out;
+        }
+        Output out = Output.start(KIND_LONG, values.length, 8 * values.length);
+        for (long value : values) {
+            out.writeIntLE((int) value);
+            out.writeIntLE((int) (value >>> 32));
+        }
+        return out;
+    }
+
+    /**
+     * @param values array to be encoded
+     * @return the packed array, to be saved with {@link ObjectSerializerUtility#encodeToString(byte[], int)}
+     * and recycled
+     */
+    static Output encodeFloats(float[] values) {
+        Output out = Output.start(KIND_FLOAT, values.length, 4 * values.length);
+        for (float value : values)
+            out.writeIntLE(Float.floatToRawIntBits(value));
+        return out;
+    }
+
+    /**
+     * @param values list to be encoded, it may contain null
+     * @return the packed list, to be saved with {@link ObjectSerializerUtility#encodeToString(byte[], int)}
+     * and recycled
+     */
+    static Output encodeStrings(List<String> values) {
+        Output out = Output.start(KIND_STRING_LIST, values.size(), 8 * values.size());
+        for (String value : values) {
+            out.ensureCapacity(10);
+            if (value == null) {
+                out.writeVarLong(0);
+            } else {
+                byte[] bytes = value.getBytes(UTF_8);
+                out.writeVarLong(bytes.length + 1L);
+                out.write(bytes);
+            }
+        }
+        return out;
+    }
+
+    private static long zigZagEncode(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long zigZagDecode(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static int varLongSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Packed value being written, sized for its elements in advance
+     */
+    static final class Output {
+
+        private byte[] buffer = new byte[0];
+        private int size;
+
+        /**
+         * @param kind        kind of the value
+         * @param count       number of elements
+         * @param payloadSize size of the elements, the buffer grows if it is an estimate
+         * @return the buffer of the thread, with the header written
+         */
+        static Output start(int kind, int count, int payloadSize) {
+            Output out = OUTPUTS.get();
+            out.size = 0;
+            out.ensureCapacity(HEADER_SIZE + payloadSize);
+            out.buffer[out.size++] = ObjectSerializerUtility.PACKED_TAG;
+            out.buffer[out.size++] = (byte) kind;
+            out.writeVarLong(count);
+            return out;
+        }
+
+        /**
+         * Releases the buffer if a large array made it grow too much
+         */
+        void recycle() {
+            if (buffer.length > MAX_RETAINED_BUFFER_SIZE)
+                buffer = new byte[0];
+        }
+
+        byte[] array() {
+            return buffer;
+        }
+
+        int size() {
+            return size;
+        }
+
+        void writeIntLE(int value) {
+            buffer[size++] = (byte) value;
+            buffer[size++] = (byte) (value >>> 8);
+            buffer[size++] = (byte) (value >>> 16);
+            buffer[size++] = (byte) (value >>> 24);
+        }
+
+        /**
+         * The buffer must have room for the varint, elements are sized in advance
+         */
+        void writeVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[size++] = (byte) value;
+        }
+
+        void write(byte[] bytes) {
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, size, bytes.length);
+            size += bytes.length;
+        }
+
+        void ensureCapacity(int extra) {
+            if (size + extra > buffer.length)
+                buffer = Arrays.copyOf(buffer, Math.max(size + extra, buffer.length * 2));
+        }
+    }
+
+    /**
+     * Packed value being read, malformed values throw {@link IllegalArgumentException}
+     */
+    private static final class Input {
+
+        private final byte[] buffer;
+        private final int length;
+        private int position;
+
+        Input(byte[] buffer, int length) {
+            this.buffer = buffer;
+            this.length = length;
+        }
+
+        /**
+         * @param type      name of the expected type, for the exception
+         * @param kind      expected kind
+         * @param deltaKind expected kind when delta encoded
+         * @return the kind of the value
+         * @throws ClassCastException if the value is not packed or has another type
+         */
+        int readHeader(String type, int kind, int deltaKind) {
+            if (length < 2 || buffer[0] != ObjectSerializerUtility.PACKED_TAG || (buffer[1] != kind && buffer[1] != deltaKind))
+                throw new ClassCastException("Saved value is not a packed " + type);
+            position = 2;
+            return buffer[1];
+        }
+
+        /**
+         * @param minElementSize smallest size of an element in bytes
+         * @return the number of elements, checked against the remaining bytes so a corrupted count cannot exhaust the memory
+         */
+        int readCount(int minElementSize) {
+            long count = readVarLong();
+            if (count < 0 || count * minElementSize > length - position)
+                throw new IllegalArgumentException("Malformed packed value");
+            return (int) count;
+        }
+
+        long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (position >= length)
+                    throw new IllegalArgumentException("Malformed packed value");
+                byte b = buffer[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                    return value;
+            }
+            throw new IllegalArgumentException("Malformed packed value");
+        }
+
+        int readIntLE() {
+            if (position + 4 > length)
+                throw new IllegalArgumentException("Malformed packed value");
+            int value = (buffer[position] & 0xFF) | (buffer[position + 1] & 0xFF) << 8
+                    | (buffer[position + 2] & 0xFF) << 16 | (buffer[position + 3] & 0xFF) << 24;
+            position += 4;
+            return value;
+        }
+
+        String readString(int size) {
+            if (size > length - position)
+                throw new IllegalArgumentException("Malformed packed value");
+            String value = new String(buffer, position, size, UTF_8);
+            position += size;
+            return value;
+        }
+
+        void checkEnd() {
+            if (position != length)
+                throw new IllegalArgumentException("Malformed packed value");
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package it.lucacrema.preferences;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Converts objects to bytes and back for {@link PreferencesManager#setObject(String, Object, PreferenceCodec)}.
+ * The saved value starts with the {@link #getTag() tag} of the codec that wrote it, so values written by
+ * different codecs can be read back by {@link ObjectSerializerUtility} without knowing which one was used.
+ *
+ * @param <T> type of the objects the codec can write
+ * @author Luca Crema
+ * @since 17/10/2026
+ */
+public interface PreferenceCodec<T> {
+
+    /**
+     * Tags must be unique among the codecs registered in an {@link ObjectSerializerUtility}.
+     * {@link JavaSerializationCodec#TAG} is reserved for values written with Java serialization.
+     *
+     * @return byte written before the encoded value
+     */
+    byte getTag();
+
+    /**
+     * @param value object to be written
+     * @param out   stream the encoded value is written to, after the tag
+     * @throws IOException if the object cannot be encoded
+     */
+    void encode(@NonNull T value, @NonNull OutputStream out) throws IOException;
+
+    /**
+     * @param in stream positioned right after the tag
+     * @return the decoded object
+     * @throws IOException if the data is not a valid value for this codec
+     */
+    T decode(@NonNull InputStream in) throws IOException;
+}
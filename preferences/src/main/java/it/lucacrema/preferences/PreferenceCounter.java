@@ -0,0 +1,238 @@
+package it.lucacrema.preferences;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Integer counter saved in preferences that can be updated by many threads without losing updates.
+ * Updates are summed in memory, in cells spread across threads so they rarely compete for the same one,
+ * and the total is saved with {@link PreferencesManager#setInt(String, int)} according to the {@link WriteBehindPolicy}
+ * given to {@link PreferencesManager.Builder#counterPolicy(WriteBehindPolicy)}.
+ * <p>
+ * Obtained through {@link PreferencesManager#counter(String)}. Writing or removing its key through the manager in
+ * any other way restarts the counter from the written value, dropping the updates not saved yet.
+ *
+ * @author Luca Crema
+ * @since 17/10/2026
+ */
+@SuppressWarnings({"unused", "WeakerAccess", "UnusedReturnValue"})
+public final class PreferenceCounter {
+
+    /**
+     * Longs between two cells, so that each cell sits on its own cache line
+     */
+    private static final int PADDING = 8;
+    /**
+     * Offset of the number of updates of a cell since it was created
+     */
+    private static final int UPDATES_OFFSET = 1;
+    private static final int MAX_CELLS = 64;
+    private static final int CELLS = cellCount(Runtime.getRuntime().availableProcessors());
+
+    private final PreferencesManager preferencesManager;
+    private final String key;
+    private final ScheduledExecutorService executor;
+    private final long flushDelayMillis;
+    private final long maxPendingUpdates;
+    private final long updatesPerCellCheck;
+
+    private final AtomicLongArray cells = new AtomicLongArray(CELLS * PADDING);
+    private final AtomicLong base;
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final AtomicBoolean immediateFlushScheduled = new AtomicBoolean();
+    private final Object shiftLock = new Object();
+    private final Object flushLock = new Object();
+    private long savedValue;
+    /**
+     * Updates of all the cells when the last flush started
+     */
+    private volatile long flushedUpdates;
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * @param preferencesManager manager the counter is saved with.
+     * @param key                key for the resource.
+     * @param policy             when the total is saved.
+     * @param executor           executor running the scheduled flushes.
+     */
+    PreferenceCounter(PreferencesManager preferencesManager, String key, WriteBehindPolicy policy, ScheduledExecutorService executor) {
+        this.preferencesManager = preferencesManager;
+        this.key = key;
+        this.executor = executor;
+        this.flushDelayMillis = policy.getFlushDelayMillis();
+        this.maxPendingUpdates = policy.getMaxPendingWrites();
+        this.updatesPerCellCheck = Math.max(1, maxPendingUpdates / CELLS);
+        int savedValue = preferencesManager.getInt(key);
+        this.savedValue = savedValue == PreferencesManager.DEFAULT_INTEGER_RETURN ? 0 : savedValue;
+        this.base = new AtomicLong(this.savedValue);
+    }
+
+    /**
+     * @return key the counter is saved with
+     */
+    @NonNull
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Sums 1 to the counter
+     */
+    public void increment() {
+        add(1);
+    }
+
+    /**
+     * Sums a value to the counter without waiting for it to be saved.
+     *
+     * @param value value to be summed, can be negative
+     */
+    public void add(int value) {
+        int cell = cellIndex();
+        cells.getAndAdd(cell, value);
+        long updates = cells.incrementAndGet(cell + UPDATES_OFFSET);
+        // The cells are summed only once in a while, the threshold is on the updates of all of them
+        if (updates % updatesPerCellCheck == 0 && totalUpdates() - flushedUpdates >= maxPendingUpdates)
+            requestFlush(immediateFlushScheduled, 0);
+        else if (!flushScheduled.get())
+            requestFlush(flushScheduled, flushDelayMillis);
+    }
+
+    /**
+     * The value is exact when no update is running concurrently.
+     *
+     * @return current value of the counter, including the updates that have not been saved yet
+     */
+    public int get() {
+        long value = base.get();
+        for (int i = 0; i < CELLS; i++)
+            value += cells.get(i * PADDING);
+        return (int) value;
+    }
+
+    /**
+     * Sums 1 to the counter and goes back to 1 if it exceeds the maxValue, atomically.
+     * Concurrent shifts return consecutive steps, concurrent {@link #add(int)} calls are summed after the shift.
+     *
+     * @param maxValue maximum value of the counter, must be positive
+     * @return result of the shift, between 1 and maxValue included
+     * @throws IllegalArgumentException if maxValue is not positive
+     */
+    public int shift(int maxValue) {
+        if (maxValue <= 0)
+            throw new IllegalArgumentException("maxValue must be positive");
+        int nextValue;
+        synchronized (shiftLock) {
+            int currentValue = get();
+            int step = currentValue % maxValue;
+            if (step < 0)
+                step += maxValue;
+            nextValue = step + 1;
+            base.addAndGet((long) nextValue - currentValue);
+        }
+        requestFlush(flushScheduled, flushDelayMillis);
+        return nextValue;
+    }
+
+    /**
+     * Saves the current value of the counter if it changed since the last save.
+     *
+     * @return if the value has been saved correctly, true if there was nothing to save
+     */
+    public boolean flush() {
+        synchronized (flushLock) {
+            flushScheduled.set(false);
+            immediateFlushScheduled.set(false);
+            flushedUpdates = totalUpdates();
+            int value = get();
+            if (value == savedValue)
+                return true;
+            boolean result = preferencesManager.setInt(key, value);
+            if (result)
+                savedValue = value;
+            return result;
+        }
+    }
+
+    /**
+     * Restarts the counter from a value written to its key by the manager, unless the write is the flush of this
+     * counter. Updates running concurrently may be lost.
+     *
+     * @param value value written, 0 if the key has been removed
+     */
+    void onKeyWritten(int value) {
+        if (Thread.holdsLock(flushLock))
+            return;
+        synchronized (flushLock) {
+            synchronized (shiftLock) {
+                base.addAndGet((long) value - get());
+                savedValue = value;
+            }
+        }
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "PreferenceCounter{key=" + key + ", value=" + get() + "}";
+    }
+
+    /**
+     * Schedules a flush unless one with the same guard is already scheduled
+     *
+     * @param scheduled   guard of the flush, reset when a flush starts
+     * @param delayMillis time to wait before flushing
+     */
+    private void requestFlush(AtomicBoolean scheduled, long delayMillis) {
+        if (!scheduled.compareAndSet(false, true))
+            return;
+        try {
+            executor.schedule(flushTask, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // The manager has been closed, the value is saved by the next explicit flush
+            scheduled.set(false);
+        }
+    }
+
+    /**
+     * @return number of updates of all the cells since the counter was created
+     */
+    private long totalUpdates() {
+        long updates = 0;
+        for (int i = 0; i < CELLS; i++)
+            updates += cells.get(i * PADDING + UPDATES_OFFSET);
+        return updates;
+    }
+
+    /**
+     * @return index of the cell used by the current thread
+     */
+    private static int cellIndex() {
+        long id = Thread.currentThread().getId();
+        int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return ((hash >>> 16) & (CELLS - 1)) * PADDING;
+    }
+
+    /**
+     * @param processors number of available processors
+     * @return the smallest power of two not lower than twice the processors, at most {@value MAX_CELLS}
+     */
+    private static int cellCount(int processors) {
+        int cells = 1;
+        while (cells < processors * 2 && cells < MAX_CELLS)
+            cells <<= 1;
+        return cells;
+    }
+}
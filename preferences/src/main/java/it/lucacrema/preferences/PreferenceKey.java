@@ -0,0 +1,362 @@
+package it.lucacrema.preferences;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * Key of a preference bound to the type of its value and to a default value, so the type is checked at compile time
+ * and resolved once instead of on every access.
+ * <pre>{@code
+ * static final PreferenceKey.IntKey LAUNCHES = PreferenceKey.ofInt("launches", 0);
+ * static final PreferenceKey.ObjectKey<Settings> SETTINGS = PreferenceKey.ofObject("settings", Settings.DEFAULT);
+ *
+ * int launches = pm.getInt(LAUNCHES); //no boxing
+ * Settings settings = pm.get(SETTINGS); //decoded only when the saved value changes
+ * }</pre>
+ * Keys are immutable apart from the value slot of {@link ObjectKey}, so they can be shared as constants.
+ *
+ * @param <T> type of the value
+ * @author Luca Crema
+ * @since 17/10/2026
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public abstract class PreferenceKey<T> {
+
+    private final String name;
+    private final T defaultValue;
+
+    /**
+     * @param name         key the value is saved at
+     * @param defaultValue value returned when the key is not present
+     */
+    PreferenceKey(@NonNull String name, @Nullable T defaultValue) {
+        this.name = name;
+        this.defaultValue = defaultValue;
+    }
+
+    /**
+     * @return key the value is saved at
+     */
+    @NonNull
+    public final String getName() {
+        return name;
+    }
+
+    /**
+     * @return value returned when the key is not present
+     */
+    @Nullable
+    public final T getDefaultValue() {
+        return defaultValue;
+    }
+
+    /**
+     * @param preferencesManager manager to read from
+     * @return the value saved for this key, or the default value
+     */
+    abstract T read(PreferencesManager preferencesManager);
+
+    /**
+     * @param preferencesManager manager to write to
+     * @param value              value to be saved, not null
+     * @return if the value has been saved correctly
+     */
+    abstract boolean write(PreferencesManager preferencesManager, T value);
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    /**
+     * @param name         key the value is saved at
+     * @param defaultValue value returned when the key is not present
+     * @return a key of an int value
+     */
+    public static IntKey ofInt(@NonNull String name, int defaultValue) {
+        return new IntKey(name, defaultValue);
+    }
+
+    /**
+     * @param name         key the value is saved at
+     * @param defaultValue value returned when the key is not present
+     * @return a key of a long value
+     */
+    public static LongKey ofLong(@NonNull String name, long defaultValue) {
+        return new LongKey(name, defaultValue);
+    }
+
+    /**
+     * @param name         key the value is saved at
+     * @param defaultValue value returned when the key is not present
+     * @return a key of a float value
+     */
+    public static FloatKey ofFloat(@NonNull String name, float defaultValue) {
+        return new FloatKey(name, defaultValue);
+    }
+
+    /**
+     * @param name         key the value is saved at
+     * @param defaultValue value returned when the key is not present
+     * @return a key of a boolean value
+     */
+    public static BooleanKey ofBoolean(@NonNull String name, boolean defaultValue) {
+        return new BooleanKey(name, defaultValue);
+    }
+
+    /**
+     * @param name         key the value is saved at
+     * @param defaultValue value returned when the key is not present
+     * @return a key of a String value
+     */
+    public static StringKey ofString(@NonNull String name, @Nullable String defaultValue) {
+        return new StringKey(name, defaultValue);
+    }
+
+    /**
+     * @param name         key the value is saved at
+     * @param defaultValue value returned when the key is not present or cannot be parsed
+     * @param <T>          type of the object
+     * @return a key of an object saved with Java serialization
+     */
+    public static <T extends Serializable> ObjectKey<T> ofObject(@NonNull String name, @Nullable T defaultValue) {
+        return new ObjectKey<>(name, defaultValue, null);
+    }
+
+    /**
+     * @param name         key the value is saved at
+     * @param defaultValue value returned when the key is not present or cannot be parsed
+     * @param codec        codec used to encode the object
+     * @param <T>          type of the object
+     * @return a key of an object saved with a codec
+     */
+    public static <T> ObjectKey<T> ofObject(@NonNull String name, @Nullable T defaultValue, @NonNull PreferenceCodec<T> codec) {
+        return new ObjectKey<>(name, defaultValue, codec);
+    }
+
+    /**
+     * Key of an int value, read without boxing by {@link PreferencesManager#getInt(IntKey)}
+     */
+    public static final class IntKey extends PreferenceKey<Integer> {
+
+        private final int defaultInt;
+
+        IntKey(String name, int defaultValue) {
+            super(name, defaultValue);
+            this.defaultInt = defaultValue;
+        }
+
+        /**
+         * @return value returned when the key is not present
+         */
+        public int getDefaultInt() {
+            return defaultInt;
+        }
+
+        @Override
+        Integer read(PreferencesManager preferencesManager) {
+            return preferencesManager.readInt(getName(), defaultInt);
+        }
+
+        @Override
+        boolean write(PreferencesManager preferencesManager, Integer value) {
+            return preferencesManager.setInt(getName(), value);
+        }
+    }
+
+    /**
+     * Key of a long value, read without boxing by {@link PreferencesManager#getLong(LongKey)}
+     */
+    public static final class LongKey extends PreferenceKey<Long> {
+
+        private final long defaultLong;
+
+        LongKey(String name, long defaultValue) {
+            super(name, defaultValue);
+            this.defaultLong = defaultValue;
+        }
+
+        /**
+         * @return value returned when the key is not present
+         */
+        public long getDefaultLong() {
+            return defaultLong;
+        }
+
+        @Override
+        Long read(PreferencesManager preferencesManager) {
+            return preferencesManager.readLong(getName(), defaultLong);
+        }
+
+        @Override
+        boolean write(PreferencesManager preferencesManager, Long value) {
+            return preferencesManager.setLong(getName(), value);
+        }
+    }
+
+    /**
+     * Key of a float value, read without boxing by {@link PreferencesManager#getFloat(FloatKey)}
+     */
+    public static final class FloatKey extends PreferenceKey<Float> {
+
+        private final float defaultFloat;
+
+        FloatKey(String name, float defaultValue) {
+            super(name, defaultValue);
+            this.defaultFloat = defaultValue;
+        }
+
+        /**
+         * @return value returned when the key is not present
+         */
+        public float getDefaultFloat() {
+            return defaultFloat;
+        }
+
+        @Override
+        Float read(PreferencesManager preferencesManager) {
+            return preferencesManager.readFloat(getName(), defaultFloat);
+        }
+
+        @Override
+        boolean write(PreferencesManager preferencesManager, Float value) {
+            return preferencesManager.setFloat(getName(), value);
+        }
+    }
+
+    /**
+     * Key of a boolean value, read without boxing by {@link PreferencesManager#getBoolean(BooleanKey)}
+     */
+    public static final class BooleanKey extends PreferenceKey<Boolean> {
+
+        private final boolean defaultBoolean;
+
+        BooleanKey(String name, boolean defaultValue) {
+            super(name, defaultValue);
+            this.defaultBoolean = defaultValue;
+        }
+
+        /**
+         * @return value returned when the key is not present
+         */
+        public boolean getDefaultBoolean() {
+            return defaultBoolean;
+        }
+
+        @Override
+        Boolean read(PreferencesManager preferencesManager) {
+            return preferencesManager.readBoolean(getName(), defaultBoolean);
+        }
+
+        @Override
+        boolean write(PreferencesManager preferencesManager, Boolean value) {
+            return preferencesManager.setBoolean(getName(), value);
+        }
+    }
+
+    /**
+     * Key of a String value
+     */
+    public static final class StringKey extends PreferenceKey<String> {
+
+        StringKey(String name, String defaultValue) {
+            super(name, defaultValue);
+        }
+
+        @Override
+        String read(PreferencesManager preferencesManager) {
+            return preferencesManager.readString(getName(), getDefaultValue());
+        }
+
+        @Override
+        boolean write(PreferencesManager preferencesManager, String value) {
+            return preferencesManager.setString(getName(), value);
+        }
+    }
+
+    /**
+     * Key of an object. It keeps the last decoded value together with the serialized value it was decoded from,
+     * so the object is decoded again only when the saved value changes, whoever changed it.
+     * The same instance is returned until then, don't modify it.
+     *
+     * @param <T> type of the object
+     */
+    public static final class ObjectKey<T> extends PreferenceKey<T> {
+
+        private final PreferenceCodec<T> codec;
+        private volatile Slot<T> slot;
+
+        ObjectKey(String name, T defaultValue, PreferenceCodec<T> codec) {
+            super(name, defaultValue);
+            this.codec = codec;
+        }
+
+        /**
+         * @return codec used to encode the object, null for Java serialization
+         */
+        @Nullable
+        public PreferenceCodec<T> getCodec() {
+            return codec;
+        }
+
+        @Override
+        T read(PreferencesManager preferencesManager) {
+            return preferencesManager.readObject(this);
+        }
+
+        @Override
+        boolean write(PreferencesManager preferencesManager, T value) {
+            try {
+                return writeObject(preferencesManager, value);
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        /**
+         * @param preferencesManager manager to write to
+         * @param value              object to be saved
+         * @return if the value has been saved correctly
+         * @throws IOException if the object could not be serialized
+         * @throws ClassCastException if the key has no codec and the object is not Serializable
+         */
+        boolean writeObject(PreferencesManager preferencesManager, T value) throws IOException {
+            if (codec == null)
+                return preferencesManager.setObject(getName(), (Serializable) value);
+            return preferencesManager.setObject(getName(), value, codec);
+        }
+
+        /**
+         * @param source serialized value currently saved
+         * @return the object decoded from the same serialized value, null if it has not been decoded yet
+         */
+        T getCachedValue(String source) {
+            Slot<T> current = slot;
+            if (current != null && (current.source == source || current.source.equals(source)))
+                return current.value;
+            return null;
+        }
+
+        /**
+         * @param source serialized value the object has been decoded from
+         * @param value  decoded object
+         */
+        void setCachedValue(String source, T value) {
+            slot = new Slot<>(source, value);
+        }
+
+        private static final class Slot<T> {
+
+            final String source;
+            final T value;
+
+            Slot(String source, T value) {
+                this.source = source;
+                this.value = value;
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package it.lucacrema.preferences;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Receives the changes of the values observed through {@link PreferencesManager#observe(PreferenceKey, PreferenceObserver)}
+ * or {@link PreferencesManager#observe(String, PreferenceObserver)}
+ *
+ * @param <T> type of the values
+ * @author Luca Crema
+ * @since 17/10/2026
+ */
+public interface PreferenceObserver<T> {
+
+    /**
+     * Called once for each key changed during the coalescing window, with the value it had at the end of it.
+     *
+     * @param key   key of the changed value
+     * @param value the current value, the default value of the key or null when it has been removed
+     */
+    void onChanged(@NonNull String key, @Nullable T value);
+}
@@ -0,0 +1,121 @@
+package it.lucacrema.preferences;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Storage of the values of a {@link PreferencesManager}. It has the same contract as
+ * {@link android.content.SharedPreferences}, so the manager can run on Android through a
+ * {@link SharedPreferencesStore} and on a plain JVM through an {@link InMemoryPreferenceStore} or a
+ * {@link FilePreferenceStore}, for example in integration tests and benchmarks.
+ * <p>
+ * Getters throw {@link ClassCastException} when the saved value has another type. Listeners may be held weakly,
+ * so they have to be referenced by whoever registers them.
+ *
+ * @author Luca Crema
+ * @since 17/10/2026
+ */
+public interface PreferenceStore {
+
+    /**
+     * @return a copy of all the saved values
+     */
+    @NonNull
+    Map<String, ?> getAll();
+
+    int getInt(@NonNull String key, int defaultValue) throws ClassCastException;
+
+    long getLong(@NonNull String key, long defaultValue) throws ClassCastException;
+
+    float getFloat(@NonNull String key, float defaultValue) throws ClassCastException;
+
+    boolean getBoolean(@NonNull String key, boolean defaultValue) throws ClassCastException;
+
+    @Nullable
+    String getString(@NonNull String key, @Nullable String defaultValue) throws ClassCastException;
+
+    /**
+     * @param key          key for the resource
+     * @param defaultValue value returned if the resource is not present
+     * @return the saved set, it must not be modified
+     * @throws ClassCastException if the stored value is not a String set
+     */
+    @Nullable
+    Set<String> getStringSet(@NonNull String key, @Nullable Set<String> defaultValue) throws ClassCastException;
+
+    boolean contains(@NonNull String key);
+
+    /**
+     * @param key key for the resource
+     * @return the saved value of any type, null if not present
+     */
+    @Nullable
+    Object get(@NonNull String key);
+
+    /**
+     * @return an editor whose changes are saved together by {@link Editor#commit()} or {@link Editor#apply()}
+     */
+    @NonNull
+    Editor edit();
+
+    /**
+     * @param listener notified after every change, it may be held weakly
+     */
+    void registerListener(@NonNull OnChangeListener listener);
+
+    void unregisterListener(@NonNull OnChangeListener listener);
+
+    /**
+     * Changes to be saved together, with the same contract as {@link android.content.SharedPreferences.Editor}
+     */
+    interface Editor {
+
+        Editor putInt(@NonNull String key, int value);
+
+        Editor putLong(@NonNull String key, long value);
+
+        Editor putFloat(@NonNull String key, float value);
+
+        Editor putBoolean(@NonNull String key, boolean value);
+
+        Editor putString(@NonNull String key, @Nullable String value);
+
+        Editor putStringSet(@NonNull String key, @Nullable Set<String> values);
+
+        Editor remove(@NonNull String key);
+
+        /**
+         * Removes every value before the other changes of the editor are applied
+         *
+         * @return this editor
+         */
+        Editor clear();
+
+        /**
+         * Saves the changes synchronously
+         *
+         * @return if the changes have been saved correctly
+         */
+        boolean commit();
+
+        /**
+         * Applies the changes in memory immediately and saves them in the background
+         */
+        void apply();
+    }
+
+    /**
+     * Notified when a value of the store changes
+     */
+    interface OnChangeListener {
+
+        /**
+         * @param store store that has changed
+         * @param key   key of the changed value, null when all the values have been removed
+         */
+        void onPreferenceChanged(@NonNull PreferenceStore store, @Nullable String key);
+    }
+}
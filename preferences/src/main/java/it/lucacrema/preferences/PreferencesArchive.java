@@ -0,0 +1,353 @@
+package it.lucacrema.preferences;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Binary format of {@link PreferencesManager#exportTo(OutputStream)}, written and read one record at a time.
+ * <p>
+ * The stream starts with {@link #MAGIC} and the version, then each value is a type byte, the key and the value.
+ * Strings are their UTF-8 length followed by the bytes, numbers are big-endian. The stream ends with
+ * {@link #TYPE_END} and the number of records, so a truncated export is never imported.
+ * <p>
+ * An archive held in a buffer, such as a mapped file, can also be indexed without decoding the long values, which
+ * are left as {@link Record}s and written back as they are.
+ *
+ * @author Luca Crema
+ * @since 17/10/2026
+ */
+final class PreferencesArchive {
+
+    private static final int MAGIC = 0x50524558;
+    private static final int VERSION = 1;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private static final byte TYPE_END = 0;
+    private static final byte TYPE_INT = 1;
+    private static final byte TYPE_LONG = 2;
+    private static final byte TYPE_FLOAT = 3;
+    private static final byte TYPE_BOOLEAN = 4;
+    private static final byte TYPE_STRING = 5;
+    private static final byte TYPE_STRING_SET = 6;
+
+    private PreferencesArchive() {
+    }
+
+    /**
+     * @param values values to be exported, values of other types are skipped
+     * @param output destination, flushed but not closed
+     * @return number of values written
+     * @throws IOException if the output cannot be written
+     */
+    static int write(Map<String, ?> values, OutputStream output) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(output, BUFFER_SIZE));
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        int count = 0;
+        for (Map.Entry<String, ?> entry : values.entrySet()) {
+            Object value = entry.getValue();
+            byte type = typeOf(value);
+            if (type == TYPE_END)
+                continue;
+            out.writeByte(type);
+            writeString(out, entry.getKey());
+            if (value instanceof Record) {
+                ((Record) value).writeTo(out);
+                count++;
+                continue;
+            }
+            switch (type) {
+                case TYPE_INT:
+                    out.writeInt((Integer) value);
+                    break;
+                case TYPE_LONG:
+                    out.writeLong((Long) value);
+                    break;
+                case TYPE_FLOAT:
+                    out.writeFloat((Float) value);
+                    break;
+                case TYPE_BOOLEAN:
+                    out.writeBoolean((Boolean) value);
+                    break;
+                case TYPE_STRING:
+                    writeString(out, (String) value);
+                    break;
+                default:
+                    Set<?> set = (Set<?>) value;
+                    out.writeInt(set.size());
+                    for (Object element : set)
+                        writeString(out, (String) element);
+                    break;
+            }
+            count++;
+        }
+        out.writeByte(TYPE_END);
+        out.writeInt(count);
+        out.flush();
+        return count;
+    }
+
+    /**
+     * @param input  export written by {@link #write(Map, OutputStream)}, read until its end but not closed
+     * @param values receives the values in the order they have been exported
+     * @return number of values read
+     * @throws StreamCorruptedException if the input is not an export or is corrupted
+     * @throws EOFException             if the input is truncated
+     * @throws IOException              if the input cannot be read
+     */
+    static int read(InputStream input, Map<String, Object> values) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(input, BUFFER_SIZE));
+        if (in.readInt() != MAGIC)
+            throw new StreamCorruptedException("Not a preferences export");
+        int version = in.readUnsignedByte();
+        if (version != VERSION)
+            throw new StreamCorruptedException("Unsupported export version " + version);
+        int count = 0;
+        while (true) {
+            byte type = in.readByte();
+            if (type == TYPE_END)
+                break;
+            String key = readString(in);
+            switch (type) {
+                case TYPE_INT:
+                    values.put(key, in.readInt());
+                    break;
+                case TYPE_LONG:
+                    values.put(key, in.readLong());
+                    break;
+                case TYPE_FLOAT:
+                    values.put(key, in.readFloat());
+                    break;
+                case TYPE_BOOLEAN:
+                    values.put(key, in.readBoolean());
+                    break;
+                case TYPE_STRING:
+                    values.put(key, readString(in));
+                    break;
+                case TYPE_STRING_SET:
+                    int size = readLength(in);
+                    Set<String> set = new LinkedHashSet<>();
+                    for (int i = 0; i < size; i++)
+                        set.add(readString(in));
+                    values.put(key, set);
+                    break;
+                default:
+                    throw new StreamCorruptedException("Unknown value type " + type);
+            }
+            count++;
+        }
+        if (in.readInt() != count)
+            throw new StreamCorruptedException("Export has " + count + " values instead of the declared ones");
+        return count;
+    }
+
+    /**
+     * Reads the keys of an archive held in a buffer, decoding only the numbers, booleans and the values whose encoding
+     * is not longer than the given length, the others are put as {@link Record}s pointing to the buffer.
+     *
+     * @param buffer         archive written by {@link #write(Map, OutputStream)}, it must not change while the
+     *                       records are used
+     * @param eagerMaxLength longest encoding of a string or string set decoded immediately, in bytes
+     * @param values         receives the values and the records in the order they have been exported
+     * @return number of values read
+     * @throws StreamCorruptedException if the buffer does not hold an export
+     * @throws EOFException             if the export is truncated or corrupted
+     */
+    static int index(ByteBuffer buffer, int eagerMaxLength, Map<String, Object> values) throws IOException {
+        ByteBuffer in = buffer.duplicate();
+        try {
+            if (in.getInt() != MAGIC)
+                throw new StreamCorruptedException("Not a preferences export");
+            int version = in.get() & 0xFF;
+            if (version != VERSION)
+                throw new StreamCorruptedException("Unsupported export version " + version);
+            int count = 0;
+            while (true) {
+                byte type = in.get();
+                if (type == TYPE_END)
+                    break;
+                String key = readString(in);
+                switch (type) {
+                    case TYPE_INT:
+                        values.put(key, in.getInt());
+                        break;
+                    case TYPE_LONG:
+                        values.put(key, in.getLong());
+                        break;
+                    case TYPE_FLOAT:
+                        values.put(key, in.getFloat());
+                        break;
+                    case TYPE_BOOLEAN:
+                        values.put(key, in.get() != 0);
+                        break;
+                    case TYPE_STRING:
+                    case TYPE_STRING_SET:
+                        int offset = in.position();
+                        skipValue(type, in);
+                        Record record = new Record(buffer, type, offset, in.position() - offset);
+                        values.put(key, record.length <= eagerMaxLength ? record.read() : record);
+                        break;
+                    default:
+                        throw new StreamCorruptedException("Unknown value type " + type);
+                }
+                count++;
+            }
+            if (in.getInt() != count)
+                throw new StreamCorruptedException("Export has " + count + " values instead of the declared ones");
+            return count;
+        } catch (BufferUnderflowException e) {
+            throw new EOFException("Export truncated or corrupted");
+        }
+    }
+
+    /**
+     * @param value value saved in preferences
+     * @return the type of the record, {@link #TYPE_END} if it cannot be exported
+     */
+    private static byte typeOf(Object value) {
+        if (value instanceof Record)
+            return ((Record) value).type;
+        if (value instanceof Integer)
+            return TYPE_INT;
+        if (value instanceof Long)
+            return TYPE_LONG;
+        if (value instanceof Float)
+            return TYPE_FLOAT;
+        if (value instanceof Boolean)
+            return TYPE_BOOLEAN;
+        if (value instanceof String)
+            return TYPE_STRING;
+        if (value instanceof Set)
+            return TYPE_STRING_SET;
+        return TYPE_END;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Long strings are read in chunks, so a corrupted length fails at the end of the stream instead of
+     * allocating all of it in advance
+     */
+    private static String readString(DataInputStream in) throws IOException {
+        int length = readLength(in);
+        if (length <= BUFFER_SIZE) {
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return new String(bytes, UTF_8);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(BUFFER_SIZE);
+        byte[] chunk = new byte[BUFFER_SIZE];
+        for (int remaining = length; remaining > 0; ) {
+            int read = in.read(chunk, 0, Math.min(remaining, chunk.length));
+            if (read < 0)
+                throw new EOFException();
+            bytes.write(chunk, 0, read);
+            remaining -= read;
+        }
+        return new String(bytes.toByteArray(), UTF_8);
+    }
+
+    private static int readLength(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0)
+            throw new StreamCorruptedException("Negative length " + length);
+        return length;
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[readLength(in)];
+        in.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * @throws BufferUnderflowException if the string or string set does not fit in the buffer
+     */
+    private static void skipValue(byte type, ByteBuffer in) {
+        int strings = type == TYPE_STRING ? 1 : readLength(in);
+        for (int i = 0; i < strings; i++) {
+            int length = readLength(in);
+            in.position(in.position() + length);
+        }
+    }
+
+    /**
+     * @return the length, not greater than the remaining bytes
+     * @throws BufferUnderflowException if the length is negative or greater than the remaining bytes
+     */
+    private static int readLength(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0 || length > in.remaining())
+            throw new BufferUnderflowException();
+        return length;
+    }
+
+    /**
+     * String or string set left encoded in the buffer of an archive by {@link #index(ByteBuffer, int, Map)}
+     */
+    static final class Record {
+
+        private final ByteBuffer buffer;
+        private final byte type;
+        private final int offset;
+        private final int length;
+
+        private Record(ByteBuffer buffer, byte type, int offset, int length) {
+            this.buffer = buffer;
+            this.type = type;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        /**
+         * Decodes the value, the buffer has already been checked when indexed
+         *
+         * @return the String or the Set of Strings
+         */
+        Object read() {
+            ByteBuffer in = buffer.duplicate();
+            in.position(offset);
+            if (type == TYPE_STRING)
+                return readString(in);
+            int size = readLength(in);
+            Set<String> set = new LinkedHashSet<>();
+            for (int i = 0; i < size; i++)
+                set.add(readString(in));
+            return set;
+        }
+
+        /**
+         * Copies the encoded value without decoding it
+         */
+        private void writeTo(DataOutputStream out) throws IOException {
+            ByteBuffer in = buffer.duplicate();
+            in.position(offset);
+            byte[] chunk = new byte[Math.min(length, BUFFER_SIZE)];
+            for (int remaining = length; remaining > 0; ) {
+                int size = Math.min(remaining, chunk.length);
+                in.get(chunk, 0, size);
+                out.write(chunk, 0, size);
+                remaining -= size;
+            }
+        }
+    }
+}
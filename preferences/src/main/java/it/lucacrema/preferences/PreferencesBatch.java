@@ -0,0 +1,198 @@
+package it.lucacrema.preferences;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Group of writes that are saved together with a single {@link android.content.SharedPreferences.Editor}
+ * and a single commit, instead of one file rewrite per value.
+ * Obtained through {@link PreferencesManager#batch()}, nothing is written until {@link #commit()} or {@link #apply()}.
+ *
+ * @author Luca Crema
+ * @since 17/10/2026
+ */
+@SuppressWarnings({"unused", "WeakerAccess", "UnusedReturnValue"})
+public final class PreferencesBatch {
+
+    /**
+     * Marker for a key that has to be removed when the batch is committed
+     */
+    static final Object REMOVED = new Object();
+
+    private final PreferencesManager preferencesManager;
+    private final Map<String, Object> changes = new LinkedHashMap<>();
+    private boolean clear;
+    private boolean force;
+    private boolean committed;
+
+    /**
+     * @param preferencesManager manager the batch is committed to.
+     */
+    PreferencesBatch(PreferencesManager preferencesManager) {
+        this.preferencesManager = preferencesManager;
+    }
+
+    /**
+     * @param key   key for the resource
+     * @param value value to be put or override
+     * @return this batch
+     */
+    public PreferencesBatch setInt(@NonNull String key, int value) {
+        return put(key, value);
+    }
+
+    /**
+     * @param key   key for the resource
+     * @param value value to be put or override
+     * @return this batch
+     */
+    public PreferencesBatch setFloat(@NonNull String key, float value) {
+        return put(key, value);
+    }
+
+    /**
+     * @param key   key for the resource
+     * @param value value to be put or override
+     * @return this batch
+     */
+    public PreferencesBatch setLong(@NonNull String key, long value) {
+        return put(key, value);
+    }
+
+    /**
+     * @param key   key for the resource
+     * @param value value to be put or override, null removes the value
+     * @return this batch
+     */
+    public PreferencesBatch setString(@NonNull String key, String value) {
+        if (value == null)
+            return removeValue(key);
+        return put(key, value);
+    }
+
+    /**
+     * @param key   key for the resource
+     * @param value value to be put or override
+     * @return this batch
+     */
+    public PreferencesBatch setBoolean(@NonNull String key, boolean value) {
+        return put(key, value);
+    }
+
+    /**
+     * Serializes the object immediately, so later changes to it are not saved.
+     *
+     * @param key    key for the resource
+     * @param object value to be put or override
+     * @return this batch
+     * @throws IOException Any exception thrown by the underlying OutputStream.
+     */
+    public PreferencesBatch setObject(@NonNull String key, @NonNull Serializable object) throws IOException {
+        return put(key, preferencesManager.serializeObject(key, object));
+    }
+
+    /**
+     * Encodes the object immediately, so later changes to it are not saved.
+     *
+     * @param key    key for the resource
+     * @param object value to be put or override
+     * @param codec  codec used to encode the object
+     * @param <T>    type of the object
+     * @return this batch
+     * @throws IOException if the codec fails to encode the object.
+     */
+    public <T> PreferencesBatch setObject(@NonNull String key, @NonNull T object, @NonNull PreferenceCodec<T> codec) throws IOException {
+        return put(key, preferencesManager.serializeObject(key, object, codec));
+    }
+
+    /**
+     * @param key key for the resource
+     * @return this batch
+     */
+    public PreferencesBatch removeValue(@NonNull String key) {
+        return put(key, REMOVED);
+    }
+
+    /**
+     * Removes every saved value before the other writes of this batch are applied.
+     * Writes added to the batch before this call are discarded.
+     *
+     * @return this batch
+     */
+    public PreferencesBatch removeAllValues() {
+        checkNotCommitted();
+        changes.clear();
+        clear = true;
+        return this;
+    }
+
+    /**
+     * Writes every value of the batch even if it is already saved, for example to notify the listeners again.
+     * Writes of unchanged values are skipped otherwise, see {@link PreferencesManager.Builder#elideUnchangedWrites(boolean)}.
+     *
+     * @return this batch
+     */
+    public PreferencesBatch force() {
+        checkNotCommitted();
+        force = true;
+        return this;
+    }
+
+    /**
+     * @return number of keys written or removed by this batch
+     */
+    public int size() {
+        return changes.size();
+    }
+
+    /**
+     * Writes every change with a single synchronous commit.
+     *
+     * @return if all the values of the batch have been saved correctly
+     * @throws IllegalStateException if the batch has already been committed or applied
+     */
+    public boolean commit() {
+        checkNotCommitted();
+        committed = true;
+        return preferencesManager.commitBatch(changes, clear, false, force);
+    }
+
+    /**
+     * Writes every change to memory immediately and to disk asynchronously.
+     *
+     * @throws IllegalStateException if the batch has already been committed or applied
+     */
+    public void apply() {
+        checkNotCommitted();
+        committed = true;
+        preferencesManager.commitBatch(changes, clear, true, force);
+    }
+
+    private PreferencesBatch put(String key, Object value) {
+        checkNotCommitted();
+        PreferencesManager.checkKey(key);
+        changes.put(key, value);
+        return this;
+    }
+
+    private void checkNotCommitted() {
+        if (committed)
+            throw new IllegalStateException("Batch has already been committed");
+    }
+
+    /**
+     * Writes to be executed inside {@link PreferencesManager#batch(Operation)}
+     */
+    public interface Operation {
+
+        /**
+         * @param batch batch collecting the writes, it must not be committed by the operation.
+         * @throws IOException if an object could not be serialized, nothing is written in that case.
+         */
+        void run(@NonNull PreferencesBatch batch) throws IOException;
+    }
+}
@@ -4,32 +4,108 @@ import android.content.Context;
 import android.content.SharedPreferences;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.preference.PreferenceManager;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Service that writes and reads small configurations/preferences in Android memory.
  * Wrapper for {@link androidx.preference.PreferenceManager} class
+ * <p>
+ * By default every setter saves the value synchronously. A manager built with a {@link WriteBehindPolicy}
+ * queues the writes in memory instead and saves them in the background, see {@link Builder#writeBehind(WriteBehindPolicy)}.
  *
  * @author Luca Crema
  * @version 3.1
  * @since 19/12/2019
  */
 @SuppressWarnings({"unused", "WeakerAccess", "UnusedReturnValue"})
-final public class PreferencesManager {
+final public class PreferencesManager implements Closeable {
 
     public static final int DEFAULT_INTEGER_RETURN = -1;
     public static final float DEFAULT_FLOAT_RETURN = 0f;
     public static final long DEFAULT_LONG_RETURN = -1L;
     public static final String DEFAULT_STRING_RETURN = "";
     public static final boolean DEFAULT_BOOLEAN_RETURN = false;
+    public static final long DEFAULT_OBSERVER_WINDOW_MILLIS = 50L;
+    public static final int DEFAULT_LOCK_STRIPES = 64;
 
     protected static final int DEFAULT_UPDATE_INT_ADD = 1;
     protected ObjectSerializerUtility objectSerializerUtility;
-    private SharedPreferences sharedPreferences;
+    private final PreferenceStore store;
+    private final WriteBehindBuffer writeBehindBuffer;
+    private final ObjectCache objectCache;
+    /**
+     * Kept as a field because a {@link PreferenceStore} may only hold listeners through weak references
+     */
+    private final PreferenceStore.OnChangeListener objectCacheInvalidator;
+    private final WriteBehindPolicy counterPolicy;
+    private final ConcurrentMap<String, PreferenceCounter> counters = new ConcurrentHashMap<>();
+    private ScheduledExecutorService counterExecutor;
+    private final PreferencesMetrics metrics;
+    private final BlobStore blobStore;
+    private final int blobThreshold;
+    private ExecutorService blobCollector;
+    private final AtomicBoolean blobCollectionScheduled = new AtomicBoolean();
+    private volatile KeyIndex keyIndex;
+    private final long observerWindowMillis;
+    private final Executor observerExecutor;
+    private volatile ChangeDispatcher changeDispatcher;
+    private ScheduledExecutorService observerTimer;
+    private final boolean elideUnchangedWrites;
+    private final AtomicLong elidedWrites = new AtomicLong();
+    private final StripedLocks keyLocks;
+    private final ExpiryTable expiryTable;
+    private final long sweepIntervalMillis;
+    private ScheduledExecutorService sweeper;
+    private final Executor readExecutor;
+    private ExecutorService ownReadExecutor;
+    private volatile AsyncObjectReader asyncObjectReader;
+    /**
+     * Held for writing while changes become visible to the snapshots, for reading while a snapshot reads them
+     */
+    private final ReentrantReadWriteLock commitLock = new ReentrantReadWriteLock();
+    /**
+     * Values of the commits being saved by the store, {@link PreferencesBatch#REMOVED} for the removed keys
+     */
+    private final ConcurrentHashMap<String, Object> committingValues = new ConcurrentHashMap<>();
+    /**
+     * Number of commits removing all the values being saved by the store, guarded by the commit lock
+     */
+    private int committingClears;
+    /**
+     * Serializes the writes with a time to live and the removal of the expired values
+     */
+    private final Object expiryLock = new Object();
 
     /**
      * @param ctx Current application context, used to set default shared preferences
@@ -50,8 +126,61 @@ final public class PreferencesManager {
      * @param objectSerializerUtility class used to serialize and de-serialize objects.
      */
     public PreferencesManager(SharedPreferences sharedPrefs, ObjectSerializerUtility objectSerializerUtility) {
-        this.sharedPreferences = sharedPrefs;
-        this.objectSerializerUtility = objectSerializerUtility;
+        this(new Builder(sharedPrefs).objectSerializer(objectSerializerUtility));
+    }
+
+    /**
+     * @param store storage of the values, for example a {@link FilePreferenceStore} to run on a plain JVM
+     */
+    public PreferencesManager(PreferenceStore store) {
+        this(new Builder(store).objectSerializer(new ObjectSerializerUtility()));
+    }
+
+    /**
+     * @param builder configuration of the manager
+     */
+    private PreferencesManager(Builder builder) {
+        this.store = builder.store;
+        this.objectSerializerUtility = builder.objectSerializerUtility;
+        this.writeBehindBuffer = builder.writeBehindPolicy == null ? null : new WriteBehindBuffer(this, builder.writeBehindPolicy);
+        this.objectCache = builder.objectCache;
+        this.counterPolicy = builder.counterPolicy == null ? new WriteBehindPolicy() : builder.counterPolicy;
+        this.metrics = builder.metrics;
+        this.blobStore = builder.blobStore;
+        this.blobThreshold = builder.blobThreshold;
+        this.observerWindowMillis = builder.observerWindowMillis;
+        this.observerExecutor = builder.observerExecutor;
+        this.elideUnchangedWrites = builder.elideUnchangedWrites;
+        this.keyLocks = new StripedLocks(builder.lockStripes);
+        this.expiryTable = builder.expiringValues ? new ExpiryTable(store) : null;
+        this.sweepIntervalMillis = builder.sweepIntervalMillis;
+        this.readExecutor = builder.readExecutor;
+        if (objectCache == null) {
+            this.objectCacheInvalidator = null;
+        } else {
+            this.objectCacheInvalidator = new PreferenceStore.OnChangeListener() {
+                @Override
+                public void onPreferenceChanged(PreferenceStore store, String key) {
+                    if (key == null)
+                        objectCache.invalidateAll();
+                    else
+                        objectCache.invalidate(key);
+                }
+            };
+            store.registerListener(objectCacheInvalidator);
+        }
+        startSweeper();
+    }
+
+    /**
+     * Starts loading the default shared preferences in the background, call it as early as possible during
+     * app startup. Use {@link Builder#preload(Executor, PreloadCallback)} to configure the manager or warm keys up.
+     *
+     * @param ctx Current application context, used to set default shared preferences
+     * @return a future completed with the manager once the preferences are loaded
+     */
+    public static Future<PreferencesManager> preload(@NonNull Context ctx) {
+        return new Builder(ctx).preload(null, null);
     }
 
     /**
@@ -65,17 +194,17 @@ final public class PreferencesManager {
     }
 
     /**
-     * @return Shared preferences, either the default one or the custom one, depends on which constructor has been used
+     * @return the store of the values, either the default shared preferences or the custom one, depends on which constructor has been used
      */
-    private SharedPreferences getSharedPreferences() {
-        return sharedPreferences;
+    private PreferenceStore getStore() {
+        return store;
     }
 
     /**
-     * @return the editor for the preferences
+     * @return the editor for the store
      */
-    private SharedPreferences.Editor getEditor() {
-        return sharedPreferences.edit();
+    private PreferenceStore.Editor getEditor() {
+        return store.edit();
     }
 
     /**
@@ -84,7 +213,27 @@ final public class PreferencesManager {
      * @throws ClassCastException if the stored value for the required key is not int
      */
     public int getInt(@NonNull String key) throws ClassCastException {
-        return getSharedPreferences().getInt(key, DEFAULT_INTEGER_RETURN);
+        return readInt(key, DEFAULT_INTEGER_RETURN);
+    }
+
+    /**
+     * @param key          key for the resource
+     * @param defaultValue value returned if the resource is not present
+     * @return the value of the resource if present, defaultValue otherwise
+     * @throws ClassCastException if the stored value for the required key is not int
+     */
+    int readInt(String key, int defaultValue) throws ClassCastException {
+        long start = startTiming();
+        try {
+            Object pending = getPendingValue(key);
+            if (pending != WriteBehindBuffer.NOT_PENDING)
+                return pending == PreferencesBatch.REMOVED ? defaultValue : (Integer) pending;
+            if (isExpired(key))
+                return defaultValue;
+            return getStore().getInt(key, defaultValue);
+        } finally {
+            recordOperation(PreferencesMetrics.Operation.GET, key, start);
+        }
     }
 
     /**
@@ -93,7 +242,27 @@ final public class PreferencesManager {
      * @throws ClassCastException if the stored value for the required key is not float
      */
     public float getFloat(@NonNull String key) throws ClassCastException {
-        return getSharedPreferences().getFloat(key, DEFAULT_FLOAT_RETURN);
+        return readFloat(key, DEFAULT_FLOAT_RETURN);
+    }
+
+    /**
+     * @param key          key for the resource
+     * @param defaultValue value returned if the resource is not present
+     * @return the value of the resource if present, defaultValue otherwise
+     * @throws ClassCastException if the stored value for the required key is not float
+     */
+    float readFloat(String key, float defaultValue) throws ClassCastException {
+        long start = startTiming();
+        try {
+            Object pending = getPendingValue(key);
+            if (pending != WriteBehindBuffer.NOT_PENDING)
+                return pending == PreferencesBatch.REMOVED ? defaultValue : (Float) pending;
+            if (isExpired(key))
+                return defaultValue;
+            return getStore().getFloat(key, defaultValue);
+        } finally {
+            recordOperation(PreferencesMetrics.Operation.GET, key, start);
+        }
     }
 
     /**
@@ -102,7 +271,27 @@ final public class PreferencesManager {
      * @throws ClassCastException if the stored value for the required key is not long
      */
     public long getLong(@NonNull String key) throws ClassCastException {
-        return getSharedPreferences().getLong(key, DEFAULT_LONG_RETURN);
+        return readLong(key, DEFAULT_LONG_RETURN);
+    }
+
+    /**
+     * @param key          key for the resource
+     * @param defaultValue value returned if the resource is not present
+     * @return the value of the resource if present, defaultValue otherwise
+     * @throws ClassCastException if the stored value for the required key is not long
+     */
+    long readLong(String key, long defaultValue) throws ClassCastException {
+        long start = startTiming();
+        try {
+            Object pending = getPendingValue(key);
+            if (pending != WriteBehindBuffer.NOT_PENDING)
+                return pending == PreferencesBatch.REMOVED ? defaultValue : (Long) pending;
+            if (isExpired(key))
+                return defaultValue;
+            return getStore().getLong(key, defaultValue);
+        } finally {
+            recordOperation(PreferencesMetrics.Operation.GET, key, start);
+        }
     }
 
     /**
@@ -111,7 +300,27 @@ final public class PreferencesManager {
      * @throws ClassCastException if the stored value for the required key is not String
      */
     public String getString(@NonNull String key) throws ClassCastException {
-        return getSharedPreferences().getString(key, DEFAULT_STRING_RETURN);
+        return readString(key, DEFAULT_STRING_RETURN);
+    }
+
+    /**
+     * @param key          key for the resource
+     * @param defaultValue value returned if the resource is not present
+     * @return the value of the resource if present, defaultValue otherwise
+     * @throws ClassCastException if the stored value for the required key is not String
+     */
+    String readString(String key, String defaultValue) throws ClassCastException {
+        long start = startTiming();
+        try {
+            Object pending = getPendingValue(key);
+            if (pending != WriteBehindBuffer.NOT_PENDING)
+                return pending == PreferencesBatch.REMOVED ? defaultValue : (String) pending;
+            if (isExpired(key))
+                return defaultValue;
+            return getStore().getString(key, defaultValue);
+        } finally {
+            recordOperation(PreferencesMetrics.Operation.GET, key, start);
+        }
     }
 
     /**
@@ -120,27 +329,548 @@ final public class PreferencesManager {
      * @throws ClassCastException if the stored value for the required key is not boolean
      */
     public boolean getBoolean(@NonNull String key) throws ClassCastException {
-        return sharedPreferences.getBoolean(key, DEFAULT_BOOLEAN_RETURN);
+        return readBoolean(key, DEFAULT_BOOLEAN_RETURN);
+    }
+
+    /**
+     * @param key          key for the resource
+     * @param defaultValue value returned if the resource is not present
+     * @return the value of the resource if present, defaultValue otherwise
+     * @throws ClassCastException if the stored value for the required key is not boolean
+     */
+    boolean readBoolean(String key, boolean defaultValue) throws ClassCastException {
+        long start = startTiming();
+        try {
+            Object pending = getPendingValue(key);
+            if (pending != WriteBehindBuffer.NOT_PENDING)
+                return pending == PreferencesBatch.REMOVED ? defaultValue : (Boolean) pending;
+            if (isExpired(key))
+                return defaultValue;
+            return getStore().getBoolean(key, defaultValue);
+        } finally {
+            recordOperation(PreferencesMetrics.Operation.GET, key, start);
+        }
     }
 
     /**
+     * When an {@link ObjectCache} is configured the same instance is returned until the value changes.
+     *
      * @param key key for the resource
      * @return the object de-serialized if present, null otherwise
      * @throws ClassCastException if the stored value for the required key is not an Object
      */
     public Object getObject(@NonNull String key) throws ClassCastException {
-        String memoryObjectString = sharedPreferences.getString(key, null);
+        return readObject(key, null);
+    }
+
+    /**
+     * Reads an object written by {@link #setObject(String, Object, PreferenceCodec)}, values written by other codecs
+     * registered in the {@link ObjectSerializerUtility} are read too.
+     *
+     * @param key   key for the resource
+     * @param codec codec that has written the object
+     * @param <T>   type of the object
+     * @return the object decoded if present, null otherwise
+     * @throws ClassCastException if the stored value for the required key is not an Object
+     */
+    public <T> T getObject(@NonNull String key, @NonNull PreferenceCodec<T> codec) throws ClassCastException {
+        return readObject(key, codec);
+    }
+
+    /**
+     * Decodes the object on the executor of {@link Builder#readExecutor(Executor)}, the calling thread only reads the
+     * saved string, so the object is the one saved when this method is called even if the key changes meanwhile.
+     * Concurrent requests for the same saved object share a single decode. Objects in the {@link ObjectCache}
+     * are returned without decoding.
+     *
+     * @param key key for the resource
+     * @return a future completed with the object de-serialized if present, null otherwise
+     * @throws ClassCastException if the stored value for the required key is not an Object
+     */
+    public Future<Object> getObjectAsync(@NonNull String key) throws ClassCastException {
+        return readObjectAsync(key, null);
+    }
+
+    /**
+     * @param key   key for the resource
+     * @param codec codec that has written the object
+     * @param <T>   type of the object
+     * @return a future completed with the object decoded if present, null otherwise
+     * @throws ClassCastException if the stored value for the required key is not an Object
+     * @see #getObjectAsync(String)
+     */
+    public <T> Future<T> getObjectAsync(@NonNull String key, @NonNull PreferenceCodec<T> codec) throws ClassCastException {
+        return readObjectAsync(key, codec);
+    }
+
+    /**
+     * Decodes the objects in parallel on the executor of {@link Builder#readExecutor(Executor)}.
+     * All the saved strings are read by the calling thread before any decode starts.
+     *
+     * @param keys keys for the resources
+     * @return the futures of the objects by key, in the order of the keys
+     * @throws ClassCastException if the stored value for one of the keys is not an Object, nothing is decoded in that case
+     * @see #getObjectAsync(String)
+     */
+    public Map<String, Future<Object>> getObjectsAsync(@NonNull String... keys) throws ClassCastException {
+        String[] sources = new String[keys.length];
+        for (int i = 0; i < keys.length; i++)
+            sources[i] = readObjectSource(keys[i]);
+        Map<String, Future<Object>> objects = new LinkedHashMap<>(keys.length * 2);
+        for (int i = 0; i < keys.length; i++)
+            objects.put(keys[i], this.<Object>readSourceAsync(keys[i], sources[i], null));
+        return objects;
+    }
+
+    /**
+     * @param key   key for the resource
+     * @param codec codec to be tried first, null for Java serialization and the registered codecs
+     * @param <T>   type of the object
+     * @return a future completed with the object decoded if present, null otherwise
+     */
+    private <T> Future<T> readObjectAsync(String key, PreferenceCodec<T> codec) {
+        return readSourceAsync(key, readObjectSource(key), codec);
+    }
+
+    /**
+     * @param key    key for the resource
+     * @param source saved string, null if none
+     * @param codec  codec to be tried first, null for Java serialization and the registered codecs
+     * @param <T>    type of the object
+     * @return a future completed with the object decoded, already completed if there is nothing to decode
+     */
+    @SuppressWarnings("unchecked")
+    private <T> Future<T> readSourceAsync(String key, String source, PreferenceCodec<T> codec) {
+        if (source == null)
+            return SettableFuture.completed(null);
+        if (objectCache != null) {
+            Object cached = objectCache.get(key, source, codec);
+            if (cached != null)
+                return SettableFuture.completed((T) cached);
+        }
+        return getAsyncObjectReader().read(key, source, codec);
+    }
+
+    /**
+     * @param key key for the resource
+     * @return the array saved by {@link #setIntArray(String, int[])} if present, null otherwise
+     * @throws ClassCastException if the stored value for the required key is not an int array
+     */
+    public int[] getIntArray(@NonNull String key) throws ClassCastException {
+        return readPacked(key, PackedArrays.INT_ARRAY);
+    }
+
+    /**
+     * @param key key for the resource
+     * @return the array saved by {@link #setLongArray(String, long[])} if present, null otherwise
+     * @throws ClassCastException if the stored value for the required key is not a long array
+     */
+    public long[] getLongArray(@NonNull String key) throws ClassCastException {
+        return readPacked(key, PackedArrays.LONG_ARRAY);
+    }
+
+    /**
+     * @param key key for the resource
+     * @return the array saved by {@link #setFloatArray(String, float[])} if present, null otherwise
+     * @throws ClassCastException if the stored value for the required key is not a float array
+     */
+    public float[] getFloatArray(@NonNull String key) throws ClassCastException {
+        return readPacked(key, PackedArrays.FLOAT_ARRAY);
+    }
+
+    /**
+     * @param key key for the resource
+     * @return a new list with the Strings saved by {@link #setStringList(String, List)} if present, null otherwise
+     * @throws ClassCastException if the stored value for the required key is not a String list
+     */
+    public List<String> getStringList(@NonNull String key) throws ClassCastException {
+        return readPacked(key, PackedArrays.STRING_LIST);
+    }
+
+    /**
+     * @param key    key for the resource
+     * @param reader reader of the packed value
+     * @param <T>    type of the value
+     * @return the value if present and well formed, null otherwise
+     */
+    private <T> T readPacked(String key, ObjectSerializerUtility.BytesReader<T> reader) {
+        String saved = readString(key, null);
+        return saved == null ? null : objectSerializerUtility.decodeText(saved, reader);
+    }
+
+    /**
+     * @param key   key for the resource
+     * @param codec codec to be tried first, null for Java serialization and the registered codecs
+     * @param <T>   type of the object
+     * @return the object decoded if present, null otherwise
+     */
+    private <T> T readObject(String key, PreferenceCodec<T> codec) {
+        long start = startTiming();
+        try {
+            return readObjectUntimed(key, codec);
+        } finally {
+            recordOperation(PreferencesMetrics.Operation.GET, key, start);
+        }
+    }
+
+    /**
+     * @param key   key for the resource
+     * @param codec codec to be tried first, null for Java serialization and the registered codecs
+     * @param <T>   type of the object
+     * @return the object decoded if present, null otherwise
+     */
+    private <T> T readObjectUntimed(String key, PreferenceCodec<T> codec) {
+        String memoryObjectString = readObjectSource(key);
         if (memoryObjectString == null)
             return null;
+        return decodeSource(key, memoryObjectString, codec);
+    }
+
+    /**
+     * Decodes the saved string, through the {@link ObjectCache} if configured
+     *
+     * @param key                key for the resource
+     * @param memoryObjectString value saved in preferences
+     * @param codec              codec to be tried first, null for Java serialization and the registered codecs
+     * @param <T>                type of the object
+     * @return the object decoded, null if it could not be parsed
+     */
+    @SuppressWarnings("unchecked")
+    <T> T decodeSource(String key, String memoryObjectString, PreferenceCodec<T> codec) {
+        if (objectCache == null)
+            return decodeObject(key, memoryObjectString, codec);
+        Object object = objectCache.get(key, memoryObjectString, codec);
+        if (object == null) {
+            object = decodeObject(key, memoryObjectString, codec);
+            if (object != null)
+                objectCache.put(key, memoryObjectString, codec, object);
+        }
+        return (T) object;
+    }
+
+    /**
+     * Reads an object through the value slot of its key, it is decoded again only when the saved value changes.
+     *
+     * @param key typed key of the object
+     * @param <T> type of the object
+     * @return the object decoded if present and parsed, the default value of the key otherwise
+     */
+    <T> T readObject(PreferenceKey.ObjectKey<T> key) {
+        long start = startTiming();
+        try {
+            String memoryObjectString = readObjectSource(key.getName());
+            if (memoryObjectString == null)
+                return key.getDefaultValue();
+            T object = key.getCachedValue(memoryObjectString);
+            if (object == null) {
+                object = decodeObject(key.getName(), memoryObjectString, key.getCodec());
+                if (object == null)
+                    return key.getDefaultValue();
+                key.setCachedValue(memoryObjectString, object);
+            }
+            return object;
+        } finally {
+            recordOperation(PreferencesMetrics.Operation.GET, key.getName(), start);
+        }
+    }
+
+    /**
+     * @param key key for the resource
+     * @return the serialized object saved or waiting to be saved, null if none
+     * @throws ClassCastException if the stored value for the required key is not an Object
+     */
+    private String readObjectSource(String key) {
+        Object pending = getPendingValue(key);
+        if (pending != WriteBehindBuffer.NOT_PENDING)
+            return pending == PreferencesBatch.REMOVED ? null : (String) pending;
+        if (isExpired(key))
+            return null;
+        return store.getString(key, null);
+    }
+
+    /**
+     * @param key                key for the resource, reported to the metrics when the value cannot be parsed
+     * @param memoryObjectString value saved in preferences
+     * @param codec              codec to be tried first, null for Java serialization and the registered codecs
+     * @param <T>                type of the object
+     * @return the object decoded, null if it could not be parsed
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T decodeObject(String key, String memoryObjectString, PreferenceCodec<T> codec) {
+        T object;
+        if (blobStore != null && BlobStore.isStub(memoryObjectString)) {
+            ByteBuffer blob = blobStore.read(memoryObjectString);
+            object = blob == null ? null : objectSerializerUtility.decode(blob, codec);
+        } else if (codec == null) {
+            object = (T) objectSerializerUtility.deserializeObject(memoryObjectString);
+        } else {
+            object = objectSerializerUtility.deserializeObject(memoryObjectString, codec);
+        }
+        if (object == null && metrics != null)
+            metrics.onDeserializationFailure(key);
+        return object;
+    }
+
+    /**
+     * @return the cache of de-serialized objects with its statistics, null if it was not configured
+     */
+    @Nullable
+    public ObjectCache getObjectCache() {
+        return objectCache;
+    }
+
+    /**
+     * Deletes the blob files no longer referenced by any value. It is done automatically on a background thread after
+     * the values holding blobs are overwritten or removed, blobs younger than the grace period of the
+     * {@link BlobStore} are kept.
+     *
+     * @return number of deleted files, 0 if no blob store was configured
+     */
+    public int collectBlobGarbage() {
+        return blobStore == null ? 0 : blobStore.collectGarbage(getAllValues());
+    }
+
+    /**
+     * @return number of writes skipped because the saved value was already the same,
+     * see {@link Builder#elideUnchangedWrites(boolean)}
+     */
+    public long getElidedWriteCount() {
+        return elidedWrites.get();
+    }
+
+    /**
+     * @return ratio and time of the compression of large objects, see {@link Builder#compressObjectsAbove(int)}
+     */
+    public CompressionStats getCompressionStats() {
+        return objectSerializerUtility.getCompressionStats();
+    }
+
+    /**
+     * @param key key for the resource
+     * @return if a value of any type is saved for the key, including the ones waiting to be written in write-behind mode;
+     * false if the value has expired
+     */
+    public boolean contains(@NonNull String key) {
+        Object pending = getPendingValue(key);
+        if (pending != WriteBehindBuffer.NOT_PENDING)
+            return pending != PreferencesBatch.REMOVED;
+        return !isExpired(key) && store.contains(key);
+    }
+
+    /**
+     * Returns a view of the values whose keys start with the prefix, for example {@code pm.scope("user.123.")}.
+     * The first call builds a sorted index of the keys that is then updated on every change, so listing
+     * and clearing a scope do not copy all the preferences like {@link #getAllValues()} does.
+     *
+     * @param prefix prefix of the keys, empty for all the keys
+     * @return a view of the values with the prefix
+     */
+    public PreferencesScope scope(@NonNull String prefix) {
+        return new PreferencesScope(this, getKeyIndex(), prefix);
+    }
+
+    /**
+     * Notifies the observer when the value of the key changes, with the value already read and decoded.
+     * All the changes of a key within the coalescing window set by {@link Builder#observers(long, Executor)}
+     * are notified once, with the last value. Writes queued in write-behind mode are notified once saved.
+     *
+     * @param key      key to be observed
+     * @param observer observer of the changes, only held weakly
+     * @param <T>      type of the value
+     * @return the subscription that keeps the observer registered, it has to be kept by the caller
+     */
+    public <T> Subscription observe(@NonNull PreferenceKey<T> key, @NonNull PreferenceObserver<? super T> observer) {
+        return observe(key, null, observer);
+    }
+
+    /**
+     * @param key      key to be observed
+     * @param executor executor the observer is called on, null for the one of {@link Builder#observers(long, Executor)}
+     * @param observer observer of the changes, only held weakly
+     * @param <T>      type of the value
+     * @return the subscription that keeps the observer registered, it has to be kept by the caller
+     * @see #observe(PreferenceKey, PreferenceObserver)
+     */
+    public <T> Subscription observe(@NonNull PreferenceKey<T> key, @Nullable Executor executor, @NonNull PreferenceObserver<? super T> observer) {
+        return getChangeDispatcher().add(key, key.getName(), observer, executor);
+    }
+
+    /**
+     * Notifies the observer when any value whose key starts with the prefix changes. Values are notified as saved,
+     * so objects are their serialized string, and removed values as null, including the ones removed by
+     * {@link #removeAllValues()}. The keys are indexed as for {@link #scope(String)}.
+     *
+     * @param prefix   prefix of the keys to be observed, empty for all the keys
+     * @param observer observer of the changes, only held weakly
+     * @return the subscription that keeps the observer registered, it has to be kept by the caller
+     * @see #observe(PreferenceKey, PreferenceObserver)
+     */
+    public Subscription observe(@NonNull String prefix, @NonNull PreferenceObserver<Object> observer) {
+        return observe(prefix, null, observer);
+    }
 
-        return objectSerializerUtility.deserializeObject(memoryObjectString);
+    /**
+     * @param prefix   prefix of the keys to be observed, empty for all the keys
+     * @param executor executor the observer is called on, null for the one of {@link Builder#observers(long, Executor)}
+     * @param observer observer of the changes, only held weakly
+     * @return the subscription that keeps the observer registered, it has to be kept by the caller
+     * @see #observe(String, PreferenceObserver)
+     */
+    public Subscription observe(@NonNull String prefix, @Nullable Executor executor, @NonNull PreferenceObserver<Object> observer) {
+        // The keys removed by a clear are listed from the index
+        getKeyIndex();
+        return getChangeDispatcher().add(null, prefix, observer, executor);
     }
 
     /**
-     * @return all the values saved in preferences
+     * @return all the values saved in preferences, including the ones waiting to be written in write-behind mode,
+     * without the deadlines of the values saved with a time to live
      */
     public Map<String, ?> getAllValues() {
-        return getSharedPreferences().getAll();
+        if (writeBehindBuffer == null)
+            return withoutDeadlines(getStore().getAll());
+        Map<String, Object> values = new HashMap<>(getStore().getAll());
+        writeBehindBuffer.overlay(values);
+        return withoutDeadlines(values);
+    }
+
+    /**
+     * @param values values by key
+     * @return the values without the ones whose key is reserved for a deadline, the same map if there are none
+     */
+    private static Map<String, ?> withoutDeadlines(Map<String, ?> values) {
+        Map<String, Object> result = null;
+        for (String key : values.keySet()) {
+            if (!ExpiryTable.isDeadlineKey(key))
+                continue;
+            if (result == null)
+                result = new HashMap<>(values);
+            result.remove(key);
+        }
+        return result == null ? values : result;
+    }
+
+    /**
+     * Reads the values of the keys all at once: writes made through the manager are either seen in full or not at
+     * all, even when they change many keys, while writes keep waiting only for the keys to be read.
+     * It costs as much as the number of keys, unlike {@link #getAllValues()}; objects are decoded when read.
+     * Use {@link PreferencesScope#snapshot()} for all the keys with a prefix.
+     *
+     * @param keys keys to be read
+     * @return an immutable view of the values of the keys, where the names are the keys
+     */
+    public PreferencesSnapshot snapshot(@NonNull String... keys) {
+        Map<String, Object> values = new HashMap<>(keys.length * 2);
+        commitLock.readLock().lock();
+        try {
+            for (String key : keys)
+                readRawValue(key, key, values);
+        } finally {
+            commitLock.readLock().unlock();
+        }
+        return new PreferencesSnapshot(this, "", values);
+    }
+
+    /**
+     * @param prefix prefix of the keys
+     * @param keys   live view of the indexed keys with the prefix, read under the same lock as the values
+     * @return an immutable view of the values of the keys, where the names are the keys without the prefix
+     * @see #snapshot(String...)
+     */
+    PreferencesSnapshot snapshot(String prefix, Iterable<String> keys) {
+        Map<String, Object> values = new HashMap<>();
+        commitLock.readLock().lock();
+        try {
+            for (String key : keys)
+                readRawValue(key, key.substring(prefix.length()), values);
+            // Keys added by the commits being saved are not in the index yet
+            for (String key : committingValues.keySet()) {
+                if (key.startsWith(prefix) && !ExpiryTable.isDeadlineKey(key))
+                    readRawValue(key, key.substring(prefix.length()), values);
+            }
+        } finally {
+            commitLock.readLock().unlock();
+        }
+        return new PreferencesSnapshot(this, prefix, values);
+    }
+
+    /**
+     * @param key key for the resource
+     * @return the value of any type as saved or waiting to be saved, null if not present or expired
+     */
+    Object getValue(String key) {
+        Object pending = getPendingValue(key);
+        if (pending != WriteBehindBuffer.NOT_PENDING)
+            return pending == PreferencesBatch.REMOVED ? null : pending;
+        return isExpired(key) ? null : store.get(key);
+    }
+
+    /**
+     * @param key    key for the resource
+     * @param name   name the value is put with
+     * @param values receives the value as saved, being saved or waiting to be saved, nothing if not present or expired
+     */
+    private void readRawValue(String key, String name, Map<String, Object> values) {
+        Object value = getPendingValue(key);
+        if (value == WriteBehindBuffer.NOT_PENDING)
+            value = committingClears == 0 && !isExpired(key) ? store.get(key) : null;
+        if (value != null && value != PreferencesBatch.REMOVED)
+            values.put(name, value);
+    }
+
+    /**
+     * Writes all the values to the stream in a compact binary format, one value at a time, for backups.
+     * Objects saved in a {@link BlobStore} are exported as their stubs, their files have to be copied separately.
+     * The deadlines of the values saved with a time to live are not exported.
+     *
+     * @param output destination of the values, it is flushed but not closed
+     * @return number of values exported
+     * @throws IOException if the output cannot be written
+     */
+    public int exportTo(@NonNull OutputStream output) throws IOException {
+        return PreferencesArchive.write(getAllValues(), output);
+    }
+
+    /**
+     * @param channel destination of the values, for example a {@link java.nio.channels.FileChannel}; it is not closed
+     * @return number of values exported
+     * @throws IOException if the channel cannot be written
+     * @see #exportTo(OutputStream)
+     */
+    public int exportTo(@NonNull WritableByteChannel channel) throws IOException {
+        return exportTo(Channels.newOutputStream(channel));
+    }
+
+    /**
+     * Reads values written by {@link #exportTo(OutputStream)} and saves all of them with a single commit.
+     * The whole export is read before anything is saved, so a corrupted or truncated export changes nothing.
+     *
+     * @param input source of the values, it is read until the end of the export but not closed
+     * @param mode  if the imported values are added to the saved ones or replace them
+     * @return if the imported values have been saved correctly
+     * @throws java.io.StreamCorruptedException if the input is not an export or is corrupted
+     * @throws IOException                      if the input cannot be read or is truncated
+     */
+    public boolean importFrom(@NonNull InputStream input, @NonNull ImportMode mode) throws IOException {
+        Map<String, Object> values = new LinkedHashMap<>();
+        PreferencesArchive.read(input, values);
+        // Exports written before the deadlines were hidden hold them too
+        for (Iterator<String> keys = values.keySet().iterator(); keys.hasNext(); ) {
+            if (ExpiryTable.isDeadlineKey(keys.next()))
+                keys.remove();
+        }
+        return commitBatch(values, mode == ImportMode.REPLACE, false, false);
+    }
+
+    /**
+     * @param channel source of the values, for example a {@link java.nio.channels.FileChannel}; it is not closed
+     * @param mode    if the imported values are added to the saved ones or replace them
+     * @return if the imported values have been saved correctly
+     * @throws IOException if the channel cannot be read, is truncated or does not contain an export
+     * @see #importFrom(InputStream, ImportMode)
+     */
+    public boolean importFrom(@NonNull ReadableByteChannel channel, @NonNull ImportMode mode) throws IOException {
+        return importFrom(Channels.newInputStream(channel), mode);
     }
 
     /**
@@ -149,7 +879,7 @@ final public class PreferencesManager {
      * @return if the value has been set correctly
      */
     public boolean setInt(@NonNull String key, int value) {
-        return getEditor().putInt(key, value).commit();
+        return write(key, value);
     }
 
     /**
@@ -158,7 +888,7 @@ final public class PreferencesManager {
      * @return if the value has been set correctly
      */
     public boolean setFloat(@NonNull String key, float value) {
-        return getEditor().putFloat(key, value).commit();
+        return write(key, value);
     }
 
     /**
@@ -167,7 +897,7 @@ final public class PreferencesManager {
      * @return if the value has been set correctly
      */
     public boolean setLong(@NonNull String key, long value) {
-        return getEditor().putLong(key, value).commit();
+        return write(key, value);
     }
 
     /**
@@ -178,7 +908,7 @@ final public class PreferencesManager {
     public boolean setString(@NonNull String key, String value) {
         if (value == null)
             return removeValue(key);
-        return getEditor().putString(key, value).commit();
+        return write(key, value);
     }
 
     /**
@@ -187,69 +917,1633 @@ final public class PreferencesManager {
      * @return if the value has been set correctly
      */
     public boolean setBoolean(@NonNull String key, boolean value) {
-        return getEditor().putBoolean(key, value).commit();
+        return write(key, value);
     }
 
     /**
-     * Saves a whole object state
+     * Saves the array packed, without boxing or Java serialization. Sorted arrays are saved as the differences
+     * between consecutive values, so sorted ids and timestamps take a few bytes each.
      *
      * @param key    key for the resource
-     * @param object value to be put or override
+     * @param values value to be put or override, null removes the value
      * @return if the value has been set correctly
-     * @throws IOException Any exception thrown by the underlying OutputStream.
      */
-    public boolean setObject(@NonNull String key, @NonNull Serializable object) throws IOException {
-        return setString(key, objectSerializerUtility.serializeObject(object));
+    public boolean setIntArray(@NonNull String key, int[] values) {
+        if (values == null)
+            return removeValue(key);
+        return writePacked(key, PackedArrays.encodeInts(values));
     }
 
     /**
-     * Sums the value to an integer
+     * Saves the array packed, without boxing or Java serialization. Sorted arrays are saved as the differences
+     * between consecutive values, so sorted ids and timestamps take a few bytes each.
      *
-     * @param key   key for the resource
-     * @param value value to be summed to the current value
-     * @return if the value has been updated correctly
+     * @param key    key for the resource
+     * @param values value to be put or override, null removes the value
+     * @return if the value has been set correctly
      */
-    public int updateInt(@NonNull String key, int value) {
-        int currentValue = getInt(key);
-        if (currentValue == DEFAULT_INTEGER_RETURN)
-            currentValue = 0;
-        getEditor().putInt(key, currentValue + value).commit();
-        return currentValue + value;
+    public boolean setLongArray(@NonNull String key, long[] values) {
+        if (values == null)
+            return removeValue(key);
+        return writePacked(key, PackedArrays.encodeLongs(values));
     }
 
     /**
-     * Sums 1 to the integer saved in memory and goes back to 1 if it exceeds the maxValue
+     * Saves the array packed, without boxing or Java serialization.
      *
-     * @param key key for the resource
-     * @return result of the shift, between 1 and maxValue included
+     * @param key    key for the resource
+     * @param values value to be put or override, null removes the value
+     * @return if the value has been set correctly
      */
-    public int shiftInt(@NonNull String key, int maxValue) {
-        int currentValue = getInt(key);
-        if (currentValue == DEFAULT_INTEGER_RETURN)
-            currentValue = 0;
-        int nextValue = (currentValue % maxValue) + 1;
-        setInt(key, nextValue);
-        return nextValue;
+    public boolean setFloatArray(@NonNull String key, float[] values) {
+        if (values == null)
+            return removeValue(key);
+        return writePacked(key, PackedArrays.encodeFloats(values));
     }
 
     /**
-     * Removes a value of any type from the phone preferences
+     * Saves the Strings in order, unlike {@link PreferenceStore.Editor#putStringSet(String, java.util.Set)}.
      *
-     * @param key key for the resource
-     * @return if the value has been removed correctly
+     * @param key    key for the resource
+     * @param values value to be put or override, it may contain null; null removes the value
+     * @return if the value has been set correctly
      */
-    public boolean removeValue(@NonNull String key) {
-        return getEditor().remove(key).commit();
+    public boolean setStringList(@NonNull String key, List<String> values) {
+        if (values == null)
+            return removeValue(key);
+        return writePacked(key, PackedArrays.encodeStrings(values));
     }
 
     /**
-     * Remove all saved values from the device's preferences
-     * Use with caution
-     *
-     * @return if all the values have been removed correctly
-     */
+     * @param key    key for the resource
+     * @param packed value to be saved
+     * @return if the value has been set correctly
+     */
+    private boolean writePacked(String key, PackedArrays.Output packed) {
+        String encoded = objectSerializerUtility.encodeToString(packed.array(), packed.size());
+        packed.recycle();
+        return write(key, encoded);
+    }
+
+    /**
+     * Saves a whole object state
+     *
+     * @param key    key for the resource
+     * @param object value to be put or override
+     * @return if the value has been set correctly
+     * @throws IOException Any exception thrown by the underlying OutputStream.
+     */
+    public boolean setObject(@NonNull String key, @NonNull Serializable object) throws IOException {
+        return setString(key, serializeObject(key, object));
+    }
+
+    /**
+     * Saves a whole object state with a codec, usually smaller and faster than Java serialization
+     *
+     * @param key    key for the resource
+     * @param object value to be put or override
+     * @param codec  codec used to encode the object
+     * @param <T>    type of the object
+     * @return if the value has been set correctly
+     * @throws IOException if the codec fails to encode the object.
+     */
+    public <T> boolean setObject(@NonNull String key, @NonNull T object, @NonNull PreferenceCodec<T> codec) throws IOException {
+        return setString(key, serializeObject(key, object, codec));
+    }
+
+    /**
+     * Saves the value together with its deadline in a single commit. Once the deadline has passed the value is
+     * read as missing, and it is removed by {@link #removeExpiredValues()}. Writing the key again without a time to
+     * live makes the value permanent. The deadline is saved under the key followed by {@code #expiresAt},
+     * keys with that suffix cannot be written and are left out of {@link #getAllValues()}, scopes and exports.
+     *
+     * @param key       key for the resource
+     * @param value     value to be put or override
+     * @param ttlMillis time to live of the value in milliseconds
+     * @return if the value has been set correctly
+     * @throws IllegalStateException    if expiring values are not enabled, see {@link Builder#expiringValues(long)}
+     * @throws IllegalArgumentException if the time to live is not positive
+     */
+    public boolean setInt(@NonNull String key, int value, long ttlMillis) {
+        return writeExpiring(key, value, ttlMillis);
+    }
+
+    /**
+     * @param key       key for the resource
+     * @param value     value to be put or override
+     * @param ttlMillis time to live of the value in milliseconds
+     * @return if the value has been set correctly
+     * @see #setInt(String, int, long)
+     */
+    public boolean setFloat(@NonNull String key, float value, long ttlMillis) {
+        return writeExpiring(key, value, ttlMillis);
+    }
+
+    /**
+     * @param key       key for the resource
+     * @param value     value to be put or override
+     * @param ttlMillis time to live of the value in milliseconds
+     * @return if the value has been set correctly
+     * @see #setInt(String, int, long)
+     */
+    public boolean setLong(@NonNull String key, long value, long ttlMillis) {
+        return writeExpiring(key, value, ttlMillis);
+    }
+
+    /**
+     * @param key       key for the resource
+     * @param value     value to be put or override
+     * @param ttlMillis time to live of the value in milliseconds
+     * @return if the value has been set correctly
+     * @see #setInt(String, int, long)
+     */
+    public boolean setBoolean(@NonNull String key, boolean value, long ttlMillis) {
+        return writeExpiring(key, value, ttlMillis);
+    }
+
+    /**
+     * @param key       key for the resource
+     * @param value     value to be put or override, null removes the value
+     * @param ttlMillis time to live of the value in milliseconds
+     * @return if the value has been set correctly
+     * @see #setInt(String, int, long)
+     */
+    public boolean setString(@NonNull String key, String value, long ttlMillis) {
+        if (value == null)
+            return removeValue(key);
+        return writeExpiring(key, value, ttlMillis);
+    }
+
+    /**
+     * Saves a whole object state that expires, for example a cached server response.
+     * Expired objects are not decoded when read.
+     *
+     * @param key       key for the resource
+     * @param object    value to be put or override
+     * @param ttlMillis time to live of the value in milliseconds
+     * @return if the value has been set correctly
+     * @throws IOException Any exception thrown by the underlying OutputStream.
+     * @see #setInt(String, int, long)
+     */
+    public boolean setObject(@NonNull String key, @NonNull Serializable object, long ttlMillis) throws IOException {
+        return writeExpiring(key, serializeObject(key, object), ttlMillis);
+    }
+
+    /**
+     * @param key       key for the resource
+     * @param object    value to be put or override
+     * @param codec     codec used to encode the object
+     * @param ttlMillis time to live of the value in milliseconds
+     * @param <T>       type of the object
+     * @return if the value has been set correctly
+     * @throws IOException if the codec fails to encode the object.
+     * @see #setObject(String, Serializable, long)
+     */
+    public <T> boolean setObject(@NonNull String key, @NonNull T object, @NonNull PreferenceCodec<T> codec, long ttlMillis) throws IOException {
+        return writeExpiring(key, serializeObject(key, object, codec), ttlMillis);
+    }
+
+    /**
+     * Removes all the values whose deadline has passed, with their deadlines, in a single commit applied in the
+     * background. Values written again meanwhile are kept. Called periodically when an interval is set with
+     * {@link Builder#expiringValues(long)}.
+     *
+     * @return number of values removed
+     * @throws IllegalStateException if expiring values are not enabled
+     */
+    public int removeExpiredValues() {
+        checkExpiringValues();
+        synchronized (expiryLock) {
+            Map<String, Long> expired = expiryTable.expiredDeadlines(System.currentTimeMillis());
+            if (expired.isEmpty())
+                return 0;
+            if (writeBehindBuffer != null)
+                writeBehindBuffer.flush();
+            return commitExpiredRemovals(expired);
+        }
+    }
+
+    /**
+     * @param key typed key of the resource
+     * @param <T> type of the value
+     * @return the value of the resource if present, the default value of the key otherwise
+     * @throws ClassCastException if the stored value has a different type than the key
+     */
+    public <T> T get(@NonNull PreferenceKey<T> key) throws ClassCastException {
+        return key.read(this);
+    }
+
+    /**
+     * @param key   typed key of the resource
+     * @param value value to be put or override, null removes the value
+     * @param <T>   type of the value
+     * @return if the value has been set correctly, false if an object could not be serialized
+     */
+    public <T> boolean set(@NonNull PreferenceKey<T> key, @Nullable T value) {
+        if (value == null)
+            return removeValue(key.getName());
+        return key.write(this, value);
+    }
+
+    /**
+     * @param key typed key of the resource
+     * @return the value of the resource if present, the default value of the key otherwise
+     * @throws ClassCastException if the stored value for the required key is not int
+     */
+    public int getInt(@NonNull PreferenceKey.IntKey key) throws ClassCastException {
+        return readInt(key.getName(), key.getDefaultInt());
+    }
+
+    /**
+     * @param key typed key of the resource
+     * @return the value of the resource if present, the default value of the key otherwise
+     * @throws ClassCastException if the stored value for the required key is not float
+     */
+    public float getFloat(@NonNull PreferenceKey.FloatKey key) throws ClassCastException {
+        return readFloat(key.getName(), key.getDefaultFloat());
+    }
+
+    /**
+     * @param key typed key of the resource
+     * @return the value of the resource if present, the default value of the key otherwise
+     * @throws ClassCastException if the stored value for the required key is not long
+     */
+    public long getLong(@NonNull PreferenceKey.LongKey key) throws ClassCastException {
+        return readLong(key.getName(), key.getDefaultLong());
+    }
+
+    /**
+     * @param key typed key of the resource
+     * @return the value of the resource if present, the default value of the key otherwise
+     * @throws ClassCastException if the stored value for the required key is not boolean
+     */
+    public boolean getBoolean(@NonNull PreferenceKey.BooleanKey key) throws ClassCastException {
+        return readBoolean(key.getName(), key.getDefaultBoolean());
+    }
+
+    /**
+     * @param key   typed key of the resource
+     * @param value value to be put or override
+     * @return if the value has been set correctly
+     */
+    public boolean setInt(@NonNull PreferenceKey.IntKey key, int value) {
+        return setInt(key.getName(), value);
+    }
+
+    /**
+     * @param key   typed key of the resource
+     * @param value value to be put or override
+     * @return if the value has been set correctly
+     */
+    public boolean setFloat(@NonNull PreferenceKey.FloatKey key, float value) {
+        return setFloat(key.getName(), value);
+    }
+
+    /**
+     * @param key   typed key of the resource
+     * @param value value to be put or override
+     * @return if the value has been set correctly
+     */
+    public boolean setLong(@NonNull PreferenceKey.LongKey key, long value) {
+        return setLong(key.getName(), value);
+    }
+
+    /**
+     * @param key   typed key of the resource
+     * @param value value to be put or override
+     * @return if the value has been set correctly
+     */
+    public boolean setBoolean(@NonNull PreferenceKey.BooleanKey key, boolean value) {
+        return setBoolean(key.getName(), value);
+    }
+
+    /**
+     * Like {@link #set(PreferenceKey, Object)}, but reports serialization errors.
+     *
+     * @param key    typed key of the resource
+     * @param object value to be put or override
+     * @param <T>    type of the object
+     * @return if the value has been set correctly
+     * @throws IOException if the object could not be serialized.
+     */
+    public <T> boolean setObject(@NonNull PreferenceKey.ObjectKey<T> key, @NonNull T object) throws IOException {
+        return key.writeObject(this, object);
+    }
+
+    /**
+     * @param key typed key of the resource
+     * @return if the value has been removed correctly
+     */
+    public boolean removeValue(@NonNull PreferenceKey<?> key) {
+        return removeValue(key.getName());
+    }
+
+    /**
+     * Sums the value to an integer.
+     * In write-behind mode the new value is queued and the method does not wait for it to be saved.
+     * Concurrent calls on the same key are serialized by a per-key lock, so no update is lost; a
+     * {@link #counter(String)} is cheaper for counters updated very often by many threads.
+     *
+     * @param key   key for the resource
+     * @param value value to be summed to the current value
+     * @return if the value has been updated correctly
+     */
+    public int updateInt(@NonNull String key, int value) {
+        synchronized (keyLocks.lockFor(key)) {
+            int currentValue = getInt(key);
+            if (currentValue == DEFAULT_INTEGER_RETURN)
+                currentValue = 0;
+            writeDeferred(key, currentValue + value);
+            return currentValue + value;
+        }
+    }
+
+    /**
+     * Sums 1 to the integer saved in memory and goes back to 1 if it exceeds the maxValue.
+     * In write-behind mode the new value is queued and the method does not wait for it to be saved.
+     * Concurrent calls on the same key are serialized by a per-key lock, so each one returns a different step.
+     *
+     * @param key key for the resource
+     * @return result of the shift, between 1 and maxValue included
+     */
+    public int shiftInt(@NonNull String key, int maxValue) {
+        synchronized (keyLocks.lockFor(key)) {
+            int currentValue = getInt(key);
+            if (currentValue == DEFAULT_INTEGER_RETURN)
+                currentValue = 0;
+            int nextValue = (currentValue % maxValue) + 1;
+            writeDeferred(key, nextValue);
+            return nextValue;
+        }
+    }
+
+    /**
+     * Sets the value only if the current one is equal to the expected value, atomically with respect to the other
+     * calls of this method, {@link #update(PreferenceKey, Updater)}, {@link #updateInt(String, int)} and
+     * {@link #shiftInt(String, int)} on the same key. Plain setters do not take the lock.
+     *
+     * @param key      typed key of the resource
+     * @param expected value expected to be saved, the default value of the key matches a missing value
+     * @param newValue value to be set, null removes the value
+     * @param <T>      type of the value
+     * @return if the value was the expected one and the new value has been saved correctly
+     * @throws ClassCastException if the stored value has a different type than the key
+     */
+    public <T> boolean compareAndSet(@NonNull PreferenceKey<T> key, @Nullable T expected, @Nullable T newValue) throws ClassCastException {
+        synchronized (keyLocks.lockFor(key.getName())) {
+            T current = get(key);
+            if (current == null ? expected != null : !current.equals(expected))
+                return false;
+            return set(key, newValue);
+        }
+    }
+
+    /**
+     * Replaces the value with the one computed by the updater, atomically with respect to the other updates of
+     * the same key, see {@link #compareAndSet(PreferenceKey, Object, Object)}. Updates of different keys run
+     * in parallel. The updater runs while holding the lock, so it should be short and must not update other keys.
+     *
+     * @param key     typed key of the resource
+     * @param updater computes the new value from the current one
+     * @param <T>     type of the value
+     * @return the new value, it may not have been saved if the write failed
+     * @throws ClassCastException if the stored value has a different type than the key
+     */
+    public <T> T update(@NonNull PreferenceKey<T> key, @NonNull Updater<T> updater) throws ClassCastException {
+        synchronized (keyLocks.lockFor(key.getName())) {
+            T newValue = updater.update(get(key));
+            set(key, newValue);
+            return newValue;
+        }
+    }
+
+    /**
+     * Removes a value of any type from the phone preferences
+     *
+     * @param key key for the resource
+     * @return if the value has been removed correctly
+     */
+    public boolean removeValue(@NonNull String key) {
+        return write(key, PreferencesBatch.REMOVED);
+    }
+
+    /**
+     * Remove all saved values from the device's preferences
+     * Use with caution
+     *
+     * @return if all the values have been removed correctly
+     */
     public boolean removeAllValues() {
-        return getEditor().clear().commit();
+        return commitBatch(Collections.<String, Object>emptyMap(), true, false, false);
+    }
+
+    /**
+     * Queues the value in write-behind mode, saves it immediately otherwise.
+     *
+     * @param key   key for the resource
+     * @param value value to be put or override
+     * @return a future completed with the result of the write
+     */
+    public Future<Boolean> setIntAsync(@NonNull String key, int value) {
+        return writeAsync(key, value);
+    }
+
+    /**
+     * Queues the value in write-behind mode, saves it immediately otherwise.
+     *
+     * @param key   key for the resource
+     * @param value value to be put or override
+     * @return a future completed with the result of the write
+     */
+    public Future<Boolean> setFloatAsync(@NonNull String key, float value) {
+        return writeAsync(key, value);
+    }
+
+    /**
+     * Queues the value in write-behind mode, saves it immediately otherwise.
+     *
+     * @param key   key for the resource
+     * @param value value to be put or override
+     * @return a future completed with the result of the write
+     */
+    public Future<Boolean> setLongAsync(@NonNull String key, long value) {
+        return writeAsync(key, value);
+    }
+
+    /**
+     * Queues the value in write-behind mode, saves it immediately otherwise.
+     *
+     * @param key   key for the resource
+     * @param value value to be put or override, null removes the value
+     * @return a future completed with the result of the write
+     */
+    public Future<Boolean> setStringAsync(@NonNull String key, String value) {
+        if (value == null)
+            return removeValueAsync(key);
+        return writeAsync(key, value);
+    }
+
+    /**
+     * Queues the value in write-behind mode, saves it immediately otherwise.
+     *
+     * @param key   key for the resource
+     * @param value value to be put or override
+     * @return a future completed with the result of the write
+     */
+    public Future<Boolean> setBooleanAsync(@NonNull String key, boolean value) {
+        return writeAsync(key, value);
+    }
+
+    /**
+     * Serializes the object on the calling thread, then queues it in write-behind mode or saves it immediately otherwise.
+     *
+     * @param key    key for the resource
+     * @param object value to be put or override
+     * @return a future completed with the result of the write
+     * @throws IOException Any exception thrown by the underlying OutputStream.
+     */
+    public Future<Boolean> setObjectAsync(@NonNull String key, @NonNull Serializable object) throws IOException {
+        return writeAsync(key, serializeObject(key, object));
+    }
+
+    /**
+     * Queues the removal in write-behind mode, removes the value immediately otherwise.
+     *
+     * @param key key for the resource
+     * @return a future completed with the result of the removal
+     */
+    public Future<Boolean> removeValueAsync(@NonNull String key) {
+        return writeAsync(key, PreferencesBatch.REMOVED);
+    }
+
+    /**
+     * Returns the counter for a key, creating it the first time. Counters are safe to update from many threads,
+     * unlike {@link #updateInt(String, int)} and {@link #shiftInt(String, int)}, and are saved in the background.
+     *
+     * @param key key for the resource
+     * @return the counter bound to the key, the same instance for the lifetime of this manager
+     * @throws ClassCastException if the stored value for the required key is not int
+     */
+    public PreferenceCounter counter(@NonNull String key) throws ClassCastException {
+        PreferenceCounter counter = counters.get(key);
+        if (counter != null)
+            return counter;
+        checkKey(key);
+        counter = new PreferenceCounter(this, key, counterPolicy, getCounterExecutor());
+        PreferenceCounter existing = counters.putIfAbsent(key, counter);
+        return existing == null ? counter : existing;
+    }
+
+    /**
+     * Saves the counters and all the writes queued in write-behind mode.
+     *
+     * @return if the queued values have been saved correctly, true if there was nothing to save
+     */
+    public boolean flush() {
+        boolean result = true;
+        for (PreferenceCounter counter : counters.values())
+            result &= counter.flush();
+        if (writeBehindBuffer != null)
+            result &= writeBehindBuffer.flush();
+        return result;
     }
 
+    /**
+     * Saves the counters and all the writes queued in write-behind mode and stops the background flushes.
+     * Values written after closing stay queued until {@link #flush()} is called.
+     */
+    @Override
+    public void close() {
+        for (PreferenceCounter counter : counters.values())
+            counter.flush();
+        synchronized (counters) {
+            if (counterExecutor != null && counterPolicy.getExecutor() == null)
+                counterExecutor.shutdown();
+        }
+        if (writeBehindBuffer != null)
+            writeBehindBuffer.close();
+        synchronized (this) {
+            if (observerTimer != null)
+                observerTimer.shutdown();
+            if (ownReadExecutor != null)
+                ownReadExecutor.shutdown();
+            if (blobCollector != null)
+                blobCollector.shutdown();
+        }
+        if (sweeper != null)
+            sweeper.shutdown();
+    }
+
+    /**
+     * Creates a batch of writes that share a single commit.
+     * Nothing is saved until {@link PreferencesBatch#commit()} or {@link PreferencesBatch#apply()} is called.
+     *
+     * @return an empty batch bound to these preferences
+     */
+    public PreferencesBatch batch() {
+        return new PreferencesBatch(this);
+    }
+
+    /**
+     * Runs the operation on a new batch and commits all of its writes at once.
+     *
+     * @param operation writes to be executed
+     * @return if all the values of the batch have been saved correctly
+     * @throws IOException if the operation fails to serialize an object, in which case nothing is written.
+     */
+    public boolean batch(@NonNull PreferencesBatch.Operation operation) throws IOException {
+        PreferencesBatch batch = batch();
+        operation.run(batch);
+        return batch.commit();
+    }
+
+    /**
+     * @param key   key for the resource
+     * @param value value to be written, {@link PreferencesBatch#REMOVED} to remove the key
+     * @return if the value has been written correctly
+     */
+    private boolean write(String key, Object value) {
+        long start = startTiming();
+        try {
+            if (writeBehindBuffer == null) {
+                checkKey(key);
+                resetCounter(key, value);
+                return commitChanges(Collections.singletonMap(key, value), false, false);
+            }
+            Future<Boolean> result = enqueue(key, value);
+            writeBehindBuffer.flush();
+            return getWriteResult(result);
+        } finally {
+            recordWrite(key, value, start);
+        }
+    }
+
+    /**
+     * @param key   key for the resource
+     * @param value value to be written, {@link PreferencesBatch#REMOVED} to remove the key
+     * @return a future completed with the result of the write
+     */
+    private Future<Boolean> writeAsync(String key, Object value) {
+        if (writeBehindBuffer == null)
+            return SettableFuture.completed(write(key, value));
+        long start = startTiming();
+        Future<Boolean> result = enqueue(key, value);
+        recordWrite(key, value, start);
+        return result;
+    }
+
+    /**
+     * Writes the value without waiting for it to be saved when in write-behind mode.
+     *
+     * @param key   key for the resource
+     * @param value value to be written
+     */
+    private void writeDeferred(String key, Object value) {
+        if (writeBehindBuffer == null) {
+            write(key, value);
+        } else {
+            long start = startTiming();
+            enqueue(key, value);
+            recordWrite(key, value, start);
+        }
+    }
+
+    /**
+     * Queues the write in the write-behind buffer, where it is already visible to the getters
+     *
+     * @param key   key for the resource
+     * @param value value to be written, {@link PreferencesBatch#REMOVED} to remove the key
+     * @return a future completed with the result of the commit that saves the value
+     */
+    private Future<Boolean> enqueue(String key, Object value) {
+        checkKey(key);
+        resetCounter(key, value);
+        Future<Boolean> result;
+        commitLock.writeLock().lock();
+        try {
+            result = writeBehindBuffer.enqueue(key, value);
+        } finally {
+            commitLock.writeLock().unlock();
+        }
+        indexKey(key);
+        return result;
+    }
+
+    /**
+     * Commits the value and its deadline together, after the writes queued in write-behind mode.
+     * Holds the expiry lock so a sweep cannot remove the value between reading the deadlines and committing.
+     *
+     * @param key       key for the resource
+     * @param value     value to be written
+     * @param ttlMillis time to live of the value in milliseconds
+     * @return if the value has been written correctly
+     */
+    private boolean writeExpiring(String key, Object value, long ttlMillis) {
+        checkExpiringValues();
+        checkKey(key);
+        if (ttlMillis <= 0)
+            throw new IllegalArgumentException("Time to live must be positive");
+        resetCounter(key, value);
+        long start = startTiming();
+        Map<String, Object> changes = new LinkedHashMap<>(4);
+        changes.put(key, value);
+        changes.put(ExpiryTable.deadlineKey(key), System.currentTimeMillis() + ttlMillis);
+        try {
+            synchronized (expiryLock) {
+                return commitBatch(changes, false, false, false);
+            }
+        } finally {
+            recordWrite(key, value, start);
+        }
+    }
+
+    /**
+     * @param key key to be written
+     * @throws IllegalArgumentException if the key is reserved for the deadline of a value
+     */
+    static void checkKey(String key) {
+        if (ExpiryTable.isDeadlineKey(key))
+            throw new IllegalArgumentException("Keys ending with " + ExpiryTable.SUFFIX + " are reserved: " + key);
+    }
+
+    /**
+     * Restarts the counter of the key, if any, from the value being written
+     *
+     * @param key   key being written
+     * @param value value being written, {@link PreferencesBatch#REMOVED} for a removal
+     */
+    private void resetCounter(String key, Object value) {
+        if (counters.isEmpty())
+            return;
+        PreferenceCounter counter = counters.get(key);
+        if (counter != null)
+            counter.onKeyWritten(value instanceof Integer ? (Integer) value : 0);
+    }
+
+    /**
+     * Restarts the counters of the keys being written, or of all the keys if all the values are being removed
+     *
+     * @param changes values being written by key
+     * @param clear   if all the values are being removed
+     */
+    private void resetCounters(Map<String, Object> changes, boolean clear) {
+        if (counters.isEmpty())
+            return;
+        if (!clear) {
+            for (Map.Entry<String, Object> change : changes.entrySet())
+                resetCounter(change.getKey(), change.getValue());
+            return;
+        }
+        for (PreferenceCounter counter : counters.values()) {
+            Object value = changes.get(counter.getKey());
+            counter.onKeyWritten(value instanceof Integer ? (Integer) value : 0);
+        }
+    }
+
+    /**
+     * @throws IllegalStateException if expiring values are not enabled
+     */
+    private void checkExpiringValues() {
+        if (expiryTable == null)
+            throw new IllegalStateException("Expiring values are not enabled, see Builder#expiringValues(long)");
+    }
+
+    /**
+     * @param key key for the resource
+     * @return if the saved value of the key has a deadline that has passed, the deadline being committed if any
+     */
+    private boolean isExpired(String key) {
+        if (expiryTable == null)
+            return false;
+        long now = System.currentTimeMillis();
+        if (!committingValues.isEmpty()) {
+            // Until the table is updated, a value saved again without a time to live keeps its previous deadline
+            Object deadline = committingValues.get(ExpiryTable.deadlineKey(key));
+            if (deadline != null)
+                return deadline instanceof Long && (Long) deadline <= now;
+        }
+        return expiryTable.isExpired(key, now);
+    }
+
+    /**
+     * Starts removing the expired values periodically, if an interval has been set
+     */
+    private void startSweeper() {
+        if (expiryTable == null || sweepIntervalMillis <= 0)
+            return;
+        sweeper = BackgroundExecutors.newSingleThreadScheduledExecutor("PreferencesSweeper");
+        sweeper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                removeExpiredValues();
+            }
+        }, sweepIntervalMillis, sweepIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param key    key for the resource
+     * @param object value to be serialized
+     * @return the serialized object
+     * @throws IOException Any exception thrown by the underlying OutputStream.
+     */
+    String serializeObject(String key, Serializable object) throws IOException {
+        String serialized = blobStore == null
+                ? objectSerializerUtility.serializeObject(object)
+                : serializeToBlobStore(object, JavaSerializationCodec.INSTANCE);
+        if (metrics != null)
+            metrics.onObjectSerialized(key, serialized.length());
+        return serialized;
+    }
+
+    /**
+     * @param key    key for the resource
+     * @param object value to be encoded
+     * @param codec  codec used to encode the object
+     * @param <T>    type of the object
+     * @return the encoded object
+     * @throws IOException if the codec fails to encode the object.
+     */
+    <T> String serializeObject(String key, T object, PreferenceCodec<T> codec) throws IOException {
+        String serialized = blobStore == null
+                ? objectSerializerUtility.serializeObject(object, codec)
+                : serializeToBlobStore(object, codec);
+        if (metrics != null)
+            metrics.onObjectSerialized(key, serialized.length());
+        return serialized;
+    }
+
+    /**
+     * @param object value to be encoded
+     * @param codec  codec used to encode the object
+     * @param <T>    type of the object
+     * @return the stub of a new blob if the encoded object is larger than the blob threshold, the encoded object otherwise
+     * @throws IOException if the codec fails to encode the object or the blob cannot be written.
+     */
+    private <T> String serializeToBlobStore(T object, PreferenceCodec<T> codec) throws IOException {
+        byte[] bytes = objectSerializerUtility.encode(object, codec);
+        return bytes.length > blobThreshold ? blobStore.write(bytes) : objectSerializerUtility.encodeToString(bytes);
+    }
+
+    /**
+     * @param changes keys being written
+     * @return if any of the keys currently holds a blob stub, whose blob may become unreferenced
+     */
+    private boolean replacesBlob(Map<String, Object> changes) {
+        for (String key : changes.keySet()) {
+            try {
+                if (BlobStore.isStub(store.getString(key, null)))
+                    return true;
+            } catch (ClassCastException e) {
+                // Not an object
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Collects the blobs released by a commit on a background thread, reading all the values and listing the blobs
+     * is too slow for the committing thread. The commits made before the collection starts share it.
+     */
+    private void scheduleBlobGarbageCollection() {
+        if (!blobCollectionScheduled.compareAndSet(false, true))
+            return;
+        ExecutorService executor;
+        synchronized (this) {
+            if (blobCollector == null)
+                blobCollector = BackgroundExecutors.newFixedThreadPool("PreferencesBlobCollector", 1);
+            executor = blobCollector;
+        }
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    blobCollectionScheduled.set(false);
+                    collectBlobGarbage();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Closed, the blobs are deleted by the next collection
+            blobCollectionScheduled.set(false);
+        }
+    }
+
+    /**
+     * Waits for the blob collections scheduled so far, used by tests
+     *
+     * @throws InterruptedException if interrupted while waiting
+     * @throws ExecutionException   never, the task waited for does nothing
+     */
+    void awaitBlobGarbageCollection() throws InterruptedException, ExecutionException {
+        ExecutorService executor;
+        synchronized (this) {
+            executor = blobCollector;
+        }
+        if (executor != null)
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                }
+            }).get();
+    }
+
+    /**
+     * @return the current time if metrics are enabled, 0 otherwise
+     */
+    private long startTiming() {
+        return metrics == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * @param operation operation that has been executed
+     * @param key       key read or written, null for commits
+     * @param start     value returned by {@link #startTiming()} before the operation
+     */
+    private void recordOperation(PreferencesMetrics.Operation operation, String key, long start) {
+        if (metrics != null)
+            metrics.onOperation(operation, key, System.nanoTime() - start);
+    }
+
+    /**
+     * @param key   key written
+     * @param value value written, {@link PreferencesBatch#REMOVED} for removals
+     * @param start value returned by {@link #startTiming()} before the write
+     */
+    private void recordWrite(String key, Object value, long start) {
+        if (metrics != null)
+            recordOperation(value == PreferencesBatch.REMOVED ? PreferencesMetrics.Operation.REMOVE : PreferencesMetrics.Operation.SET, key, start);
+    }
+
+    /**
+     * @return the executor of the counter policy, or a private one created on first use
+     */
+    private ScheduledExecutorService getCounterExecutor() {
+        if (counterPolicy.getExecutor() != null)
+            return counterPolicy.getExecutor();
+        synchronized (counters) {
+            if (counterExecutor == null)
+                counterExecutor = BackgroundExecutors.newSingleThreadScheduledExecutor("PreferencesCounter");
+            return counterExecutor;
+        }
+    }
+
+    /**
+     * Waits for the preferences to be loaded and reads the hot keys, values that cannot be read are skipped.
+     *
+     * @param keys       typed keys to be read
+     * @param objectKeys keys of objects to be decoded
+     */
+    private void warmUp(List<PreferenceKey<?>> keys, List<String> objectKeys) {
+        store.contains("");
+        for (PreferenceKey<?> key : keys) {
+            try {
+                get(key);
+            } catch (ClassCastException e) {
+                // Saved with another type, it fails again when read
+            }
+        }
+        for (String key : objectKeys) {
+            try {
+                getObject(key);
+            } catch (ClassCastException e) {
+                // Saved with another type, it fails again when read
+            }
+        }
+    }
+
+    /**
+     * @return the index of the keys, created on first use
+     */
+    private KeyIndex getKeyIndex() {
+        KeyIndex index = keyIndex;
+        if (index != null)
+            return index;
+        synchronized (this) {
+            if (keyIndex == null)
+                keyIndex = new KeyIndex(this, store);
+            return keyIndex;
+        }
+    }
+
+    /**
+     * @return the reader of the objects decoded in the background, created on first use with its own threads
+     * unless an executor has been configured
+     */
+    private AsyncObjectReader getAsyncObjectReader() {
+        AsyncObjectReader reader = asyncObjectReader;
+        if (reader != null)
+            return reader;
+        synchronized (this) {
+            if (asyncObjectReader == null) {
+                Executor executor = readExecutor;
+                if (executor == null) {
+                    ownReadExecutor = BackgroundExecutors.newFixedThreadPool("PreferencesReader",
+                            Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+                    executor = ownReadExecutor;
+                }
+                asyncObjectReader = new AsyncObjectReader(this, executor);
+            }
+            return asyncObjectReader;
+        }
+    }
+
+    /**
+     * @return the dispatcher of the observers, created on first use
+     */
+    private ChangeDispatcher getChangeDispatcher() {
+        ChangeDispatcher dispatcher = changeDispatcher;
+        if (dispatcher != null)
+            return dispatcher;
+        synchronized (this) {
+            if (changeDispatcher == null) {
+                observerTimer = BackgroundExecutors.newSingleThreadScheduledExecutor("PreferencesObserver");
+                changeDispatcher = new ChangeDispatcher(this, store, observerWindowMillis, observerExecutor, observerTimer);
+            }
+            return changeDispatcher;
+        }
+    }
+
+    /**
+     * Updates the index of the keys, if used, after a write has become visible to the getters
+     *
+     * @param key key written or removed
+     */
+    private void indexKey(String key) {
+        KeyIndex index = keyIndex;
+        if (index != null)
+            index.refresh(key);
+    }
+
+    /**
+     * Values being saved are read from the commit, so a value is read with the deadline it is committed with
+     *
+     * @param key key for the resource
+     * @return the value waiting to be saved in write-behind mode or being saved by a commit,
+     * {@link WriteBehindBuffer#NOT_PENDING} if none
+     */
+    private Object getPendingValue(String key) {
+        if (writeBehindBuffer != null) {
+            Object pending = writeBehindBuffer.peek(key);
+            if (pending != WriteBehindBuffer.NOT_PENDING)
+                return pending;
+        }
+        Object committing = committingValues.get(key);
+        return committing == null ? WriteBehindBuffer.NOT_PENDING : committing;
+    }
+
+    /**
+     * @param result future of a write that has already been flushed
+     * @return the result of the write, false if it failed
+     */
+    private static boolean getWriteResult(Future<Boolean> result) {
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Commits the writes of a batch after the ones queued in write-behind mode, so they are not overwritten.
+     *
+     * @param changes values to be written by key, {@link PreferencesBatch#REMOVED} removes the key
+     * @param clear   if all the values have to be removed before writing the changes
+     * @param async   if the changes are applied to disk asynchronously
+     * @param force   if unchanged values are written anyway
+     * @return if the changes have been written correctly, always true when async
+     */
+    boolean commitBatch(Map<String, Object> changes, boolean clear, boolean async, boolean force) {
+        resetCounters(changes, clear);
+        if (writeBehindBuffer != null)
+            writeBehindBuffer.flush();
+        return commitChanges(changes, clear, async, force);
+    }
+
+    /**
+     * Writes a group of changes with a single editor.
+     *
+     * @param changes values to be written by key, {@link PreferencesBatch#REMOVED} removes the key
+     * @param clear   if all the values have to be removed before writing the changes
+     * @param async   if the changes are applied to disk asynchronously
+     * @return if the changes have been written correctly, always true when async
+     */
+    boolean commitChanges(Map<String, Object> changes, boolean clear, boolean async) {
+        return commitChanges(changes, clear, async, false);
+    }
+
+    /**
+     * Writes a group of changes with a single editor, skipping the values that are already saved unless forced.
+     *
+     * @param changes values to be written by key, {@link PreferencesBatch#REMOVED} removes the key
+     * @param clear   if all the values have to be removed before writing the changes
+     * @param async   if the changes are applied to disk asynchronously
+     * @param force   if unchanged values are written anyway
+     * @return if the changes have been written correctly, always true when async
+     */
+    boolean commitChanges(Map<String, Object> changes, boolean clear, boolean async, boolean force) {
+        if (expiryTable != null && !clear)
+            changes = expiryTable.withStaleDeadlinesRemoved(changes);
+        if (elideUnchangedWrites && !clear && !force) {
+            changes = withoutUnchangedValues(changes);
+            if (changes.isEmpty())
+                return true;
+        }
+        long start = startTiming();
+        boolean releasesBlobs = blobStore != null && (clear || replacesBlob(changes));
+        invalidateCachedObjects(changes, clear);
+        ChangeDispatcher dispatcher = changeDispatcher;
+        List<String> clearedKeys = clear && dispatcher != null ? keysObservedByPrefix(dispatcher) : null;
+        boolean result;
+        publishCommit(changes, clear);
+        try {
+            PreferenceStore.Editor editor = getEditor();
+            if (clear)
+                editor.clear();
+            for (Map.Entry<String, Object> change : changes.entrySet())
+                putValue(editor, change.getKey(), change.getValue());
+            if (async) {
+                editor.apply();
+                result = true;
+            } else {
+                result = editor.commit();
+            }
+            if (expiryTable != null && result) {
+                if (clear)
+                    expiryTable.onCleared();
+                expiryTable.onCommitted(changes);
+            }
+            refreshIndex(changes, clear);
+        } finally {
+            retractCommit(changes, clear);
+        }
+        if (metrics != null) {
+            recordOperation(PreferencesMetrics.Operation.COMMIT, null, start);
+            metrics.onCommit(result, changes.size());
+        }
+        if (clearedKeys != null) {
+            // Editor.clear() is only notified to the listeners since Android 11, and without the keys
+            dispatcher.onCleared(clearedKeys);
+        }
+        if (releasesBlobs && result)
+            scheduleBlobGarbageCollection();
+        return result;
+    }
+
+    /**
+     * Removes the expired values that have not been written again since their deadlines were read. Plain writes do
+     * not hold the expiry lock, so the deadlines are checked again while holding the commit lock for writing, when
+     * no commit can start publishing the same keys, and the removals are applied to the store before releasing it,
+     * so any later write of the keys is saved after them.
+     *
+     * @param expired deadlines that have passed by key
+     * @return number of values removed
+     */
+    private int commitExpiredRemovals(Map<String, Long> expired) {
+        long start = startTiming();
+        Map<String, Object> changes = new LinkedHashMap<>();
+        boolean releasesBlobs;
+        commitLock.writeLock().lock();
+        try {
+            for (Map.Entry<String, Long> deadline : expired.entrySet()) {
+                String key = deadline.getKey();
+                String deadlineKey = ExpiryTable.deadlineKey(key);
+                if (getPendingValue(key) != WriteBehindBuffer.NOT_PENDING
+                        || getPendingValue(deadlineKey) != WriteBehindBuffer.NOT_PENDING
+                        || !expiryTable.hasDeadline(key, deadline.getValue()))
+                    continue;
+                changes.put(key, PreferencesBatch.REMOVED);
+                changes.put(deadlineKey, PreferencesBatch.REMOVED);
+            }
+            if (changes.isEmpty())
+                return 0;
+            releasesBlobs = blobStore != null && replacesBlob(changes);
+            invalidateCachedObjects(changes, false);
+            PreferenceStore.Editor editor = getEditor();
+            for (String key : changes.keySet())
+                editor.remove(key);
+            // Expired values are read as missing until the removals are saved, so they do not need to wait for it
+            editor.apply();
+        } finally {
+            commitLock.writeLock().unlock();
+        }
+        expiryTable.onCommitted(changes);
+        refreshIndex(changes, false);
+        resetCounters(changes, false);
+        if (metrics != null) {
+            recordOperation(PreferencesMetrics.Operation.COMMIT, null, start);
+            metrics.onCommit(true, changes.size());
+        }
+        if (releasesBlobs)
+            scheduleBlobGarbageCollection();
+        return changes.size() / 2;
+    }
+
+    /**
+     * Updates the index of the keys, if used, after a commit
+     *
+     * @param changes keys written or removed
+     * @param clear   if all the values have been removed
+     */
+    private void refreshIndex(Map<String, Object> changes, boolean clear) {
+        KeyIndex index = keyIndex;
+        if (index == null)
+            return;
+        if (clear) {
+            index.rebuild();
+        } else {
+            for (String key : changes.keySet())
+                index.refresh(key);
+        }
+    }
+
+    /**
+     * @param dispatcher dispatcher of the observers
+     * @return the saved keys starting with a prefix observed by the dispatcher
+     */
+    private List<String> keysObservedByPrefix(ChangeDispatcher dispatcher) {
+        List<String> keys = new ArrayList<>();
+        for (String prefix : dispatcher.observedPrefixes())
+            keys.addAll(getKeyIndex().withPrefix(prefix));
+        return keys;
+    }
+
+    /**
+     * Makes the changes visible to the snapshots all at once, before the store starts saving them.
+     * Only the write lock is held, so snapshots and write-behind writes never wait for the disk.
+     *
+     * @param changes values to be written by key, {@link PreferencesBatch#REMOVED} for a removed key
+     * @param clear   if all the values are removed before writing the changes
+     */
+    private void publishCommit(Map<String, Object> changes, boolean clear) {
+        commitLock.writeLock().lock();
+        try {
+            if (clear)
+                committingClears++;
+            committingValues.putAll(changes);
+        } finally {
+            commitLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the changes published by {@link #publishCommit(Map, boolean)} once the store holds them,
+     * unless a later commit has published another value for the same key
+     *
+     * @param changes values written by key
+     * @param clear   if all the values have been removed
+     */
+    private void retractCommit(Map<String, Object> changes, boolean clear) {
+        commitLock.writeLock().lock();
+        try {
+            if (clear)
+                committingClears--;
+            for (Map.Entry<String, Object> change : changes.entrySet())
+                committingValues.remove(change.getKey(), change.getValue());
+        } finally {
+            commitLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param changes values to be written by key
+     * @return the changes without the values that are already saved, the same map if all of them are different
+     */
+    private Map<String, Object> withoutUnchangedValues(Map<String, Object> changes) {
+        List<String> unchanged = null;
+        for (Map.Entry<String, Object> change : changes.entrySet()) {
+            if (isSaved(change.getKey(), change.getValue())) {
+                if (unchanged == null)
+                    unchanged = new ArrayList<>();
+                unchanged.add(change.getKey());
+            }
+        }
+        if (unchanged == null)
+            return changes;
+        elidedWrites.addAndGet(unchanged.size());
+        if (unchanged.size() == changes.size())
+            return Collections.emptyMap();
+        Map<String, Object> changed = new LinkedHashMap<>(changes);
+        for (String key : unchanged)
+            changed.remove(key);
+        return changed;
+    }
+
+    /**
+     * Compares the value with the saved one without decoding anything: objects are compared as their serialized
+     * text, where blobs are stubs holding the digest of their content.
+     *
+     * @param key   key for the resource
+     * @param value boxed value, {@link PreferencesBatch#REMOVED} for a removed key
+     * @return if the value is already saved for the key
+     */
+    private boolean isSaved(String key, Object value) {
+        try {
+            if (value instanceof String)
+                return value.equals(store.getString(key, null));
+            if (!store.contains(key))
+                return value == PreferencesBatch.REMOVED;
+            if (value instanceof Integer)
+                return store.getInt(key, 0) == (Integer) value;
+            if (value instanceof Long)
+                return store.getLong(key, 0L) == (Long) value;
+            if (value instanceof Float)
+                return Float.floatToIntBits(store.getFloat(key, 0f)) == Float.floatToIntBits((Float) value);
+            if (value instanceof Boolean)
+                return store.getBoolean(key, false) == (Boolean) value;
+            if (value instanceof Set)
+                return value.equals(store.getStringSet(key, null));
+            return false;
+        } catch (ClassCastException e) {
+            // Saved with another type
+            return false;
+        }
+    }
+
+    /**
+     * @param changes keys being written
+     * @param clear   if all the values are being removed
+     */
+    private void invalidateCachedObjects(Map<String, Object> changes, boolean clear) {
+        if (objectCache == null)
+            return;
+        if (clear)
+            objectCache.invalidateAll();
+        for (String key : changes.keySet())
+            objectCache.invalidate(key);
+    }
+
+    /**
+     * @param editor editor to write to
+     * @param key    key for the resource
+     * @param value  boxed value, its class decides the type it is saved as
+     * @throws IllegalArgumentException if the type of the value cannot be saved in preferences
+     */
+    @SuppressWarnings("unchecked")
+    private static void putValue(PreferenceStore.Editor editor, String key, Object value) {
+        if (value == PreferencesBatch.REMOVED)
+            editor.remove(key);
+        else if (value instanceof Integer)
+            editor.putInt(key, (Integer) value);
+        else if (value instanceof Float)
+            editor.putFloat(key, (Float) value);
+        else if (value instanceof Long)
+            editor.putLong(key, (Long) value);
+        else if (value instanceof String)
+            editor.putString(key, (String) value);
+        else if (value instanceof Boolean)
+            editor.putBoolean(key, (Boolean) value);
+        else if (value instanceof Set)
+            editor.putStringSet(key, (Set<String>) value);
+        else
+            throw new IllegalArgumentException("Cannot save a value of type " + value.getClass().getName());
+    }
+
+    /**
+     * Notified when a manager started with {@link Builder#preload(Executor, PreloadCallback)} is ready
+     */
+    public interface PreloadCallback {
+
+        /**
+         * @param preferencesManager manager with its preferences loaded and its hot keys read
+         */
+        void onPreloaded(@NonNull PreferencesManager preferencesManager);
+    }
+
+    /**
+     * Computes the new value of a key in {@link #update(PreferenceKey, Updater)}
+     *
+     * @param <T> type of the value
+     */
+    public interface Updater<T> {
+
+        /**
+         * @param current the saved value, the default value of the key if missing
+         * @return the value to be saved, null removes it
+         */
+        @Nullable
+        T update(@Nullable T current);
+    }
+
+    /**
+     * Configuration for a {@link PreferencesManager} with optional features
+     */
+    public static final class Builder {
+
+        private final Context context;
+        private PreferenceStore store;
+        private ObjectSerializerUtility objectSerializerUtility;
+        private WriteBehindPolicy writeBehindPolicy;
+        private ObjectCache objectCache;
+        private WriteBehindPolicy counterPolicy;
+        private PreferencesMetrics metrics;
+        private int compressionThreshold = -1;
+        private BlobStore blobStore;
+        private int blobThreshold;
+        private final List<PreferenceKey<?>> warmUpKeys = new ArrayList<>();
+        private final List<String> warmUpObjectKeys = new ArrayList<>();
+        private long observerWindowMillis = DEFAULT_OBSERVER_WINDOW_MILLIS;
+        private Executor observerExecutor;
+        private boolean elideUnchangedWrites = true;
+        private int lockStripes = DEFAULT_LOCK_STRIPES;
+        private boolean expiringValues;
+        private long sweepIntervalMillis;
+        private Executor readExecutor;
+
+        /**
+         * The default shared preferences are opened by {@link #build()}, so on the preloading thread
+         * when {@link #preload(Executor, PreloadCallback)} is used.
+         *
+         * @param ctx Current application context, used to set default shared preferences
+         */
+        public Builder(Context ctx) {
+            this.context = ctx;
+        }
+
+        /**
+         * @param sharedPrefs usually it's {@code PreferencesManager.getDefaultSharedPreferences(context)}
+         */
+        public Builder(SharedPreferences sharedPrefs) {
+            this(new SharedPreferencesStore(sharedPrefs));
+        }
+
+        /**
+         * @param store storage of the values, for example a {@link FilePreferenceStore} to run on a plain JVM
+         */
+        public Builder(PreferenceStore store) {
+            this.context = null;
+            this.store = store;
+        }
+
+        /**
+         * @param objectSerializerUtility class used to serialize and de-serialize objects.
+         * @return this builder
+         */
+        public Builder objectSerializer(ObjectSerializerUtility objectSerializerUtility) {
+            this.objectSerializerUtility = objectSerializerUtility;
+            return this;
+        }
+
+        /**
+         * Queues writes in memory and saves them in the background, keeping only the last write for each key.
+         * Setters still wait for their value to be saved, use the {@code set*Async} methods not to wait.
+         * Getters always return the last written value, even if it has not been saved yet.
+         *
+         * @param writeBehindPolicy thresholds for the background saves, null to save every write immediately.
+         * @return this builder
+         */
+        public Builder writeBehind(@Nullable WriteBehindPolicy writeBehindPolicy) {
+            this.writeBehindPolicy = writeBehindPolicy;
+            return this;
+        }
+
+        /**
+         * Keeps the objects returned by {@link #getObject(String)} in memory, so they are de-serialized only once.
+         * Entries are invalidated by the writes of the manager and by any other editor of the same preferences.
+         *
+         * @param objectCache cache to be used, null not to cache objects.
+         * @return this builder
+         */
+        public Builder objectCache(@Nullable ObjectCache objectCache) {
+            this.objectCache = objectCache;
+            return this;
+        }
+
+        /**
+         * @param counterPolicy when the values of the {@link PreferenceCounter}s are saved, null for the default
+         *                      {@link WriteBehindPolicy#WriteBehindPolicy()}.
+         * @return this builder
+         */
+        public Builder counterPolicy(@Nullable WriteBehindPolicy counterPolicy) {
+            this.counterPolicy = counterPolicy;
+            return this;
+        }
+
+        /**
+         * Reports the duration of reads, writes and commits, the size of serialized objects and the values
+         * that cannot be de-serialized. Without metrics the manager does not measure anything.
+         *
+         * @param metrics receiver of the measurements, for example a {@link PreferencesMetricsRegistry}; null to disable them.
+         * @return this builder
+         */
+        public Builder metrics(@Nullable PreferencesMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * Compresses the serialized objects larger than the threshold, objects saved uncompressed are still read.
+         * Sets the threshold of the {@link ObjectSerializerUtility} of the manager.
+         *
+         * @param thresholdBytes serialized objects larger than this are compressed,
+         *                       {@link ObjectSerializerUtility#COMPRESSION_DISABLED} not to compress.
+         * @return this builder
+         * @throws IllegalArgumentException if the threshold is negative
+         */
+        public Builder compressObjectsAbove(int thresholdBytes) {
+            if (thresholdBytes < 0)
+                throw new IllegalArgumentException("Compression threshold cannot be negative");
+            this.compressionThreshold = thresholdBytes;
+            return this;
+        }
+
+        /**
+         * Saves the objects larger than the threshold in their own files, preferences only hold a short stub so
+         * they are not rewritten by every commit. Blobs are read when {@link #getObject(String)} is called.
+         *
+         * @param blobStore      store of the large objects, null to keep every object in preferences.
+         * @param thresholdBytes serialized objects larger than this are saved in the blob store.
+         * @return this builder
+         */
+        public Builder blobStore(@Nullable BlobStore blobStore, int thresholdBytes) {
+            this.blobStore = blobStore;
+            this.blobThreshold = thresholdBytes;
+            return this;
+        }
+
+        /**
+         * Skips the writes of values equal to the saved ones, so repeating the same value does not rewrite the file
+         * nor notify the listeners. Enabled by default, {@link PreferencesBatch#force()} writes a single batch anyway.
+         *
+         * @param elideUnchangedWrites false to commit every write, even when nothing changes
+         * @return this builder
+         */
+        public Builder elideUnchangedWrites(boolean elideUnchangedWrites) {
+            this.elideUnchangedWrites = elideUnchangedWrites;
+            return this;
+        }
+
+        /**
+         * @param lockStripes number of locks shared by the keys in {@link #update(PreferenceKey, Updater)} and
+         *                    {@link #compareAndSet(PreferenceKey, Object, Object)}, rounded up to a power of two;
+         *                    {@value DEFAULT_LOCK_STRIPES} by default. More stripes let more keys update in parallel.
+         * @return this builder
+         * @throws IllegalArgumentException if the number is not positive
+         */
+        public Builder lockStripes(int lockStripes) {
+            if (lockStripes <= 0)
+                throw new IllegalArgumentException("Lock stripes must be positive");
+            this.lockStripes = lockStripes;
+            return this;
+        }
+
+        /**
+         * @param executor executor the objects of {@link #getObjectAsync(String)} are decoded on, null for a pool
+         *                 of background threads created on first use, one per processor but the calling one
+         * @return this builder
+         */
+        public Builder readExecutor(@Nullable Executor executor) {
+            this.readExecutor = executor;
+            return this;
+        }
+
+        /**
+         * Enables the setters with a time to live, such as {@link #setObject(String, Serializable, long)}.
+         * Reads then check the deadline of the key, the deadlines are loaded with a single pass over the
+         * preferences on first use.
+         *
+         * @param sweepIntervalMillis interval between the removals of the expired values in the background,
+         *                            0 to remove them only when {@link #removeExpiredValues()} is called
+         * @return this builder
+         * @throws IllegalArgumentException if the interval is negative
+         */
+        public Builder expiringValues(long sweepIntervalMillis) {
+            if (sweepIntervalMillis < 0)
+                throw new IllegalArgumentException("Sweep interval cannot be negative");
+            this.expiringValues = true;
+            this.sweepIntervalMillis = sweepIntervalMillis;
+            return this;
+        }
+
+        /**
+         * Configures how {@link #observe(PreferenceKey, PreferenceObserver)} notifies the changes.
+         *
+         * @param windowMillis changes of the same key within this time are notified once,
+         *                     {@value DEFAULT_OBSERVER_WINDOW_MILLIS} ms by default.
+         * @param executor     executor the observers are called on when they do not choose one, for example the
+         *                     main thread; null to call them on the background thread that reads the values.
+         * @return this builder
+         * @throws IllegalArgumentException if the window is negative
+         */
+        public Builder observers(long windowMillis, @Nullable Executor executor) {
+            if (windowMillis < 0)
+                throw new IllegalArgumentException("Observer window cannot be negative");
+            this.observerWindowMillis = windowMillis;
+            this.observerExecutor = executor;
+            return this;
+        }
+
+        /**
+         * Keys read by {@link #preload(Executor, PreloadCallback)} before the manager is returned,
+         * objects of {@link PreferenceKey.ObjectKey}s are decoded into the value slot of the key.
+         *
+         * @param keys keys read at startup
+         * @return this builder
+         */
+        public Builder warmUp(@NonNull PreferenceKey<?>... keys) {
+            Collections.addAll(warmUpKeys, keys);
+            return this;
+        }
+
+        /**
+         * Objects decoded by {@link #preload(Executor, PreloadCallback)} before the manager is returned,
+         * useful together with an {@link #objectCache(ObjectCache)} that keeps them decoded.
+         *
+         * @param keys keys of objects read at startup
+         * @return this builder
+         */
+        public Builder warmUpObjects(@NonNull String... keys) {
+            Collections.addAll(warmUpObjectKeys, keys);
+            return this;
+        }
+
+        /**
+         * Builds the manager in the background, waits for the preferences to be loaded and reads the keys
+         * declared with {@link #warmUp(PreferenceKey[])} and {@link #warmUpObjects(String...)}, so the first
+         * read on the main thread does not wait for the file to be parsed.
+         *
+         * @param executor executor the manager is built on, null for a new background thread.
+         * @param callback called on the background thread when the manager is ready, null if not needed.
+         *                 It is not called if the build fails, the future holds the failure in that case.
+         * @return a future completed with the manager when it is ready
+         */
+        public Future<PreferencesManager> preload(@Nullable Executor executor, @Nullable final PreloadCallback callback) {
+            final SettableFuture<PreferencesManager> result = new SettableFuture<>();
+            Runnable task = new Runnable() {
+                @Override
+                public void run() {
+                    PreferencesManager preferencesManager;
+                    try {
+                        preferencesManager = build();
+                        preferencesManager.warmUp(warmUpKeys, warmUpObjectKeys);
+                    } catch (RuntimeException | Error e) {
+                        result.setException(e);
+                        return;
+                    }
+                    result.set(preferencesManager);
+                    if (callback != null)
+                        callback.onPreloaded(preferencesManager);
+                }
+            };
+            if (executor == null)
+                BackgroundExecutors.runOnNewThread("PreferencesPreload", task);
+            else
+                executor.execute(task);
+            return result;
+        }
+
+        /**
+         * @return a new manager with this configuration
+         */
+        public PreferencesManager build() {
+            if (store == null)
+                store = new SharedPreferencesStore(PreferenceManager.getDefaultSharedPreferences(context));
+            if (objectSerializerUtility == null)
+                objectSerializerUtility = new ObjectSerializerUtility();
+            if (compressionThreshold >= 0)
+                objectSerializerUtility.setCompressionThreshold(compressionThreshold);
+            return new PreferencesManager(this);
+        }
+    }
 }
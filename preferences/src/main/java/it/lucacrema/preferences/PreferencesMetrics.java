@@ -0,0 +1,65 @@
+package it.lucacrema.preferences;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Receives the measurements of a {@link PreferencesManager}, see {@link PreferencesManager.Builder#metrics(PreferencesMetrics)}.
+ * Methods are called synchronously on the thread doing the operation, implementations must be thread-safe and fast.
+ * {@link PreferencesMetricsRegistry} keeps histograms and counters of every measurement.
+ *
+ * @author Luca Crema
+ * @since 17/10/2026
+ */
+public interface PreferencesMetrics {
+
+    /**
+     * Operations of a {@link PreferencesManager} that are timed
+     */
+    enum Operation {
+        /**
+         * Read of a single value, objects included
+         */
+        GET,
+        /**
+         * Write of a single value, objects included
+         */
+        SET,
+        /**
+         * Removal of a single value
+         */
+        REMOVE,
+        /**
+         * Commit or apply of an editor, it can hold many values
+         */
+        COMMIT
+    }
+
+    /**
+     * @param operation     operation that has been executed
+     * @param key           key read or written, null for commits
+     * @param durationNanos time spent inside the manager
+     */
+    void onOperation(@NonNull Operation operation, @Nullable String key, long durationNanos);
+
+    /**
+     * Called after every commit or apply, together with {@link #onOperation} for {@link Operation#COMMIT}.
+     *
+     * @param success     result of the commit, always true for applies
+     * @param changeCount number of keys written or removed
+     */
+    void onCommit(boolean success, int changeCount);
+
+    /**
+     * @param key   key the object is saved at
+     * @param bytes length of the serialized object
+     */
+    void onObjectSerialized(@NonNull String key, int bytes);
+
+    /**
+     * Called when a saved value could not be de-serialized and null has been returned instead.
+     *
+     * @param key key of the value
+     */
+    void onDeserializationFailure(@NonNull String key);
+}
@@ -0,0 +1,186 @@
+package it.lucacrema.preferences;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link PreferencesMetrics} that keeps a {@link LatencyHistogram} for each operation, commit and serialization
+ * counters and how many times each key has been read or written.
+ * <pre>{@code
+ * PreferencesMetricsRegistry metrics = new PreferencesMetricsRegistry();
+ * PreferencesManager pm = new PreferencesManager.Builder(context).metrics(metrics).build();
+ * metrics.getHistogram(PreferencesMetrics.Operation.GET).getPercentileNanos(99);
+ * metrics.getHotKeys(10);
+ * }</pre>
+ *
+ * @author Luca Crema
+ * @since 17/10/2026
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class PreferencesMetricsRegistry implements PreferencesMetrics {
+
+    public static final int DEFAULT_MAX_TRACKED_KEYS = 256;
+
+    private final Map<Operation, LatencyHistogram> histograms = new EnumMap<>(Operation.class);
+    private final AtomicLong successfulCommits = new AtomicLong();
+    private final AtomicLong failedCommits = new AtomicLong();
+    private final AtomicLong committedChanges = new AtomicLong();
+    private final AtomicLong serializedObjects = new AtomicLong();
+    private final AtomicLong serializedBytes = new AtomicLong();
+    private final AtomicLong deserializationFailures = new AtomicLong();
+    private final ConcurrentMap<String, AtomicLong> keyAccesses = new ConcurrentHashMap<>();
+    private final int maxTrackedKeys;
+
+    /**
+     * Tracks the accesses of up to {@value DEFAULT_MAX_TRACKED_KEYS} keys
+     */
+    public PreferencesMetricsRegistry() {
+        this(DEFAULT_MAX_TRACKED_KEYS);
+    }
+
+    /**
+     * @param maxTrackedKeys maximum number of keys whose accesses are counted, keys used for the first time
+     *                       after the limit is reached are not counted. 0 disables hot keys tracking.
+     */
+    public PreferencesMetricsRegistry(int maxTrackedKeys) {
+        this.maxTrackedKeys = maxTrackedKeys;
+        for (Operation operation : Operation.values())
+            histograms.put(operation, new LatencyHistogram());
+    }
+
+    @Override
+    public void onOperation(@NonNull Operation operation, @Nullable String key, long durationNanos) {
+        histograms.get(operation).record(durationNanos);
+        if (key != null)
+            countAccess(key);
+    }
+
+    @Override
+    public void onCommit(boolean success, int changeCount) {
+        if (success)
+            successfulCommits.incrementAndGet();
+        else
+            failedCommits.incrementAndGet();
+        committedChanges.addAndGet(changeCount);
+    }
+
+    @Override
+    public void onObjectSerialized(@NonNull String key, int bytes) {
+        serializedObjects.incrementAndGet();
+        serializedBytes.addAndGet(bytes);
+    }
+
+    @Override
+    public void onDeserializationFailure(@NonNull String key) {
+        deserializationFailures.incrementAndGet();
+    }
+
+    /**
+     * @param operation timed operation
+     * @return the durations of the operation
+     */
+    public LatencyHistogram getHistogram(@NonNull Operation operation) {
+        return histograms.get(operation);
+    }
+
+    /**
+     * @return number of commits that returned true, applies included
+     */
+    public long getSuccessfulCommitCount() {
+        return successfulCommits.get();
+    }
+
+    /**
+     * @return number of commits that returned false
+     */
+    public long getFailedCommitCount() {
+        return failedCommits.get();
+    }
+
+    /**
+     * @return number of keys written or removed by all the commits
+     */
+    public long getCommittedChangeCount() {
+        return committedChanges.get();
+    }
+
+    /**
+     * @return number of serialized objects
+     */
+    public long getSerializedObjectCount() {
+        return serializedObjects.get();
+    }
+
+    /**
+     * @return total length of the serialized objects
+     */
+    public long getSerializedBytes() {
+        return serializedBytes.get();
+    }
+
+    /**
+     * @return number of values that could not be de-serialized
+     */
+    public long getDeserializationFailureCount() {
+        return deserializationFailures.get();
+    }
+
+    /**
+     * @param count maximum number of keys to return
+     * @return the most read and written keys with their number of accesses, most accessed first
+     */
+    public Map<String, Long> getHotKeys(int count) {
+        List<Map.Entry<String, AtomicLong>> entries = new ArrayList<>(keyAccesses.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, AtomicLong>>() {
+            @Override
+            public int compare(Map.Entry<String, AtomicLong> first, Map.Entry<String, AtomicLong> second) {
+                long a = first.getValue().get();
+                long b = second.getValue().get();
+                return a > b ? -1 : (a == b ? 0 : 1);
+            }
+        });
+        Map<String, Long> hotKeys = new LinkedHashMap<>();
+        for (int i = 0; i < entries.size() && i < count; i++)
+            hotKeys.put(entries.get(i).getKey(), entries.get(i).getValue().get());
+        return hotKeys;
+    }
+
+    /**
+     * Clears every histogram, counter and key
+     */
+    public void reset() {
+        for (LatencyHistogram histogram : histograms.values())
+            histogram.reset();
+        successfulCommits.set(0);
+        failedCommits.set(0);
+        committedChanges.set(0);
+        serializedObjects.set(0);
+        serializedBytes.set(0);
+        deserializationFailures.set(0);
+        keyAccesses.clear();
+    }
+
+    private void countAccess(String key) {
+        AtomicLong accesses = keyAccesses.get(key);
+        if (accesses == null) {
+            if (keyAccesses.size() >= maxTrackedKeys)
+                return;
+            AtomicLong created = new AtomicLong();
+            accesses = keyAccesses.putIfAbsent(key, created);
+            if (accesses == null)
+                accesses = created;
+        }
+        accesses.incrementAndGet();
+    }
+}
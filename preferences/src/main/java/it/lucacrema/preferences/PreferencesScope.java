@@ -0,0 +1,261 @@
+package it.lucacrema.preferences;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+
+/**
+ * View of the values of a {@link PreferencesManager} whose keys start with a prefix, obtained through
+ * {@link PreferencesManager#scope(String)}. Values are read and written by their name, the key without the prefix.
+ * <p>
+ * Keys are listed from a sorted index updated on every change, so listing and clearing a scope cost
+ * as much as the number of its keys instead of copying all the preferences.
+ *
+ * @author Luca Crema
+ * @since 17/10/2026
+ */
+@SuppressWarnings({"unused", "WeakerAccess", "UnusedReturnValue"})
+public final class PreferencesScope implements Iterable<String> {
+
+    private final PreferencesManager preferencesManager;
+    private final KeyIndex keyIndex;
+    private final String prefix;
+
+    /**
+     * @param preferencesManager manager holding the values
+     * @param keyIndex           index of the keys of the manager
+     * @param prefix             prefix of the keys of this scope
+     */
+    PreferencesScope(PreferencesManager preferencesManager, KeyIndex keyIndex, String prefix) {
+        this.preferencesManager = preferencesManager;
+        this.keyIndex = keyIndex;
+        this.prefix = prefix;
+    }
+
+    /**
+     * @return prefix of the keys of this scope
+     */
+    public String getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * @param name name of the value in this scope
+     * @return the full key of the value
+     */
+    public String key(@NonNull String name) {
+        return prefix + name;
+    }
+
+    /**
+     * @param prefix prefix of the keys inside this scope
+     * @return a scope of the keys starting with the prefix of this scope followed by the given one
+     */
+    public PreferencesScope scope(@NonNull String prefix) {
+        return new PreferencesScope(preferencesManager, keyIndex, this.prefix + prefix);
+    }
+
+    /**
+     * @param name name of the value in this scope
+     * @return if a value is saved with the name
+     */
+    public boolean contains(@NonNull String name) {
+        return preferencesManager.contains(key(name));
+    }
+
+    /**
+     * @param name name of the value in this scope
+     * @return see {@link PreferencesManager#getInt(String)}
+     * @throws ClassCastException if the stored value is not int
+     */
+    public int getInt(@NonNull String name) throws ClassCastException {
+        return preferencesManager.getInt(key(name));
+    }
+
+    /**
+     * @param name name of the value in this scope
+     * @return see {@link PreferencesManager#getFloat(String)}
+     * @throws ClassCastException if the stored value is not float
+     */
+    public float getFloat(@NonNull String name) throws ClassCastException {
+        return preferencesManager.getFloat(key(name));
+    }
+
+    /**
+     * @param name name of the value in this scope
+     * @return see {@link PreferencesManager#getLong(String)}
+     * @throws ClassCastException if the stored value is not long
+     */
+    public long getLong(@NonNull String name) throws ClassCastException {
+        return preferencesManager.getLong(key(name));
+    }
+
+    /**
+     * @param name name of the value in this scope
+     * @return see {@link PreferencesManager#getString(String)}
+     * @throws ClassCastException if the stored value is not String
+     */
+    public String getString(@NonNull String name) throws ClassCastException {
+        return preferencesManager.getString(key(name));
+    }
+
+    /**
+     * @param name name of the value in this scope
+     * @return see {@link PreferencesManager#getBoolean(String)}
+     * @throws ClassCastException if the stored value is not boolean
+     */
+    public boolean getBoolean(@NonNull String name) throws ClassCastException {
+        return preferencesManager.getBoolean(key(name));
+    }
+
+    /**
+     * @param name name of the value in this scope
+     * @return see {@link PreferencesManager#getObject(String)}
+     * @throws ClassCastException if the stored value is not an Object
+     */
+    public Object getObject(@NonNull String name) throws ClassCastException {
+        return preferencesManager.getObject(key(name));
+    }
+
+    /**
+     * @param name  name of the value in this scope
+     * @param value value to be put or override
+     * @return if the value has been set correctly
+     */
+    public boolean setInt(@NonNull String name, int value) {
+        return preferencesManager.setInt(key(name), value);
+    }
+
+    /**
+     * @param name  name of the value in this scope
+     * @param value value to be put or override
+     * @return if the value has been set correctly
+     */
+    public boolean setFloat(@NonNull String name, float value) {
+        return preferencesManager.setFloat(key(name), value);
+    }
+
+    /**
+     * @param name  name of the value in this scope
+     * @param value value to be put or override
+     * @return if the value has been set correctly
+     */
+    public boolean setLong(@NonNull String name, long value) {
+        return preferencesManager.setLong(key(name), value);
+    }
+
+    /**
+     * @param name  name of the value in this scope
+     * @param value value to be put or override, null removes the value
+     * @return if the value has been set correctly
+     */
+    public boolean setString(@NonNull String name, String value) {
+        return preferencesManager.setString(key(name), value);
+    }
+
+    /**
+     * @param name  name of the value in this scope
+     * @param value value to be put or override
+     * @return if the value has been set correctly
+     */
+    public boolean setBoolean(@NonNull String name, boolean value) {
+        return preferencesManager.setBoolean(key(name), value);
+    }
+
+    /**
+     * @param name   name of the value in this scope
+     * @param object value to be put or override
+     * @return if the value has been set correctly
+     * @throws IOException Any exception thrown by the underlying OutputStream.
+     */
+    public boolean setObject(@NonNull String name, @NonNull Serializable object) throws IOException {
+        return preferencesManager.setObject(key(name), object);
+    }
+
+    /**
+     * @param name name of the value in this scope
+     * @return if the value has been removed correctly
+     */
+    public boolean removeValue(@NonNull String name) {
+        return preferencesManager.removeValue(key(name));
+    }
+
+    /**
+     * Removes every value of this scope with a single commit, values outside of it are untouched.
+     *
+     * @return if the values have been removed correctly, true if the scope was empty
+     */
+    public boolean clear() {
+        PreferencesBatch batch = preferencesManager.batch();
+        for (String key : keyIndex.withPrefix(prefix))
+            batch.removeValue(key);
+        return batch.size() == 0 || batch.commit();
+    }
+
+    /**
+     * Reads all the values of this scope at once, see {@link PreferencesManager#snapshot(String...)}.
+     * Keys added or removed by a write through the manager are seen together with the rest of the write.
+     *
+     * @return an immutable view of the values of this scope, read by their name
+     */
+    public PreferencesSnapshot snapshot() {
+        return preferencesManager.snapshot(prefix, keyIndex.withPrefix(prefix));
+    }
+
+    /**
+     * @return number of values in this scope
+     */
+    public int size() {
+        return keyIndex.withPrefix(prefix).size();
+    }
+
+    /**
+     * @return if this scope has no values
+     */
+    public boolean isEmpty() {
+        return keyIndex.withPrefix(prefix).isEmpty();
+    }
+
+    /**
+     * @return the names of the values of this scope, in alphabetical order
+     */
+    public List<String> names() {
+        NavigableSet<String> keys = keyIndex.withPrefix(prefix);
+        List<String> names = new ArrayList<>();
+        for (String key : keys)
+            names.add(key.substring(prefix.length()));
+        return names;
+    }
+
+    /**
+     * Iterates the full keys of this scope in alphabetical order, changes made while iterating may not be seen.
+     *
+     * @return a read-only iterator over the keys of this scope
+     */
+    @NonNull
+    @Override
+    public Iterator<String> iterator() {
+        final Iterator<String> keys = keyIndex.withPrefix(prefix).iterator();
+        return new Iterator<String>() {
+            @Override
+            public boolean hasNext() {
+                return keys.hasNext();
+            }
+
+            @Override
+            public String next() {
+                return keys.next();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("Use removeValue");
+            }
+        };
+    }
+}
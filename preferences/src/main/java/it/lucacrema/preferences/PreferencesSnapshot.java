@@ -0,0 +1,134 @@
+package it.lucacrema.preferences;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Values of some keys of a {@link PreferencesManager} read all at once, obtained through
+ * {@link PreferencesManager#snapshot(String...)} or {@link PreferencesScope#snapshot()}.
+ * No write made through the manager is seen only in part: the values are either all before or all after it.
+ * <p>
+ * The snapshot never changes. Objects are kept as saved and decoded when read, so reading them is as costly as
+ * {@link PreferencesManager#getObject(String)}. Values are read by their name, the key without the prefix of the scope.
+ *
+ * @author Luca Crema
+ * @since 17/10/2026
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class PreferencesSnapshot {
+
+    private final PreferencesManager preferencesManager;
+    private final String prefix;
+    private final Map<String, Object> values;
+
+    /**
+     * @param preferencesManager manager decoding the objects
+     * @param prefix             prefix of the keys, empty if the names are the full keys
+     * @param values             values by name, only the present ones
+     */
+    PreferencesSnapshot(PreferencesManager preferencesManager, String prefix, Map<String, Object> values) {
+        this.preferencesManager = preferencesManager;
+        this.prefix = prefix;
+        this.values = Collections.unmodifiableMap(values);
+    }
+
+    /**
+     * @return the names of the values present when the snapshot was taken
+     */
+    @NonNull
+    public Set<String> names() {
+        return values.keySet();
+    }
+
+    /**
+     * @return number of values present when the snapshot was taken
+     */
+    public int size() {
+        return values.size();
+    }
+
+    /**
+     * @param name name of the value
+     * @return if the value was present when the snapshot was taken
+     */
+    public boolean contains(@NonNull String name) {
+        return values.containsKey(name);
+    }
+
+    /**
+     * @param name name of the value
+     * @return the value if present, {@link PreferencesManager#DEFAULT_INTEGER_RETURN} otherwise
+     * @throws ClassCastException if the value is not int
+     */
+    public int getInt(@NonNull String name) throws ClassCastException {
+        Object value = values.get(name);
+        return value == null ? PreferencesManager.DEFAULT_INTEGER_RETURN : (Integer) value;
+    }
+
+    /**
+     * @param name name of the value
+     * @return the value if present, {@link PreferencesManager#DEFAULT_FLOAT_RETURN} otherwise
+     * @throws ClassCastException if the value is not float
+     */
+    public float getFloat(@NonNull String name) throws ClassCastException {
+        Object value = values.get(name);
+        return value == null ? PreferencesManager.DEFAULT_FLOAT_RETURN : (Float) value;
+    }
+
+    /**
+     * @param name name of the value
+     * @return the value if present, {@link PreferencesManager#DEFAULT_LONG_RETURN} otherwise
+     * @throws ClassCastException if the value is not long
+     */
+    public long getLong(@NonNull String name) throws ClassCastException {
+        Object value = values.get(name);
+        return value == null ? PreferencesManager.DEFAULT_LONG_RETURN : (Long) value;
+    }
+
+    /**
+     * @param name name of the value
+     * @return the value if present, {@link PreferencesManager#DEFAULT_BOOLEAN_RETURN} otherwise
+     * @throws ClassCastException if the value is not boolean
+     */
+    public boolean getBoolean(@NonNull String name) throws ClassCastException {
+        Object value = values.get(name);
+        return value == null ? PreferencesManager.DEFAULT_BOOLEAN_RETURN : (Boolean) value;
+    }
+
+    /**
+     * @param name name of the value
+     * @return the value if present, {@link PreferencesManager#DEFAULT_STRING_RETURN} otherwise
+     * @throws ClassCastException if the value is not a String
+     */
+    public String getString(@NonNull String name) throws ClassCastException {
+        Object value = values.get(name);
+        return value == null ? PreferencesManager.DEFAULT_STRING_RETURN : (String) value;
+    }
+
+    /**
+     * @param name name of the value
+     * @return the object de-serialized if present, null otherwise
+     * @throws ClassCastException if the value is not an Object
+     */
+    @Nullable
+    public Object getObject(@NonNull String name) throws ClassCastException {
+        return getObject(name, null);
+    }
+
+    /**
+     * @param name  name of the value
+     * @param codec codec that has written the object, null for Java serialization and the registered codecs
+     * @param <T>   type of the object
+     * @return the object decoded if present, null otherwise
+     * @throws ClassCastException if the value is not an Object
+     */
+    @Nullable
+    public <T> T getObject(@NonNull String name, @Nullable PreferenceCodec<T> codec) throws ClassCastException {
+        String saved = (String) values.get(name);
+        return saved == null ? null : preferencesManager.decodeSource(prefix + name, saved, codec);
+    }
+}
@@ -0,0 +1,102 @@
+package it.lucacrema.preferences;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Future completed by whoever produces its value, used where CompletableFuture is not available (API &lt; 24).
+ *
+ * @param <V> type of the result
+ * @author Luca Crema
+ * @since 17/10/2026
+ */
+final class SettableFuture<V> implements Future<V> {
+
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile V value;
+    private volatile Throwable failure;
+
+    /**
+     * @param value result of the future
+     * @param <V>   type of the result
+     * @return a future that is already completed with the value
+     */
+    static <V> SettableFuture<V> completed(V value) {
+        SettableFuture<V> future = new SettableFuture<>();
+        future.set(value);
+        return future;
+    }
+
+    /**
+     * Completes the future, does nothing if it was already completed.
+     *
+     * @param value result of the future
+     */
+    void set(V value) {
+        synchronized (done) {
+            if (isDone())
+                return;
+            this.value = value;
+            done.countDown();
+        }
+    }
+
+    /**
+     * Completes the future with a failure, does nothing if it was already completed.
+     *
+     * @param failure cause reported by {@link #get()} wrapped in an {@link ExecutionException}
+     */
+    void setException(Throwable failure) {
+        synchronized (done) {
+            if (isDone())
+                return;
+            this.failure = failure;
+            done.countDown();
+        }
+    }
+
+    /**
+     * Pending writes cannot be cancelled
+     *
+     * @return always false
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return false;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return false;
+    }
+
+    @Override
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    @Override
+    public V get() throws InterruptedException, ExecutionException {
+        done.await();
+        return result();
+    }
+
+    @Override
+    public V get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!done.await(timeout, unit))
+            throw new TimeoutException();
+        return result();
+    }
+
+    private V result() throws ExecutionException {
+        if (failure instanceof CancellationException)
+            throw (CancellationException) failure;
+        if (failure != null)
+            throw new ExecutionException(failure);
+        return value;
+    }
+}
@@ -0,0 +1,100 @@
+package it.lucacrema.preferences;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Chooses the shard of {@link ShardedSharedPreferences} holding each key.
+ * The same key must always be routed to the same shard for the same number of shards.
+ *
+ * @author Luca Crema
+ * @since 17/10/2026
+ */
+public interface ShardRouter {
+
+    /**
+     * @param key        key of a value
+     * @param shardCount number of shards, at least 1
+     * @return index of the shard holding the key, between 0 and shardCount excluded
+     */
+    int shardOf(@NonNull String key, int shardCount);
+
+    /**
+     * Spreads the keys evenly with jump consistent hashing: when a shard is added only the keys moving
+     * to the new shard change shard.
+     */
+    final class ConsistentHash implements ShardRouter {
+
+        public static final ConsistentHash INSTANCE = new ConsistentHash();
+
+        private ConsistentHash() {
+        }
+
+        @Override
+        public int shardOf(@NonNull String key, int shardCount) {
+            long hash = key.hashCode() * 0x9E3779B97F4A7C15L;
+            hash ^= hash >>> 32;
+            long bucket = -1;
+            long next = 0;
+            while (next < shardCount) {
+                bucket = next;
+                hash = hash * 2862933555777941757L + 1;
+                next = (long) ((bucket + 1) * ((double) (1L << 31) / (double) ((hash >>> 33) + 1)));
+            }
+            return (int) bucket;
+        }
+    }
+
+    /**
+     * Routes the keys starting with a prefix to a fixed shard, so a namespace is saved in a single file.
+     * The longest matching prefix wins, keys without a matching prefix are routed by a fallback router.
+     */
+    final class ByPrefix implements ShardRouter {
+
+        private final List<Map.Entry<String, Integer>> prefixes;
+        private final ShardRouter fallback;
+
+        /**
+         * @param prefixes shard of the keys starting with each prefix
+         * @param fallback router of the other keys
+         */
+        public ByPrefix(@NonNull Map<String, Integer> prefixes, @NonNull ShardRouter fallback) {
+            this.prefixes = new ArrayList<>(prefixes.entrySet());
+            Collections.sort(this.prefixes, new Comparator<Map.Entry<String, Integer>>() {
+                @Override
+                public int compare(Map.Entry<String, Integer> first, Map.Entry<String, Integer> second) {
+                    return second.getKey().length() - first.getKey().length();
+                }
+            });
+            this.fallback = fallback;
+        }
+
+        /**
+         * @param prefixes shard of the keys starting with each prefix, the other keys are spread by {@link ConsistentHash}
+         */
+        public ByPrefix(@NonNull Map<String, Integer> prefixes) {
+            this(prefixes, ConsistentHash.INSTANCE);
+        }
+
+        /**
+         * @throws IllegalArgumentException if the shard of a prefix does not exist
+         */
+        @Override
+        public int shardOf(@NonNull String key, int shardCount) {
+            for (Map.Entry<String, Integer> prefix : prefixes) {
+                if (key.startsWith(prefix.getKey())) {
+                    int shard = prefix.getValue();
+                    if (shard < 0 || shard >= shardCount)
+                        throw new IllegalArgumentException("Shard " + shard + " of prefix " + prefix.getKey() + " does not exist");
+                    return shard;
+                }
+            }
+            return fallback.shardOf(key, shardCount);
+        }
+    }
+}
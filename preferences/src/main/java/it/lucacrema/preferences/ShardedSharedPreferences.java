@@ -0,0 +1,303 @@
+package it.lucacrema.preferences;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * {@link SharedPreferences} that spreads the keys over many underlying preference files, so a commit only
+ * rewrites the files of the keys it changes instead of every value. It can be given to
+ * {@link PreferencesManager#PreferencesManager(SharedPreferences)} like any other preferences.
+ * <p>
+ * Each key always lives in the shard chosen by the {@link ShardRouter}. A commit touching many shards commits each
+ * of them separately, so it is not atomic across shards. {@link #getAll()} merges the values of every shard.
+ *
+ * @author Luca Crema
+ * @since 17/10/2026
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class ShardedSharedPreferences implements SharedPreferences {
+
+    private final SharedPreferences[] shards;
+    private final ShardRouter router;
+    private final WeakHashMap<OnSharedPreferenceChangeListener, ShardListener> listeners = new WeakHashMap<>();
+
+    /**
+     * @param shards preferences holding the values, in a fixed order
+     * @param router chooses the shard of each key
+     * @throws IllegalArgumentException if there are no shards
+     */
+    public ShardedSharedPreferences(@NonNull List<SharedPreferences> shards, @NonNull ShardRouter router) {
+        if (shards.isEmpty())
+            throw new IllegalArgumentException("At least one shard is needed");
+        this.shards = shards.toArray(new SharedPreferences[0]);
+        this.router = router;
+    }
+
+    /**
+     * Opens the preference files {@code name_0} to {@code name_<shardCount - 1>}.
+     * Android loads each file on its own background thread, so the shards are parsed in parallel.
+     *
+     * @param ctx        Current application context
+     * @param name       prefix of the names of the preference files
+     * @param shardCount number of files, it cannot be changed without moving the values
+     * @param router     chooses the shard of each key
+     * @return the sharded preferences
+     */
+    public static ShardedSharedPreferences open(@NonNull Context ctx, @NonNull String name, int shardCount, @NonNull ShardRouter router) {
+        List<SharedPreferences> shards = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++)
+            shards.add(ctx.getSharedPreferences(name + "_" + i, Context.MODE_PRIVATE));
+        return new ShardedSharedPreferences(shards, router);
+    }
+
+    /**
+     * @return number of shards
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * @param index index of the shard
+     * @return the preferences of the shard
+     */
+    public SharedPreferences getShard(int index) {
+        return shards[index];
+    }
+
+    /**
+     * @param key key of a value
+     * @return index of the shard holding the key
+     */
+    public int shardOf(@NonNull String key) {
+        return router.shardOf(key, shards.length);
+    }
+
+    /**
+     * Moves every value of a single preference file into the shards, with one commit per shard.
+     * The source is cleared only if all the shards have been committed correctly.
+     *
+     * @param source      preferences to be split, usually the default ones
+     * @param clearSource if the source has to be cleared after the values have been copied
+     * @return if all the values have been moved correctly
+     */
+    public boolean migrateFrom(@NonNull SharedPreferences source, boolean clearSource) {
+        Editor editor = edit();
+        for (Map.Entry<String, ?> entry : source.getAll().entrySet())
+            putValue(editor, entry.getKey(), entry.getValue());
+        if (!editor.commit())
+            return false;
+        return !clearSource || source.edit().clear().commit();
+    }
+
+    @Override
+    public Map<String, ?> getAll() {
+        Map<String, Object> values = new HashMap<>();
+        for (SharedPreferences shard : shards)
+            values.putAll(shard.getAll());
+        return values;
+    }
+
+    @Nullable
+    @Override
+    public String getString(String key, @Nullable String defValue) {
+        return shardFor(key).getString(key, defValue);
+    }
+
+    @Nullable
+    @Override
+    public Set<String> getStringSet(String key, @Nullable Set<String> defValues) {
+        return shardFor(key).getStringSet(key, defValues);
+    }
+
+    @Override
+    public int getInt(String key, int defValue) {
+        return shardFor(key).getInt(key, defValue);
+    }
+
+    @Override
+    public long getLong(String key, long defValue) {
+        return shardFor(key).getLong(key, defValue);
+    }
+
+    @Override
+    public float getFloat(String key, float defValue) {
+        return shardFor(key).getFloat(key, defValue);
+    }
+
+    @Override
+    public boolean getBoolean(String key, boolean defValue) {
+        return shardFor(key).getBoolean(key, defValue);
+    }
+
+    @Override
+    public boolean contains(String key) {
+        return shardFor(key).contains(key);
+    }
+
+    @Override
+    public Editor edit() {
+        return new ShardedEditor();
+    }
+
+    @Override
+    public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        ShardListener shardListener;
+        synchronized (listeners) {
+            if (listeners.containsKey(listener))
+                return;
+            shardListener = new ShardListener(this, listener);
+            listeners.put(listener, shardListener);
+        }
+        for (SharedPreferences shard : shards)
+            shard.registerOnSharedPreferenceChangeListener(shardListener);
+    }
+
+    @Override
+    public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        ShardListener shardListener;
+        synchronized (listeners) {
+            shardListener = listeners.remove(listener);
+        }
+        if (shardListener == null)
+            return;
+        for (SharedPreferences shard : shards)
+            shard.unregisterOnSharedPreferenceChangeListener(shardListener);
+    }
+
+    private SharedPreferences shardFor(String key) {
+        return shards[router.shardOf(key, shards.length)];
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void putValue(Editor editor, String key, Object value) {
+        if (value instanceof Integer)
+            editor.putInt(key, (Integer) value);
+        else if (value instanceof Long)
+            editor.putLong(key, (Long) value);
+        else if (value instanceof Float)
+            editor.putFloat(key, (Float) value);
+        else if (value instanceof Boolean)
+            editor.putBoolean(key, (Boolean) value);
+        else if (value instanceof String)
+            editor.putString(key, (String) value);
+        else if (value instanceof Set)
+            editor.putStringSet(key, (Set<String>) value);
+    }
+
+    /**
+     * Forwards the changes of every shard as changes of the sharded preferences.
+     * It holds the listener weakly, like {@link SharedPreferences} does, while the shards hold this weakly too.
+     */
+    private static final class ShardListener implements OnSharedPreferenceChangeListener {
+
+        private final ShardedSharedPreferences sharedPreferences;
+        private final WeakReference<OnSharedPreferenceChangeListener> listener;
+
+        ShardListener(ShardedSharedPreferences sharedPreferences, OnSharedPreferenceChangeListener listener) {
+            this.sharedPreferences = sharedPreferences;
+            this.listener = new WeakReference<>(listener);
+        }
+
+        @Override
+        public void onSharedPreferenceChanged(SharedPreferences shard, String key) {
+            OnSharedPreferenceChangeListener target = listener.get();
+            if (target != null)
+                target.onSharedPreferenceChanged(sharedPreferences, key);
+        }
+    }
+
+    /**
+     * Collects the changes in one editor per shard, created when the first key of the shard is changed
+     */
+    private final class ShardedEditor implements Editor {
+
+        private final Editor[] editors = new Editor[shards.length];
+
+        private Editor editorFor(String key) {
+            return editor(router.shardOf(key, shards.length));
+        }
+
+        private Editor editor(int shard) {
+            if (editors[shard] == null)
+                editors[shard] = shards[shard].edit();
+            return editors[shard];
+        }
+
+        @Override
+        public Editor putString(String key, @Nullable String value) {
+            editorFor(key).putString(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putStringSet(String key, @Nullable Set<String> values) {
+            editorFor(key).putStringSet(key, values);
+            return this;
+        }
+
+        @Override
+        public Editor putInt(String key, int value) {
+            editorFor(key).putInt(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putLong(String key, long value) {
+            editorFor(key).putLong(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putFloat(String key, float value) {
+            editorFor(key).putFloat(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putBoolean(String key, boolean value) {
+            editorFor(key).putBoolean(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor remove(String key) {
+            editorFor(key).remove(key);
+            return this;
+        }
+
+        @Override
+        public Editor clear() {
+            for (int i = 0; i < shards.length; i++)
+                editor(i).clear();
+            return this;
+        }
+
+        @Override
+        public boolean commit() {
+            boolean result = true;
+            for (Editor editor : editors)
+                if (editor != null)
+                    result &= editor.commit();
+            return result;
+        }
+
+        @Override
+        public void apply() {
+            for (Editor editor : editors)
+                if (editor != null)
+                    editor.apply();
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package it.lucacrema.preferences;
+
+import android.content.SharedPreferences;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link PreferenceStore} backed by Android {@link SharedPreferences}, or by any other implementation of them
+ * such as {@link LogSharedPreferences} and {@link ShardedSharedPreferences}. Every call is forwarded as is.
+ *
+ * @author Luca Crema
+ * @since 17/10/2026
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class SharedPreferencesStore implements PreferenceStore {
+
+    private static final int TYPE_STRING = 0;
+    private static final int TYPE_INT = 1;
+    private static final int TYPE_LONG = 2;
+    private static final int TYPE_BOOLEAN = 3;
+    private static final int TYPE_FLOAT = 4;
+    private static final int TYPE_STRING_SET = 5;
+    private static final int TYPE_COUNT = 6;
+
+    private final SharedPreferences sharedPreferences;
+    private final WeakHashMap<OnChangeListener, ListenerAdapter> listeners = new WeakHashMap<>();
+    /**
+     * Type of the value of the keys, only a hint checked by every read
+     */
+    private final ConcurrentHashMap<String, Integer> types = new ConcurrentHashMap<>();
+
+    /**
+     * @param sharedPreferences preferences holding the values
+     */
+    public SharedPreferencesStore(@NonNull SharedPreferences sharedPreferences) {
+        this.sharedPreferences = sharedPreferences;
+    }
+
+    /**
+     * @return the preferences holding the values
+     */
+    @NonNull
+    public SharedPreferences getSharedPreferences() {
+        return sharedPreferences;
+    }
+
+    @NonNull
+    @Override
+    public Map<String, ?> getAll() {
+        return sharedPreferences.getAll();
+    }
+
+    @Override
+    public int getInt(@NonNull String key, int defaultValue) {
+        return sharedPreferences.getInt(key, defaultValue);
+    }
+
+    @Override
+    public long getLong(@NonNull String key, long defaultValue) {
+        return sharedPreferences.getLong(key, defaultValue);
+    }
+
+    @Override
+    public float getFloat(@NonNull String key, float defaultValue) {
+        return sharedPreferences.getFloat(key, defaultValue);
+    }
+
+    @Override
+    public boolean getBoolean(@NonNull String key, boolean defaultValue) {
+        return sharedPreferences.getBoolean(key, defaultValue);
+    }
+
+    @Nullable
+    @Override
+    public String getString(@NonNull String key, @Nullable String defaultValue) {
+        return sharedPreferences.getString(key, defaultValue);
+    }
+
+    @Nullable
+    @Override
+    public Set<String> getStringSet(@NonNull String key, @Nullable Set<String> defaultValue) {
+        return sharedPreferences.getStringSet(key, defaultValue);
+    }
+
+    @Override
+    public boolean contains(@NonNull String key) {
+        return sharedPreferences.contains(key);
+    }
+
+    /**
+     * {@link SharedPreferences} have no getter for values of any type, so the value is read with the type last seen
+     * for the key, remembered from the writes of this store and from the previous reads. A key of unknown or changed
+     * type is tried with the other types, from the most common one, each wrong type costs a
+     * {@link ClassCastException}; keep this out of hot paths for keys written by other editors.
+     * Absent values are told apart with the defaults of the getters, without a separate and racy contains().
+     */
+    @Nullable
+    @Override
+    public Object get(@NonNull String key) {
+        Integer known = types.get(key);
+        int first = known == null ? TYPE_STRING : known;
+        for (int i = 0; i < TYPE_COUNT; i++) {
+            int type = (first + i) % TYPE_COUNT;
+            Object value;
+            try {
+                value = read(key, type);
+            } catch (ClassCastException e) {
+                continue;
+            }
+            if (value != null && type != first)
+                types.put(key, type);
+            return value;
+        }
+        return null;
+    }
+
+    @NonNull
+    @Override
+    public Editor edit() {
+        return new EditorAdapter(sharedPreferences.edit(), types);
+    }
+
+    @Override
+    public void registerListener(@NonNull OnChangeListener listener) {
+        ListenerAdapter adapter;
+        synchronized (listeners) {
+            if (listeners.containsKey(listener))
+                return;
+            adapter = new ListenerAdapter(this, listener);
+            listeners.put(listener, adapter);
+        }
+        sharedPreferences.registerOnSharedPreferenceChangeListener(adapter);
+    }
+
+    @Override
+    public void unregisterListener(@NonNull OnChangeListener listener) {
+        ListenerAdapter adapter;
+        synchronized (listeners) {
+            adapter = listeners.remove(listener);
+        }
+        if (adapter != null)
+            sharedPreferences.unregisterOnSharedPreferenceChangeListener(adapter);
+    }
+
+    /**
+     * @param key  key for the resource
+     * @param type type the value is read as
+     * @return the value, null if not present
+     * @throws ClassCastException if the value has another type
+     */
+    private Object read(String key, int type) throws ClassCastException {
+        switch (type) {
+            case TYPE_STRING:
+                return sharedPreferences.getString(key, null);
+            case TYPE_INT: {
+                int value = sharedPreferences.getInt(key, 0);
+                return value == 0 && sharedPreferences.getInt(key, 1) == 1 ? null : value;
+            }
+            case TYPE_LONG: {
+                long value = sharedPreferences.getLong(key, 0L);
+                return value == 0L && sharedPreferences.getLong(key, 1L) == 1L ? null : value;
+            }
+            case TYPE_BOOLEAN: {
+                boolean value = sharedPreferences.getBoolean(key, false);
+                return !value && sharedPreferences.getBoolean(key, true) ? null : value;
+            }
+            case TYPE_FLOAT: {
+                float value = sharedPreferences.getFloat(key, 0f);
+                return value == 0f && sharedPreferences.getFloat(key, 1f) == 1f ? null : value;
+            }
+            default:
+                return sharedPreferences.getStringSet(key, null);
+        }
+    }
+
+    /**
+     * Forwards the changes of the preferences as changes of the store. It holds the listener weakly, like
+     * {@link SharedPreferences} does, and is kept alive by the listeners map as long as the listener is.
+     */
+    private static final class ListenerAdapter implements SharedPreferences.OnSharedPreferenceChangeListener {
+
+        private final SharedPreferencesStore store;
+        private final WeakReference<OnChangeListener> listener;
+
+        ListenerAdapter(SharedPreferencesStore store, OnChangeListener listener) {
+            this.store = store;
+            this.listener = new WeakReference<>(listener);
+        }
+
+        @Override
+        public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+            OnChangeListener target = listener.get();
+            if (target != null)
+                target.onPreferenceChanged(store, key);
+        }
+    }
+
+    /**
+     * Forwards the changes to an editor of the preferences
+     */
+    private static final class EditorAdapter implements Editor {
+
+        private final SharedPreferences.Editor editor;
+        private final ConcurrentHashMap<String, Integer> types;
+
+        EditorAdapter(SharedPreferences.Editor editor, ConcurrentHashMap<String, Integer> types) {
+            this.editor = editor;
+            this.types = types;
+        }
+
+        @Override
+        public Editor putInt(@NonNull String key, int value) {
+            editor.putInt(key, value);
+            types.put(key, TYPE_INT);
+            return this;
+        }
+
+        @Override
+        public Editor putLong(@NonNull String key, long value) {
+            editor.putLong(key, value);
+            types.put(key, TYPE_LONG);
+            return this;
+        }
+
+        @Override
+        public Editor putFloat(@NonNull String key, float value) {
+            editor.putFloat(key, value);
+            types.put(key, TYPE_FLOAT);
+            return this;
+        }
+
+        @Override
+        public Editor putBoolean(@NonNull String key, boolean value) {
+            editor.putBoolean(key, value);
+            types.put(key, TYPE_BOOLEAN);
+            return this;
+        }
+
+        @Override
+        public Editor putString(@NonNull String key, @Nullable String value) {
+            editor.putString(key, value);
+            types.put(key, TYPE_STRING);
+            return this;
+        }
+
+        @Override
+        public Editor putStringSet(@NonNull String key, @Nullable Set<String> values) {
+            editor.putStringSet(key, values);
+            types.put(key, TYPE_STRING_SET);
+            return this;
+        }
+
+        @Override
+        public Editor remove(@NonNull String key) {
+            editor.remove(key);
+            return this;
+        }
+
+        @Override
+        public Editor clear() {
+            editor.clear();
+            return this;
+        }
+
+        @Override
+        public boolean commit() {
+            return editor.commit();
+        }
+
+        @Override
+        public void apply() {
+            editor.apply();
+        }
+    }
+}
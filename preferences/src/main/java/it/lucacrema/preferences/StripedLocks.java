@@ -0,0 +1,43 @@
+package it.lucacrema.preferences;
+
+/**
+ * Fixed table of monitors chosen by the hash of the key: operations on the same key always use the same
+ * monitor, while operations on different keys usually use different ones and run in parallel.
+ *
+ * @author Luca Crema
+ * @since 17/10/2026
+ */
+final class StripedLocks {
+
+    private final Object[] locks;
+    private final int mask;
+
+    /**
+     * @param stripes number of monitors, rounded up to a power of two
+     */
+    StripedLocks(int stripes) {
+        int size = stripes <= 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        locks = new Object[size];
+        for (int i = 0; i < size; i++)
+            locks[i] = new Object();
+        mask = size - 1;
+    }
+
+    /**
+     * @param key key being updated
+     * @return the monitor to synchronize on while updating the key
+     */
+    Object lockFor(String key) {
+        int hash = key.hashCode();
+        // Spreads the high bits, like HashMap does, since only the low ones pick the stripe
+        hash ^= hash >>> 16;
+        return locks[hash & mask];
+    }
+
+    /**
+     * @return number of monitors
+     */
+    int size() {
+        return locks.length;
+    }
+}
@@ -0,0 +1,40 @@
+package it.lucacrema.preferences;
+
+/**
+ * Registration of a {@link PreferenceObserver}. The manager only holds the observer weakly, while the subscription
+ * holds it strongly: keep the subscription for as long as notifications are needed, an observer whose subscription
+ * has been garbage collected is dropped, so forgotten observers cannot leak.
+ *
+ * @author Luca Crema
+ * @since 17/10/2026
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class Subscription {
+
+    private final ChangeDispatcher dispatcher;
+    private final ChangeDispatcher.Entry entry;
+    /**
+     * Strong reference keeping the observer alive as long as the subscription is
+     */
+    private final PreferenceObserver<?> observer;
+
+    Subscription(ChangeDispatcher dispatcher, ChangeDispatcher.Entry entry, PreferenceObserver<?> observer) {
+        this.dispatcher = dispatcher;
+        this.entry = entry;
+        this.observer = observer;
+    }
+
+    /**
+     * Stops the notifications, the ones already dispatched to the executor may still be delivered
+     */
+    public void cancel() {
+        dispatcher.remove(entry);
+    }
+
+    /**
+     * @return if the observer is still notified
+     */
+    public boolean isActive() {
+        return dispatcher.contains(entry);
+    }
+}
@@ -0,0 +1,193 @@
+package it.lucacrema.preferences;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queue of writes waiting to be saved by {@link PreferencesManager} in write-behind mode.
+ * Only the last write for each key is kept, overwritten writes complete together with the write that replaced them.
+ * Readers never lock: a value stays visible through {@link #peek(String)} until the commit that saves it has finished.
+ *
+ * @author Luca Crema
+ * @since 17/10/2026
+ */
+final class WriteBehindBuffer {
+
+    /**
+     * Returned by {@link #peek(String)} when the key has no pending write
+     */
+    static final Object NOT_PENDING = new Object();
+
+    private final PreferencesManager preferencesManager;
+    private final WriteBehindPolicy policy;
+    private final ScheduledExecutorService executor;
+    private final boolean ownsExecutor;
+
+    private final Object queueLock = new Object();
+    private final Object flushLock = new Object();
+    private volatile Map<String, PendingWrite> pending = new ConcurrentHashMap<>();
+    private volatile Map<String, PendingWrite> inFlight = Collections.emptyMap();
+    private ScheduledFuture<?> scheduledFlush;
+    private boolean flushRequested;
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * @param preferencesManager manager used to commit the queued writes.
+     * @param policy             thresholds for the flushes.
+     */
+    WriteBehindBuffer(PreferencesManager preferencesManager, WriteBehindPolicy policy) {
+        this.preferencesManager = preferencesManager;
+        this.policy = policy;
+        this.ownsExecutor = policy.getExecutor() == null;
+        this.executor = ownsExecutor ? BackgroundExecutors.newSingleThreadScheduledExecutor("PreferencesWriteBehind") : policy.getExecutor();
+    }
+
+    /**
+     * Queues a write, replacing any pending write for the same key.
+     *
+     * @param key   key for the resource
+     * @param value value to be written, {@link PreferencesBatch#REMOVED} to remove the key
+     * @return a future completed with the result of the commit that saves the value
+     */
+    Future<Boolean> enqueue(String key, Object value) {
+        synchronized (queueLock) {
+            PendingWrite previous = pending.get(key);
+            SettableFuture<Boolean> future = previous == null ? new SettableFuture<Boolean>() : previous.future;
+            pending.put(key, new PendingWrite(value, future));
+            scheduleFlush(pending.size());
+            return future;
+        }
+    }
+
+    /**
+     * @param key key for the resource
+     * @return the last value written for the key that has not been saved yet, {@link #NOT_PENDING} if none
+     */
+    Object peek(String key) {
+        // pending is read before inFlight: flush() publishes inFlight before swapping pending
+        PendingWrite write = pending.get(key);
+        if (write == null)
+            write = inFlight.get(key);
+        return write == null ? NOT_PENDING : write.value;
+    }
+
+    /**
+     * Overrides the values of a map with the pending writes.
+     *
+     * @param values saved values, modified in place
+     */
+    void overlay(Map<String, Object> values) {
+        Map<String, PendingWrite> inFlightSnapshot = inFlight;
+        Map<String, PendingWrite> pendingSnapshot = pending;
+        overlay(values, inFlightSnapshot);
+        overlay(values, pendingSnapshot);
+    }
+
+    /**
+     * Saves every pending write with a single commit, waiting for a flush already running.
+     *
+     * @return if the pending writes have been saved correctly, true if there was nothing to save
+     */
+    boolean flush() {
+        synchronized (flushLock) {
+            Map<String, PendingWrite> writes;
+            synchronized (queueLock) {
+                if (scheduledFlush != null) {
+                    scheduledFlush.cancel(false);
+                    scheduledFlush = null;
+                }
+                flushRequested = false;
+                if (pending.isEmpty())
+                    return true;
+                writes = pending;
+                inFlight = writes;
+                pending = new ConcurrentHashMap<>();
+            }
+            Map<String, Object> changes = new LinkedHashMap<>(writes.size());
+            for (Map.Entry<String, PendingWrite> write : writes.entrySet())
+                changes.put(write.getKey(), write.getValue().value);
+            boolean result;
+            try {
+                result = preferencesManager.commitChanges(changes, false, false);
+            } catch (RuntimeException e) {
+                for (PendingWrite write : writes.values())
+                    write.future.setException(e);
+                throw e;
+            } finally {
+                inFlight = Collections.emptyMap();
+            }
+            for (PendingWrite write : writes.values())
+                write.future.set(result);
+            return result;
+        }
+    }
+
+    /**
+     * Flushes the pending writes and stops the private executor, if any.
+     *
+     * @return if the pending writes have been saved correctly
+     */
+    boolean close() {
+        boolean result = flush();
+        if (ownsExecutor)
+            executor.shutdown();
+        return result;
+    }
+
+    /**
+     * Must be called holding the queue lock.
+     *
+     * @param pendingCount number of keys currently pending
+     */
+    private void scheduleFlush(int pendingCount) {
+        try {
+            if (pendingCount >= policy.getMaxPendingWrites()) {
+                if (!flushRequested) {
+                    flushRequested = true;
+                    executor.execute(flushTask);
+                }
+            } else if (scheduledFlush == null && !flushRequested) {
+                scheduledFlush = executor.schedule(flushTask, policy.getFlushDelayMillis(), TimeUnit.MILLISECONDS);
+            }
+        } catch (RejectedExecutionException e) {
+            // The executor has been shut down, the writes stay pending until the next explicit flush
+        }
+    }
+
+    private static void overlay(Map<String, Object> values, Map<String, PendingWrite> writes) {
+        for (Map.Entry<String, PendingWrite> write : writes.entrySet()) {
+            Object value = write.getValue().value;
+            if (value == PreferencesBatch.REMOVED)
+                values.remove(write.getKey());
+            else
+                values.put(write.getKey(), value);
+        }
+    }
+
+    /**
+     * Last value queued for a key, the future is shared with every write it replaced
+     */
+    private static final class PendingWrite {
+
+        final Object value;
+        final SettableFuture<Boolean> future;
+
+        PendingWrite(Object value, SettableFuture<Boolean> future) {
+            this.value = value;
+            this.future = future;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package it.lucacrema.preferences;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Settings for the write-behind mode of {@link PreferencesManager}: writes are queued in memory, only the last
+ * write for each key is kept, and the queue is saved with a single commit when it reaches
+ * {@link #getMaxPendingWrites()} keys or {@link #getFlushDelayMillis()} milliseconds after the first queued write.
+ * <p>
+ * The same settings decide when a {@link PreferenceCounter} is saved, counting updates instead of keys.
+ *
+ * @author Luca Crema
+ * @since 17/10/2026
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class WriteBehindPolicy {
+
+    public static final int DEFAULT_MAX_PENDING_WRITES = 64;
+    public static final long DEFAULT_FLUSH_DELAY_MILLIS = 500L;
+
+    private final int maxPendingWrites;
+    private final long flushDelayMillis;
+    private final ScheduledExecutorService executor;
+
+    /**
+     * Policy with {@value DEFAULT_MAX_PENDING_WRITES} pending keys and {@value DEFAULT_FLUSH_DELAY_MILLIS}ms of delay
+     */
+    public WriteBehindPolicy() {
+        this(DEFAULT_MAX_PENDING_WRITES, DEFAULT_FLUSH_DELAY_MILLIS);
+    }
+
+    /**
+     * @param maxPendingWrites number of distinct pending keys that triggers a flush.
+     * @param flushDelayMillis maximum time a write stays in memory before being flushed.
+     */
+    public WriteBehindPolicy(int maxPendingWrites, long flushDelayMillis) {
+        this(maxPendingWrites, flushDelayMillis, null);
+    }
+
+    /**
+     * @param maxPendingWrites number of distinct pending keys that triggers a flush.
+     * @param flushDelayMillis maximum time a write stays in memory before being flushed.
+     * @param executor         executor running the flushes, null to use a private single background thread
+     *                         that is shut down by {@link PreferencesManager#close()}.
+     * @throws IllegalArgumentException if maxPendingWrites is not positive or flushDelayMillis is negative
+     */
+    public WriteBehindPolicy(int maxPendingWrites, long flushDelayMillis, @Nullable ScheduledExecutorService executor) {
+        if (maxPendingWrites <= 0)
+            throw new IllegalArgumentException("maxPendingWrites must be positive");
+        if (flushDelayMillis < 0)
+            throw new IllegalArgumentException("flushDelayMillis must not be negative");
+        this.maxPendingWrites = maxPendingWrites;
+        this.flushDelayMillis = flushDelayMillis;
+        this.executor = executor;
+    }
+
+    /**
+     * @return number of distinct pending keys that triggers a flush
+     */
+    public int getMaxPendingWrites() {
+        return maxPendingWrites;
+    }
+
+    /**
+     * @return maximum time in milliseconds a write stays in memory before being flushed
+     */
+    public long getFlushDelayMillis() {
+        return flushDelayMillis;
+    }
+
+    /**
+     * @return the executor running the flushes, null if a private one is used
+     */
+    @Nullable
+    public ScheduledExecutorService getExecutor() {
+        return executor;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "WriteBehindPolicy{maxPendingWrites=" + maxPendingWrites + ", flushDelayMillis=" + flushDelayMillis + "}";
+    }
+}
@@ -0,0 +1,137 @@
+package it.lucacrema.preferences;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+public class AsyncObjectReadTest {
+
+    private final List<Runnable> tasks = new ArrayList<>();
+    private PreferencesManager preferencesManager;
+
+    @Before
+    public void setUp() {
+        Executor queue = new Executor() {
+            @Override
+            public void execute(Runnable task) {
+                tasks.add(task);
+            }
+        };
+        preferencesManager = new PreferencesManager.Builder(new InMemorySharedPreferences())
+                .objectSerializer(new ObjectSerializerUtility())
+                .readExecutor(queue)
+                .build();
+    }
+
+    private void runTasks() {
+        for (Runnable task : tasks)
+            task.run();
+        tasks.clear();
+    }
+
+    @Test
+    public void getObjectAsync_decodedOnExecutor() throws Exception {
+        preferencesManager.setObject("object", new ArrayList<>(Arrays.asList("a", "b")));
+
+        Future<Object> object = preferencesManager.getObjectAsync("object");
+
+        Assert.assertFalse(object.isDone());
+        runTasks();
+        Assert.assertEquals(Arrays.asList("a", "b"), object.get());
+    }
+
+    @Test
+    public void getObjectAsync_missing_completedImmediately() throws Exception {
+        Future<Object> object = preferencesManager.getObjectAsync("missing");
+
+        Assert.assertTrue(object.isDone());
+        Assert.assertNull(object.get());
+        Assert.assertTrue(tasks.isEmpty());
+    }
+
+    @Test
+    public void concurrentRequests_shareDecode() throws Exception {
+        preferencesManager.setObject("object", "value");
+
+        Future<Object> first = preferencesManager.getObjectAsync("object");
+        Future<Object> second = preferencesManager.getObjectAsync("object");
+
+        Assert.assertSame(first, second);
+        Assert.assertEquals(1, tasks.size());
+        runTasks();
+        Assert.assertEquals("value", second.get());
+    }
+
+    @Test
+    public void changedValue_decodesSavedSnapshot() throws Exception {
+        preferencesManager.setObject("object", "old");
+        Future<Object> old = preferencesManager.getObjectAsync("object");
+        preferencesManager.setObject("object", "new");
+        Future<Object> updated = preferencesManager.getObjectAsync("object");
+
+        Assert.assertNotSame(old, updated);
+        runTasks();
+        Assert.assertEquals("old", old.get());
+        Assert.assertEquals("new", updated.get());
+    }
+
+    @Test
+    public void getObjectsAsync_decodesEachKey() throws Exception {
+        preferencesManager.setObject("a", "first");
+        preferencesManager.setObject("b", 2);
+
+        Map<String, Future<Object>> objects = preferencesManager.getObjectsAsync("a", "b", "missing");
+
+        Assert.assertEquals(Arrays.asList("a", "b", "missing"), new ArrayList<>(objects.keySet()));
+        Assert.assertEquals(2, tasks.size());
+        runTasks();
+        Assert.assertEquals("first", objects.get("a").get());
+        Assert.assertEquals(2, objects.get("b").get());
+        Assert.assertNull(objects.get("missing").get());
+    }
+
+    @Test
+    public void decodeThrowsError_futureFailed() throws Exception {
+        preferencesManager.setObject("object", new Unreadable());
+
+        Future<Object> object = preferencesManager.getObjectAsync("object");
+        runTasks();
+
+        Assert.assertTrue(object.isDone());
+        try {
+            object.get();
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof AssertionError);
+        }
+        Assert.assertNotSame(object, preferencesManager.getObjectAsync("object"));
+    }
+
+    @Test
+    public void getObjectAsync_defaultExecutor() throws Exception {
+        PreferencesManager pooled = new PreferencesManager(new InMemorySharedPreferences());
+        pooled.setObject("object", "value");
+
+        Assert.assertEquals("value", pooled.getObjectAsync("object").get());
+        pooled.close();
+    }
+
+    private static final class Unreadable implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private void readObject(ObjectInputStream in) {
+            throw new AssertionError("Cannot be read");
+        }
+    }
+}
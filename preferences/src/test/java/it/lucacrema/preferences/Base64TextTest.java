@@ -0,0 +1,109 @@
+package it.lucacrema.preferences;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+
+public class Base64TextTest {
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    /**
+     * Output of {@code android.util.Base64.encode(bytes, Base64.DEFAULT)}
+     */
+    private static String androidDefault(byte[] bytes) {
+        String encoded = new String(Base64.getMimeEncoder(76, new byte[]{'\n'}).encode(bytes), ASCII);
+        return encoded.isEmpty() ? encoded : encoded + "\n";
+    }
+
+    private static String encode(byte[] bytes) {
+        char[] chars = new char[Base64Text.encodedLength(bytes.length)];
+        int length = Base64Text.encode(bytes, 0, bytes.length, chars);
+        Assert.assertEquals(chars.length, length);
+        return new String(chars);
+    }
+
+    private static byte[] decode(String text) {
+        byte[] bytes = new byte[Base64Text.maxDecodedLength(text.length())];
+        return Arrays.copyOf(bytes, Base64Text.decode(text.toCharArray(), text.length(), bytes));
+    }
+
+    @Test
+    public void encode_sameAsAndroidDefault() {
+        Random random = new Random(42);
+        for (int length = 0; length <= 300; length++) {
+            byte[] bytes = new byte[length];
+            random.nextBytes(bytes);
+            String encoded = encode(bytes);
+            Assert.assertEquals(androidDefault(bytes), encoded);
+            Assert.assertArrayEquals(bytes, decode(encoded));
+        }
+    }
+
+    @Test
+    public void decode_skipsCharactersOutsideAlphabet() {
+        Assert.assertArrayEquals("hello".getBytes(ASCII), decode("aGVs\r\nbG8=\r\n"));
+        Assert.assertArrayEquals("hell".getBytes(ASCII), decode("aGVsbA"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decode_danglingCharacter_throws() {
+        decode("aGVsb");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decode_dataAfterPadding_throws() {
+        decode("aGVsbA==aGVs");
+    }
+
+    @Test
+    public void serializeObject_androidFormat() throws IOException {
+        ObjectSerializerUtility serializer = new ObjectSerializerUtility();
+        ArrayList<String> value = new ArrayList<>(Arrays.asList("first", "second"));
+
+        String serialized = serializer.serializeObject(value);
+
+        Assert.assertEquals(androidDefault(serializer.encode(value, JavaSerializationCodec.INSTANCE)), serialized);
+        Assert.assertEquals(value, serializer.deserializeObject(serialized));
+        Assert.assertNull(serializer.deserializeObject("aGVsb"));
+    }
+
+    @Test
+    public void nestedSerialization_doesNotOverwriteBuffers() throws IOException {
+        final ObjectSerializerUtility serializer = new ObjectSerializerUtility();
+        PreferenceCodec<String> nestingCodec = new PreferenceCodec<String>() {
+            @Override
+            public byte getTag() {
+                return 0x42;
+            }
+
+            @Override
+            public void encode(@NonNull String value, @NonNull OutputStream out) throws IOException {
+                out.write(1);
+                new DataOutputStream(out).writeUTF(serializer.serializeObject(value));
+            }
+
+            @Override
+            public String decode(@NonNull InputStream in) throws IOException {
+                Assert.assertEquals(1, in.read());
+                return (String) serializer.deserializeObject(new DataInputStream(in).readUTF());
+            }
+        };
+
+        String serialized = serializer.serializeObject("nested", nestingCodec);
+
+        Assert.assertEquals("nested", serializer.deserializeObject(serialized, nestingCodec));
+    }
+}
@@ -0,0 +1,165 @@
+package it.lucacrema.preferences;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class BinaryCodecTest {
+
+    private static final int POINT_TYPE_ID = 1;
+
+    private BinaryCodec codec;
+
+    @Before
+    public void setUp() {
+        codec = new BinaryCodec().register(Point.class, POINT_TYPE_ID, new BinaryCodec.TypeAdapter<Point>() {
+            @Override
+            public void write(Point value, BinaryCodec.Writer out) throws IOException {
+                out.writeInt(value.x);
+                out.writeInt(value.y);
+                out.writeString(value.label);
+            }
+
+            @Override
+            public Point read(BinaryCodec.Reader in) throws IOException {
+                return new Point(in.readInt(), in.readInt(), in.readString());
+            }
+        });
+    }
+
+    private byte[] encode(Object value) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        codec.encode(value, out);
+        return out.toByteArray();
+    }
+
+    private Object roundTrip(Object value) throws IOException {
+        return codec.decode(new ByteArrayInputStream(encode(value)));
+    }
+
+    @Test
+    public void roundTrip_primitives_isEquals() throws IOException {
+        Object[] values = {true, false, (byte) -3, (short) 300, 'x', 0, -1, Integer.MIN_VALUE, Integer.MAX_VALUE,
+                Long.MIN_VALUE, 33123232123123132L, 12.3232132313f, Double.MAX_VALUE, "", "Roberto", "\u00e8\u4e2d"};
+        for (Object value : values)
+            Assert.assertEquals(value, roundTrip(value));
+    }
+
+    @Test
+    public void roundTrip_collections_isEquals() throws IOException {
+        Map<Object, Object> map = new LinkedHashMap<>();
+        map.put("list", Arrays.asList(1, 2L, "three", null));
+        map.put(4, new HashSet<>(Arrays.asList("a", "b")));
+        map.put("empty", Collections.emptyMap());
+
+        Assert.assertEquals(map, roundTrip(map));
+    }
+
+    @Test
+    public void roundTrip_registeredClass_isEquals() throws IOException {
+        List<Point> points = Arrays.asList(new Point(1, -2, "a"), new Point(300, 400, null));
+
+        Assert.assertEquals(points, roundTrip(points));
+    }
+
+    @Test
+    public void encode_listOfIntegers_smallerThanJavaSerialization() throws IOException {
+        ArrayList<Integer> list = new ArrayList<>();
+        for (int i = 0; i < 100; i++)
+            list.add(i);
+        ByteArrayOutputStream javaSerialized = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(javaSerialized);
+        out.writeObject(list);
+        out.flush();
+
+        Assert.assertTrue(encode(list).length * 4 < javaSerialized.size());
+    }
+
+    @Test(expected = NotSerializableException.class)
+    public void encode_unregisteredClass_throwsError() throws IOException {
+        encode(new StringBuilder());
+    }
+
+    @Test
+    public void encode_int_atMostFiveBytes() throws IOException {
+        for (int value : new int[]{Integer.MIN_VALUE, Integer.MAX_VALUE, -(1 << 30) - 1, 1 << 30}) {
+            Assert.assertTrue(encode(value).length <= 1 + 5);
+            Assert.assertEquals(value, roundTrip(value));
+        }
+    }
+
+    @Test(expected = EOFException.class)
+    public void decode_corruptedStringLength_throwsError() throws IOException {
+        byte stringType = encode("")[0];
+        codec.decode(new ByteArrayInputStream(new byte[]{stringType, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07}));
+    }
+
+    @Test(expected = StreamCorruptedException.class)
+    public void decode_unknownType_throwsError() throws IOException {
+        codec.decode(new ByteArrayInputStream(new byte[]{(byte) 0x7F}));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void register_sameId_throwsError() {
+        codec.register(String.class, POINT_TYPE_ID, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void create_javaSerializationTag_throwsError() {
+        new BinaryCodec(JavaSerializationCodec.TAG);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void create_packedTag_throwsError() {
+        new BinaryCodec(ObjectSerializerUtility.PACKED_TAG);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void create_blobTag_throwsError() {
+        new BinaryCodec(ObjectSerializerUtility.BLOB_TAG);
+    }
+
+    private static final class Point implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        final int x;
+        final int y;
+        final String label;
+
+        Point(int x, int y, String label) {
+            this.x = x;
+            this.y = y;
+            this.label = label;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Point))
+                return false;
+            Point other = (Point) o;
+            return x == other.x && y == other.y && (label == null ? other.label == null : label.equals(other.label));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * x + y;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package it.lucacrema.preferences;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+public class BlobStoreTest {
+
+    private static final String KEY = "objectKey";
+    private static final String OTHER_KEY = "otherObjectKey";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File directory;
+    private InMemorySharedPreferences sharedPreferences;
+    private PreferencesManager preferencesManager;
+
+    @Before
+    public void setUp() {
+        directory = new File(temporaryFolder.getRoot(), "blobs");
+        sharedPreferences = new InMemorySharedPreferences();
+        preferencesManager = new PreferencesManager.Builder(sharedPreferences)
+                .blobStore(new BlobStore(directory, 0), 0)
+                .build();
+    }
+
+    private static ArrayList<Integer> listOf(int size, int first) {
+        ArrayList<Integer> list = new ArrayList<>();
+        for (int i = 0; i < size; i++)
+            list.add(first + i);
+        return list;
+    }
+
+    private int blobCount() {
+        String[] files = directory.list();
+        return files == null ? 0 : files.length;
+    }
+
+    @Test
+    public void setObject_savesStubAndBlob() throws IOException {
+        ArrayList<Integer> value = listOf(100, 0);
+
+        Assert.assertTrue(preferencesManager.setObject(KEY, value));
+
+        String stub = sharedPreferences.getString(KEY, null);
+        Assert.assertTrue(BlobStore.isStub(stub));
+        Assert.assertTrue(stub.length() < 80);
+        Assert.assertEquals(1, blobCount());
+        Assert.assertEquals(value, preferencesManager.getObject(KEY));
+    }
+
+    @Test
+    public void largeBlob_readMemoryMapped() throws IOException {
+        ArrayList<Integer> value = listOf(BlobStore.MAP_THRESHOLD / 4, 0);
+
+        preferencesManager.setObject(KEY, value);
+
+        Assert.assertTrue(new File(directory, directory.list()[0]).length() >= BlobStore.MAP_THRESHOLD);
+        Assert.assertEquals(value, preferencesManager.getObject(KEY));
+    }
+
+    @Test
+    public void overwrite_deletesOldBlob() throws Exception {
+        preferencesManager.setObject(KEY, listOf(100, 0));
+        preferencesManager.setObject(KEY, listOf(100, 1));
+        preferencesManager.awaitBlobGarbageCollection();
+
+        Assert.assertEquals(1, blobCount());
+        Assert.assertEquals(listOf(100, 1), preferencesManager.getObject(KEY));
+    }
+
+    @Test
+    public void remove_deletesOnlyUnreferencedBlobs() throws Exception {
+        preferencesManager.setObject(KEY, listOf(100, 0));
+        preferencesManager.setObject(OTHER_KEY, listOf(100, 0));
+        Assert.assertEquals(1, blobCount());
+
+        preferencesManager.removeValue(KEY);
+        preferencesManager.awaitBlobGarbageCollection();
+        Assert.assertEquals(1, blobCount());
+        Assert.assertEquals(listOf(100, 0), preferencesManager.getObject(OTHER_KEY));
+
+        preferencesManager.removeValue(OTHER_KEY);
+        preferencesManager.awaitBlobGarbageCollection();
+        Assert.assertEquals(0, blobCount());
+    }
+
+    @Test
+    public void removeAllValues_deletesBlobs() throws Exception {
+        preferencesManager.setObject(KEY, listOf(100, 0));
+        preferencesManager.setObject(OTHER_KEY, listOf(100, 1));
+
+        preferencesManager.removeAllValues();
+        preferencesManager.awaitBlobGarbageCollection();
+
+        Assert.assertEquals(0, blobCount());
+    }
+
+    @Test
+    public void remove_collectsGarbageOffCommittingThread() throws Exception {
+        final Set<Thread> readers = Collections.synchronizedSet(new HashSet<Thread>());
+        InMemorySharedPreferences sharedPreferences = new InMemorySharedPreferences() {
+            @Override
+            public Map<String, ?> getAll() {
+                readers.add(Thread.currentThread());
+                return super.getAll();
+            }
+        };
+        PreferencesManager preferencesManager = new PreferencesManager.Builder(sharedPreferences)
+                .blobStore(new BlobStore(directory, 0), 0)
+                .build();
+        preferencesManager.setObject(KEY, listOf(100, 0));
+
+        preferencesManager.removeValue(KEY);
+        preferencesManager.awaitBlobGarbageCollection();
+
+        Assert.assertEquals(0, blobCount());
+        Assert.assertFalse(readers.isEmpty());
+        Assert.assertFalse(readers.contains(Thread.currentThread()));
+        preferencesManager.close();
+    }
+
+    @Test
+    public void userString_notStub() {
+        String hash = "0123456789abcdef0123456789abcdef01234567";
+
+        preferencesManager.setString(KEY, "@blob:1:" + hash + ":3");
+
+        Assert.assertFalse(BlobStore.isStub(sharedPreferences.getString(KEY, null)));
+        Assert.assertFalse(BlobStore.isStub("HTE6" + hash));
+        Assert.assertEquals("@blob:1:" + hash + ":3", preferencesManager.getString(KEY));
+    }
+
+    @Test
+    public void userString_doesNotKeepBlobs() throws Exception {
+        preferencesManager.setObject(KEY, listOf(100, 0));
+        String stub = sharedPreferences.getString(KEY, null);
+        String[] files = directory.list();
+        String hash = files[0].substring(0, files[0].indexOf('.'));
+
+        preferencesManager.setString(OTHER_KEY, "@blob:1:" + hash + ":" + new File(directory, files[0]).length());
+        preferencesManager.removeValue(KEY);
+        preferencesManager.awaitBlobGarbageCollection();
+
+        Assert.assertTrue(BlobStore.isStub(stub));
+        Assert.assertEquals(0, blobCount());
+    }
+
+    @Test
+    public void gracePeriod_keepsYoungBlobs() throws IOException {
+        BlobStore blobStore = new BlobStore(directory);
+        blobStore.write(new byte[]{1, 2, 3});
+
+        Assert.assertEquals(0, blobStore.collectGarbage(Collections.<String, Object>emptyMap()));
+        Assert.assertEquals(1, blobCount());
+    }
+
+    @Test
+    public void missingBlob_returnsNull() throws IOException {
+        preferencesManager.setObject(KEY, listOf(100, 0));
+        for (File file : directory.listFiles())
+            Assert.assertTrue(file.delete());
+
+        Assert.assertNull(preferencesManager.getObject(KEY));
+    }
+
+    @Test
+    public void leftoverTempFile_collected() throws IOException {
+        preferencesManager.setObject(KEY, listOf(100, 0));
+        Assert.assertTrue(new File(directory, "interrupted.tmp").createNewFile());
+
+        Assert.assertEquals(1, preferencesManager.collectBlobGarbage());
+        Assert.assertEquals(listOf(100, 0), preferencesManager.getObject(KEY));
+    }
+}
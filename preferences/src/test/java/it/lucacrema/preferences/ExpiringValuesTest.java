@@ -0,0 +1,218 @@
+package it.lucacrema.preferences;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.CountDownLatch;
+
+public class ExpiringValuesTest {
+
+    private static final long LONG_TTL = 60000L;
+    private static final int WRITES = 2000;
+
+    private InMemorySharedPreferences sharedPreferences;
+    private PreferencesManager preferencesManager;
+
+    @Before
+    public void setUp() {
+        sharedPreferences = new InMemorySharedPreferences();
+        preferencesManager = new PreferencesManager.Builder(sharedPreferences).expiringValues(0).build();
+    }
+
+    @Test(timeout = 10000)
+    public void setWithTtl_concurrentPlainWrites_noDeadlock() throws InterruptedException {
+        Thread expiring = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < WRITES; i++)
+                    preferencesManager.setInt("a", i, LONG_TTL);
+            }
+        });
+        expiring.start();
+        for (int i = 0; i < WRITES; i++) {
+            preferencesManager.setInt("b", i);
+            preferencesManager.removeExpiredValues();
+        }
+        expiring.join();
+
+        Assert.assertEquals(WRITES - 1, preferencesManager.getInt("a"));
+        Assert.assertEquals(WRITES - 1, preferencesManager.getInt("b"));
+    }
+
+    @Test
+    public void setWithTtl_singleCommit() {
+        int commits = sharedPreferences.getCommitCount();
+
+        Assert.assertTrue(preferencesManager.setInt("int", 5, LONG_TTL));
+
+        Assert.assertEquals(commits + 1, sharedPreferences.getCommitCount());
+        Assert.assertEquals(5, preferencesManager.getInt("int"));
+        Assert.assertTrue(sharedPreferences.contains("int" + ExpiryTable.SUFFIX));
+    }
+
+    @Test
+    public void expired_readAsMissing() throws Exception {
+        preferencesManager.setInt("int", 5, 1);
+        preferencesManager.setString("string", "value", 1);
+        preferencesManager.setObject("object", new ArrayList<>(Arrays.asList("a", "b")), 1);
+        Thread.sleep(5);
+
+        Assert.assertEquals(PreferencesManager.DEFAULT_INTEGER_RETURN, preferencesManager.getInt("int"));
+        Assert.assertEquals(PreferencesManager.DEFAULT_STRING_RETURN, preferencesManager.getString("string"));
+        Assert.assertNull(preferencesManager.getObject("object"));
+        Assert.assertFalse(preferencesManager.contains("int"));
+        Assert.assertTrue(sharedPreferences.contains("int"));
+    }
+
+    @Test
+    public void expired_loadedFromPreferences() throws Exception {
+        preferencesManager.setLong("long", 7L, 1);
+        Thread.sleep(5);
+
+        PreferencesManager reopened = new PreferencesManager.Builder(sharedPreferences).expiringValues(0).build();
+
+        Assert.assertEquals(PreferencesManager.DEFAULT_LONG_RETURN, reopened.getLong("long"));
+    }
+
+    @Test
+    public void setWithoutTtl_removesDeadline() throws Exception {
+        preferencesManager.setInt("int", 5, 1);
+        preferencesManager.setInt("int", 6);
+        Thread.sleep(5);
+
+        Assert.assertEquals(6, preferencesManager.getInt("int"));
+        Assert.assertFalse(sharedPreferences.contains("int" + ExpiryTable.SUFFIX));
+    }
+
+    @Test
+    public void removeValue_removesDeadline() {
+        preferencesManager.setInt("int", 5, LONG_TTL);
+        preferencesManager.removeValue("int");
+
+        Assert.assertFalse(sharedPreferences.contains("int" + ExpiryTable.SUFFIX));
+    }
+
+    @Test
+    public void removeExpiredValues_singleCommit() throws Exception {
+        preferencesManager.setInt("a", 1, 1);
+        preferencesManager.setInt("b", 2, 1);
+        preferencesManager.setInt("c", 3, LONG_TTL);
+        preferencesManager.setInt("d", 4);
+        Thread.sleep(5);
+        int commits = sharedPreferences.getCommitCount();
+
+        Assert.assertEquals(2, preferencesManager.removeExpiredValues());
+
+        Assert.assertEquals(commits + 1, sharedPreferences.getCommitCount());
+        Assert.assertFalse(sharedPreferences.contains("a"));
+        Assert.assertFalse(sharedPreferences.contains("b" + ExpiryTable.SUFFIX));
+        Assert.assertEquals(3, preferencesManager.getInt("c"));
+        Assert.assertEquals(4, preferencesManager.getInt("d"));
+        Assert.assertEquals(0, preferencesManager.removeExpiredValues());
+    }
+
+    @Test(timeout = 10000)
+    public void removeExpiredValues_concurrentPlainWrite_keepsValue() throws Exception {
+        preferencesManager.setString("string", "expiring", 1);
+        Thread.sleep(5);
+        CountDownLatch gate = new CountDownLatch(1);
+        sharedPreferences.setCommitGate(gate);
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                preferencesManager.setString("string", "permanent");
+            }
+        });
+        writer.start();
+        while (!"permanent".equals(sharedPreferences.getString("string", null)))
+            Thread.sleep(1);
+
+        int removed = preferencesManager.removeExpiredValues();
+        gate.countDown();
+        writer.join();
+
+        Assert.assertEquals(0, removed);
+        Assert.assertEquals("permanent", preferencesManager.getString("string"));
+        Assert.assertEquals("permanent", sharedPreferences.getString("string", null));
+        Assert.assertFalse(sharedPreferences.contains("string" + ExpiryTable.SUFFIX));
+        Assert.assertEquals(0, preferencesManager.removeExpiredValues());
+    }
+
+    @Test(timeout = 10000)
+    public void expired_rewrittenBeingCommitted_notExpired() throws Exception {
+        preferencesManager.setString("string", "expiring", 1);
+        Thread.sleep(5);
+        CountDownLatch gate = new CountDownLatch(1);
+        sharedPreferences.setCommitGate(gate);
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                preferencesManager.setString("string", "permanent");
+            }
+        });
+        writer.start();
+        while (!"permanent".equals(sharedPreferences.getString("string", null)))
+            Thread.sleep(1);
+
+        String read = preferencesManager.getString("string");
+        gate.countDown();
+        writer.join();
+
+        Assert.assertEquals("permanent", read);
+    }
+
+    @Test
+    public void deadlines_notListed() throws IOException {
+        preferencesManager.setInt("user.age", 30, LONG_TTL);
+        preferencesManager.setString("user.name", "Roberto");
+        PreferencesScope scope = preferencesManager.scope("user.");
+
+        Assert.assertEquals(new HashSet<>(Arrays.asList("user.age", "user.name")), preferencesManager.getAllValues().keySet());
+        Assert.assertEquals(Arrays.asList("age", "name"), scope.names());
+        Assert.assertEquals(2, scope.snapshot().size());
+        Assert.assertEquals(2, preferencesManager.exportTo(new ByteArrayOutputStream()));
+
+        preferencesManager.removeValue("user.age");
+        Assert.assertEquals(Arrays.asList("name"), scope.names());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void set_deadlineKey_throws() {
+        preferencesManager.setLong("string" + ExpiryTable.SUFFIX, System.currentTimeMillis());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void batch_deadlineKey_throws() {
+        preferencesManager.batch().setLong("string" + ExpiryTable.SUFFIX, System.currentTimeMillis());
+    }
+
+    @Test
+    public void sweeper_removesExpiredValues() throws Exception {
+        PreferencesManager swept = new PreferencesManager.Builder(sharedPreferences).expiringValues(10).build();
+        swept.setString("string", "value", 1);
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while (sharedPreferences.contains("string") && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        swept.close();
+
+        Assert.assertFalse(sharedPreferences.contains("string"));
+        Assert.assertFalse(sharedPreferences.contains("string" + ExpiryTable.SUFFIX));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void setWithTtl_notEnabled_throws() {
+        new PreferencesManager(sharedPreferences).setInt("int", 5, LONG_TTL);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setWithTtl_notPositive_throws() throws IOException {
+        preferencesManager.setObject("object", "value", 0);
+    }
+}
@@ -0,0 +1,149 @@
+package it.lucacrema.preferences;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+public class FilePreferenceStoreTest {
+
+    private static final String KEY = "key";
+    private static final String OTHER_KEY = "otherKey";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File file;
+    private FilePreferenceStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        file = new File(temporaryFolder.getRoot(), "preferences.store");
+        store = new FilePreferenceStore(file);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        store.close();
+    }
+
+    private FilePreferenceStore reopen() throws IOException {
+        store.close();
+        store = new FilePreferenceStore(file);
+        return store;
+    }
+
+    @Test
+    public void valuesAreReadAfterReopen() throws IOException {
+        Assert.assertTrue(store.edit()
+                .putInt(KEY, 1)
+                .putLong("long", 2L)
+                .putFloat("float", 3f)
+                .putBoolean("boolean", true)
+                .putString("string", "\u00e8 value")
+                .putStringSet("set", new HashSet<>(Arrays.asList("a", "b")))
+                .commit());
+
+        reopen();
+
+        Assert.assertEquals(1, store.getInt(KEY, 0));
+        Assert.assertEquals(2L, store.getLong("long", 0L));
+        Assert.assertEquals(3f, store.getFloat("float", 0f), 0f);
+        Assert.assertTrue(store.getBoolean("boolean", false));
+        Assert.assertEquals("\u00e8 value", store.getString("string", null));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("a", "b")), store.getStringSet("set", null));
+    }
+
+    @Test
+    public void appliedValuesAreWrittenOnClose() throws IOException {
+        store.edit().putInt(KEY, 1).apply();
+        store.edit().remove(KEY).putInt(OTHER_KEY, 2).apply();
+
+        reopen();
+
+        Assert.assertFalse(store.contains(KEY));
+        Assert.assertEquals(2, store.getInt(OTHER_KEY, 0));
+    }
+
+    @Test
+    public void clear_removesEverySavedValue() throws IOException {
+        store.edit().putInt(KEY, 1).commit();
+        store.edit().clear().putInt(OTHER_KEY, 2).commit();
+
+        reopen();
+
+        Assert.assertEquals(1, store.getAll().size());
+        Assert.assertEquals(2, store.getInt(OTHER_KEY, 0));
+    }
+
+    @Test(expected = ClassCastException.class)
+    public void differentType_throws() {
+        store.edit().putString(KEY, "value").commit();
+        store.getInt(KEY, 0);
+    }
+
+    @Test
+    public void listeners_notifiedOfChangedKeysOnly() {
+        final List<String> changed = new ArrayList<>();
+        PreferenceStore.OnChangeListener listener = new PreferenceStore.OnChangeListener() {
+            @Override
+            public void onPreferenceChanged(PreferenceStore store, String key) {
+                changed.add(key);
+            }
+        };
+        store.registerListener(listener);
+
+        store.edit().putInt(KEY, 1).putInt(OTHER_KEY, 2).commit();
+        store.edit().putInt(KEY, 1).remove("missing").commit();
+        store.edit().clear().commit();
+        store.unregisterListener(listener);
+        store.edit().putInt(KEY, 3).commit();
+
+        Assert.assertEquals(Arrays.asList(KEY, OTHER_KEY, null), changed);
+    }
+
+    @Test(expected = StreamCorruptedException.class)
+    public void otherFile_throws() throws IOException {
+        File other = new File(temporaryFolder.getRoot(), "other");
+        FileOutputStream output = new FileOutputStream(other);
+        output.write(new byte[]{1, 2, 3, 4, 5});
+        output.close();
+
+        new FilePreferenceStore(other);
+    }
+
+    @Test
+    public void preferencesManager_runsOnStore() throws IOException {
+        PreferencesManager preferencesManager = new PreferencesManager(store);
+        preferencesManager.setInt(KEY, 5);
+        preferencesManager.setObject(OTHER_KEY, new ArrayList<>(Arrays.asList("a", "b")));
+        preferencesManager.setStringList("list", Arrays.asList("c", "d"));
+
+        PreferencesManager reopened = new PreferencesManager(reopen());
+
+        Assert.assertEquals(5, reopened.getInt(KEY));
+        Assert.assertEquals(Arrays.asList("a", "b"), reopened.getObject(OTHER_KEY));
+        Assert.assertEquals(Arrays.asList("c", "d"), reopened.getStringList("list"));
+    }
+
+    @Test
+    public void inMemoryStore_keepsValues() {
+        PreferencesManager preferencesManager = new PreferencesManager(new InMemoryPreferenceStore());
+        preferencesManager.setString(KEY, "value");
+        preferencesManager.removeValue(OTHER_KEY);
+
+        Assert.assertEquals("value", preferencesManager.getString(KEY));
+        Assert.assertFalse(preferencesManager.contains(OTHER_KEY));
+    }
+}
@@ -0,0 +1,121 @@
+package it.lucacrema.preferences;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+public class KeyLockTest {
+
+    private static final int THREADS = 4;
+    private static final int UPDATES = 1000;
+
+    private PreferencesManager preferencesManager;
+
+    @Before
+    public void setUp() {
+        preferencesManager = new PreferencesManager(new InMemorySharedPreferences());
+    }
+
+    @Test
+    public void compareAndSet_expectedValue_set() {
+        PreferenceKey.IntKey key = PreferenceKey.ofInt("int", 0);
+
+        Assert.assertTrue(preferencesManager.compareAndSet(key, 0, 1));
+        Assert.assertFalse(preferencesManager.compareAndSet(key, 0, 2));
+        Assert.assertEquals(Integer.valueOf(1), preferencesManager.get(key));
+        Assert.assertTrue(preferencesManager.compareAndSet(key, 1, null));
+        Assert.assertFalse(preferencesManager.contains("int"));
+    }
+
+    @Test
+    public void compareAndSet_nullExpected_matchesMissing() {
+        PreferenceKey.StringKey key = PreferenceKey.ofString("string", null);
+
+        Assert.assertTrue(preferencesManager.compareAndSet(key, null, "a"));
+        Assert.assertFalse(preferencesManager.compareAndSet(key, null, "b"));
+        Assert.assertTrue(preferencesManager.compareAndSet(key, "a", "b"));
+        Assert.assertEquals("b", preferencesManager.get(key));
+    }
+
+    @Test
+    public void update_returnsNewValue() {
+        PreferenceKey.StringKey key = PreferenceKey.ofString("string", "x");
+
+        String value = preferencesManager.update(key, new PreferencesManager.Updater<String>() {
+            @Override
+            public String update(String current) {
+                return current + "y";
+            }
+        });
+
+        Assert.assertEquals("xy", value);
+        Assert.assertEquals("xy", preferencesManager.getString("string"));
+    }
+
+    @Test
+    public void update_concurrent_noLostUpdates() throws InterruptedException {
+        final PreferenceKey.IntKey key = PreferenceKey.ofInt("counter", 0);
+        final PreferencesManager.Updater<Integer> increment = new PreferencesManager.Updater<Integer>() {
+            @Override
+            public Integer update(Integer current) {
+                return current + 1;
+            }
+        };
+        runConcurrently(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < UPDATES; i++)
+                    preferencesManager.update(key, increment);
+            }
+        });
+
+        Assert.assertEquals(THREADS * UPDATES, preferencesManager.getInt("counter"));
+    }
+
+    @Test
+    public void updateInt_concurrent_noLostUpdates() throws InterruptedException {
+        runConcurrently(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < UPDATES; i++)
+                    preferencesManager.updateInt("counter", 1);
+            }
+        });
+
+        Assert.assertEquals(THREADS * UPDATES, preferencesManager.getInt("counter"));
+    }
+
+    @Test
+    public void stripedLocks_roundedToPowerOfTwo() {
+        Assert.assertEquals(1, new StripedLocks(1).size());
+        Assert.assertEquals(64, new StripedLocks(64).size());
+        Assert.assertEquals(128, new StripedLocks(65).size());
+
+        StripedLocks locks = new StripedLocks(16);
+        Assert.assertSame(locks.lockFor("key"), locks.lockFor(new String("key")));
+    }
+
+    private static void runConcurrently(final Runnable task) throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    task.run();
+                }
+            });
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads)
+            thread.join();
+    }
+}
@@ -0,0 +1,174 @@
+package it.lucacrema.preferences;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class LazyFilePreferenceStoreTest {
+
+    private static final String KEY = "key";
+    private static final String LONG_KEY = "longString";
+    private static final String LONG_VALUE = repeat("\u00e8 long value ", 20);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File file;
+    private LazyFilePreferenceStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        file = new File(temporaryFolder.getRoot(), "preferences.store");
+        FilePreferenceStore fileStore = new FilePreferenceStore(file);
+        Set<String> longSet = new HashSet<>();
+        for (int i = 0; i < 20; i++)
+            longSet.add("element " + i);
+        fileStore.edit()
+                .putInt(KEY, 1)
+                .putLong("long", 2L)
+                .putFloat("float", 3f)
+                .putBoolean("boolean", true)
+                .putString("string", "short")
+                .putString(LONG_KEY, LONG_VALUE)
+                .putStringSet("set", longSet)
+                .commit();
+        fileStore.close();
+        store = new LazyFilePreferenceStore(file);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        store.close();
+    }
+
+    private static String repeat(String value, int times) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < times; i++)
+            builder.append(value);
+        return builder.toString();
+    }
+
+    @Test
+    public void open_readsOnlyShortValues() {
+        Assert.assertEquals(2, store.countLazyValues());
+        Assert.assertTrue(store.contains(LONG_KEY));
+        Assert.assertEquals(2, store.countLazyValues());
+
+        Assert.assertEquals(LONG_VALUE, store.getString(LONG_KEY, null));
+        Assert.assertEquals(20, store.getStringSet("set", null).size());
+
+        Assert.assertEquals(0, store.countLazyValues());
+        Assert.assertEquals(1, store.getInt(KEY, 0));
+        Assert.assertEquals(2L, store.getLong("long", 0L));
+        Assert.assertEquals(3f, store.getFloat("float", 0f), 0f);
+        Assert.assertTrue(store.getBoolean("boolean", false));
+        Assert.assertEquals("short", store.getString("string", null));
+    }
+
+    @Test
+    public void getAll_readsEveryValue() {
+        Assert.assertEquals(LONG_VALUE, store.getAll().get(LONG_KEY));
+        Assert.assertEquals(7, store.getAll().size());
+    }
+
+    @Test
+    public void commit_copiesValuesNotRead() throws IOException {
+        store.edit().putInt(KEY, 5).commit();
+        Assert.assertEquals(2, store.countLazyValues());
+        store.close();
+
+        FilePreferenceStore reopened = new FilePreferenceStore(file);
+
+        Assert.assertEquals(5, reopened.getInt(KEY, 0));
+        Assert.assertEquals(LONG_VALUE, reopened.getString(LONG_KEY, null));
+        Assert.assertEquals(20, reopened.getStringSet("set", null).size());
+        reopened.close();
+    }
+
+    @Test
+    public void commit_valuesNotReadStillReadable() {
+        store.edit().putInt(KEY, 5).commit();
+        store.edit().remove("string").apply();
+        store.edit().putString("other", "value").commit();
+
+        Assert.assertEquals(LONG_VALUE, store.getString(LONG_KEY, null));
+        Assert.assertFalse(store.contains("string"));
+    }
+
+    @Test
+    public void unchangedValueNotRead_notNotified() {
+        final List<String> changed = new ArrayList<>();
+        PreferenceStore.OnChangeListener listener = new PreferenceStore.OnChangeListener() {
+            @Override
+            public void onPreferenceChanged(PreferenceStore store, String key) {
+                changed.add(key);
+            }
+        };
+        store.registerListener(listener);
+
+        store.edit().putString(LONG_KEY, LONG_VALUE).commit();
+        store.edit().putString(LONG_KEY, "changed").commit();
+        store.unregisterListener(listener);
+
+        Assert.assertEquals(Arrays.asList(LONG_KEY), changed);
+    }
+
+    @Test
+    public void softValues_readOnceUntilCollected() throws IOException {
+        store.close();
+        store = new LazyFilePreferenceStore(file, true);
+
+        Assert.assertEquals(LONG_VALUE, store.getString(LONG_KEY, null));
+        Assert.assertEquals(1, store.countLazyValues());
+        store.edit().putInt(KEY, 5).commit();
+        Assert.assertEquals(LONG_VALUE, store.getString(LONG_KEY, null));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void stringSet_unmodifiable() {
+        store.getStringSet("set", null).clear();
+    }
+
+    @Test(expected = EOFException.class)
+    public void truncatedFile_throws() throws IOException {
+        FileInputStream input = new FileInputStream(file);
+        byte[] content = new byte[(int) file.length()];
+        int read = input.read(content);
+        input.close();
+        File truncated = new File(temporaryFolder.getRoot(), "truncated");
+        FileOutputStream output = new FileOutputStream(truncated);
+        output.write(content, 0, read - 100);
+        output.close();
+
+        new LazyFilePreferenceStore(truncated);
+    }
+
+    @Test
+    public void preferencesManager_readsObjectsLazily() throws IOException {
+        PreferencesManager preferencesManager = new PreferencesManager(store);
+        preferencesManager.setObject("object", new ArrayList<>(Arrays.asList(LONG_VALUE, "b")));
+        store.close();
+        store = new LazyFilePreferenceStore(file);
+
+        PreferencesManager reopened = new PreferencesManager(store);
+
+        Assert.assertEquals(1, reopened.getInt(KEY));
+        Assert.assertEquals(3, store.countLazyValues());
+        Assert.assertEquals(Arrays.asList(LONG_VALUE, "b"), reopened.getObject("object"));
+        Assert.assertEquals(2, store.countLazyValues());
+    }
+}
@@ -0,0 +1,215 @@
+package it.lucacrema.preferences;
+
+import android.content.SharedPreferences;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+public class LogSharedPreferencesTest {
+
+    private static final String KEY = "key";
+    private static final String OTHER_KEY = "otherKey";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File file;
+    private LogSharedPreferences sharedPreferences;
+
+    @Before
+    public void setUp() throws IOException {
+        file = new File(temporaryFolder.getRoot(), "preferences.log");
+        sharedPreferences = new LogSharedPreferences(file);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        sharedPreferences.close();
+    }
+
+    private LogSharedPreferences reopen() throws IOException {
+        sharedPreferences.close();
+        sharedPreferences = new LogSharedPreferences(file);
+        return sharedPreferences;
+    }
+
+    @Test
+    public void valuesAreReplayedAfterReopen() throws IOException {
+        Assert.assertTrue(sharedPreferences.edit()
+                .putInt("int", 42)
+                .putLong("long", Long.MAX_VALUE)
+                .putFloat("float", 1.5f)
+                .putBoolean("boolean", true)
+                .putString("string", "value")
+                .putStringSet("set", new HashSet<>(Arrays.asList("a", "b")))
+                .commit());
+
+        SharedPreferences reopened = reopen();
+        Assert.assertEquals(42, reopened.getInt("int", 0));
+        Assert.assertEquals(Long.MAX_VALUE, reopened.getLong("long", 0));
+        Assert.assertEquals(1.5f, reopened.getFloat("float", 0), 0);
+        Assert.assertTrue(reopened.getBoolean("boolean", false));
+        Assert.assertEquals("value", reopened.getString("string", null));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("a", "b")), reopened.getStringSet("set", null));
+    }
+
+    @Test
+    public void removeAndClearAreReplayed() throws IOException {
+        sharedPreferences.edit().putInt(KEY, 1).putInt(OTHER_KEY, 2).commit();
+        sharedPreferences.edit().remove(KEY).commit();
+        Assert.assertFalse(reopen().contains(KEY));
+        Assert.assertEquals(2, sharedPreferences.getInt(OTHER_KEY, 0));
+
+        sharedPreferences.edit().clear().putInt(KEY, 3).commit();
+        SharedPreferences reopened = reopen();
+        Assert.assertEquals(1, reopened.getAll().size());
+        Assert.assertEquals(3, reopened.getInt(KEY, 0));
+    }
+
+    @Test
+    public void incompleteRecordIsDiscarded() throws IOException {
+        sharedPreferences.edit().putInt(KEY, 1).commit();
+        long validSize = sharedPreferences.getLogSize();
+        sharedPreferences.edit().putInt(KEY, 2).putString(OTHER_KEY, "value").commit();
+        sharedPreferences.close();
+        truncate(file, file.length() - 3);
+
+        sharedPreferences = new LogSharedPreferences(file);
+        Assert.assertEquals(1, sharedPreferences.getInt(KEY, 0));
+        Assert.assertFalse(sharedPreferences.contains(OTHER_KEY));
+        Assert.assertEquals(validSize, sharedPreferences.getLogSize());
+
+        sharedPreferences.edit().putInt(KEY, 3).commit();
+        Assert.assertEquals(3, reopen().getInt(KEY, 0));
+    }
+
+    @Test
+    public void corruptedRecordIsDiscarded() throws IOException {
+        sharedPreferences.edit().putInt(KEY, 1).commit();
+        long validSize = sharedPreferences.getLogSize();
+        sharedPreferences.edit().putInt(KEY, 2).commit();
+        sharedPreferences.close();
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.seek(file.length() - 1);
+        randomAccessFile.write(0x7F);
+        randomAccessFile.close();
+
+        sharedPreferences = new LogSharedPreferences(file);
+        Assert.assertEquals(1, sharedPreferences.getInt(KEY, 0));
+        Assert.assertEquals(validSize, sharedPreferences.getLogSize());
+    }
+
+    @Test
+    public void applyIsWrittenInOrder() throws IOException {
+        for (int i = 0; i < 100; i++)
+            sharedPreferences.edit().putInt(KEY, i).apply();
+        Assert.assertEquals(99, sharedPreferences.getInt(KEY, 0));
+        sharedPreferences.edit().putInt(OTHER_KEY, 1).commit();
+        Assert.assertEquals(99, reopen().getInt(KEY, 0));
+    }
+
+    @Test
+    public void compactKeepsOnlyCurrentValues() throws IOException {
+        for (int i = 0; i < 1000; i++)
+            sharedPreferences.edit().putInt(KEY, i).commit();
+        sharedPreferences.edit().putString(OTHER_KEY, "value").commit();
+        long sizeBefore = sharedPreferences.getLogSize();
+
+        sharedPreferences.compact();
+        Assert.assertTrue(sharedPreferences.getLogSize() < sizeBefore / 10);
+
+        sharedPreferences.edit().putInt(KEY, 1000).commit();
+        SharedPreferences reopened = reopen();
+        Assert.assertEquals(1000, reopened.getInt(KEY, 0));
+        Assert.assertEquals("value", reopened.getString(OTHER_KEY, null));
+    }
+
+    @Test
+    public void failedAppend_recordTruncatedAndWrittenAgain() throws IOException {
+        sharedPreferences.edit().putInt(KEY, 1).commit();
+        long size = sharedPreferences.getLogSize();
+        sharedPreferences.appendLimit = 5;
+
+        Assert.assertFalse(sharedPreferences.edit().putInt(KEY, 2).commit());
+        Assert.assertEquals(size, sharedPreferences.getLogSize());
+        Assert.assertEquals(2, sharedPreferences.getInt(KEY, 0));
+
+        sharedPreferences.appendLimit = -1;
+        Assert.assertTrue(sharedPreferences.edit().putString(OTHER_KEY, "value").commit());
+
+        SharedPreferences reopened = reopen();
+        Assert.assertEquals(2, reopened.getInt(KEY, 0));
+        Assert.assertEquals("value", reopened.getString(OTHER_KEY, null));
+    }
+
+    @Test
+    public void failedCompaction_logStaysWritable() throws IOException {
+        sharedPreferences.edit().putInt(KEY, 1).commit();
+        // A non-empty directory in place of the log makes the rename fail, the open log is not affected
+        Assert.assertTrue(file.delete());
+        File blocker = new File(file, "blocker");
+        Assert.assertTrue(blocker.mkdirs());
+        try {
+            sharedPreferences.compact();
+            Assert.fail("Compaction should fail when the log cannot be replaced");
+        } catch (IOException e) {
+            // Expected
+        }
+        Assert.assertFalse(new File(file.getPath() + ".compact").exists());
+        Assert.assertTrue(blocker.delete());
+        Assert.assertTrue(file.delete());
+
+        Assert.assertTrue(sharedPreferences.edit().putInt(KEY, 2).commit());
+        sharedPreferences.compact();
+
+        Assert.assertEquals(2, reopen().getInt(KEY, 0));
+    }
+
+    @Test
+    public void logIsCompactedAutomatically() throws Exception {
+        sharedPreferences.close();
+        sharedPreferences = new LogSharedPreferences(file, 1024, 0.5f);
+        for (int i = 0; i < 1000; i++)
+            sharedPreferences.edit().putInt(KEY, i).commit();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (sharedPreferences.getLogSize() >= 2048 && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        Assert.assertTrue(sharedPreferences.getLogSize() < 2048);
+        Assert.assertEquals(999, reopen().getInt(KEY, 0));
+    }
+
+    @Test
+    public void listenersAreNotifiedOfChangedKeys() {
+        final List<String> changedKeys = new ArrayList<>();
+        SharedPreferences.OnSharedPreferenceChangeListener listener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+            @Override
+            public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+                changedKeys.add(key);
+            }
+        };
+        sharedPreferences.registerOnSharedPreferenceChangeListener(listener);
+        sharedPreferences.edit().putInt(KEY, 1).remove(OTHER_KEY).commit();
+        sharedPreferences.unregisterOnSharedPreferenceChangeListener(listener);
+        sharedPreferences.edit().putInt(KEY, 2).commit();
+
+        Assert.assertEquals(Arrays.asList(KEY, OTHER_KEY), changedKeys);
+    }
+
+    private static void truncate(File file, long length) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.setLength(length);
+        randomAccessFile.close();
+    }
+}
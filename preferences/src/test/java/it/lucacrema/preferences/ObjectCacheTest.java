@@ -0,0 +1,127 @@
+package it.lucacrema.preferences;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.io.Serializable;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ObjectCacheTest {
+
+    private static final String OBJECT_KEY = "objectKey";
+    private static final String OTHER_KEY = "otherKey";
+    private static final String SERIALIZED_OBJECT = "serializedObject";
+    private static final String OBJECT_VALUE = "Test Object String";
+    private static final long MAX_WEIGHT = 1000L;
+    private static final int READS = 100;
+
+    @Mock
+    private ObjectSerializerUtility mockObjectSerializer;
+    @Mock
+    private PreferenceCodec<String> firstCodec;
+    @Mock
+    private PreferenceCodec<String> secondCodec;
+
+    private InMemorySharedPreferences sharedPreferences;
+    private ObjectCache objectCache;
+    private PreferencesManager preferencesManager;
+
+    @Before
+    public void setUp() throws IOException {
+        when(mockObjectSerializer.serializeObject(any(Serializable.class))).thenReturn(SERIALIZED_OBJECT);
+        when(mockObjectSerializer.deserializeObject(SERIALIZED_OBJECT)).thenReturn(OBJECT_VALUE);
+        sharedPreferences = new InMemorySharedPreferences();
+        objectCache = new ObjectCache(MAX_WEIGHT);
+        preferencesManager = new PreferencesManager.Builder(sharedPreferences)
+                .objectSerializer(mockObjectSerializer)
+                .objectCache(objectCache)
+                .build();
+        preferencesManager.setObject(OBJECT_KEY, OBJECT_VALUE);
+    }
+
+    @Test
+    public void getObject_manyReads_deserializedOnce() {
+        for (int i = 0; i < READS; i++)
+            Assert.assertEquals(OBJECT_VALUE, preferencesManager.getObject(OBJECT_KEY));
+
+        verify(mockObjectSerializer, times(1)).deserializeObject(SERIALIZED_OBJECT);
+        Assert.assertEquals(READS - 1, objectCache.getHitCount());
+        Assert.assertEquals(1, objectCache.getMissCount());
+    }
+
+    @Test
+    public void getObject_otherCodec_decodedByIt() {
+        when(mockObjectSerializer.deserializeObject(SERIALIZED_OBJECT, firstCodec)).thenReturn("first");
+        when(mockObjectSerializer.deserializeObject(SERIALIZED_OBJECT, secondCodec)).thenReturn("second");
+
+        Assert.assertEquals("first", preferencesManager.getObject(OBJECT_KEY, firstCodec));
+        Assert.assertEquals("second", preferencesManager.getObject(OBJECT_KEY, secondCodec));
+        Assert.assertEquals(OBJECT_VALUE, preferencesManager.getObject(OBJECT_KEY));
+        Assert.assertEquals(OBJECT_VALUE, preferencesManager.getObject(OBJECT_KEY));
+
+        verify(mockObjectSerializer, times(1)).deserializeObject(SERIALIZED_OBJECT);
+        Assert.assertEquals(1, objectCache.getHitCount());
+    }
+
+    @Test
+    public void removeValue_getObject_isNull() {
+        preferencesManager.getObject(OBJECT_KEY);
+        preferencesManager.removeValue(OBJECT_KEY);
+
+        Assert.assertNull(preferencesManager.getObject(OBJECT_KEY));
+        Assert.assertEquals(0, objectCache.size());
+    }
+
+    @Test
+    public void removeAllValues_cacheIsEmpty() {
+        preferencesManager.getObject(OBJECT_KEY);
+        preferencesManager.removeAllValues();
+
+        Assert.assertEquals(0, objectCache.size());
+    }
+
+    @Test
+    public void externalEdit_getObject_isNotStale() {
+        when(mockObjectSerializer.deserializeObject(OTHER_KEY)).thenReturn(OTHER_KEY);
+        preferencesManager.getObject(OBJECT_KEY);
+
+        sharedPreferences.edit().putString(OBJECT_KEY, OTHER_KEY).commit();
+        Assert.assertEquals(0, objectCache.size());
+        Assert.assertEquals(OTHER_KEY, preferencesManager.getObject(OBJECT_KEY));
+    }
+
+    @Test
+    public void put_overMaxWeight_evictsLeastRecentlyUsed() {
+        ObjectCache cache = new ObjectCache(MAX_WEIGHT);
+        String source = new String(new char[(int) MAX_WEIGHT / 5]);
+        for (int i = 0; i < 4; i++)
+            cache.put(OBJECT_KEY + i, source, null, i);
+        cache.get(OBJECT_KEY + 0, source, null);
+        cache.put(OTHER_KEY, source, null, OTHER_KEY);
+
+        Assert.assertTrue(cache.getWeight() <= MAX_WEIGHT);
+        Assert.assertEquals(1, cache.getEvictionCount());
+        Assert.assertEquals(0, cache.get(OBJECT_KEY + 0, source, null));
+        Assert.assertNull(cache.get(OBJECT_KEY + 1, source, null));
+        Assert.assertEquals(2, cache.get(OBJECT_KEY + 2, source, null));
+    }
+
+    @Test
+    public void put_biggerThanCache_isNotCached() {
+        ObjectCache cache = new ObjectCache(MAX_WEIGHT);
+        cache.put(OBJECT_KEY, new String(new char[(int) MAX_WEIGHT]), null, OBJECT_VALUE);
+
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(0, cache.getWeight());
+    }
+}
@@ -0,0 +1,115 @@
+package it.lucacrema.preferences;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class ObjectSerializerCompressionTest {
+
+    private static final int THRESHOLD = 256;
+
+    private static ArrayList<String> repetitiveList(int size) {
+        ArrayList<String> list = new ArrayList<>();
+        for (int i = 0; i < size; i++)
+            list.add("Repeated value " + (i % 10));
+        return list;
+    }
+
+    @Test
+    public void largeObject_compressedAndRead() throws IOException {
+        ObjectSerializerUtility serializer = new ObjectSerializerUtility().setCompressionThreshold(THRESHOLD);
+        ArrayList<String> value = repetitiveList(500);
+
+        byte[] uncompressed = new ObjectSerializerUtility().encode(value, JavaSerializationCodec.INSTANCE);
+        byte[] compressed = serializer.encode(value, JavaSerializationCodec.INSTANCE);
+
+        Assert.assertEquals(ObjectSerializerUtility.COMPRESSION_TAG, compressed[0]);
+        Assert.assertTrue(compressed.length < uncompressed.length / 4);
+        Assert.assertEquals(value, serializer.decode(compressed, null));
+        CompressionStats stats = serializer.getCompressionStats();
+        Assert.assertEquals(1, stats.getCompressedCount());
+        Assert.assertEquals(1, stats.getDecompressedCount());
+        Assert.assertEquals(uncompressed.length, stats.getUncompressedBytes());
+        Assert.assertEquals(compressed.length, stats.getCompressedBytes());
+        Assert.assertTrue(stats.getCompressionRatio() < 0.25);
+    }
+
+    @Test
+    public void smallObject_notCompressed() throws IOException {
+        ObjectSerializerUtility serializer = new ObjectSerializerUtility().setCompressionThreshold(THRESHOLD);
+
+        byte[] bytes = serializer.encode("small", JavaSerializationCodec.INSTANCE);
+
+        Assert.assertNotEquals(ObjectSerializerUtility.COMPRESSION_TAG, bytes[0]);
+        Assert.assertEquals(0, serializer.getCompressionStats().getCompressedCount());
+    }
+
+    @Test
+    public void incompressibleObject_savedUncompressed() throws IOException {
+        ObjectSerializerUtility serializer = new ObjectSerializerUtility().setCompressionThreshold(0);
+        byte[] random = new byte[4096];
+        new Random(42).nextBytes(random);
+
+        byte[] bytes = serializer.encode(random, JavaSerializationCodec.INSTANCE);
+
+        Assert.assertNotEquals(ObjectSerializerUtility.COMPRESSION_TAG, bytes[0]);
+        Assert.assertEquals(1, serializer.getCompressionStats().getNotCompressedCount());
+        Assert.assertArrayEquals(random, (byte[]) serializer.decode(bytes, null));
+    }
+
+    @Test
+    public void uncompressedValue_readAfterEnablingCompression() throws IOException {
+        BinaryCodec codec = new BinaryCodec();
+        List<Object> value = new ArrayList<Object>(repetitiveList(100));
+        byte[] old = new ObjectSerializerUtility(codec).encode(value, codec);
+
+        ObjectSerializerUtility serializer = new ObjectSerializerUtility(codec).setCompressionThreshold(0);
+        Assert.assertEquals(value, serializer.decode(old, null));
+        Assert.assertEquals(value, serializer.decode(serializer.encode(value, codec), codec));
+    }
+
+    @Test
+    public void corruptedCompressedValue_returnsNull() throws IOException {
+        ObjectSerializerUtility serializer = new ObjectSerializerUtility().setCompressionThreshold(0);
+        byte[] compressed = serializer.encode(repetitiveList(100), JavaSerializationCodec.INSTANCE);
+
+        Assert.assertNull(serializer.decode(Arrays.copyOf(compressed, compressed.length / 2), null));
+        Assert.assertNull(serializer.decode(new byte[]{ObjectSerializerUtility.COMPRESSION_TAG, (byte) 0xFF}, null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void codecWithCompressionTag_rejected() {
+        new ObjectSerializerUtility(new BinaryCodec(ObjectSerializerUtility.COMPRESSION_TAG));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void serializeObject_unregisteredCodecWithPackedTag_rejected() throws IOException {
+        PreferenceCodec<String> packedTagCodec = new PreferenceCodec<String>() {
+            @Override
+            public byte getTag() {
+                return ObjectSerializerUtility.PACKED_TAG;
+            }
+
+            @Override
+            public void encode(@NonNull String value, @NonNull OutputStream out) throws IOException {
+                out.write(value.getBytes("UTF-8"));
+            }
+
+            @Override
+            public String decode(@NonNull InputStream in) {
+                throw new UnsupportedOperationException();
+            }
+        };
+
+        new ObjectSerializerUtility().serializeObject("value", packedTagCodec);
+    }
+}
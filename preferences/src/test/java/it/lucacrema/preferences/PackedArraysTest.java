@@ -0,0 +1,132 @@
+package it.lucacrema.preferences;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class PackedArraysTest {
+
+    private static final String KEY = "samples";
+
+    private InMemorySharedPreferences sharedPreferences;
+    private PreferencesManager preferencesManager;
+
+    @Before
+    public void setUp() {
+        sharedPreferences = new InMemorySharedPreferences();
+        preferencesManager = new PreferencesManager(sharedPreferences);
+    }
+
+    private int savedLength() {
+        return sharedPreferences.getString(KEY, "").length();
+    }
+
+    @Test
+    public void intArray_roundTrip() {
+        int[] values = {0, -1, 1, Integer.MIN_VALUE, Integer.MAX_VALUE, 42, -42};
+
+        Assert.assertTrue(preferencesManager.setIntArray(KEY, values));
+
+        Assert.assertArrayEquals(values, preferencesManager.getIntArray(KEY));
+    }
+
+    @Test
+    public void sortedIntArray_deltaEncoded() {
+        int[] values = new int[1000];
+        for (int i = 0; i < values.length; i++)
+            values[i] = 1000000 + i * 3;
+
+        preferencesManager.setIntArray(KEY, values);
+
+        Assert.assertArrayEquals(values, preferencesManager.getIntArray(KEY));
+        Assert.assertTrue(savedLength() < values.length * 2);
+    }
+
+    @Test
+    public void sortedIntArray_fullRange() {
+        int[] values = {Integer.MIN_VALUE, Integer.MIN_VALUE, 0, 1, Integer.MAX_VALUE};
+
+        preferencesManager.setIntArray(KEY, values);
+
+        Assert.assertArrayEquals(values, preferencesManager.getIntArray(KEY));
+    }
+
+    @Test
+    public void longArray_roundTrip() {
+        long[] unsorted = {5L, Long.MIN_VALUE, Long.MAX_VALUE, -7L, 0L};
+        long[] sorted = {Long.MIN_VALUE, -1L, 0L, 1600000000000L, 1600000000001L, Long.MAX_VALUE};
+
+        preferencesManager.setLongArray(KEY, unsorted);
+        Assert.assertArrayEquals(unsorted, preferencesManager.getLongArray(KEY));
+        preferencesManager.setLongArray(KEY, sorted);
+        Assert.assertArrayEquals(sorted, preferencesManager.getLongArray(KEY));
+    }
+
+    @Test
+    public void floatArray_roundTrip() {
+        float[] values = new float[500];
+        Random random = new Random(7);
+        for (int i = 0; i < values.length; i++)
+            values[i] = random.nextFloat() - 0.5f;
+        values[0] = Float.NaN;
+        values[1] = Float.NEGATIVE_INFINITY;
+
+        preferencesManager.setFloatArray(KEY, values);
+
+        Assert.assertArrayEquals(values, preferencesManager.getFloatArray(KEY), 0f);
+    }
+
+    @Test
+    public void stringList_keepsOrderAndNulls() {
+        List<String> values = Arrays.asList("b", null, "a", "", "\u00e8\u4e2d\ud83d\ude00");
+
+        preferencesManager.setStringList(KEY, values);
+
+        Assert.assertEquals(values, preferencesManager.getStringList(KEY));
+    }
+
+    @Test
+    public void emptyArrays_roundTrip() {
+        preferencesManager.setIntArray(KEY, new int[0]);
+        Assert.assertEquals(0, preferencesManager.getIntArray(KEY).length);
+        preferencesManager.setStringList(KEY, Collections.<String>emptyList());
+        Assert.assertTrue(preferencesManager.getStringList(KEY).isEmpty());
+    }
+
+    @Test
+    public void missingOrNull_removesAndReturnsNull() {
+        Assert.assertNull(preferencesManager.getIntArray(KEY));
+        preferencesManager.setLongArray(KEY, new long[]{1L});
+
+        preferencesManager.setLongArray(KEY, null);
+
+        Assert.assertFalse(preferencesManager.contains(KEY));
+        Assert.assertNull(preferencesManager.getLongArray(KEY));
+    }
+
+    @Test(expected = ClassCastException.class)
+    public void otherType_throws() {
+        preferencesManager.setIntArray(KEY, new int[]{1, 2});
+
+        preferencesManager.getFloatArray(KEY);
+    }
+
+    @Test
+    public void malformedValue_returnsNull() {
+        preferencesManager.setIntArray(KEY, new int[]{1, 2, 3, 4, 5, 6});
+        String saved = sharedPreferences.getString(KEY, "");
+        sharedPreferences.edit().putString(KEY, saved.substring(0, 8)).commit();
+
+        Assert.assertNull(preferencesManager.getIntArray(KEY));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void codecWithPackedTag_rejected() {
+        new ObjectSerializerUtility(new BinaryCodec(ObjectSerializerUtility.PACKED_TAG));
+    }
+}
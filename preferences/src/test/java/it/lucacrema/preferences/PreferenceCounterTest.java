@@ -0,0 +1,201 @@
+package it.lucacrema.preferences;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+public class PreferenceCounterTest {
+
+    private static final String COUNTER_KEY = "counterKey";
+    private static final int THREADS = 8;
+    private static final int UPDATES_PER_THREAD = 20000;
+    private static final int MAX_SHIFT_VALUE = 7;
+    private static final int SHIFTS_PER_THREAD = MAX_SHIFT_VALUE * 500;
+    private static final long TIMEOUT_SECONDS = 30L;
+
+    private InMemorySharedPreferences sharedPreferences;
+    private PreferencesManager preferencesManager;
+    private ExecutorService threads;
+
+    @Before
+    public void setUp() {
+        sharedPreferences = new InMemorySharedPreferences();
+        preferencesManager = new PreferencesManager.Builder(sharedPreferences)
+                .counterPolicy(new WriteBehindPolicy(1000, 5))
+                .build();
+        threads = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @After
+    public void tearDown() {
+        threads.shutdownNow();
+        preferencesManager.close();
+    }
+
+    private void runOnAllThreads(final Runnable task) throws Exception {
+        List<Future<Void>> results = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            results.add(threads.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    task.run();
+                    return null;
+                }
+            }));
+        }
+        for (Future<Void> result : results)
+            result.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void add_maxPendingWrites_singleImmediateFlush() {
+        final List<Long> delays = new ArrayList<>();
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1) {
+            @Override
+            public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+                synchronized (delays) {
+                    delays.add(delay);
+                }
+                return super.schedule(command, 1, TimeUnit.HOURS);
+            }
+        };
+        try {
+            PreferenceCounter counter = new PreferenceCounter(preferencesManager, COUNTER_KEY, new WriteBehindPolicy(64, 60000), executor);
+            for (int i = 0; i < 200; i++)
+                counter.increment();
+            Assert.assertEquals(Arrays.asList(60000L, 0L), delays);
+
+            counter.flush();
+            for (int i = 0; i < 32; i++)
+                counter.increment();
+            Assert.assertEquals(Arrays.asList(60000L, 0L, 60000L), delays);
+            for (int i = 0; i < 200; i++)
+                counter.increment();
+            Assert.assertEquals(Arrays.asList(60000L, 0L, 60000L, 0L), delays);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void counter_sameKey_sameInstance() {
+        Assert.assertSame(preferencesManager.counter(COUNTER_KEY), preferencesManager.counter(COUNTER_KEY));
+    }
+
+    @Test
+    public void counter_startsFromSavedValue() {
+        preferencesManager.setInt(COUNTER_KEY, 10);
+        PreferenceCounter counter = preferencesManager.counter(COUNTER_KEY);
+        counter.add(5);
+
+        Assert.assertEquals(15, counter.get());
+    }
+
+    @Test
+    public void removeValue_counterRestartsFromZero() {
+        PreferenceCounter counter = preferencesManager.counter(COUNTER_KEY);
+        counter.add(5);
+        Assert.assertTrue(counter.flush());
+
+        preferencesManager.removeValue(COUNTER_KEY);
+        counter.add(2);
+
+        Assert.assertEquals(2, counter.get());
+        Assert.assertTrue(preferencesManager.flush());
+        Assert.assertEquals(2, preferencesManager.getInt(COUNTER_KEY));
+    }
+
+    @Test
+    public void removeAllValues_counterRestartsFromZero() {
+        PreferenceCounter counter = preferencesManager.counter(COUNTER_KEY);
+        counter.add(5);
+        Assert.assertTrue(counter.flush());
+
+        preferencesManager.removeAllValues();
+        counter.add(2);
+
+        Assert.assertEquals(2, counter.get());
+        Assert.assertTrue(preferencesManager.flush());
+        Assert.assertEquals(2, preferencesManager.getInt(COUNTER_KEY));
+    }
+
+    @Test
+    public void setInt_counterRestartsFromValue() {
+        PreferenceCounter counter = preferencesManager.counter(COUNTER_KEY);
+        counter.add(5);
+
+        preferencesManager.setInt(COUNTER_KEY, 100);
+        Assert.assertTrue(preferencesManager.flush());
+        Assert.assertEquals(100, preferencesManager.getInt(COUNTER_KEY));
+
+        counter.add(1);
+        Assert.assertTrue(preferencesManager.flush());
+        Assert.assertEquals(101, preferencesManager.getInt(COUNTER_KEY));
+    }
+
+    @Test
+    public void increment_manyThreads_noLostUpdates() throws Exception {
+        final PreferenceCounter counter = preferencesManager.counter(COUNTER_KEY);
+        runOnAllThreads(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < UPDATES_PER_THREAD; i++)
+                    counter.increment();
+            }
+        });
+
+        Assert.assertEquals(THREADS * UPDATES_PER_THREAD, counter.get());
+        Assert.assertTrue(preferencesManager.flush());
+        Assert.assertEquals(THREADS * UPDATES_PER_THREAD, preferencesManager.getInt(COUNTER_KEY));
+        Assert.assertTrue(sharedPreferences.getCommitCount() < THREADS * UPDATES_PER_THREAD / 100);
+    }
+
+    @Test
+    public void shift_manyThreads_everyStepReturnedEvenly() throws Exception {
+        final PreferenceCounter counter = preferencesManager.counter(COUNTER_KEY);
+        final AtomicIntegerArray occurrences = new AtomicIntegerArray(MAX_SHIFT_VALUE + 1);
+        runOnAllThreads(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < SHIFTS_PER_THREAD; i++)
+                    occurrences.incrementAndGet(counter.shift(MAX_SHIFT_VALUE));
+            }
+        });
+
+        Assert.assertEquals(0, occurrences.get(0));
+        for (int step = 1; step <= MAX_SHIFT_VALUE; step++)
+            Assert.assertEquals(THREADS * SHIFTS_PER_THREAD / MAX_SHIFT_VALUE, occurrences.get(step));
+        Assert.assertEquals(MAX_SHIFT_VALUE, counter.get());
+    }
+
+    @Test
+    public void add_flushDelay_savedInBackground() throws Exception {
+        preferencesManager.counter(COUNTER_KEY).add(3);
+
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS);
+        while (sharedPreferences.getInt(COUNTER_KEY, 0) != 3 && System.currentTimeMillis() < deadline)
+            Thread.sleep(5);
+        Assert.assertEquals(3, sharedPreferences.getInt(COUNTER_KEY, 0));
+    }
+
+    @Test
+    public void close_savesCounters() {
+        preferencesManager.counter(COUNTER_KEY).add(-4);
+        preferencesManager.close();
+
+        Assert.assertEquals(-4, sharedPreferences.getInt(COUNTER_KEY, 0));
+    }
+}
@@ -0,0 +1,116 @@
+package it.lucacrema.preferences;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.io.Serializable;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PreferenceKeyTest {
+
+    private static final PreferenceKey.IntKey INT_KEY = PreferenceKey.ofInt("intKey", 7);
+    private static final PreferenceKey.LongKey LONG_KEY = PreferenceKey.ofLong("longKey", 8L);
+    private static final PreferenceKey.FloatKey FLOAT_KEY = PreferenceKey.ofFloat("floatKey", 1.5f);
+    private static final PreferenceKey.BooleanKey BOOLEAN_KEY = PreferenceKey.ofBoolean("booleanKey", true);
+    private static final PreferenceKey.StringKey STRING_KEY = PreferenceKey.ofString("stringKey", "default");
+
+    private static final String SERIALIZED_OBJECT = "serializedObject";
+    private static final String SERIALIZED_OBJECT_2 = "serializedObject2";
+
+    @Mock
+    private ObjectSerializerUtility mockObjectSerializer;
+
+    private InMemorySharedPreferences sharedPreferences;
+    private PreferencesManager preferencesManager;
+    private PreferenceKey.ObjectKey<String> objectKey;
+
+    @Before
+    public void setUp() {
+        sharedPreferences = new InMemorySharedPreferences();
+        preferencesManager = new PreferencesManager(sharedPreferences, mockObjectSerializer);
+        objectKey = PreferenceKey.ofObject("objectKey", "defaultObject");
+    }
+
+    @Test
+    public void missingValues_returnDefaults() {
+        Assert.assertEquals(7, preferencesManager.getInt(INT_KEY));
+        Assert.assertEquals(Integer.valueOf(7), preferencesManager.get(INT_KEY));
+        Assert.assertEquals(8L, preferencesManager.getLong(LONG_KEY));
+        Assert.assertEquals(1.5f, preferencesManager.getFloat(FLOAT_KEY), 0);
+        Assert.assertTrue(preferencesManager.getBoolean(BOOLEAN_KEY));
+        Assert.assertEquals("default", preferencesManager.get(STRING_KEY));
+        Assert.assertEquals("defaultObject", preferencesManager.get(objectKey));
+    }
+
+    @Test
+    public void set_get_sameValues() {
+        Assert.assertTrue(preferencesManager.setInt(INT_KEY, 1));
+        Assert.assertTrue(preferencesManager.set(LONG_KEY, 2L));
+        Assert.assertTrue(preferencesManager.setFloat(FLOAT_KEY, 3f));
+        Assert.assertTrue(preferencesManager.set(BOOLEAN_KEY, false));
+        Assert.assertTrue(preferencesManager.set(STRING_KEY, "value"));
+
+        Assert.assertEquals(1, preferencesManager.getInt(INT_KEY));
+        Assert.assertEquals(1, preferencesManager.getInt(INT_KEY.getName()));
+        Assert.assertEquals(Long.valueOf(2L), preferencesManager.get(LONG_KEY));
+        Assert.assertEquals(3f, preferencesManager.getFloat(FLOAT_KEY), 0);
+        Assert.assertFalse(preferencesManager.getBoolean(BOOLEAN_KEY));
+        Assert.assertEquals("value", preferencesManager.get(STRING_KEY));
+    }
+
+    @Test
+    public void setNull_removesValue() {
+        preferencesManager.set(STRING_KEY, "value");
+        preferencesManager.set(STRING_KEY, null);
+
+        Assert.assertFalse(sharedPreferences.contains(STRING_KEY.getName()));
+        Assert.assertEquals("default", preferencesManager.get(STRING_KEY));
+    }
+
+    @Test
+    public void objectKey_decodedOnlyWhenValueChanges() throws IOException {
+        when(mockObjectSerializer.serializeObject(any(Serializable.class))).thenReturn(SERIALIZED_OBJECT);
+        when(mockObjectSerializer.deserializeObject(eq(SERIALIZED_OBJECT))).thenReturn("object");
+        when(mockObjectSerializer.deserializeObject(eq(SERIALIZED_OBJECT_2))).thenReturn("object2");
+
+        Assert.assertTrue(preferencesManager.set(objectKey, "object"));
+        Assert.assertEquals("object", preferencesManager.get(objectKey));
+        Assert.assertEquals("object", preferencesManager.get(objectKey));
+        verify(mockObjectSerializer, times(1)).deserializeObject(eq(SERIALIZED_OBJECT));
+
+        sharedPreferences.edit().putString(objectKey.getName(), SERIALIZED_OBJECT_2).commit();
+        Assert.assertEquals("object2", preferencesManager.get(objectKey));
+        Assert.assertEquals("object2", preferencesManager.get(objectKey));
+        verify(mockObjectSerializer, times(1)).deserializeObject(eq(SERIALIZED_OBJECT_2));
+    }
+
+    @Test
+    public void objectKey_serializationError() throws IOException {
+        when(mockObjectSerializer.serializeObject(any(Serializable.class))).thenThrow(new IOException());
+
+        Assert.assertFalse(preferencesManager.set(objectKey, "object"));
+        try {
+            preferencesManager.setObject(objectKey, "object");
+            Assert.fail();
+        } catch (IOException e) {
+            //Expected
+        }
+    }
+
+    @Test(expected = ClassCastException.class)
+    public void wrongType_throwsClassCastException() {
+        preferencesManager.setString(INT_KEY.getName(), "string");
+        preferencesManager.getInt(INT_KEY);
+    }
+}
@@ -0,0 +1,118 @@
+package it.lucacrema.preferences;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StreamCorruptedException;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+public class PreferencesExportTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private InMemorySharedPreferences sharedPreferences;
+    private PreferencesManager preferencesManager;
+
+    @Before
+    public void setUp() {
+        sharedPreferences = new InMemorySharedPreferences();
+        preferencesManager = new PreferencesManager(sharedPreferences);
+        preferencesManager.setInt("int", -5);
+        preferencesManager.setLong("long", Long.MIN_VALUE);
+        preferencesManager.setFloat("float", 2.5f);
+        preferencesManager.setBoolean("boolean", true);
+        preferencesManager.setString("string", "\u00e8\u4e2d");
+        char[] large = new char[100000];
+        Arrays.fill(large, 'x');
+        preferencesManager.setString("large", new String(large));
+        sharedPreferences.edit().putStringSet("set", new HashSet<>(Arrays.asList("a", "b"))).commit();
+    }
+
+    private byte[] export() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Assert.assertEquals(7, preferencesManager.exportTo(out));
+        return out.toByteArray();
+    }
+
+    @Test
+    public void replace_roundTrip() throws IOException {
+        byte[] exported = export();
+        Map<String, ?> expected = sharedPreferences.getAll();
+        InMemorySharedPreferences target = new InMemorySharedPreferences();
+        target.edit().putInt("other", 1).commit();
+        PreferencesManager targetManager = new PreferencesManager(target);
+        int commits = target.getCommitCount();
+
+        Assert.assertTrue(targetManager.importFrom(new ByteArrayInputStream(exported), ImportMode.REPLACE));
+
+        Assert.assertEquals(expected, target.getAll());
+        Assert.assertEquals(commits + 1, target.getCommitCount());
+    }
+
+    @Test
+    public void merge_keepsOtherValues() throws IOException {
+        byte[] exported = export();
+        InMemorySharedPreferences target = new InMemorySharedPreferences();
+        target.edit().putInt("other", 1).putInt("int", 7).commit();
+        PreferencesManager targetManager = new PreferencesManager(target);
+
+        Assert.assertTrue(targetManager.importFrom(new ByteArrayInputStream(exported), ImportMode.MERGE));
+
+        Assert.assertEquals(1, targetManager.getInt("other"));
+        Assert.assertEquals(-5, targetManager.getInt("int"));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("a", "b")), target.getStringSet("set", null));
+        Assert.assertEquals(8, target.getAll().size());
+    }
+
+    @Test
+    public void fileChannel_roundTrip() throws IOException {
+        File file = folder.newFile("backup.bin");
+        try (FileChannel channel = new RandomAccessFile(file, "rw").getChannel()) {
+            preferencesManager.exportTo(channel);
+        }
+        Map<String, ?> expected = sharedPreferences.getAll();
+        preferencesManager.removeAllValues();
+
+        try (FileChannel channel = new RandomAccessFile(file, "r").getChannel()) {
+            Assert.assertTrue(preferencesManager.importFrom(channel, ImportMode.REPLACE));
+        }
+
+        Assert.assertEquals(expected, sharedPreferences.getAll());
+    }
+
+    @Test
+    public void truncatedExport_nothingImported() throws IOException {
+        byte[] exported = export();
+        Set<String> keys = new HashSet<>(sharedPreferences.getAll().keySet());
+        int commits = sharedPreferences.getCommitCount();
+
+        try {
+            preferencesManager.importFrom(new ByteArrayInputStream(Arrays.copyOf(exported, exported.length - 3)), ImportMode.REPLACE);
+            Assert.fail("Truncated export imported");
+        } catch (EOFException e) {
+            // Expected
+        }
+
+        Assert.assertEquals(keys, sharedPreferences.getAll().keySet());
+        Assert.assertEquals(commits, sharedPreferences.getCommitCount());
+    }
+
+    @Test(expected = StreamCorruptedException.class)
+    public void notAnExport_throws() throws IOException {
+        preferencesManager.importFrom(new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5, 6}), ImportMode.MERGE);
+    }
+}
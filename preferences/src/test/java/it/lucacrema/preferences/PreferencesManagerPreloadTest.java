@@ -0,0 +1,77 @@
+package it.lucacrema.preferences;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PreferencesManagerPreloadTest {
+
+    private static final PreferenceKey.ObjectKey<String> OBJECT_KEY = PreferenceKey.ofObject("objectKey", null);
+    private static final String SERIALIZED_OBJECT = "serializedObject";
+    private static final long TIMEOUT_SECONDS = 5L;
+
+    @Mock
+    private ObjectSerializerUtility mockObjectSerializer;
+
+    @Test
+    public void preload_warmsUpKeysInBackground() throws Exception {
+        InMemorySharedPreferences sharedPreferences = new InMemorySharedPreferences();
+        sharedPreferences.edit().putString(OBJECT_KEY.getName(), SERIALIZED_OBJECT).commit();
+        when(mockObjectSerializer.deserializeObject(eq(SERIALIZED_OBJECT))).thenReturn("object");
+        final AtomicReference<Thread> callbackThread = new AtomicReference<>();
+        final CountDownLatch callbackCalled = new CountDownLatch(1);
+
+        Future<PreferencesManager> result = new PreferencesManager.Builder(sharedPreferences)
+                .objectSerializer(mockObjectSerializer)
+                .warmUp(OBJECT_KEY)
+                .preload(null, new PreferencesManager.PreloadCallback() {
+                    @Override
+                    public void onPreloaded(@NonNull PreferencesManager preferencesManager) {
+                        callbackThread.set(Thread.currentThread());
+                        callbackCalled.countDown();
+                    }
+                });
+        PreferencesManager preferencesManager = result.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        verify(mockObjectSerializer, times(1)).deserializeObject(eq(SERIALIZED_OBJECT));
+        Assert.assertEquals("object", preferencesManager.get(OBJECT_KEY));
+        verify(mockObjectSerializer, times(1)).deserializeObject(eq(SERIALIZED_OBJECT));
+        Assert.assertTrue(callbackCalled.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        Assert.assertNotSame(Thread.currentThread(), callbackThread.get());
+    }
+
+    @Test
+    public void preload_wrongTypeSkipped() throws Exception {
+        InMemorySharedPreferences sharedPreferences = new InMemorySharedPreferences();
+        sharedPreferences.edit().putInt(OBJECT_KEY.getName(), 5).commit();
+
+        PreferencesManager preferencesManager = new PreferencesManager.Builder(sharedPreferences)
+                .warmUp(OBJECT_KEY)
+                .warmUpObjects(OBJECT_KEY.getName())
+                .preload(new Executor() {
+                    @Override
+                    public void execute(@NonNull Runnable command) {
+                        command.run();
+                    }
+                }, null)
+                .get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        Assert.assertEquals(5, preferencesManager.getInt(OBJECT_KEY.getName()));
+    }
+}
@@ -14,7 +14,12 @@ import java.io.Serializable;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -36,6 +41,7 @@ public class PreferencesManagerTest {
     private static final String DEFAULT_OBJECT_VALUE = "Test String";
     private static final Integer DEFAULT_OBJECT_VALUE_2 = 6;
     private static final int MAX_SHIFT_VALUE = 3;
+    private static final int BATCH_SIZE = 50;
 
     private static final String PRESENT_INT_KEY = "presentIntKey";
     private static final String PRESENT_STRING_KEY = "presentStringKey";
@@ -322,4 +328,70 @@ public class PreferencesManagerTest {
         preferencesManager.removeAllValues();
         Assert.assertEquals(PreferencesManager.DEFAULT_BOOLEAN_RETURN, preferencesManager.getBoolean(DEFAULT_BOOL_KEY));
     }
-}
\ No newline at end of file
+
+    //tests for batch
+
+    /**
+     * Writing many values with single setters rewrites the preferences once per value
+     */
+    @Test
+    public void setInt_manyWrites_commitsEach() {
+        clearInvocations(mockSharedPreferencesEditor);
+
+        for (int i = 0; i < BATCH_SIZE; i++)
+            preferencesManager.setInt(DEFAULT_INT_KEY + i, i);
+        verify(mockSharedPreferencesEditor, times(BATCH_SIZE)).commit();
+    }
+
+    /**
+     * The same writes in a batch share a single editor and commit
+     */
+    @Test
+    public void batch_manyWrites_commitsOnce() throws IOException {
+        when(mockSharedPreferences.contains(PRESENT_INT_KEY)).thenReturn(true);
+        clearInvocations(mockSharedPreferences, mockSharedPreferencesEditor);
+
+        boolean result = preferencesManager.batch(batch -> {
+            for (int i = 0; i < BATCH_SIZE; i++)
+                batch.setInt(DEFAULT_INT_KEY + i, i);
+            batch.setObject(DEFAULT_OBJECT_KEY, DEFAULT_OBJECT_VALUE);
+            batch.removeValue(PRESENT_INT_KEY);
+        });
+        Assert.assertTrue(result);
+        verify(mockSharedPreferences, times(1)).edit();
+        verify(mockSharedPreferencesEditor, times(BATCH_SIZE)).putInt(any(String.class), anyInt());
+        verify(mockSharedPreferencesEditor).putString(DEFAULT_OBJECT_KEY, "Nothing");
+        verify(mockSharedPreferencesEditor).remove(PRESENT_INT_KEY);
+        verify(mockSharedPreferencesEditor, times(1)).commit();
+    }
+
+    @Test
+    public void batch_commitFails_returnsFalse() {
+        when(mockSharedPreferencesEditor.commit()).thenReturn(false);
+
+        Assert.assertFalse(preferencesManager.batch().setInt(DEFAULT_INT_KEY, DEFAULT_INT_VALUE).commit());
+    }
+
+    @Test
+    public void batch_serializationFails_nothingCommitted() throws IOException {
+        when(mockObjectSerializer.serializeObject(any(Serializable.class))).thenThrow(new IOException());
+        clearInvocations(mockSharedPreferencesEditor);
+
+        try {
+            preferencesManager.batch(batch -> {
+                batch.setInt(DEFAULT_INT_KEY, DEFAULT_INT_VALUE);
+                batch.setObject(DEFAULT_OBJECT_KEY, DEFAULT_OBJECT_VALUE);
+            });
+            Assert.fail("Should have thrown an IOException");
+        } catch (IOException e) {
+            verify(mockSharedPreferencesEditor, never()).commit();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void batch_committedTwice_throwsError() {
+        PreferencesBatch batch = preferencesManager.batch().setInt(DEFAULT_INT_KEY, DEFAULT_INT_VALUE);
+        batch.commit();
+        batch.commit();
+    }
+}
@@ -0,0 +1,118 @@
+package it.lucacrema.preferences;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class PreferencesManagerWriteBehindTest {
+
+    private static final String INT_KEY = "intKey";
+    private static final String STRING_KEY = "stringKey";
+    private static final String STRING_VALUE = "Roberto";
+    private static final int MAX_PENDING_WRITES = 10;
+    private static final long LONG_DELAY_MILLIS = 60000L;
+    private static final long SHORT_DELAY_MILLIS = 10L;
+    private static final long TIMEOUT_SECONDS = 5L;
+
+    private InMemorySharedPreferences sharedPreferences;
+    private PreferencesManager preferencesManager;
+
+    @Before
+    public void setUp() {
+        sharedPreferences = new InMemorySharedPreferences();
+        preferencesManager = createManager(LONG_DELAY_MILLIS);
+    }
+
+    @After
+    public void tearDown() {
+        preferencesManager.close();
+    }
+
+    private PreferencesManager createManager(long flushDelayMillis) {
+        return new PreferencesManager.Builder(sharedPreferences)
+                .writeBehind(new WriteBehindPolicy(MAX_PENDING_WRITES, flushDelayMillis))
+                .build();
+    }
+
+    @Test
+    public void setIntAsync_getInt_seesPendingValue() {
+        Future<Boolean> result = preferencesManager.setIntAsync(INT_KEY, 5);
+
+        Assert.assertFalse(result.isDone());
+        Assert.assertEquals(5, preferencesManager.getInt(INT_KEY));
+        Assert.assertEquals(5, preferencesManager.getAllValues().get(INT_KEY));
+        Assert.assertEquals(0, sharedPreferences.getCommitCount());
+    }
+
+    @Test
+    public void removeValueAsync_getString_seesPendingRemoval() {
+        preferencesManager.setString(STRING_KEY, STRING_VALUE);
+        preferencesManager.removeValueAsync(STRING_KEY);
+
+        Assert.assertEquals(PreferencesManager.DEFAULT_STRING_RETURN, preferencesManager.getString(STRING_KEY));
+        Assert.assertFalse(preferencesManager.getAllValues().containsKey(STRING_KEY));
+        Assert.assertEquals(STRING_VALUE, sharedPreferences.getString(STRING_KEY, null));
+    }
+
+    @Test
+    public void updateInt_manyTimes_coalescedInOneCommit() throws Exception {
+        for (int i = 0; i < 100; i++)
+            preferencesManager.updateInt(INT_KEY);
+        Future<Boolean> result = preferencesManager.setStringAsync(STRING_KEY, STRING_VALUE);
+
+        Assert.assertTrue(preferencesManager.flush());
+        Assert.assertTrue(result.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        Assert.assertEquals(1, sharedPreferences.getCommitCount());
+        Assert.assertEquals(100, sharedPreferences.getInt(INT_KEY, 0));
+        Assert.assertEquals(STRING_VALUE, sharedPreferences.getString(STRING_KEY, null));
+    }
+
+    @Test
+    public void setIntAsync_maxPendingWrites_flushedInBackground() throws Exception {
+        Future<Boolean> result = null;
+        for (int i = 0; i < MAX_PENDING_WRITES; i++)
+            result = preferencesManager.setIntAsync(INT_KEY + i, i);
+
+        Assert.assertTrue(result.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        Assert.assertEquals(MAX_PENDING_WRITES - 1, sharedPreferences.getInt(INT_KEY + (MAX_PENDING_WRITES - 1), 0));
+    }
+
+    @Test
+    public void setIntAsync_flushDelay_flushedInBackground() throws Exception {
+        preferencesManager.close();
+        preferencesManager = createManager(SHORT_DELAY_MILLIS);
+
+        Assert.assertTrue(preferencesManager.setIntAsync(INT_KEY, 5).get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        Assert.assertEquals(5, sharedPreferences.getInt(INT_KEY, 0));
+    }
+
+    @Test
+    public void setInt_withPendingWrites_savesEverything() {
+        preferencesManager.setIntAsync(INT_KEY, 5);
+
+        Assert.assertTrue(preferencesManager.setString(STRING_KEY, STRING_VALUE));
+        Assert.assertEquals(5, sharedPreferences.getInt(INT_KEY, 0));
+        Assert.assertEquals(STRING_VALUE, sharedPreferences.getString(STRING_KEY, null));
+    }
+
+    @Test
+    public void batch_withPendingWrites_isNotOverwritten() {
+        preferencesManager.setIntAsync(INT_KEY, 5);
+
+        Assert.assertTrue(preferencesManager.batch().setInt(INT_KEY, 6).commit());
+        Assert.assertTrue(preferencesManager.flush());
+        Assert.assertEquals(6, sharedPreferences.getInt(INT_KEY, 0));
+    }
+
+    @Test
+    public void close_withPendingWrites_savesEverything() {
+        preferencesManager.setIntAsync(INT_KEY, 5);
+        preferencesManager.close();
+
+        Assert.assertEquals(5, sharedPreferences.getInt(INT_KEY, 0));
+    }
+}
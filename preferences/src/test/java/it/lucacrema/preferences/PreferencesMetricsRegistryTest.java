@@ -0,0 +1,126 @@
+package it.lucacrema.preferences;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PreferencesMetricsRegistryTest {
+
+    private static final String INT_KEY = "intKey";
+    private static final String OBJECT_KEY = "objectKey";
+    private static final String SERIALIZED_OBJECT = "serializedObject";
+
+    @Mock
+    private ObjectSerializerUtility mockObjectSerializer;
+
+    private InMemorySharedPreferences sharedPreferences;
+    private PreferencesMetricsRegistry metrics;
+    private PreferencesManager preferencesManager;
+
+    @Before
+    public void setUp() {
+        sharedPreferences = new InMemorySharedPreferences();
+        metrics = new PreferencesMetricsRegistry();
+        preferencesManager = new PreferencesManager.Builder(sharedPreferences)
+                .objectSerializer(mockObjectSerializer)
+                .metrics(metrics)
+                .build();
+    }
+
+    @Test
+    public void operations_recordedInHistograms() {
+        preferencesManager.setInt(INT_KEY, 5);
+        preferencesManager.getInt(INT_KEY);
+        preferencesManager.getInt(INT_KEY);
+        preferencesManager.removeValue(INT_KEY);
+
+        Assert.assertEquals(2, metrics.getHistogram(PreferencesMetrics.Operation.GET).getCount());
+        Assert.assertEquals(1, metrics.getHistogram(PreferencesMetrics.Operation.SET).getCount());
+        Assert.assertEquals(1, metrics.getHistogram(PreferencesMetrics.Operation.REMOVE).getCount());
+        Assert.assertEquals(2, metrics.getHistogram(PreferencesMetrics.Operation.COMMIT).getCount());
+        Assert.assertEquals(2, metrics.getSuccessfulCommitCount());
+        Assert.assertEquals(0, metrics.getFailedCommitCount());
+    }
+
+    @Test
+    public void batch_recordedAsOneCommit() {
+        preferencesManager.batch().setInt(INT_KEY, 1).setString("stringKey", "value").commit();
+
+        Assert.assertEquals(1, metrics.getSuccessfulCommitCount());
+        Assert.assertEquals(2, metrics.getCommittedChangeCount());
+    }
+
+    @Test
+    public void setObject_recordsSerializedBytes() throws IOException {
+        when(mockObjectSerializer.serializeObject(any(Serializable.class))).thenReturn(SERIALIZED_OBJECT);
+
+        preferencesManager.setObject(OBJECT_KEY, "object");
+        preferencesManager.batch().setObject(OBJECT_KEY, "object").commit();
+
+        Assert.assertEquals(2, metrics.getSerializedObjectCount());
+        Assert.assertEquals(2 * SERIALIZED_OBJECT.length(), metrics.getSerializedBytes());
+    }
+
+    @Test
+    public void getObject_notParsed_recordsDeserializationFailure() {
+        sharedPreferences.edit().putString(OBJECT_KEY, SERIALIZED_OBJECT).commit();
+        when(mockObjectSerializer.deserializeObject(eq(SERIALIZED_OBJECT))).thenReturn(null);
+
+        Assert.assertNull(preferencesManager.getObject(OBJECT_KEY));
+        Assert.assertNull(preferencesManager.getObject("missingKey"));
+        Assert.assertEquals(1, metrics.getDeserializationFailureCount());
+    }
+
+    @Test
+    public void getHotKeys_mostAccessedFirst() {
+        for (int i = 0; i < 3; i++)
+            preferencesManager.getInt("a");
+        for (int i = 0; i < 5; i++)
+            preferencesManager.getInt("b");
+        preferencesManager.getInt("c");
+
+        Map<String, Long> hotKeys = metrics.getHotKeys(2);
+        Assert.assertEquals(Arrays.asList("b", "a"), new ArrayList<>(hotKeys.keySet()));
+        Assert.assertEquals(Long.valueOf(5), hotKeys.get("b"));
+    }
+
+    @Test
+    public void getHotKeys_limitsTrackedKeys() {
+        metrics = new PreferencesMetricsRegistry(1);
+        metrics.onOperation(PreferencesMetrics.Operation.GET, "a", 1);
+        metrics.onOperation(PreferencesMetrics.Operation.GET, "b", 1);
+        metrics.onOperation(PreferencesMetrics.Operation.GET, "a", 1);
+
+        Assert.assertEquals(1, metrics.getHotKeys(10).size());
+        Assert.assertEquals(Long.valueOf(2), metrics.getHotKeys(10).get("a"));
+    }
+
+    @Test
+    public void histogram_percentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++)
+            histogram.record(100);
+        histogram.record(1000000);
+
+        Assert.assertEquals(100, histogram.getCount());
+        Assert.assertEquals(1000000, histogram.getMaxNanos());
+        Assert.assertEquals(128, histogram.getPercentileNanos(50));
+        Assert.assertEquals(128, histogram.getPercentileNanos(99));
+        Assert.assertEquals(1000000, histogram.getPercentileNanos(100));
+        Assert.assertEquals((99 * 100 + 1000000) / 100, histogram.getMeanNanos());
+    }
+}
@@ -0,0 +1,190 @@
+package it.lucacrema.preferences;
+
+import androidx.annotation.NonNull;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+public class PreferencesObserverTest {
+
+    private static final long WINDOW_MILLIS = 100L;
+
+    private InMemorySharedPreferences sharedPreferences;
+    private PreferencesManager preferencesManager;
+
+    @Before
+    public void setUp() {
+        sharedPreferences = new InMemorySharedPreferences();
+        preferencesManager = new PreferencesManager.Builder(sharedPreferences)
+                .observers(WINDOW_MILLIS, null)
+                .build();
+    }
+
+    @After
+    public void tearDown() {
+        preferencesManager.close();
+    }
+
+    @Test
+    public void observeKey_burstCoalesced() throws InterruptedException {
+        PreferenceKey.IntKey key = PreferenceKey.ofInt("counter", 0);
+        RecordingObserver<Integer> observer = new RecordingObserver<>(1);
+        Subscription subscription = preferencesManager.observe(key, observer);
+
+        for (int i = 1; i <= 10; i++)
+            preferencesManager.setInt(key, i);
+
+        observer.await();
+        Thread.sleep(WINDOW_MILLIS * 2);
+        Assert.assertEquals(Arrays.asList("counter=10"), observer.changes);
+        Assert.assertTrue(subscription.isActive());
+    }
+
+    @Test
+    public void observeObjectKey_decodedValue() throws Exception {
+        ObjectSerializerUtility objectSerializer = Mockito.mock(ObjectSerializerUtility.class);
+        Mockito.when(objectSerializer.serializeObject(ArgumentMatchers.any(Serializable.class))).thenReturn("serialized");
+        Mockito.when(objectSerializer.deserializeObject("serialized")).thenReturn("decoded");
+        preferencesManager.close();
+        preferencesManager = new PreferencesManager.Builder(sharedPreferences)
+                .objectSerializer(objectSerializer)
+                .observers(WINDOW_MILLIS, null)
+                .build();
+        PreferenceKey<String> key = PreferenceKey.ofObject("object", "default");
+        RecordingObserver<String> observer = new RecordingObserver<>(1);
+        Subscription subscription = preferencesManager.observe(key, observer);
+
+        preferencesManager.set(key, "value");
+
+        observer.await();
+        Assert.assertEquals(Arrays.asList("object=decoded"), observer.changes);
+    }
+
+    @Test
+    public void observePrefix_onlyMatchingKeys() throws InterruptedException {
+        RecordingObserver<Object> observer = new RecordingObserver<>(2);
+        Subscription subscription = preferencesManager.observe("user.", observer);
+
+        preferencesManager.setString("user.name", "Roberto");
+        preferencesManager.setString("other", "value");
+        preferencesManager.setInt("user.age", 30);
+        preferencesManager.removeValue("user.name");
+
+        observer.await();
+        Assert.assertEquals(Arrays.asList("user.name=null", "user.age=30"), observer.changes);
+    }
+
+    @Test
+    public void observePrefix_readsOnlyChangedKeys() throws InterruptedException {
+        for (int i = 0; i < 100; i++)
+            preferencesManager.setInt("other." + i, i);
+        RecordingObserver<Object> observer = new RecordingObserver<>(1);
+        Subscription subscription = preferencesManager.observe("user.", observer);
+        int copies = sharedPreferences.getAllCount();
+
+        preferencesManager.setString("user.name", "Roberto");
+
+        observer.await();
+        Assert.assertEquals(Arrays.asList("user.name=Roberto"), observer.changes);
+        Assert.assertEquals(copies, sharedPreferences.getAllCount());
+    }
+
+    @Test
+    public void clear_notifiesPrefixObserversOfRemovedKeys() throws InterruptedException {
+        preferencesManager.setString("user.name", "Roberto");
+        preferencesManager.setString("other", "value");
+        RecordingObserver<Object> observer = new RecordingObserver<>(1);
+        Subscription subscription = preferencesManager.observe("user.", observer);
+
+        preferencesManager.removeAllValues();
+
+        observer.await();
+        Thread.sleep(WINDOW_MILLIS * 2);
+        Assert.assertEquals(Arrays.asList("user.name=null"), observer.changes);
+    }
+
+    @Test
+    public void cancel_noMoreNotifications() throws InterruptedException {
+        RecordingObserver<Object> observer = new RecordingObserver<>(1);
+        Subscription subscription = preferencesManager.observe("", observer);
+        subscription.cancel();
+
+        preferencesManager.setInt("key", 1);
+
+        Assert.assertFalse(observer.latch.await(WINDOW_MILLIS * 3, TimeUnit.MILLISECONDS));
+        Assert.assertFalse(subscription.isActive());
+    }
+
+    @Test
+    public void executor_receivesNotification() throws InterruptedException {
+        final List<Runnable> tasks = new ArrayList<>();
+        Executor executor = new Executor() {
+            @Override
+            public void execute(@NonNull Runnable command) {
+                synchronized (tasks) {
+                    tasks.add(command);
+                    tasks.notifyAll();
+                }
+            }
+        };
+        RecordingObserver<Boolean> observer = new RecordingObserver<>(1);
+        Subscription subscription = preferencesManager.observe(PreferenceKey.ofBoolean("enabled", false), executor, observer);
+
+        preferencesManager.setBoolean("enabled", true);
+
+        synchronized (tasks) {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (tasks.isEmpty() && System.currentTimeMillis() < deadline)
+                tasks.wait(100);
+        }
+        Assert.assertTrue(observer.changes.isEmpty());
+        tasks.get(0).run();
+        Assert.assertEquals(Arrays.asList("enabled=true"), observer.changes);
+    }
+
+    @Test
+    public void clear_notifiesKeyObservers() throws InterruptedException {
+        preferencesManager.setString("name", "Roberto");
+        RecordingObserver<String> observer = new RecordingObserver<>(1);
+        Subscription subscription = preferencesManager.observe(PreferenceKey.ofString("name", "none"), observer);
+
+        preferencesManager.removeAllValues();
+
+        observer.await();
+        Assert.assertEquals(Arrays.asList("name=none"), observer.changes);
+    }
+
+    private static final class RecordingObserver<T> implements PreferenceObserver<T> {
+
+        final List<String> changes = new ArrayList<>();
+        final List<T> values = new ArrayList<>();
+        final CountDownLatch latch;
+
+        RecordingObserver(int expected) {
+            this.latch = new CountDownLatch(expected);
+        }
+
+        @Override
+        public synchronized void onChanged(@NonNull String key, T value) {
+            changes.add(key + "=" + value);
+            values.add(value);
+            latch.countDown();
+        }
+
+        void await() throws InterruptedException {
+            Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        }
+    }
+}
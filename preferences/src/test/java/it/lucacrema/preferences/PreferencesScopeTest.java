@@ -0,0 +1,120 @@
+package it.lucacrema.preferences;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class PreferencesScopeTest {
+
+    private static final String USER_PREFIX = "user.123.";
+
+    private InMemorySharedPreferences sharedPreferences;
+    private PreferencesManager preferencesManager;
+    private PreferencesScope scope;
+
+    @Before
+    public void setUp() {
+        sharedPreferences = new InMemorySharedPreferences();
+        preferencesManager = new PreferencesManager(sharedPreferences);
+        preferencesManager.setString("user.12.name", "other");
+        preferencesManager.setString(USER_PREFIX + "name", "Roberto");
+        scope = preferencesManager.scope(USER_PREFIX);
+    }
+
+    @Test
+    public void names_onlyKeysWithPrefix() {
+        scope.setInt("age", 30);
+        preferencesManager.setBoolean("user.1234.enabled", true);
+
+        Assert.assertEquals(Arrays.asList("age", "name"), scope.names());
+        Assert.assertEquals(2, scope.size());
+        Assert.assertEquals(30, scope.getInt("age"));
+        Assert.assertEquals(30, preferencesManager.getInt(USER_PREFIX + "age"));
+        Assert.assertEquals("Roberto", scope.getString("name"));
+    }
+
+    @Test
+    public void iterator_fullKeysInOrder() {
+        scope.setLong("b", 2L);
+        scope.setLong("a", 1L);
+
+        List<String> keys = new ArrayList<>();
+        for (String key : scope)
+            keys.add(key);
+        Assert.assertEquals(Arrays.asList(USER_PREFIX + "a", USER_PREFIX + "b", USER_PREFIX + "name"), keys);
+    }
+
+    @Test
+    public void externalChanges_updateIndex() {
+        sharedPreferences.edit().putInt(USER_PREFIX + "external", 1).remove(USER_PREFIX + "name").commit();
+
+        Assert.assertEquals(Arrays.asList("external"), scope.names());
+    }
+
+    @Test
+    public void removeValue_removedFromIndex() {
+        scope.removeValue("name");
+
+        Assert.assertTrue(scope.isEmpty());
+        Assert.assertFalse(scope.contains("name"));
+    }
+
+    @Test
+    public void clear_onlyScopeInOneCommit() {
+        scope.setInt("age", 30);
+        int commits = sharedPreferences.getCommitCount();
+
+        Assert.assertTrue(scope.clear());
+
+        Assert.assertEquals(commits + 1, sharedPreferences.getCommitCount());
+        Assert.assertTrue(scope.isEmpty());
+        Assert.assertEquals("other", preferencesManager.getString("user.12.name"));
+    }
+
+    @Test
+    public void scope_noFullCopies() {
+        int copies = sharedPreferences.getAllCount();
+        for (int i = 0; i < 10; i++) {
+            scope.setInt("value" + i, i);
+            scope.names();
+        }
+        scope.clear();
+
+        Assert.assertEquals(copies, sharedPreferences.getAllCount());
+    }
+
+    @Test
+    public void removeAllValues_clearsIndex() {
+        preferencesManager.removeAllValues();
+        preferencesManager.setInt(USER_PREFIX + "new", 1);
+
+        Assert.assertEquals(Arrays.asList("new"), scope.names());
+    }
+
+    @Test
+    public void writeBehind_pendingKeysListed() {
+        PreferencesManager writeBehindManager = new PreferencesManager.Builder(sharedPreferences)
+                .writeBehind(new WriteBehindPolicy(100, 60000L))
+                .build();
+        PreferencesScope writeBehindScope = writeBehindManager.scope(USER_PREFIX);
+
+        writeBehindManager.setIntAsync(USER_PREFIX + "pending", 1);
+        writeBehindManager.removeValueAsync(USER_PREFIX + "name");
+
+        Assert.assertEquals(Arrays.asList("pending"), writeBehindScope.names());
+        writeBehindManager.close();
+        Assert.assertEquals(Arrays.asList("pending"), writeBehindScope.names());
+    }
+
+    @Test
+    public void nestedScope() {
+        scope.scope("settings.").setBoolean("dark", true);
+
+        Assert.assertEquals(Arrays.asList("name", "settings.dark"), scope.names());
+        Assert.assertEquals(Arrays.asList("dark"), scope.scope("settings.").names());
+    }
+}
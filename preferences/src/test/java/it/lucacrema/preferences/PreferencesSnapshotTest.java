@@ -0,0 +1,182 @@
+package it.lucacrema.preferences;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class PreferencesSnapshotTest {
+
+    private static final int SNAPSHOTS = 2000;
+
+    private InMemorySharedPreferences sharedPreferences;
+    private PreferencesManager preferencesManager;
+
+    @Before
+    public void setUp() {
+        sharedPreferences = new InMemorySharedPreferences();
+        preferencesManager = new PreferencesManager(sharedPreferences);
+    }
+
+    @Test
+    public void snapshot_keys_typedValues() throws IOException {
+        preferencesManager.setInt("int", 1);
+        preferencesManager.setFloat("float", 2f);
+        preferencesManager.setLong("long", 3L);
+        preferencesManager.setBoolean("boolean", true);
+        preferencesManager.setString("string", "s");
+        preferencesManager.setObject("object", new ArrayList<>(Arrays.asList("a", "b")));
+        preferencesManager.setString("other", "not requested");
+
+        PreferencesSnapshot snapshot = preferencesManager.snapshot("int", "float", "long", "boolean", "string", "object");
+
+        Assert.assertEquals(6, snapshot.size());
+        Assert.assertFalse(snapshot.contains("other"));
+        Assert.assertEquals(1, snapshot.getInt("int"));
+        Assert.assertEquals(2f, snapshot.getFloat("float"), 0f);
+        Assert.assertEquals(3L, snapshot.getLong("long"));
+        Assert.assertTrue(snapshot.getBoolean("boolean"));
+        Assert.assertEquals("s", snapshot.getString("string"));
+        Assert.assertEquals(Arrays.asList("a", "b"), snapshot.getObject("object"));
+    }
+
+    @Test
+    public void snapshot_writtenByOtherEditor_typesFound() {
+        sharedPreferences.edit()
+                .putInt("int", 0)
+                .putLong("long", 0L)
+                .putBoolean("boolean", false)
+                .putFloat("float", 0f)
+                .putStringSet("set", new HashSet<>(Arrays.asList("a")))
+                .commit();
+
+        PreferencesSnapshot snapshot = preferencesManager.snapshot("int", "long", "boolean", "float", "set", "missing");
+
+        Assert.assertEquals(new HashSet<>(Arrays.asList("int", "long", "boolean", "float", "set")), snapshot.names());
+        Assert.assertEquals(0L, snapshot.getLong("long"));
+        Assert.assertFalse(snapshot.getBoolean("boolean"));
+
+        sharedPreferences.edit().putString("int", "now a string").commit();
+        Assert.assertEquals("now a string", preferencesManager.snapshot("int").getString("int"));
+    }
+
+    @Test
+    public void snapshot_missingKeys_defaults() {
+        PreferencesSnapshot snapshot = preferencesManager.snapshot("int", "string", "object");
+
+        Assert.assertEquals(0, snapshot.size());
+        Assert.assertFalse(snapshot.contains("int"));
+        Assert.assertEquals(PreferencesManager.DEFAULT_INTEGER_RETURN, snapshot.getInt("int"));
+        Assert.assertEquals(PreferencesManager.DEFAULT_STRING_RETURN, snapshot.getString("string"));
+        Assert.assertNull(snapshot.getObject("object"));
+    }
+
+    @Test
+    public void snapshot_laterWrites_notSeen() {
+        preferencesManager.setInt("int", 1);
+        PreferencesSnapshot snapshot = preferencesManager.snapshot("int", "string");
+
+        preferencesManager.setInt("int", 2);
+        preferencesManager.setString("string", "s");
+
+        Assert.assertEquals(1, snapshot.getInt("int"));
+        Assert.assertFalse(snapshot.contains("string"));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("int")), snapshot.names());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void names_immutable() {
+        preferencesManager.setInt("int", 1);
+
+        preferencesManager.snapshot("int").names().remove("int");
+    }
+
+    @Test
+    public void snapshot_scope_valuesByName() {
+        PreferencesScope scope = preferencesManager.scope("user.1.");
+        scope.setString("name", "Roberto");
+        scope.setInt("age", 30);
+        preferencesManager.setInt("user.12.age", 40);
+
+        PreferencesSnapshot snapshot = scope.snapshot();
+
+        Assert.assertEquals(new HashSet<>(Arrays.asList("name", "age")), snapshot.names());
+        Assert.assertEquals("Roberto", snapshot.getString("name"));
+        Assert.assertEquals(30, snapshot.getInt("age"));
+    }
+
+    @Test
+    public void snapshot_writeBehind_seesPendingWrites() {
+        PreferencesManager writeBehindManager = new PreferencesManager.Builder(new InMemorySharedPreferences())
+                .writeBehind(new WriteBehindPolicy(100, 60000))
+                .build();
+        writeBehindManager.setInt("int", 1);
+        writeBehindManager.setInt("removed", 2);
+        writeBehindManager.removeValue("removed");
+
+        PreferencesSnapshot snapshot = writeBehindManager.snapshot("int", "removed");
+
+        Assert.assertEquals(1, snapshot.getInt("int"));
+        Assert.assertFalse(snapshot.contains("removed"));
+    }
+
+    @Test(timeout = 10000)
+    public void snapshot_slowCommit_seesChangesWithoutWaiting() throws InterruptedException {
+        preferencesManager.scope("user.");
+        CountDownLatch gate = new CountDownLatch(1);
+        sharedPreferences.setCommitGate(gate);
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                preferencesManager.batch().setInt("first", 1).setString("user.name", "Roberto").commit();
+            }
+        });
+        writer.start();
+        while (!sharedPreferences.contains("first"))
+            Thread.sleep(1);
+
+        PreferencesSnapshot snapshot = preferencesManager.snapshot("first");
+        PreferencesSnapshot scope = preferencesManager.scope("user.").snapshot();
+        gate.countDown();
+        writer.join();
+
+        Assert.assertEquals(1, snapshot.getInt("first"));
+        Assert.assertEquals("Roberto", scope.getString("name"));
+    }
+
+    @Test
+    public void snapshot_concurrentBatches_neverTorn() throws InterruptedException {
+        preferencesManager.batch().setInt("first", 0).setInt("second", 0).commit();
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 1; running.get(); i++)
+                        preferencesManager.batch().setInt("first", i).setInt("second", i).commit();
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            }
+        });
+        writer.start();
+        try {
+            for (int i = 0; i < SNAPSHOTS; i++) {
+                PreferencesSnapshot snapshot = preferencesManager.snapshot("first", "second");
+                Assert.assertEquals(snapshot.getInt("first"), snapshot.getInt("second"));
+            }
+        } finally {
+            running.set(false);
+            writer.join();
+        }
+        Assert.assertNull(failure.get());
+    }
+}
@@ -0,0 +1,129 @@
+package it.lucacrema.preferences;
+
+import android.content.SharedPreferences;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class ShardedSharedPreferencesTest {
+
+    private static final int SHARD_COUNT = 4;
+    private static final int KEY_COUNT = 1000;
+
+    private List<InMemorySharedPreferences> shards;
+    private ShardedSharedPreferences sharedPreferences;
+    private PreferencesManager preferencesManager;
+
+    @Before
+    public void setUp() {
+        shards = new ArrayList<>();
+        for (int i = 0; i < SHARD_COUNT; i++)
+            shards.add(new InMemorySharedPreferences());
+        sharedPreferences = new ShardedSharedPreferences(new ArrayList<SharedPreferences>(shards), ShardRouter.ConsistentHash.INSTANCE);
+        preferencesManager = new PreferencesManager(sharedPreferences);
+    }
+
+    private int totalCommits() {
+        int commits = 0;
+        for (InMemorySharedPreferences shard : shards)
+            commits += shard.getCommitCount();
+        return commits;
+    }
+
+    @Test
+    public void set_commitsOnlyOneShard() {
+        preferencesManager.setInt("key", 5);
+
+        Assert.assertEquals(1, totalCommits());
+        Assert.assertEquals(1, shards.get(sharedPreferences.shardOf("key")).getCommitCount());
+        Assert.assertEquals(5, preferencesManager.getInt("key"));
+    }
+
+    @Test
+    public void consistentHash_spreadsKeysEvenly() {
+        int[] counts = new int[SHARD_COUNT];
+        for (int i = 0; i < KEY_COUNT; i++)
+            counts[sharedPreferences.shardOf("key" + i)]++;
+        for (int count : counts)
+            Assert.assertTrue(count > KEY_COUNT / SHARD_COUNT / 2);
+    }
+
+    @Test
+    public void consistentHash_addingShardOnlyMovesKeysToIt() {
+        ShardRouter router = ShardRouter.ConsistentHash.INSTANCE;
+        for (int i = 0; i < KEY_COUNT; i++) {
+            int before = router.shardOf("key" + i, SHARD_COUNT);
+            int after = router.shardOf("key" + i, SHARD_COUNT + 1);
+            Assert.assertTrue(after == before || after == SHARD_COUNT);
+        }
+    }
+
+    @Test
+    public void getAllValues_removeAllValues_acrossShards() {
+        for (int i = 0; i < 100; i++)
+            preferencesManager.setInt("key" + i, i);
+
+        Assert.assertEquals(100, preferencesManager.getAllValues().size());
+        Assert.assertTrue(preferencesManager.removeAllValues());
+        Assert.assertTrue(preferencesManager.getAllValues().isEmpty());
+    }
+
+    @Test
+    public void batch_commitsEachTouchedShardOnce() {
+        PreferencesBatch batch = preferencesManager.batch();
+        for (int i = 0; i < 100; i++)
+            batch.setInt("key" + i, i);
+        batch.commit();
+
+        Assert.assertEquals(SHARD_COUNT, totalCommits());
+    }
+
+    @Test
+    public void byPrefix_routesNamespaceToShard() {
+        ShardRouter router = new ShardRouter.ByPrefix(Collections.singletonMap("user.", 2));
+        sharedPreferences = new ShardedSharedPreferences(new ArrayList<SharedPreferences>(shards), router);
+        new PreferencesManager(sharedPreferences).setString("user.name", "Roberto");
+
+        Assert.assertEquals("Roberto", shards.get(2).getString("user.name", null));
+    }
+
+    @Test
+    public void migrateFrom_movesValuesAndClearsSource() {
+        InMemorySharedPreferences source = new InMemorySharedPreferences();
+        SharedPreferences.Editor editor = source.edit();
+        for (int i = 0; i < 100; i++)
+            editor.putString("key" + i, "value" + i);
+        editor.putBoolean("flag", true).commit();
+
+        Assert.assertTrue(sharedPreferences.migrateFrom(source, true));
+
+        Assert.assertTrue(source.getAll().isEmpty());
+        Assert.assertEquals(101, preferencesManager.getAllValues().size());
+        Assert.assertEquals("value42", preferencesManager.getString("key42"));
+        Assert.assertTrue(preferencesManager.getBoolean("flag"));
+    }
+
+    @Test
+    public void listeners_notifiedWithShardedPreferences() {
+        final List<String> changedKeys = new ArrayList<>();
+        SharedPreferences.OnSharedPreferenceChangeListener listener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+            @Override
+            public void onSharedPreferenceChanged(SharedPreferences changed, String key) {
+                Assert.assertSame(sharedPreferences, changed);
+                changedKeys.add(key);
+            }
+        };
+        sharedPreferences.registerOnSharedPreferenceChangeListener(listener);
+        preferencesManager.setInt("a", 1);
+        preferencesManager.setInt("b", 2);
+        sharedPreferences.unregisterOnSharedPreferenceChangeListener(listener);
+        preferencesManager.setInt("c", 3);
+
+        Assert.assertEquals(2, changedKeys.size());
+    }
+}
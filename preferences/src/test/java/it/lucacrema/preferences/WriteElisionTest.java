@@ -0,0 +1,98 @@
+package it.lucacrema.preferences;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class WriteElisionTest {
+
+    private InMemorySharedPreferences sharedPreferences;
+    private PreferencesManager preferencesManager;
+
+    @Before
+    public void setUp() {
+        sharedPreferences = new InMemorySharedPreferences();
+        preferencesManager = new PreferencesManager(sharedPreferences);
+    }
+
+    @Test
+    public void sameValues_notCommitted() {
+        preferencesManager.setInt("int", 1);
+        preferencesManager.setLong("long", 2L);
+        preferencesManager.setFloat("float", Float.NaN);
+        preferencesManager.setBoolean("boolean", false);
+        preferencesManager.setString("string", "value");
+        int commits = sharedPreferences.getCommitCount();
+
+        Assert.assertTrue(preferencesManager.setInt("int", 1));
+        Assert.assertTrue(preferencesManager.setLong("long", 2L));
+        Assert.assertTrue(preferencesManager.setFloat("float", Float.NaN));
+        Assert.assertTrue(preferencesManager.setBoolean("boolean", false));
+        Assert.assertTrue(preferencesManager.setString("string", "value"));
+        Assert.assertTrue(preferencesManager.removeValue("missing"));
+
+        Assert.assertEquals(commits, sharedPreferences.getCommitCount());
+        Assert.assertEquals(6, preferencesManager.getElidedWriteCount());
+    }
+
+    @Test
+    public void changedValue_committed() {
+        preferencesManager.setInt("int", 1);
+        int commits = sharedPreferences.getCommitCount();
+
+        preferencesManager.setInt("int", 2);
+        preferencesManager.setLong("int", 2L);
+
+        Assert.assertEquals(commits + 2, sharedPreferences.getCommitCount());
+        Assert.assertEquals(2L, preferencesManager.getLong("int"));
+        Assert.assertEquals(0, preferencesManager.getElidedWriteCount());
+    }
+
+    @Test
+    public void sameObject_comparedSerialized() throws IOException {
+        ArrayList<String> value = new ArrayList<>(Arrays.asList("a", "b"));
+        preferencesManager.setObject("object", value);
+        int commits = sharedPreferences.getCommitCount();
+
+        preferencesManager.setObject("object", new ArrayList<>(value));
+
+        Assert.assertEquals(commits, sharedPreferences.getCommitCount());
+        Assert.assertEquals(1, preferencesManager.getElidedWriteCount());
+    }
+
+    @Test
+    public void batch_onlyChangedValuesWritten() {
+        preferencesManager.batch().setInt("a", 1).setInt("b", 2).commit();
+
+        preferencesManager.batch().setInt("a", 1).setInt("b", 3).commit();
+
+        Assert.assertEquals(3, preferencesManager.getInt("b"));
+        Assert.assertEquals(1, preferencesManager.getElidedWriteCount());
+    }
+
+    @Test
+    public void forcedBatch_committed() {
+        preferencesManager.setInt("int", 1);
+        int commits = sharedPreferences.getCommitCount();
+
+        Assert.assertTrue(preferencesManager.batch().force().setInt("int", 1).commit());
+
+        Assert.assertEquals(commits + 1, sharedPreferences.getCommitCount());
+        Assert.assertEquals(0, preferencesManager.getElidedWriteCount());
+    }
+
+    @Test
+    public void elisionDisabled_committed() {
+        preferencesManager = new PreferencesManager.Builder(sharedPreferences).elideUnchangedWrites(false).build();
+        preferencesManager.setInt("int", 1);
+        int commits = sharedPreferences.getCommitCount();
+
+        preferencesManager.setInt("int", 1);
+
+        Assert.assertEquals(commits + 1, sharedPreferences.getCommitCount());
+    }
+}